@@ -0,0 +1,47 @@
+package com.example.spring_redis_practice;
+
+import com.redis.testcontainers.RedisContainer;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+
+/**
+ * ベンチマーク用の Redis 接続。
+ * -Dbench.redis=host:port があればそこへ、無ければ Testcontainers で redis:7-alpine を起動する。
+ */
+public final class BenchRedis implements AutoCloseable {
+
+    private final RedisContainer container;
+    private final RedisStandaloneConfiguration server;
+    private final LettuceConnectionFactory connectionFactory;
+
+    public BenchRedis() {
+        String target = System.getProperty("bench.redis");
+        String host;
+        int port;
+        if (target != null) {
+            container = null;
+            String[] hp = target.split(":");
+            host = hp[0];
+            port = Integer.parseInt(hp[1]);
+        } else {
+            container = new RedisContainer(RedisContainer.DEFAULT_IMAGE_NAME.withTag("7-alpine"));
+            container.start();
+            host = container.getHost();
+            port = container.getFirstMappedPort();
+        }
+        server = new RedisStandaloneConfiguration(host, port);
+        connectionFactory = new LettuceConnectionFactory(server);
+        connectionFactory.afterPropertiesSet();
+    }
+
+    public LettuceConnectionFactory connectionFactory() { return connectionFactory; }
+
+    /** 接続先（独自の接続ファクトリを組み立てるベンチマーク用）。 */
+    public RedisStandaloneConfiguration server() { return server; }
+
+    @Override
+    public void close() {
+        connectionFactory.destroy();
+        if (container != null) container.stop();
+    }
+}
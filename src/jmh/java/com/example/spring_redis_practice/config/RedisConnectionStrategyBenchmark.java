@@ -0,0 +1,91 @@
+package com.example.spring_redis_practice.config;
+
+import com.example.spring_redis_practice.BenchRedis;
+import io.lettuce.core.resource.ClientResources;
+import io.lettuce.core.resource.DefaultClientResources;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.autoconfigure.data.redis.RedisProperties;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 接続方式（app.redis.connection.strategy）ごとのスループットとレイテンシ分布（実 Redis 相手、多スレッド）。
+ * SampleTime の p99/p99.9 で、共有 1 本の接続が詰まったときの裾野を比べる。
+ * スレッド数は -Pjmh.threads で変えられる（既定 32）。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Threads(32)
+public class RedisConnectionStrategyBenchmark {
+
+    static final byte[] KEY = "bench:conn".getBytes(StandardCharsets.UTF_8);
+    static final byte[] FIELD = "userId".getBytes(StandardCharsets.UTF_8);
+
+    @Param({"SHARED", "POOLED", "STRIPED"})
+    RedisConnectionProperties.Strategy strategy;
+
+    @Param({"EACH", "ON_CLOSE"})
+    RedisConnectionProperties.PipelineFlush pipelineFlush;
+
+    /** 0 = Lettuce 既定（コア数）。 */
+    @Param({"0"})
+    int ioThreads;
+
+    BenchRedis bench;
+    ClientResources resources;
+    LettuceConnectionFactory connectionFactory;
+    RedisTemplate<String, Object> redis;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        bench = new BenchRedis();
+        RedisConnectionProperties props = new RedisConnectionProperties();
+        props.setStrategy(strategy);
+        props.setPipelineFlush(pipelineFlush);
+        props.getPool().setMaxActive(32);
+        props.getPool().setMaxIdle(32);
+        props.getPool().setMaxWait(Duration.ofSeconds(5));
+
+        DefaultClientResources.Builder builder = DefaultClientResources.builder();
+        if (ioThreads > 0) builder.ioThreadPoolSize(ioThreads);
+        resources = builder.build();
+
+        RedisProperties redisProps = new RedisProperties();
+        redisProps.setTimeout(Duration.ofSeconds(3));
+        var client = RedisConfig.clientConfiguration(props, redisProps, false);
+        client.clientResources(resources);
+        connectionFactory = RedisConfig.connectionFactory(bench.server(), client.build(), props);
+        connectionFactory.afterPropertiesSet();
+
+        redis = RedisConfig.template(connectionFactory, RedisConfig.valueSerializer(new RedisSerializerProperties()));
+        redis.opsForHash().putAll("bench:conn", Map.of("userId", "alice", "role", "admin"));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        connectionFactory.destroy();
+        resources.shutdown();
+        bench.close();
+    }
+
+    /** 単発の HGET（セッションの getAttr 相当）。 */
+    @Benchmark
+    public Object hget() { return redis.opsForHash().get("bench:conn", "userId"); }
+
+    /** 20 件の HGET をパイプラインで（loadMany 相当）。pipelineFlush の差が出る。 */
+    @Benchmark
+    public List<Object> pipelined() {
+        return redis.executePipelined((RedisCallback<Object>) connection -> {
+            for (int i = 0; i < 20; i++) connection.hashCommands().hGet(KEY, FIELD);
+            return null;
+        });
+    }
+}
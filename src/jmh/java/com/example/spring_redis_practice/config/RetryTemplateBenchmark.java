@@ -0,0 +1,31 @@
+package com.example.spring_redis_practice.config;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.retry.support.RetryTemplate;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 成功パス（例外なし）での RetryTemplate のオーバーヘッド。直接呼び出しとの差を見る。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RetryTemplateBenchmark {
+
+    RetryTemplate retry;
+    long counter;
+
+    @Setup
+    public void setUp() {
+        retry = new RetryConfig().redisRetryTemplate();
+    }
+
+    private long work() { return ++counter; }
+
+    @Benchmark
+    public long direct() { return work(); }
+
+    @Benchmark
+    public long viaRetryTemplate() { return retry.execute(ctx -> work()); }
+}
@@ -0,0 +1,62 @@
+package com.example.spring_redis_practice.serializer;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+
+/**
+ * RedisConfig で選べる値シリアライザの比較（JSON / COMPACT / COMPACT+圧縮）。
+ * サイズは @Setup で 1 回だけ標準出力に出す（スループットと並べて見る用）。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ValueSerializerBenchmark {
+
+    public record Cart(String id, List<String> items, long total) {}
+
+    @Param({"json", "compact", "compact+deflate"})
+    String format;
+
+    @Param({"string", "long", "cart", "large"})
+    String value;
+
+    RedisSerializer<Object> serializer;
+    Object input;
+    byte[] encoded;
+
+    @Setup
+    public void setUp() {
+        var json = new GenericJackson2JsonRedisSerializer();
+        var compact = new CompactValueSerializer(json, Map.of(1, Cart.class));
+        serializer = switch (format) {
+            case "json" -> json;
+            case "compact" -> compact;
+            default -> new CompressingSerializer(compact, 1024, Deflater.BEST_SPEED);
+        };
+        input = switch (value) {
+            case "string" -> "alice@example.com";
+            case "long" -> 1_700_000_000_000L;
+            case "cart" -> new Cart("c-1", List.of("apple", "banana", "cherry"), 1200L);
+            default -> {
+                Map<String, Object> perms = new HashMap<>();
+                for (int i = 0; i < 200; i++) perms.put("resource-" + i, "read,write");
+                yield perms;
+            }
+        };
+        encoded = serializer.serialize(input);
+        System.out.printf("%n[size] %s/%s = %d bytes%n", format, value, encoded.length);
+    }
+
+    @Benchmark
+    public byte[] serialize() { return serializer.serialize(input); }
+
+    @Benchmark
+    public Object deserialize() { return serializer.deserialize(encoded); }
+}
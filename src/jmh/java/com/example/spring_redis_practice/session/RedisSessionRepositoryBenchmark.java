@@ -0,0 +1,74 @@
+package com.example.spring_redis_practice.session;
+
+import com.example.spring_redis_practice.BenchRedis;
+import com.example.spring_redis_practice.config.RedisConfig;
+import com.example.spring_redis_practice.config.RedisSerializerProperties;
+import com.example.spring_redis_practice.config.RetryConfig;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RedisSessionRepository の各操作のレイテンシ（実 Redis 相手、1スレッド）。
+ * scripts / touch の組み合わせで、往復回数と EXPIRE 間引きの効果を比較する。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RedisSessionRepositoryBenchmark {
+
+    @Param({"false", "true"})
+    boolean scripts;
+
+    @Param({"false", "true"})
+    boolean touch;
+
+    BenchRedis bench;
+    RedisSessionRepository repo;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        bench = new BenchRedis();
+        RedisTemplate<String, Object> redis = RedisConfig.template(bench.connectionFactory(),
+                RedisConfig.valueSerializer(new RedisSerializerProperties()));
+
+        SessionProperties props = new SessionProperties();
+        props.getScripts().setEnabled(scripts);
+        props.getTouch().setEnabled(touch);
+        props.getTouch().setMinInterval(Duration.ofMinutes(1));
+
+        repo = new RedisSessionRepository(redis, new RetryConfig().redisRetryTemplate(), props,
+                SessionNearCache.disabled(), SessionMetrics.noop(), UserSessionIndex.disabled(),
+                SessionReplicaReads.disabled(), SessionShards.disabled(), SessionFallbackStore.disabled());
+        repo.putAll("bench", Map.of("userId", "alice", "role", "admin", "csrf", "0123456789abcdef"));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        bench.close();
+    }
+
+    @Benchmark
+    public Object getAttr() { return repo.getAttr("bench", "userId"); }
+
+    @Benchmark
+    public Object load() { return repo.load("bench"); }
+
+    @Benchmark
+    public void setAttr() { repo.setAttr("bench", "lastSeen", System.nanoTime()); }
+
+    @Benchmark
+    public void putAll() { repo.putAll("bench", Map.of("a", 1L, "b", "two", "c", true)); }
+
+    @Benchmark
+    public Object ttl() { return repo.ttl("bench"); }
+
+    @Benchmark
+    public void setThenInvalidate() {
+        repo.setAttr("bench-tmp", "userId", "bob");
+        repo.invalidate("bench-tmp");
+    }
+}
@@ -0,0 +1,50 @@
+package com.example.spring_redis_practice.session;
+
+import jakarta.servlet.http.Cookie;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SessionFilter の Redis に触れない部分（SID 生成・Cookie 解析・既知 SID の判定）のコスト。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SessionFilterBenchmark {
+
+    SessionFilter filter;
+    MockHttpServletRequest withSid;
+    MockHttpServletRequest manyCookies;
+    RotatingBloomFilter knownIds;
+    String unknownSid;
+
+    @Setup
+    public void setUp() {
+        filter = new SessionFilter(null); // Repository は使わない
+        withSid = new MockHttpServletRequest();
+        withSid.setCookies(new Cookie(SessionFilter.COOKIE_NAME, "AbCdEfGhIjKlMnOpQrStUvWx"));
+        manyCookies = new MockHttpServletRequest();
+        manyCookies.setCookies(new Cookie("_ga", "GA1.1.1"), new Cookie("_gid", "GA1.1.2"),
+                new Cookie("theme", "dark"), new Cookie("lang", "ja"),
+                new Cookie(SessionFilter.COOKIE_NAME, "AbCdEfGhIjKlMnOpQrStUvWx"));
+        knownIds = new RotatingBloomFilter(1_000_000, 0.01, RedisSessionRepository.DEFAULT_TTL);
+        for (int i = 0; i < 1_000_000; i++) knownIds.add(SessionIds.newId());
+        unknownSid = SessionIds.newId();
+    }
+
+    @Benchmark
+    public String newSessionId() { return filter.newSessionId(); }
+
+    @Benchmark
+    public Optional<String> readCookie() { return filter.readCookie(withSid, SessionFilter.COOKIE_NAME); }
+
+    @Benchmark
+    public Optional<String> readCookieAmongMany() { return filter.readCookie(manyCookies, SessionFilter.COOKIE_NAME); }
+
+    /** 知らない SID の判定（Redis の往復の代わりになるコスト）。 */
+    @Benchmark
+    public boolean rejectUnknownSid() { return knownIds.mightContain(unknownSid); }
+}
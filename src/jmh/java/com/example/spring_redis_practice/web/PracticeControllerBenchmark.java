@@ -0,0 +1,82 @@
+package com.example.spring_redis_practice.web;
+
+import com.example.spring_redis_practice.BenchRedis;
+import com.example.spring_redis_practice.SpringRedisPracticeApplication;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * practiceController（GET /me）の高並行時のスループット：Tomcat のプラットフォームスレッド vs 仮想スレッド。
+ * <p>
+ * アプリを組み込み Tomcat ごと起動し、JMH の多数スレッドから同時に HTTP で叩く。
+ * ・virtual=false：Tomcat のスレッドプール（tomcatMaxThreads）が同時処理数の上限
+ * ・virtual=true ：リクエストごとに仮想スレッド（プール上限なし。Java 21 以上が必要）
+ * Redis が手元にあると往復が短く差が出にくい。実環境に近い RTT の Redis を -Pjmh.redis=host:port で指定すること。
+ * <p>
+ * 例：./gradlew jmh -PjavaVersion=21 -Pjmh.includes=PracticeControllerBenchmark -Pjmh.threads=512
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Threads(256)
+public class PracticeControllerBenchmark {
+
+    @Param({"false", "true"})
+    boolean virtual;
+
+    @Param({"50"})
+    int tomcatMaxThreads;
+
+    BenchRedis redis;
+    ConfigurableApplicationContext app;
+    HttpClient client;
+    HttpRequest me;
+
+    @Setup
+    public void setUp() throws Exception {
+        if (virtual && Runtime.version().feature() < 21) {
+            throw new IllegalStateException("virtual threads require Java 21+ (run with -PjavaVersion=21)");
+        }
+        redis = new BenchRedis();
+        app = new SpringApplicationBuilder(SpringRedisPracticeApplication.class)
+                .properties(
+                        "server.port=0",
+                        "spring.threads.virtual.enabled=" + virtual,
+                        "server.tomcat.threads.max=" + tomcatMaxThreads,
+                        "spring.data.redis.host=" + redis.connectionFactory().getHostName(),
+                        "spring.data.redis.port=" + redis.connectionFactory().getPort())
+                .run();
+        int port = ((ServletWebServerApplicationContext) app).getWebServer().getPort();
+        String base = "http://localhost:" + port;
+
+        client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+        HttpResponse<String> login = client.send(
+                HttpRequest.newBuilder(URI.create(base + "/me/login?userId=bench"))
+                        .POST(HttpRequest.BodyPublishers.noBody()).build(),
+                HttpResponse.BodyHandlers.ofString());
+        String sid = (String) new ObjectMapper().readValue(login.body(), Map.class).get("sid");
+        me = HttpRequest.newBuilder(URI.create(base + "/me")).header("Cookie", "SID=" + sid).GET().build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        app.close();
+        redis.close();
+    }
+
+    @Benchmark
+    public int getMe() throws Exception {
+        return client.send(me, HttpResponse.BodyHandlers.discarding()).statusCode();
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.spring_redis_practice.loadtest;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * エンドポイントごとのレイテンシ（ナノ秒）とエラー数。
+ * <ul>
+ *   <li>latency：予定送信時刻からの応答時間（Coordinated Omission 補正済み。サーバが詰まって送信が遅れた分も含む）</li>
+ *   <li>service：実際に送信してからの応答時間（補正なし。latency との差が待たされた時間）</li>
+ * </ul>
+ * 記録は多数のクライアントから、{@link #sample} は集計スレッド 1 本から呼ぶ。
+ */
+final class EndpointStats {
+
+    private final String name;
+    private final Recorder latency = new Recorder(3);
+    private final Recorder service = new Recorder(3);
+    private final LongAdder intervalErrors = new LongAdder();
+
+    private final Histogram totalLatency = new Histogram(3);
+    private final Histogram totalService = new Histogram(3);
+    private long totalErrors;
+
+    EndpointStats(String name) {
+        this.name = name;
+    }
+
+    String name() { return name; }
+
+    void record(long intendedNanos, long sentNanos, long doneNanos) {
+        latency.recordValue(doneNanos - intendedNanos);
+        service.recordValue(doneNanos - sentNanos);
+    }
+
+    void error() { intervalErrors.increment(); }
+
+    /**
+     * 前回からの区間のレイテンシを取り出す（タグにエンドポイント名）。
+     * measuring が false（ウォームアップ中）なら累計には加えない。
+     */
+    synchronized Histogram sample(boolean measuring) {
+        Histogram interval = latency.getIntervalHistogram();
+        Histogram serviceInterval = service.getIntervalHistogram();
+        long errors = intervalErrors.sumThenReset();
+        if (measuring) {
+            totalLatency.add(interval);
+            totalService.add(serviceInterval);
+            totalErrors += errors;
+        }
+        interval.setTag(name);
+        return interval;
+    }
+
+    synchronized Histogram totalLatency() { return totalLatency.copy(); }
+
+    synchronized Histogram totalService() { return totalService.copy(); }
+
+    synchronized long totalErrors() { return totalErrors; }
+}
@@ -0,0 +1,188 @@
+package com.example.spring_redis_practice.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * セッションのライフサイクル（login → GET /me × N → logout）を一定レートで開始するオープンモデルの負荷生成器。
+ * <p>
+ * ・ライフサイクルは 1 本ずつ仮想スレッドで走らせ、開始時刻は応答を待たずに固定間隔で決める
+ * ・ライフサイクル内の各リクエストも「開始時刻 + k × thinkTime」に送る予定とし、レイテンシは予定時刻から測る。
+ *   前のリクエストが遅れて予定を過ぎた場合はすぐ送り、遅れた分もレイテンシに含める（Coordinated Omission の補正）
+ * ・GET /me はログインした userId が返ることも確かめ、違えばエラーとして数える
+ */
+final class LoadGenerator {
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+    private static final long SAMPLE_INTERVAL_MS = 1_000;
+
+    final EndpointStats login = new EndpointStats("login");
+    final EndpointStats me = new EndpointStats("me");
+    final EndpointStats logout = new EndpointStats("logout");
+
+    private final LoadProfile profile;
+    private final URI base;
+    private final HttpClient http;
+    private final Consumer<Histogram> intervals;
+
+    private final LongAdder started = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder aborted = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+
+    /**
+     * @param intervals 計測中の区間ヒストグラム（1 秒ごと、エンドポイント名のタグ付き）の受け取り先
+     */
+    LoadGenerator(LoadProfile profile, URI base, Consumer<Histogram> intervals) {
+        this.profile = profile;
+        this.base = base;
+        this.intervals = intervals;
+        this.http = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+    }
+
+    List<EndpointStats> endpoints() { return List.of(login, me, logout); }
+
+    /** ウォームアップ + 計測時間だけ負荷をかけ、走っているライフサイクルが終わるまで待つ。 */
+    LoadResult run() throws InterruptedException {
+        long period = Math.round(1e9 / profile.rate());
+        long start = System.nanoTime();
+        long measureFrom = start + profile.warmup().toNanos();
+        long end = measureFrom + profile.duration().toNanos();
+        Semaphore inFlight = new Semaphore(profile.maxInFlight());
+
+        ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "loadtest-sampler");
+            t.setDaemon(true);
+            return t;
+        });
+        long[] ticks = {0};
+        sampler.scheduleAtFixedRate(() -> sample(System.nanoTime() >= measureFrom, ++ticks[0] % 5 == 0),
+                SAMPLE_INTERVAL_MS, SAMPLE_INTERVAL_MS, TimeUnit.MILLISECONDS);
+
+        try (ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (long i = 0; ; i++) {
+                long intended = start + i * period;
+                if (intended >= end) break;
+                parkUntil(intended);
+                boolean measured = intended >= measureFrom;
+                if (!inFlight.tryAcquire()) {
+                    // 詰まってライフサイクルが溜まり続けている。開始しなかった分は dropped として報告する
+                    if (measured) dropped.increment();
+                    continue;
+                }
+                if (measured) started.increment();
+                String userId = "load-" + i;
+                clients.execute(() -> {
+                    try {
+                        lifecycle(userId, intended, measured);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        inFlight.release();
+                    }
+                });
+            }
+        } // close() で走っているライフサイクルの終了を待つ
+        sampler.shutdown();
+        sampler.awaitTermination(5, TimeUnit.SECONDS);
+        sample(true, false);
+
+        return new LoadResult(endpoints(), profile.duration(),
+                started.sum(), completed.sum(), aborted.sum(), dropped.sum());
+    }
+
+    private void lifecycle(String userId, long start, boolean measured) throws InterruptedException {
+        long think = profile.thinkTime().toNanos();
+        long t = start;
+
+        String body = send(login, post("/me/login?userId=" + URLEncoder.encode(userId, StandardCharsets.UTF_8), null), t);
+        String sid = body == null ? null : sid(body);
+        if (sid == null) {
+            if (body != null) login.error();
+            if (measured) aborted.increment();
+            return;
+        }
+        HttpRequest read = request("/me", sid).GET().build();
+        for (int k = 0; k < profile.readsPerSession(); k++) {
+            t += think;
+            body = send(me, read, t);
+            if (body != null && !body.contains('"' + userId + '"')) me.error();
+        }
+        t += think;
+        send(logout, post("/me/logout", sid), t);
+        if (measured) completed.increment();
+    }
+
+    /** 予定時刻まで待って送る。2xx なら本文、それ以外（失敗・タイムアウトを含む）は null。レイテンシはどちらも記録する。 */
+    private String send(EndpointStats stats, HttpRequest request, long intendedNanos) throws InterruptedException {
+        parkUntil(intendedNanos);
+        long sent = System.nanoTime();
+        try {
+            HttpResponse<String> res = http.send(request, HttpResponse.BodyHandlers.ofString());
+            stats.record(intendedNanos, sent, System.nanoTime());
+            if (res.statusCode() / 100 == 2) return res.body();
+        } catch (IOException e) {
+            stats.record(intendedNanos, sent, System.nanoTime());
+        }
+        stats.error();
+        return null;
+    }
+
+    private HttpRequest post(String path, String sid) {
+        return request(path, sid).POST(HttpRequest.BodyPublishers.noBody()).build();
+    }
+
+    private HttpRequest.Builder request(String path, String sid) {
+        HttpRequest.Builder b = HttpRequest.newBuilder(base.resolve(path)).timeout(profile.timeout());
+        if (sid != null) b.header("Cookie", "SID=" + sid);
+        return b;
+    }
+
+    private static String sid(String loginBody) {
+        try {
+            return JSON.readTree(loginBody).path("sid").asText(null);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private void sample(boolean measuring, boolean print) {
+        StringBuilder line = new StringBuilder(measuring ? "[measure]" : "[warmup] ");
+        for (EndpointStats stats : endpoints()) {
+            Histogram interval = stats.sample(measuring);
+            if (measuring && interval.getTotalCount() > 0) intervals.accept(interval);
+            line.append(String.format("  %s n=%d p99=%.2fms", stats.name(), interval.getTotalCount(),
+                    interval.getValueAtPercentile(99.0) / 1e6));
+        }
+        if (print) System.out.println(line);
+    }
+
+    private static void parkUntil(long deadlineNanos) throws InterruptedException {
+        long remaining;
+        while ((remaining = deadlineNanos - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(remaining);
+            if (Thread.interrupted()) throw new InterruptedException();
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.example.spring_redis_practice.loadtest;
+
+import org.springframework.boot.convert.DurationStyle;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 負荷試験の条件。すべてシステムプロパティ load.* から読む（./gradlew loadTest -Pload.rate=... で渡る）。
+ *
+ * @param redis           接続先 Redis（host:port）
+ * @param rate            1 秒あたりに開始するセッションライフサイクル数（オープンモデル）
+ * @param warmup          集計から除く立ち上がり時間
+ * @param duration        計測時間
+ * @param readsPerSession 1 ライフサイクルの GET /me 回数
+ * @param thinkTime       ライフサイクル内のリクエスト間隔
+ * @param timeout         1 リクエストのタイムアウト
+ * @param maxInFlight     同時に走るライフサイクルの上限（超えた分は開始せず dropped として数える）
+ * @param reportDir       レポートの出力先
+ * @param baseline        比較対象の summary.json（無ければ比較しない）
+ * @param maxRegression   p99 の悪化・スループットの低下をどこまで許すか（0.2 = 20%）
+ * @param maxErrorRate    許容するエラー率
+ * @param appProperties   アプリに渡す設定（load.app.* の接頭辞を外したもの）
+ */
+record LoadProfile(String redis, double rate, Duration warmup, Duration duration, int readsPerSession,
+                   Duration thinkTime, Duration timeout, int maxInFlight, Path reportDir, Path baseline,
+                   double maxRegression, double maxErrorRate, Map<String, String> appProperties) {
+
+    static final String APP_PREFIX = "load.app.";
+
+    LoadProfile {
+        if (rate <= 0) throw new IllegalArgumentException("load.rate must be positive: " + rate);
+        if (readsPerSession < 0) throw new IllegalArgumentException("load.readsPerSession must not be negative");
+    }
+
+    static LoadProfile fromSystemProperties() {
+        Map<String, String> app = new TreeMap<>();
+        System.getProperties().stringPropertyNames().stream()
+                .filter(name -> name.startsWith(APP_PREFIX))
+                .forEach(name -> app.put(name.substring(APP_PREFIX.length()), System.getProperty(name)));
+        String baseline = System.getProperty("load.baseline");
+        return new LoadProfile(
+                System.getProperty("load.redis", "localhost:6379"),
+                Double.parseDouble(System.getProperty("load.rate", "200")),
+                duration("load.warmup", "10s"),
+                duration("load.duration", "60s"),
+                Integer.parseInt(System.getProperty("load.readsPerSession", "5")),
+                duration("load.thinkTime", "100ms"),
+                duration("load.timeout", "10s"),
+                Integer.parseInt(System.getProperty("load.maxInFlight", "10000")),
+                Path.of(System.getProperty("load.reportDir", "build/reports/loadtest")),
+                baseline == null || baseline.isBlank() ? null : Path.of(baseline),
+                Double.parseDouble(System.getProperty("load.maxRegression", "0.2")),
+                Double.parseDouble(System.getProperty("load.maxErrorRate", "0.01")),
+                Map.copyOf(app));
+    }
+
+    String redisHost() { return redis.substring(0, redis.lastIndexOf(':')); }
+
+    int redisPort() { return Integer.parseInt(redis.substring(redis.lastIndexOf(':') + 1)); }
+
+    /** 1 ライフサイクルのリクエスト数（login + GET /me × N + logout）。 */
+    int requestsPerSession() { return readsPerSession + 2; }
+
+    private static Duration duration(String name, String defaultValue) {
+        return DurationStyle.detectAndParse(System.getProperty(name, defaultValue));
+    }
+}
@@ -0,0 +1,130 @@
+package com.example.spring_redis_practice.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 負荷試験のレポート。reportDir/&lt;日時&gt;/ に次を書き、summary.json は reportDir/latest.json にも複製する。
+ * <ul>
+ *   <li>summary.json：条件、ライフサイクル数、エンドポイントごとの件数・エラー・スループット・パーセンタイル（ms）</li>
+ *   <li>&lt;endpoint&gt;.hgrm：補正済みレイテンシの分布（HdrHistogram の plotFiles で重ねて比較できる）</li>
+ *   <li>latency.hlog：1 秒ごとの区間ヒストグラム（{@link LoadTest} が書く）</li>
+ * </ul>
+ * 以前の summary.json と比べ、p99 の悪化・スループットの低下・エラー率の超過を退行として返す。
+ */
+final class LoadReport {
+
+    private static final ObjectMapper JSON = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+    private static final Map<String, Double> PERCENTILES = Map.of(
+            "p50", 50.0, "p90", 90.0, "p99", 99.0, "p999", 99.9, "p9999", 99.99);
+    private static final List<String> PERCENTILE_ORDER = List.of("p50", "p90", "p99", "p999", "p9999");
+
+    private LoadReport() {
+    }
+
+    static void write(Path dir, LoadProfile profile, LoadResult result) throws IOException {
+        Files.createDirectories(dir);
+        Map<String, Object> endpoints = new LinkedHashMap<>();
+        for (EndpointStats stats : result.endpoints()) {
+            Histogram latency = stats.totalLatency();
+            endpoints.put(stats.name(), endpoint(stats, latency, result));
+            try (PrintStream out = new PrintStream(Files.newOutputStream(dir.resolve(stats.name() + ".hgrm")))) {
+                latency.outputPercentileDistribution(out, 1e6); // ms
+            }
+        }
+
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("timestamp", Instant.now().toString());
+        summary.put("java", Runtime.version().toString());
+        summary.put("profile", Map.of(
+                "rate", profile.rate(),
+                "warmupSec", profile.warmup().toSeconds(),
+                "durationSec", profile.duration().toSeconds(),
+                "readsPerSession", profile.readsPerSession(),
+                "thinkTimeMs", profile.thinkTime().toMillis(),
+                "app", profile.appProperties()));
+        summary.put("lifecycles", Map.of(
+                "started", result.started(),
+                "completed", result.completed(),
+                "aborted", result.aborted(),
+                "dropped", result.dropped()));
+        summary.put("endpoints", endpoints);
+
+        Path file = dir.resolve("summary.json");
+        JSON.writeValue(file.toFile(), summary);
+        Files.copy(file, dir.getParent().resolve("latest.json"), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static Map<String, Object> endpoint(EndpointStats stats, Histogram latency, LoadResult result) {
+        long count = latency.getTotalCount();
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("count", count);
+        m.put("errors", stats.totalErrors());
+        m.put("errorRate", count == 0 ? 0.0 : round((double) stats.totalErrors() / count));
+        m.put("throughput", round(count / (result.measured().toNanos() / 1e9)));
+        m.put("latencyMs", percentiles(latency));
+        m.put("serviceTimeMs", percentiles(stats.totalService()));
+        return m;
+    }
+
+    private static Map<String, Object> percentiles(Histogram h) {
+        Map<String, Object> m = new LinkedHashMap<>();
+        for (String key : PERCENTILE_ORDER) m.put(key, millis(h.getValueAtPercentile(PERCENTILES.get(key))));
+        m.put("max", millis(h.getMaxValue()));
+        m.put("mean", round(h.getMean() / 1e6));
+        return m;
+    }
+
+    /**
+     * baseline と比べた退行の一覧（空なら合格）。
+     * p99 が maxRegression を超えて悪化した、スループットが maxRegression を超えて下がった、
+     * エラー率が maxErrorRate を超えた、のいずれか。
+     */
+    static List<String> compare(Path current, LoadProfile profile) throws IOException {
+        JsonNode now = JSON.readTree(current.toFile()).path("endpoints");
+        List<String> problems = new ArrayList<>();
+        now.fields().forEachRemaining(e -> {
+            double errorRate = e.getValue().path("errorRate").asDouble();
+            if (errorRate > profile.maxErrorRate()) {
+                problems.add(String.format("%s: error rate %.4f > %.4f", e.getKey(), errorRate, profile.maxErrorRate()));
+            }
+        });
+        if (profile.baseline() == null) return problems;
+
+        JsonNode base = JSON.readTree(profile.baseline().toFile()).path("endpoints");
+        System.out.printf("%-8s %12s %12s %12s %12s%n", "endpoint", "p99(base)", "p99(now)", "rps(base)", "rps(now)");
+        now.fields().forEachRemaining(e -> {
+            JsonNode b = base.path(e.getKey());
+            if (b.isMissingNode()) return;
+            double p99Base = b.path("latencyMs").path("p99").asDouble();
+            double p99Now = e.getValue().path("latencyMs").path("p99").asDouble();
+            double rpsBase = b.path("throughput").asDouble();
+            double rpsNow = e.getValue().path("throughput").asDouble();
+            System.out.printf("%-8s %12.3f %12.3f %12.1f %12.1f%n", e.getKey(), p99Base, p99Now, rpsBase, rpsNow);
+            if (p99Now > p99Base * (1 + profile.maxRegression())) {
+                problems.add(String.format("%s: p99 %.3fms -> %.3fms", e.getKey(), p99Base, p99Now));
+            }
+            if (rpsNow < rpsBase * (1 - profile.maxRegression())) {
+                problems.add(String.format("%s: throughput %.1f/s -> %.1f/s", e.getKey(), rpsBase, rpsNow));
+            }
+        });
+        return problems;
+    }
+
+    private static double millis(long nanos) { return round(nanos / 1e6); }
+
+    private static double round(double v) { return Math.round(v * 1000) / 1000.0; }
+}
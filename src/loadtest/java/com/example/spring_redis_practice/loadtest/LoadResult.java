@@ -0,0 +1,16 @@
+package com.example.spring_redis_practice.loadtest;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * 1 回の負荷試験の結果（計測期間に開始したライフサイクルのみ数える）。
+ *
+ * @param started   開始したライフサイクル数
+ * @param completed logout まで終えた数
+ * @param aborted   login に失敗して打ち切った数
+ * @param dropped   同時実行数の上限で開始しなかった数
+ */
+record LoadResult(List<EndpointStats> endpoints, Duration measured,
+                  long started, long completed, long aborted, long dropped) {
+}
@@ -0,0 +1,91 @@
+package com.example.spring_redis_practice.loadtest;
+
+import com.example.spring_redis_practice.SpringRedisPracticeApplication;
+import org.HdrHistogram.HistogramLogWriter;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+
+import java.io.PrintStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * /me のエンドツーエンド負荷試験（./gradlew loadTest）。
+ * <p>
+ * アプリを組み込み Tomcat ごと同じ JVM で起動し（ポートは空き番号、仮想スレッド有効）、load.redis の Redis につなぐ。
+ * {@link LoadGenerator} で一定レートのセッションライフサイクルを流し、{@link LoadReport} でレポートを書く。
+ * エラー率の超過、または load.baseline と比べた退行があれば終了コード 1 で終わる（リリース前の確認用）。
+ * <p>
+ * 例：./gradlew loadTest -Pload.rate=1000 -Pload.duration=2m -Pload.baseline=build/reports/loadtest/latest.json
+ * <p>
+ * 負荷生成側も同じ JVM で動くので、絶対値より同じ条件で取った前回との比較に使うこと。
+ */
+public final class LoadTest {
+
+    private LoadTest() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadProfile profile = LoadProfile.fromSystemProperties();
+        Path dir = profile.reportDir().resolve(LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss")));
+        Files.createDirectories(dir);
+
+        List<String> problems;
+        try (ConfigurableApplicationContext app = start(profile)) {
+            ping(app);
+            int port = ((WebServerApplicationContext) app).getWebServer().getPort();
+            System.out.printf("load test: %.0f sessions/s x %d requests, warmup %s, duration %s -> %s%n",
+                    profile.rate(), profile.requestsPerSession(), profile.warmup(), profile.duration(), dir);
+
+            LoadResult result;
+            try (PrintStream out = new PrintStream(Files.newOutputStream(dir.resolve("latency.hlog")))) {
+                HistogramLogWriter log = new HistogramLogWriter(out);
+                log.outputLogFormatVersion();
+                log.outputStartTime(System.currentTimeMillis());
+                log.outputLegend();
+                result = new LoadGenerator(profile, URI.create("http://localhost:" + port), log::outputIntervalHistogram).run();
+            }
+            LoadReport.write(dir, profile, result);
+            System.out.printf("lifecycles: started=%d completed=%d aborted=%d dropped=%d%n",
+                    result.started(), result.completed(), result.aborted(), result.dropped());
+            problems = new ArrayList<>(LoadReport.compare(dir.resolve("summary.json"), profile));
+            if (result.dropped() > 0) problems.add("dropped " + result.dropped() + " lifecycles (raise load.maxInFlight or lower load.rate)");
+        }
+
+        System.out.println("report: " + dir.resolve("summary.json"));
+        if (!problems.isEmpty()) {
+            problems.forEach(p -> System.err.println("REGRESSION " + p));
+            System.exit(1);
+        }
+    }
+
+    private static ConfigurableApplicationContext start(LoadProfile profile) {
+        // コマンドライン引数として渡し、application.yml より優先させる
+        List<String> args = new ArrayList<>(List.of(
+                "--server.port=0",
+                "--spring.threads.virtual.enabled=true",
+                "--spring.data.redis.host=" + profile.redisHost(),
+                "--spring.data.redis.port=" + profile.redisPort(),
+                "--logging.level.root=WARN"));
+        profile.appProperties().forEach((k, v) -> args.add("--" + k + "=" + v));
+        return SpringApplication.run(SpringRedisPracticeApplication.class, args.toArray(String[]::new));
+    }
+
+    /** Redis に届かないまま流すとエラーしか測れないので、先に確かめる。 */
+    private static void ping(ConfigurableApplicationContext app) {
+        RedisConnection connection = app.getBean(RedisConnectionFactory.class).getConnection();
+        try {
+            connection.ping();
+        } finally {
+            connection.close();
+        }
+    }
+}
@@ -2,8 +2,10 @@ package com.example.spring_redis_practice;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.properties.ConfigurationPropertiesScan;
 
 @SpringBootApplication
+@ConfigurationPropertiesScan
 public class SpringRedisPracticeApplication {
 
 	public static void main(String[] args) {
@@ -0,0 +1,374 @@
+package com.example.spring_redis_practice.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.cache.support.AbstractValueAdaptingCache;
+import org.springframework.cache.support.NullValue;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.BiConsumer;
+
+/**
+ * ノード内 L1（Caffeine、件数上限つき）＋ Redis L2 の 2 段キャッシュ。TwoTierCacheManager が名前ごとに作る。
+ * <p>
+ * 読み取り：L1 → L2 → 呼び出し元（@Cacheable のメソッド）の順。L2 から読んだ値は L1 に載せる。
+ * L2 を読んでいる間にそのキーの無効化が来ていたら、読んだ値は L1 に残さない。無効化の世代番号はキーのハッシュで
+ * STRIPES 個に分けて持つ（他のキーの書き込みでは弾かない。同じ区画に落ちた別キーだけ巻き添え）。
+ * 書き込み/破棄：L2 を更新してから、他ノードの L1 を Pub/Sub で無効化する（自ノードの L1 はその場で差し替え）。
+ * <p>
+ * スタンピード対策：
+ * ・同じキーの読み込み（get(key, loader) = @Cacheable(sync = true)）はノード内で 1 本にまとめる。
+ *   計算中に来た他のスレッドは、古い値があればそれを、無ければ計算結果を待って返す
+ * ・期限前の確率的な再計算（XFetch）：値と一緒に「再計算にかかった時間」と論理的な期限を L2 に置き、
+ *   期限が近づくほど高い確率でミス扱いにする。全ノードが同時に期限切れを踏むのではなく、先に 1 つが作り直す
+ * ・sync でない @Cacheable（get → メソッド実行 → put）でも、同じスレッドのミスから put までの時間を再計算時間とする
+ * <p>
+ * L2 の読み取りに失敗した場合はミス扱いにする（呼び出し元で計算すればよい）。書き込み・破棄の失敗は呼び出し元へ投げる。
+ * L2 の値は {"v": 値, "e": 期限(epoch ms), "d": 再計算時間(ms)} の Map（null は "v" なし）で、RedisConfig の値シリアライザで書く。
+ */
+public class TwoTierCache extends AbstractValueAdaptingCache {
+
+    private static final Logger log = LoggerFactory.getLogger(TwoTierCache.class);
+
+    /** L1/L2 に置く値。value は store 値（null は NullValue）、expiresAt は論理的な期限（無期限は Long.MAX_VALUE）。 */
+    record Entry(Object value, long expiresAt, long delta) {}
+
+    /** 同じスレッドでの「ミス → put」から再計算時間を測るための印。 */
+    private record Miss(String key, long startNanos) {}
+
+    private static final ThreadLocal<Miss> LAST_MISS = new ThreadLocal<>();
+    /** 世代番号の区画数（2 のべき乗）。 */
+    static final int STRIPES = 4096;
+
+    private final String name;
+    private final String keyPrefix;
+    private final RedisTemplate<String, Object> redis;
+    private final Duration ttl;
+    private final long l1TtlNanos;
+    private final double beta;
+    private final BiConsumer<String, String> invalidation;
+    private final Cache<String, Entry> l1;
+    private final ConcurrentHashMap<String, CompletableFuture<Entry>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLongArray generations = new AtomicLongArray(STRIPES);
+    private final Counter l1Hits;
+    private final Counter l2Hits;
+    private final Counter misses;
+    private final Counter earlyRefreshes;
+
+    /** invalidation：他ノードへの無効化通知（キャッシュ名, Redis キー。キーが null なら全消去）。 */
+    TwoTierCache(String name, TwoTierCacheProperties props, RedisTemplate<String, Object> redis,
+                 BiConsumer<String, String> invalidation, MeterRegistry registry) {
+        super(props.isAllowNullValues());
+        this.name = name;
+        this.keyPrefix = props.getKeyPrefix() + name + "::";
+        this.redis = redis;
+        this.ttl = props.ttl(name);
+        this.l1TtlNanos = props.l1Ttl(name).toNanos();
+        this.beta = props.getEarlyRefreshBeta();
+        this.invalidation = invalidation;
+        this.l1 = Caffeine.newBuilder()
+                .maximumSize(props.l1MaxEntries(name))
+                .expireAfter(new Expiry<String, Entry>() {
+                    @Override
+                    public long expireAfterCreate(String key, Entry e, long currentTime) {
+                        return l1Nanos(e);
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String key, Entry e, long currentTime, long currentDuration) {
+                        return l1Nanos(e);
+                    }
+
+                    @Override
+                    public long expireAfterRead(String key, Entry e, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .build();
+        this.l1Hits = gets(registry, "l1");
+        this.l2Hits = gets(registry, "l2");
+        this.misses = gets(registry, "miss");
+        this.earlyRefreshes = Counter.builder("cache.two_tier.early_refreshes").tag("cache", name).register(registry);
+    }
+
+    private Counter gets(MeterRegistry registry, String result) {
+        return Counter.builder("cache.two_tier.gets").tag("cache", name).tag("result", result).register(registry);
+    }
+
+    @Override
+    public String getName() { return name; }
+
+    @Override
+    public Object getNativeCache() { return l1; }
+
+    @Override
+    protected Object lookup(Object key) {
+        String k = redisKey(key);
+        Entry e = entry(k);
+        if (e == null || refreshEarly(e)) {
+            LAST_MISS.set(new Miss(k, System.nanoTime()));
+            return null;
+        }
+        return e.value();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        String k = redisKey(key);
+        Entry current = entry(k);
+        if (current != null && !refreshEarly(current)) return (T) fromStoreValue(current.value());
+
+        CompletableFuture<Entry> mine = new CompletableFuture<>();
+        CompletableFuture<Entry> running = inFlight.putIfAbsent(k, mine);
+        if (running != null) {
+            // 他のスレッドが計算中：古い値があればそれを返し、無ければ結果を待つ
+            if (current != null) return (T) fromStoreValue(current.value());
+            return (T) fromStoreValue(await(running).value());
+        }
+        try {
+            // 直前に計算し終えたスレッドがいれば、その値を使う
+            Entry fresh = current == null ? l1.getIfPresent(k) : null;
+            if (fresh != null) {
+                mine.complete(fresh);
+                return (T) fromStoreValue(fresh.value());
+            }
+            long start = System.nanoTime();
+            T value;
+            try {
+                value = valueLoader.call();
+            } catch (Exception ex) {
+                throw new ValueRetrievalException(key, valueLoader, ex);
+            }
+            Object storeValue = toStoreValue(value);
+            Entry loaded;
+            try {
+                loaded = store(k, storeValue, elapsedMillis(start));
+            } catch (RuntimeException ex) {
+                // 値は計算できているので返す（次の読み取りで再計算になるだけ）
+                log.warn("Could not write cache entry {}: {}", k, ex.toString());
+                loaded = newEntry(storeValue, 0);
+            }
+            mine.complete(loaded);
+            return value;
+        } catch (RuntimeException | Error ex) {
+            mine.completeExceptionally(ex);
+            throw ex;
+        } finally {
+            inFlight.remove(k, mine);
+        }
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        String k = redisKey(key);
+        store(k, toStoreValue(value), measuredDelta(k));
+    }
+
+    @Override
+    public ValueWrapper putIfAbsent(Object key, Object value) {
+        String k = redisKey(key);
+        Entry e = newEntry(toStoreValue(value), 0);
+        Boolean set = ttl.isZero()
+                ? redis.opsForValue().setIfAbsent(k, envelope(e))
+                : redis.opsForValue().setIfAbsent(k, envelope(e), ttl);
+        if (Boolean.TRUE.equals(set)) {
+            replaced(k, e);
+            return null;
+        }
+        Entry existing = fromEnvelope(redis.opsForValue().get(k));
+        return existing != null ? toValueWrapper(existing.value()) : null;
+    }
+
+    @Override
+    public void evict(Object key) {
+        evictIfPresent(key);
+    }
+
+    @Override
+    public boolean evictIfPresent(Object key) {
+        String k = redisKey(key);
+        Boolean deleted = redis.delete(k);
+        invalidation.accept(name, k);
+        evictLocal(k);
+        return Boolean.TRUE.equals(deleted);
+    }
+
+    @Override
+    public void clear() {
+        invalidate();
+    }
+
+    /** このキャッシュの L2 のキーを SCAN して消し、全ノードの L1 を空にする。 */
+    @Override
+    public boolean invalidate() {
+        long deleted = 0;
+        ScanOptions options = ScanOptions.scanOptions().match(keyPrefix + "*").count(1000).build();
+        List<String> chunk = new ArrayList<>();
+        try (Cursor<String> keys = redis.scan(options)) {
+            while (keys.hasNext()) {
+                chunk.add(keys.next());
+                if (chunk.size() == 1000) {
+                    deleted += delete(chunk);
+                    chunk.clear();
+                }
+            }
+        }
+        deleted += delete(chunk);
+        invalidation.accept(name, null);
+        clearLocal();
+        return deleted > 0;
+    }
+
+    private long delete(List<String> keys) {
+        if (keys.isEmpty()) return 0;
+        Long n = redis.delete(keys);
+        return n != null ? n : 0;
+    }
+
+    /** 他ノードでの書き込み/破棄。 */
+    void evictLocal(String k) {
+        generations.incrementAndGet(stripe(k));
+        l1.invalidate(k);
+    }
+
+    /** 他ノードでの clear。全区画の世代を進めてから全破棄。 */
+    void clearLocal() {
+        for (int i = 0; i < STRIPES; i++) generations.incrementAndGet(i);
+        l1.invalidateAll();
+    }
+
+    static int stripe(String k) {
+        int h = k.hashCode();
+        return (h ^ (h >>> 16)) & (STRIPES - 1);
+    }
+
+    /** L1 → L2 の順に探す。L2 の失敗はミス扱い。 */
+    private Entry entry(String k) {
+        Entry e = l1.getIfPresent(k);
+        if (e != null) {
+            l1Hits.increment();
+            return e;
+        }
+        int stripe = stripe(k);
+        long stamp = generations.get(stripe);
+        try {
+            e = fromEnvelope(redis.opsForValue().get(k));
+        } catch (RuntimeException ex) {
+            log.debug("Cache read failed for {}; treating as a miss: {}", k, ex.toString());
+            e = null;
+        }
+        if (e == null) {
+            misses.increment();
+            return null;
+        }
+        l2Hits.increment();
+        l1.put(k, e);
+        // 読み取り中にこのキーの無効化が来ていたら、載せた値は古い可能性があるので捨てる
+        if (generations.get(stripe) != stamp) l1.invalidate(k);
+        return e;
+    }
+
+    /** L2 に書き、他ノードの L1 を無効化し、自ノードの L1 を新しい値にする。 */
+    private Entry store(String k, Object storeValue, long delta) {
+        Entry e = newEntry(storeValue, delta);
+        if (ttl.isZero()) redis.opsForValue().set(k, envelope(e));
+        else redis.opsForValue().set(k, envelope(e), ttl);
+        replaced(k, e);
+        return e;
+    }
+
+    private void replaced(String k, Entry e) {
+        invalidation.accept(name, k);
+        evictLocal(k);
+        l1.put(k, e);
+    }
+
+    private Entry newEntry(Object storeValue, long delta) {
+        long expiresAt = ttl.isZero() ? Long.MAX_VALUE : System.currentTimeMillis() + ttl.toMillis();
+        return new Entry(storeValue, expiresAt, delta);
+    }
+
+    private boolean refreshEarly(Entry e) {
+        double rand = 1.0 - ThreadLocalRandom.current().nextDouble(); // (0, 1]
+        if (!shouldRefreshEarly(System.currentTimeMillis(), e.expiresAt(), e.delta(), beta, rand)) return false;
+        earlyRefreshes.increment();
+        return true;
+    }
+
+    /**
+     * XFetch：now − delta·beta·ln(rand) ≥ expiresAt なら、期限前でも再計算する。
+     * 期限まで delta 程度に迫ると確率が上がり始め、期限ちょうどで 1 になる。
+     */
+    static boolean shouldRefreshEarly(long now, long expiresAt, long delta, double beta, double rand) {
+        if (beta <= 0 || delta <= 0 || expiresAt == Long.MAX_VALUE) return false;
+        return now - delta * beta * Math.log(rand) >= expiresAt;
+    }
+
+    /** 直前の同じキーのミスからの経過時間（ミスから put まで＝メソッドの実行時間）。該当しなければ 0。 */
+    private long measuredDelta(String k) {
+        Miss miss = LAST_MISS.get();
+        if (miss == null || !miss.key().equals(k)) return 0;
+        LAST_MISS.remove();
+        long delta = elapsedMillis(miss.startNanos());
+        // ミスの後 put されずに残っていた古い印は使わない
+        return ttl.isZero() || delta < ttl.toMillis() ? delta : 0;
+    }
+
+    private long l1Nanos(Entry e) {
+        if (e.expiresAt() == Long.MAX_VALUE) return l1TtlNanos;
+        long remaining = TimeUnit.MILLISECONDS.toNanos(Math.max(0, e.expiresAt() - System.currentTimeMillis()));
+        return Math.min(l1TtlNanos, remaining);
+    }
+
+    private String redisKey(Object key) {
+        return keyPrefix + (key instanceof String s ? s : String.valueOf(key));
+    }
+
+    private static Map<String, Object> envelope(Entry e) {
+        Map<String, Object> m = new LinkedHashMap<>(4);
+        if (e.value() != NullValue.INSTANCE) m.put("v", e.value());
+        m.put("e", e.expiresAt());
+        m.put("d", e.delta());
+        return m;
+    }
+
+    private static Entry fromEnvelope(Object raw) {
+        if (!(raw instanceof Map<?, ?> m)) return null;
+        if (!(m.get("e") instanceof Number expiresAt) || !(m.get("d") instanceof Number delta)) return null;
+        return new Entry(m.containsKey("v") ? m.get("v") : NullValue.INSTANCE, expiresAt.longValue(), delta.longValue());
+    }
+
+    private static Entry await(CompletableFuture<Entry> running) {
+        try {
+            return running.join();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof RuntimeException re) throw re;
+            if (ex.getCause() instanceof Error err) throw err;
+            throw ex;
+        }
+    }
+
+    private static long elapsedMillis(long startNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+}
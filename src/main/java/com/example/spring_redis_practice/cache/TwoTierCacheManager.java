@@ -0,0 +1,92 @@
+package com.example.spring_redis_practice.cache;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.cache.Cache;
+import org.springframework.cache.support.AbstractCacheManager;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.UUID;
+
+/**
+ * TwoTierCache（L1 = Caffeine, L2 = Redis）を配る CacheManager。
+ * ・app.cache.caches に書いた名前は起動時に作る。それ以外の名前も初回アクセス時に既定値で作る
+ * ・L1 の無効化は app.cache.channel の Pub/Sub で全ノードへ流す（自ノード発のメッセージは無視）
+ *   メッセージ："{nodeId}\n{cacheName}\n{Redisキー}"（キーなし＝clear）
+ * ・購読が切れている間の通知は失われる。その間の古さは L1 の保持期間（l1-ttl）が上限
+ */
+public class TwoTierCacheManager extends AbstractCacheManager implements DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(TwoTierCacheManager.class);
+
+    private final TwoTierCacheProperties props;
+    private final RedisTemplate<String, Object> redis;
+    private final MeterRegistry registry;
+    private final String nodeId = UUID.randomUUID().toString();
+    private RedisMessageListenerContainer listenerContainer;
+
+    public TwoTierCacheManager(TwoTierCacheProperties props, RedisTemplate<String, Object> redis,
+                               MeterRegistry registry) {
+        this.props = props;
+        this.redis = redis;
+        this.registry = registry;
+    }
+
+    @Override
+    protected Collection<? extends Cache> loadCaches() {
+        return props.getCaches().keySet().stream().map(this::create).toList();
+    }
+
+    @Override
+    protected Cache getMissingCache(String name) {
+        return create(name);
+    }
+
+    private TwoTierCache create(String name) {
+        return new TwoTierCache(name, props, redis, this::publish, registry);
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        super.afterPropertiesSet();
+        listenerContainer = new RedisMessageListenerContainer();
+        listenerContainer.setConnectionFactory(redis.getConnectionFactory());
+        listenerContainer.addMessageListener(
+                (message, pattern) -> onInvalidation(new String(message.getBody(), StandardCharsets.UTF_8)),
+                new ChannelTopic(props.getChannel()));
+        listenerContainer.afterPropertiesSet();
+        listenerContainer.start();
+    }
+
+    private void publish(String cacheName, String key) {
+        final byte[] channel = props.getChannel().getBytes(StandardCharsets.UTF_8);
+        final byte[] message = (nodeId + '\n' + cacheName + (key != null ? "\n" + key : ""))
+                .getBytes(StandardCharsets.UTF_8);
+        redis.execute((RedisCallback<Long>) c -> c.publish(channel, message));
+    }
+
+    private void onInvalidation(String message) {
+        String[] parts = message.split("\n", 3);
+        if (parts.length < 2 || parts[0].equals(nodeId)) return;
+        // まだ使っていないキャッシュなら L1 も空なので、作らずに無視する
+        if (!(lookupCache(parts[1]) instanceof TwoTierCache cache)) return;
+        if (parts.length == 3) {
+            cache.evictLocal(parts[2]);
+        } else {
+            log.debug("Cache {} cleared on another node", parts[1]);
+            cache.clearLocal();
+        }
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        if (listenerContainer != null) listenerContainer.destroy();
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.spring_redis_practice.cache;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Spring Cache（@Cacheable 等）用の 2 段キャッシュ（TwoTierCacheManager）の設定（application.yml の app.cache.*）。
+ * caches に無い名前のキャッシュも既定値で作られる。
+ */
+@ConfigurationProperties(prefix = "app.cache")
+public class TwoTierCacheProperties {
+
+    /** Redis（L2）のキー接頭辞。キーは "{prefix}{cacheName}::{key}"。 */
+    private String keyPrefix = "cache:";
+    /** 既定の TTL（L2 の有効期限）。0 なら無期限。 */
+    private Duration defaultTtl = Duration.ofMinutes(10);
+    /** 既定の L1 保持期間（他ノードの更新通知を取りこぼした場合に古い値が見える上限）。 */
+    private Duration defaultL1Ttl = Duration.ofSeconds(30);
+    /** 既定の L1 件数上限（キャッシュごと）。 */
+    private long defaultL1MaxEntries = 10_000;
+    /** null をキャッシュするか（しない場合、null を返すメソッドは毎回実行される）。 */
+    private boolean allowNullValues = true;
+    /** L1 の無効化を他ノードへ知らせるチャネル名。 */
+    private String channel = "cache-invalidation";
+    /**
+     * 期限前の確率的な再計算の強さ（XFetch の beta）。0 で無効。
+     * 1.0 で「再計算にかかった時間」程度手前から、期限が近いほど高い確率で 1 リクエストだけが再計算する。
+     */
+    private double earlyRefreshBeta = 1.0;
+    /** キャッシュ名ごとの上書き。 */
+    private Map<String, Spec> caches = new LinkedHashMap<>();
+
+    public String getKeyPrefix() { return keyPrefix; }
+    public void setKeyPrefix(String keyPrefix) { this.keyPrefix = keyPrefix; }
+    public Duration getDefaultTtl() { return defaultTtl; }
+    public void setDefaultTtl(Duration defaultTtl) { this.defaultTtl = defaultTtl; }
+    public Duration getDefaultL1Ttl() { return defaultL1Ttl; }
+    public void setDefaultL1Ttl(Duration defaultL1Ttl) { this.defaultL1Ttl = defaultL1Ttl; }
+    public long getDefaultL1MaxEntries() { return defaultL1MaxEntries; }
+    public void setDefaultL1MaxEntries(long defaultL1MaxEntries) { this.defaultL1MaxEntries = defaultL1MaxEntries; }
+    public boolean isAllowNullValues() { return allowNullValues; }
+    public void setAllowNullValues(boolean allowNullValues) { this.allowNullValues = allowNullValues; }
+    public String getChannel() { return channel; }
+    public void setChannel(String channel) { this.channel = channel; }
+    public double getEarlyRefreshBeta() { return earlyRefreshBeta; }
+    public void setEarlyRefreshBeta(double earlyRefreshBeta) { this.earlyRefreshBeta = earlyRefreshBeta; }
+    public Map<String, Spec> getCaches() { return caches; }
+    public void setCaches(Map<String, Spec> caches) { this.caches = caches; }
+
+    /** キャッシュ名ごとの設定。未指定の項目は default-* を使う。 */
+    public static class Spec {
+        private Duration ttl;
+        private Duration l1Ttl;
+        private Long l1MaxEntries;
+
+        public Duration getTtl() { return ttl; }
+        public void setTtl(Duration ttl) { this.ttl = ttl; }
+        public Duration getL1Ttl() { return l1Ttl; }
+        public void setL1Ttl(Duration l1Ttl) { this.l1Ttl = l1Ttl; }
+        public Long getL1MaxEntries() { return l1MaxEntries; }
+        public void setL1MaxEntries(Long l1MaxEntries) { this.l1MaxEntries = l1MaxEntries; }
+    }
+
+    Duration ttl(String name) {
+        Spec s = caches.get(name);
+        return s != null && s.getTtl() != null ? s.getTtl() : defaultTtl;
+    }
+
+    Duration l1Ttl(String name) {
+        Spec s = caches.get(name);
+        return s != null && s.getL1Ttl() != null ? s.getL1Ttl() : defaultL1Ttl;
+    }
+
+    long l1MaxEntries(String name) {
+        Spec s = caches.get(name);
+        return s != null && s.getL1MaxEntries() != null ? s.getL1MaxEntries() : defaultL1MaxEntries;
+    }
+}
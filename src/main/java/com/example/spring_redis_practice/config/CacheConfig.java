@@ -0,0 +1,25 @@
+package com.example.spring_redis_practice.config;
+
+import com.example.spring_redis_practice.cache.TwoTierCacheManager;
+import com.example.spring_redis_practice.cache.TwoTierCacheProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.core.RedisTemplate;
+
+/**
+ * Spring Cache（@Cacheable 等）の設定。
+ * CacheManager を定義するので、spring.cache.type による Boot の RedisCacheManager は作られない。
+ * L2 の値は redisTemplate（RedisConfig の値シリアライザ）で読み書きする。
+ */
+@Configuration
+@EnableCaching
+public class CacheConfig {
+
+    @Bean
+    public TwoTierCacheManager cacheManager(TwoTierCacheProperties props, RedisTemplate<String, Object> redisTemplate,
+                                            MeterRegistry meterRegistry) {
+        return new TwoTierCacheManager(props, redisTemplate, meterRegistry);
+    }
+}
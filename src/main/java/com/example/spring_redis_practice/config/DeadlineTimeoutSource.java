@@ -0,0 +1,37 @@
+package com.example.spring_redis_practice.config;
+
+import com.example.spring_redis_practice.resilience.RedisDeadline;
+import io.lettuce.core.TimeoutOptions;
+import io.lettuce.core.protocol.RedisCommand;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lettuce のコマンドごとのタイムアウト。既定は spring.data.redis.timeout、
+ * redisRetryTemplate の論理呼び出しの中（RedisDeadline が置かれたスレッド）ではその期限の残りを上限にする。
+ * タイムアウトはコマンドを送るスレッドで決まるので、同期 API とパイプラインに効く（リアクティブ側は既定のまま）。
+ */
+class DeadlineTimeoutSource extends TimeoutOptions.TimeoutSource {
+
+    /** 期限を過ぎていても最低限待つ時間（0 以下は Lettuce では「タイムアウトなし」になるため）。 */
+    private static final long MIN_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final long defaultNanos;
+
+    DeadlineTimeoutSource(Duration commandTimeout) {
+        this.defaultNanos = commandTimeout.toNanos();
+    }
+
+    @Override
+    public long getTimeout(RedisCommand<?, ?, ?> command) {
+        long remaining = RedisDeadline.remainingNanos();
+        if (remaining >= defaultNanos) return defaultNanos;
+        return Math.max(MIN_NANOS, remaining);
+    }
+
+    @Override
+    public TimeUnit getTimeUnit() {
+        return TimeUnit.NANOSECONDS;
+    }
+}
@@ -1,148 +1,258 @@
 package com.example.spring_redis_practice.config;
 
+import com.example.spring_redis_practice.serializer.CompactValueSerializer;
+import com.example.spring_redis_practice.serializer.CompressingSerializer;
+import com.example.spring_redis_practice.serializer.MeteredSerializer;
 import io.lettuce.core.ClientOptions;
+import io.lettuce.core.RedisURI;
 import io.lettuce.core.SocketOptions;
 import io.lettuce.core.TimeoutOptions;
+import io.lettuce.core.api.StatefulConnection;
+import io.lettuce.core.cluster.ClusterClientOptions;
+import io.lettuce.core.metrics.MicrometerOptions;
 import io.lettuce.core.resource.ClientResources;
-import io.lettuce.core.resource.DefaultClientResources;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.data.redis.ClientResourcesBuilderCustomizer;
+import org.springframework.boot.autoconfigure.data.redis.LettuceClientConfigurationBuilderCustomizer;
+import org.springframework.boot.autoconfigure.data.redis.RedisConnectionDetails;
 import org.springframework.boot.autoconfigure.data.redis.RedisProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.connection.*;
 import org.springframework.data.redis.connection.lettuce.LettuceClientConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnection;
 import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.connection.lettuce.LettucePoolingClientConfiguration;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializationContext;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
+import org.springframework.util.StringUtils;
 
-import java.time.Duration;
-import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 /**
  * RedisTemplate の最小設定。
  * - Key/HashKey は文字列
  * - Value/HashValue は JSON（GenericJackson2JsonRedisSerializer）
+ *   app.redis.serializer.format=COMPACT なら CompactValueSerializer（既存の JSON 値も読める）
+ *   app.redis.serializer.compression.enabled=true なら、大きい値だけ圧縮（CompressingSerializer。無効でも圧縮済みの値は読める）
+ *   いずれも最外周で MeteredSerializer がサイズ分布（redis.value.bytes）を記録する
  *
  * こうしておくと Map や DTO をそのまま put/get できて扱いやすい。
- * なお、RedisConnectionFactory は Spring Boot のオートコンフィグに任せる。
- */
-/**
- * Lettuce の運用向け設定を明示化：
+ *
+ * 接続ファクトリも自前で組み立て、Lettuce の運用向け設定を明示化（app.redis.connection.*）：
+ * - 接続方式（共有 1 本 / プール / スレッドで振り分ける複数本）
  * - 自動再接続（autoReconnect）
- * - コマンドタイムアウト（デフォ3秒→必要に応じて変更）
- * - 接続タイムアウト（SocketOptions）
- * - リクエストキュー上限（詰め込みすぎ防止）
- * - ClientResources（I/Oスレッドなど）
+ * - コマンドタイムアウト・接続タイムアウト（spring.data.redis.timeout / connect-timeout）
+ *   コマンドタイムアウトは redisRetryTemplate の期限の残りも超えない（DeadlineTimeoutSource）
+ * - リクエストキュー上限と切断時の扱い（詰め込みすぎ防止）
+ * - ClientResources の I/O スレッド数、パイプラインの書き出し単位
+ * - 起動時に共有接続を張るか（eager-initialization。最初のリクエストに接続確立を払わせない）
  *
  * Standalone / Sentinel / Cluster のいずれも spring.data.redis.* の設定で切替。
  */
 @Configuration
 public class RedisConfig {
 
-//todo 下記のlettuceのBeanたちはオプション設定の立ち位置なので、一旦無視。
-
-//    /** Netty用スレッドプール・タイマの共有資源（アプリ全体で１つ）*/
-//    @Bean(destroyMethod = "shutdown")
-//    public ClientResources lettuceClientResources() {
-//        return DefaultClientResources.create();
-//    }
-//
-//
-//    /** Lettuceのクライアントオプション（自動再接続・タイムアウト等） */
-//    @Bean
-//    public ClientOptions lettuceClientOptions() {
-//        return ClientOptions.builder()
-//                .autoReconnect(true) // ネットワーク断からの復帰
-//                .requestQueueSize(10_000) // コマンドの待ち行列上限（過剰蓄積の抑止）
-//                .disconnectedBehavior(ClientOptions.DisconnectedBehavior.REJECT_COMMANDS) // 断時は新規を拒否
-//                .socketOptions(SocketOptions.builder()
-//                        .connectTimeout(Duration.ofSeconds(3)) // 接続確立の上限
-//                        .build())
-//                .timeoutOptions(TimeoutOptions.enabled()) // コマンドタイムアウトを有効化
-//                .build();
-//    }
-//
-//    /** Lettuceクライアント設定（コマンドタイムアウト・SSL・クライアント名など） */
-//    @Bean
-//    public LettuceClientConfiguration lettuceClientConfiguration(
-//            ClientResources clientResources,
-//            ClientOptions clientOptions
-//    ) {
-//        return LettuceClientConfiguration.builder()
-//                .clientResources(clientResources)
-//                .clientOptions(clientOptions)
-//                .commandTimeout(Duration.ofSeconds(3)) // 実行タイムアウト（Retryのトリガになりやすい）
-//                // .useSsl() // 必要ならSSL
-//                .clientName("spring-redis-session") // 監視/可観測性で識別しやすく
-//                .shutdownTimeout(Duration.ofMillis(200))
-//                .build();
-//    }
-//
-//    /**
-//     * 接続ファクトリ。
-//     * spring.data.redis.* の内容を見て、Standalone/Sentinel/Cluster を自動選択。
-//     * Sentinel/Clusterを使う場合は application.yml 側の該当ブロックを有効にする。
-//     */
-//    @Bean
-//    public RedisConnectionFactory redisConnectionFactory(
-//            RedisProperties props,
-//            LettuceClientConfiguration lettuceClientConfiguration
-//    ) {
-//        // Sentinel 優先 → Cluster → Standalone の順で判定
-//        if (props.getSentinel() != null && props.getSentinel().getMaster() != null) {
-//            RedisSentinelConfiguration sentinel = new RedisSentinelConfiguration()
-//                    .master(props.getSentinel().getMaster());
-//            // "host:port" 形式を分解してノードに追加
-//            if (props.getSentinel().getNodes() != null) {
-//                for (String node : props.getSentinel().getNodes()) {
-//                    String[] hp = node.split(":");
-//                    sentinel.sentinel(hp[0], Integer.parseInt(hp[1]));
-//                }
-//            }
-//            if (props.getPassword() != null && !props.getPassword().isEmpty()) {
-//                sentinel.setPassword(RedisPassword.of(props.getPassword()));
-//            }
-//            return new LettuceConnectionFactory(sentinel, lettuceClientConfiguration);
-//        }
-//
-//        if (props.getCluster() != null && props.getCluster().getNodes() != null && !props.getCluster().getNodes().isEmpty()) {
-//            RedisClusterConfiguration cluster = new RedisClusterConfiguration(
-//                    props.getCluster().getNodes().stream().collect(Collectors.toList())
-//            );
-//            if (props.getPassword() != null && !props.getPassword().isEmpty()) {
-//                cluster.setPassword(RedisPassword.of(props.getPassword()));
-//            }
-//            return new LettuceConnectionFactory(cluster, lettuceClientConfiguration);
-//        }
-//
-//        // 既定：Standalone
-//        RedisStandaloneConfiguration standalone =
-//                new RedisStandaloneConfiguration(props.getHost(), props.getPort());
-//        if (props.getPassword() != null && !props.getPassword().isEmpty()) {
-//            standalone.setPassword(RedisPassword.of(props.getPassword()));
-//        }
-//        if (props.getDatabase() != null) {
-//            standalone.setDatabase(props.getDatabase());
-//        }
-//        return new LettuceConnectionFactory(standalone, lettuceClientConfiguration);
-//    }
+    /** Netty のスレッド数。ClientResources 自体は Boot が作る（メトリクス等の他のカスタマイズと共存させるため）。 */
+    @Bean
+    public ClientResourcesBuilderCustomizer lettuceThreadPools(RedisConnectionProperties props) {
+        return builder -> {
+            if (props.getIoThreads() > 0) builder.ioThreadPoolSize(props.getIoThreads());
+            if (props.getComputationThreads() > 0) builder.computationThreadPoolSize(props.getComputationThreads());
+        };
+    }
+
+    /**
+     * 接続ファクトリ。接続先（Standalone/Sentinel/Cluster）は Boot の RedisConnectionDetails
+     * （spring.data.redis.* または @ServiceConnection）から、接続方式は app.redis.connection.* から決める。
+     * Boot の redisConnectionFactory はこれがあると作られない。
+     */
+    @Bean
+    public LettuceConnectionFactory redisConnectionFactory(RedisConnectionProperties props,
+                                                           RedisConnectionDetails details,
+                                                           RedisProperties redisProps,
+                                                           ClientResources clientResources,
+                                                           ObjectProvider<LettuceClientConfigurationBuilderCustomizer> customizers) {
+        RedisConfiguration server = serverConfiguration(details, redisProps);
+        LettuceClientConfiguration.LettuceClientConfigurationBuilder client =
+                clientConfiguration(props, redisProps, server instanceof RedisClusterConfiguration);
+        client.clientResources(clientResources);
+        customizers.orderedStream().forEach(c -> c.customize(client));
+        return connectionFactory(server, client.build(), props);
+    }
+
+    /** 接続方式に応じたファクトリ（未初期化。afterPropertiesSet は Spring か呼び出し側で）。 */
+    public static LettuceConnectionFactory connectionFactory(RedisConfiguration server, LettuceClientConfiguration client,
+                                                             RedisConnectionProperties props) {
+        LettuceConnectionFactory factory = switch (props.getStrategy()) {
+            case SHARED, POOLED -> new LettuceConnectionFactory(server, client);
+            case STRIPED -> new StripedLettuceConnectionFactory(server, client,
+                    IntStream.range(0, props.getStriped().resolvedStripes())
+                            .mapToObj(i -> configure(new LettuceConnectionFactory(server, client), props))
+                            .toList());
+        };
+        return configure(factory, props);
+    }
+
+    private static LettuceConnectionFactory configure(LettuceConnectionFactory factory, RedisConnectionProperties props) {
+        // POOLED は操作ごとにプールから専有接続を借りる（共有接続を使わない）
+        factory.setShareNativeConnection(props.getStrategy() != RedisConnectionProperties.Strategy.POOLED);
+        // 共有接続を start 時に張る（STRIPED は各ストライプも start されるので全本張られる。POOLED には効かない）
+        factory.setEagerInitialization(props.isEagerInitialization());
+        factory.setPipeliningFlushPolicy(switch (props.getPipelineFlush()) {
+            case EACH -> LettuceConnection.PipeliningFlushPolicy.flushEachCommand();
+            case ON_CLOSE -> LettuceConnection.PipeliningFlushPolicy.flushOnClose();
+            case BUFFERED -> LettuceConnection.PipeliningFlushPolicy.buffered(props.getPipelineBufferSize());
+        });
+        return factory;
+    }
+
+    /**
+     * Lettuce のクライアント設定（ClientResources は呼び出し側で設定する）。
+     * 自動再接続・接続/コマンドタイムアウト・リクエストキュー上限・切断時の扱い、POOLED ならプール設定。
+     */
+    public static LettuceClientConfiguration.LettuceClientConfigurationBuilder clientConfiguration(
+            RedisConnectionProperties props, RedisProperties redisProps, boolean cluster) {
+        ClientOptions.Builder options = cluster ? ClusterClientOptions.builder() : ClientOptions.builder();
+        SocketOptions.Builder socket = SocketOptions.builder().keepAlive(true);
+        if (redisProps.getConnectTimeout() != null) socket.connectTimeout(redisProps.getConnectTimeout());
+        options.autoReconnect(true) // ネットワーク断からの復帰
+                .requestQueueSize(props.getRequestQueueSize()) // コマンドの待ち行列上限（過剰蓄積の抑止）
+                .disconnectedBehavior(props.getDisconnectedBehavior())
+                .socketOptions(socket.build())
+                // コマンドタイムアウト。RetryTemplate の論理呼び出しの中では期限の残りで頭打ち
+                .timeoutOptions(TimeoutOptions.builder().timeoutSource(new DeadlineTimeoutSource(
+                        redisProps.getTimeout() != null ? redisProps.getTimeout() : RedisURI.DEFAULT_TIMEOUT_DURATION))
+                        .build());
+
+        LettuceClientConfiguration.LettuceClientConfigurationBuilder builder =
+                props.getStrategy() == RedisConnectionProperties.Strategy.POOLED
+                        ? LettucePoolingClientConfiguration.builder().poolConfig(poolConfig(props.getPool()))
+                        : LettuceClientConfiguration.builder();
+        builder.clientOptions(options.build());
+        if (redisProps.getTimeout() != null) builder.commandTimeout(redisProps.getTimeout()); // Retry のトリガになりやすい
+        if (redisProps.getLettuce().getShutdownTimeout() != null) {
+            builder.shutdownTimeout(redisProps.getLettuce().getShutdownTimeout());
+        }
+        if (StringUtils.hasText(redisProps.getClientName())) builder.clientName(redisProps.getClientName());
+        if (redisProps.getSsl().isEnabled()) builder.useSsl();
+        return builder;
+    }
+
+    private static GenericObjectPoolConfig<StatefulConnection<?, ?>> poolConfig(RedisConnectionProperties.Pool pool) {
+        GenericObjectPoolConfig<StatefulConnection<?, ?>> config = new GenericObjectPoolConfig<>();
+        config.setMaxTotal(pool.getMaxActive());
+        config.setMaxIdle(pool.getMaxIdle());
+        config.setMinIdle(pool.getMinIdle());
+        config.setMaxWait(pool.getMaxWait());
+        return config;
+    }
+
+    /** 接続先の構成。Sentinel → Cluster → Standalone の順で判定。 */
+    static RedisConfiguration serverConfiguration(RedisConnectionDetails details, RedisProperties redisProps) {
+        RedisPassword password = RedisPassword.of(details.getPassword());
+        if (details.getSentinel() != null) {
+            RedisConnectionDetails.Sentinel s = details.getSentinel();
+            RedisSentinelConfiguration sentinel = new RedisSentinelConfiguration();
+            sentinel.master(s.getMaster());
+            s.getNodes().forEach(node -> sentinel.sentinel(node.host(), node.port()));
+            sentinel.setUsername(details.getUsername());
+            sentinel.setPassword(password);
+            sentinel.setSentinelUsername(s.getUsername());
+            sentinel.setSentinelPassword(RedisPassword.of(s.getPassword()));
+            sentinel.setDatabase(s.getDatabase());
+            return sentinel;
+        }
+        if (details.getCluster() != null) {
+            RedisClusterConfiguration cluster = new RedisClusterConfiguration();
+            details.getCluster().getNodes().forEach(node -> cluster.clusterNode(node.host(), node.port()));
+            if (redisProps.getCluster() != null && redisProps.getCluster().getMaxRedirects() != null) {
+                cluster.setMaxRedirects(redisProps.getCluster().getMaxRedirects());
+            }
+            cluster.setUsername(details.getUsername());
+            cluster.setPassword(password);
+            return cluster;
+        }
+        RedisConnectionDetails.Standalone s = details.getStandalone();
+        RedisStandaloneConfiguration standalone = new RedisStandaloneConfiguration(s.getHost(), s.getPort());
+        standalone.setDatabase(s.getDatabase());
+        standalone.setUsername(details.getUsername());
+        standalone.setPassword(password);
+        return standalone;
+    }
 
+    /**
+     * Lettuce のコマンドレイテンシを Micrometer へ（lettuce.command.*）。
+     * Boot の LettuceMetricsAutoConfiguration が既定の MicrometerOptions の代わりにこれを使う。
+     */
+    @Bean
+    public MicrometerOptions lettuceMicrometerOptions() {
+        return MicrometerOptions.builder()
+                .histogram(true)
+                .targetPercentiles(new double[]{0.5, 0.95, 0.99})
+                .build();
+    }
+
+    /** 値（Value/HashValue）用シリアライザ。同期/リアクティブの両テンプレートで共有する。 */
+    @Bean
+    public RedisSerializer<Object> redisValueSerializer(RedisSerializerProperties serializerProps,
+                                                        MeterRegistry meterRegistry) {
+        return new MeteredSerializer(valueSerializer(serializerProps), meterRegistry);
+    }
+
+    @Bean
+    public RedisTemplate<String, Object> redisTemplate(RedisConnectionFactory cf,
+                                                       RedisSerializer<Object> redisValueSerializer) {
+        return template(cf, redisValueSerializer);
+    }
 
+    /**
+     * ReactiveSessionRepository 用。シリアライズ形式は redisTemplate と同じ（同じキーを両方から読み書きできる）。
+     * Boot 既定の reactiveRedisTemplate（JDK シリアライズ）を置き換える。
+     */
     @Bean
-    public RedisTemplate<String, Object> redisTemplate(RedisConnectionFactory cf) {
+    public ReactiveRedisTemplate<String, Object> reactiveRedisTemplate(ReactiveRedisConnectionFactory cf,
+                                                                       RedisSerializer<Object> redisValueSerializer) {
+        StringRedisSerializer strings = new StringRedisSerializer();
+        RedisSerializationContext<String, Object> context = RedisSerializationContext
+                .<String, Object>newSerializationContext(strings)
+                .value(redisValueSerializer)
+                .hashKey(strings)
+                .hashValue(redisValueSerializer)
+                .build();
+        return new ReactiveRedisTemplate<>(cf, context);
+    }
+
+    /** Key/HashKey は文字列、Value/HashValue は指定のシリアライザで RedisTemplate を組み立てる。 */
+    public static RedisTemplate<String, Object> template(RedisConnectionFactory cf, RedisSerializer<Object> values) {
         RedisTemplate<String, Object> tpl = new RedisTemplate<>();
         tpl.setConnectionFactory(cf);
 
-        var json = new GenericJackson2JsonRedisSerializer();
-
         tpl.setKeySerializer(new StringRedisSerializer());
-        tpl.setValueSerializer(json);
+        tpl.setValueSerializer(values);
         tpl.setHashKeySerializer(new StringRedisSerializer());
-        tpl.setHashValueSerializer(json);
+        tpl.setHashValueSerializer(values);
 
         tpl.afterPropertiesSet();
         return tpl;
     }
-}
-
 
+    /** 値（Value/HashValue）用シリアライザを設定に応じて選ぶ。 */
+    public static RedisSerializer<Object> valueSerializer(RedisSerializerProperties props) {
+        var json = new GenericJackson2JsonRedisSerializer();
+        RedisSerializer<Object> values = switch (props.getFormat()) {
+            case JSON -> json;
+            case COMPACT -> new CompactValueSerializer(json, props.getTypes());
+        };
+        var compression = props.getCompression();
+        // 無効時も読み取りは通す（有効にしていた間に書いた値を読めるように＝切り戻しても安全）
+        if (!compression.isEnabled()) return CompressingSerializer.decompressOnly(values);
+        return new CompressingSerializer(values, compression.getThreshold(), compression.getLevel());
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.spring_redis_practice.config;
+
+import io.lettuce.core.ClientOptions;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Lettuce の接続方式とクライアント設定（application.yml の app.redis.connection.*）。
+ * 接続先・タイムアウト・SSL・クライアント名は従来どおり spring.data.redis.* を使う。
+ * - strategy : SHARED（1 本の多重化接続を全スレッドで共有。Lettuce/Boot の既定）
+ *              POOLED（commons-pool の専有接続を 1 操作ずつ借りる）
+ *              STRIPED（stripes 本の共有接続をスレッドで振り分ける）
+ * - io-threads / computation-threads : Netty のイベントループ数（0 = Lettuce 既定のコア数）
+ * - request-queue-size / disconnected-behavior : 切断中・過負荷時にコマンドを溜める上限と扱い
+ * - pipeline-flush : executePipelined でコマンドをソケットへ書き出す単位
+ * - eager-initialization : 共有接続を起動時（コンテキストの start）に張る（false なら最初のコマンドで張る）。
+ *                          繋がらないと起動に失敗するので、障害中も起動させたい場合は false のまま SessionWarmup に任せる
+ */
+@ConfigurationProperties(prefix = "app.redis.connection")
+public class RedisConnectionProperties {
+
+    public enum Strategy { SHARED, POOLED, STRIPED }
+
+    /** パイプライン中の書き出し：EACH = 1 コマンドごと（既定）、ON_CLOSE = 最後に 1 回、BUFFERED = pipeline-buffer-size ごと。 */
+    public enum PipelineFlush { EACH, ON_CLOSE, BUFFERED }
+
+    private Strategy strategy = Strategy.SHARED;
+    private int ioThreads = 0;
+    private int computationThreads = 0;
+    private int requestQueueSize = Integer.MAX_VALUE;
+    private ClientOptions.DisconnectedBehavior disconnectedBehavior = ClientOptions.DisconnectedBehavior.DEFAULT;
+    private PipelineFlush pipelineFlush = PipelineFlush.EACH;
+    private int pipelineBufferSize = 64;
+    private boolean eagerInitialization = false;
+    private final Pool pool = new Pool();
+    private final Striped striped = new Striped();
+
+    public Strategy getStrategy() { return strategy; }
+    public void setStrategy(Strategy strategy) { this.strategy = strategy; }
+    public int getIoThreads() { return ioThreads; }
+    public void setIoThreads(int ioThreads) { this.ioThreads = ioThreads; }
+    public int getComputationThreads() { return computationThreads; }
+    public void setComputationThreads(int computationThreads) { this.computationThreads = computationThreads; }
+    public int getRequestQueueSize() { return requestQueueSize; }
+    public void setRequestQueueSize(int requestQueueSize) { this.requestQueueSize = requestQueueSize; }
+    public ClientOptions.DisconnectedBehavior getDisconnectedBehavior() { return disconnectedBehavior; }
+    public void setDisconnectedBehavior(ClientOptions.DisconnectedBehavior disconnectedBehavior) { this.disconnectedBehavior = disconnectedBehavior; }
+    public PipelineFlush getPipelineFlush() { return pipelineFlush; }
+    public void setPipelineFlush(PipelineFlush pipelineFlush) { this.pipelineFlush = pipelineFlush; }
+    public int getPipelineBufferSize() { return pipelineBufferSize; }
+    public void setPipelineBufferSize(int pipelineBufferSize) { this.pipelineBufferSize = pipelineBufferSize; }
+    public boolean isEagerInitialization() { return eagerInitialization; }
+    public void setEagerInitialization(boolean eagerInitialization) { this.eagerInitialization = eagerInitialization; }
+    public Pool getPool() { return pool; }
+    public Striped getStriped() { return striped; }
+
+    /** strategy=POOLED のプール。spring.data.redis.lettuce.pool.* ではなくこちらを使う。 */
+    public static class Pool {
+        private int maxActive = 16;
+        private int maxIdle = 16;
+        private int minIdle = 0;
+        /** 接続を借りられるまで待つ上限（負なら無期限）。 */
+        private Duration maxWait = Duration.ofSeconds(1);
+
+        public int getMaxActive() { return maxActive; }
+        public void setMaxActive(int maxActive) { this.maxActive = maxActive; }
+        public int getMaxIdle() { return maxIdle; }
+        public void setMaxIdle(int maxIdle) { this.maxIdle = maxIdle; }
+        public int getMinIdle() { return minIdle; }
+        public void setMinIdle(int minIdle) { this.minIdle = minIdle; }
+        public Duration getMaxWait() { return maxWait; }
+        public void setMaxWait(Duration maxWait) { this.maxWait = maxWait; }
+    }
+
+    /** strategy=STRIPED の接続数。 */
+    public static class Striped {
+        /** 0 ならコア数。 */
+        private int stripes = 0;
+
+        public int getStripes() { return stripes; }
+        public void setStripes(int stripes) { this.stripes = stripes; }
+
+        int resolvedStripes() {
+            return stripes > 0 ? stripes : Runtime.getRuntime().availableProcessors();
+        }
+    }
+}
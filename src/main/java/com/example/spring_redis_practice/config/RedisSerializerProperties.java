@@ -0,0 +1,44 @@
+package com.example.spring_redis_practice.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.Deflater;
+
+/**
+ * RedisTemplate の値シリアライザ設定（application.yml の app.redis.serializer.*）。
+ * - format: JSON（従来の GenericJackson2JsonRedisSerializer）/ COMPACT（CompactValueSerializer）
+ * - types : COMPACT で型IDを割り当てるクラス（ID は一度決めたら変えないこと）
+ * - compression : しきい値を超える値だけ Deflate 圧縮（CompressingSerializer）
+ */
+@ConfigurationProperties(prefix = "app.redis.serializer")
+public class RedisSerializerProperties {
+
+    public enum Format { JSON, COMPACT }
+
+    private Format format = Format.JSON;
+    private Map<Integer, Class<?>> types = new LinkedHashMap<>();
+    private final Compression compression = new Compression();
+
+    public Format getFormat() { return format; }
+    public void setFormat(Format format) { this.format = format; }
+    public Map<Integer, Class<?>> getTypes() { return types; }
+    public void setTypes(Map<Integer, Class<?>> types) { this.types = types; }
+    public Compression getCompression() { return compression; }
+
+    public static class Compression {
+        private boolean enabled = false;
+        /** このバイト数以上のシリアライズ結果だけを圧縮する。 */
+        private int threshold = 1024;
+        /** Deflater の圧縮レベル（1=最速 〜 9=最小）。 */
+        private int level = Deflater.BEST_SPEED;
+
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+        public int getThreshold() { return threshold; }
+        public void setThreshold(int threshold) { this.threshold = threshold; }
+        public int getLevel() { return level; }
+        public void setLevel(int level) { this.level = level; }
+    }
+}
@@ -1,7 +1,14 @@
 package com.example.spring_redis_practice.config;
 
+import com.example.spring_redis_practice.resilience.GuardedRetryPolicy;
+import com.example.spring_redis_practice.resilience.JitteredBackOffPolicy;
+import com.example.spring_redis_practice.resilience.RedisCircuitBreaker;
+import com.example.spring_redis_practice.resilience.ResilientRetryTemplate;
+import com.example.spring_redis_practice.resilience.RetryBudget;
 import io.lettuce.core.RedisCommandTimeoutException;
 import io.lettuce.core.RedisConnectionException;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.classify.SubclassClassifier;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -9,12 +16,14 @@ import org.springframework.dao.QueryTimeoutException;
 import org.springframework.data.redis.RedisConnectionFailureException;
 import org.springframework.data.redis.RedisSystemException;
 import org.springframework.retry.RetryPolicy;
-import org.springframework.retry.backoff.ExponentialBackOffPolicy;
 import org.springframework.retry.policy.ExceptionClassifierRetryPolicy;
 import org.springframework.retry.policy.NeverRetryPolicy;
 import org.springframework.retry.policy.SimpleRetryPolicy;
 import org.springframework.retry.support.RetryTemplate;
 
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -29,37 +38,73 @@ import java.util.Map;
  * 非リトライ：
  *  - IllegalArgumentException など「呼び出し側のバグ/不正入力」
  *  - 既に存在しないキーの参照など、ビジネス的に許容すべき状態
+ *
+ * 障害時にリクエストスレッドを寝かせ続けない/負荷を増幅しないための上限：
+ *  - サーキットブレーカ：失敗率が高い間は Redis に送らず即失敗（RedisCircuitOpenException）
+ *  - リトライ予算：アプリ全体のリトライ数を「直近の成功数の一定割合＋毎秒の最低枠」に制限
+ *  - 期限：1回の論理呼び出し（リトライ・バックオフ込み）の所要時間に上限を設け、待ちも期限で打ち切る。
+ *    応答しない試行も期限の残りでタイムアウトさせる（DeadlineTimeoutSource がコマンドタイムアウトに使う）
+ *
+ * 実際のリトライ回数・失敗例外は RetryMetrics（redis.retry.*）で計測する。
  */
 @Configuration
 public class RetryConfig {
 
+    /** 1 回の論理呼び出し（リトライ・バックオフ込み）の上限。 */
+    static final Duration DEADLINE = Duration.ofSeconds(1);
+
+    /** リトライ対象＝ブレーカの失敗として数える例外。 */
+    private static final List<Class<? extends Throwable>> TRANSIENT = List.of(
+            RedisConnectionFailureException.class,
+            RedisSystemException.class,
+            QueryTimeoutException.class,
+            RedisCommandTimeoutException.class,
+            RedisConnectionException.class
+    );
+
     @Bean
     public RetryTemplate redisRetryTemplate() {
-        RetryTemplate template = new RetryTemplate();
+        // 0) サーキットブレーカ：直近20件以上で失敗率50%以上なら 5 秒間遮断
+        RedisCircuitBreaker breaker = new RedisCircuitBreaker(100, 20, 0.5, Duration.ofSeconds(5));
+        ResilientRetryTemplate template = new ResilientRetryTemplate(breaker, RetryConfig::isTransient);
 
-        // 1) バックオフ（指数）
-        ExponentialBackOffPolicy backoff = new ExponentialBackOffPolicy();
-        backoff.setInitialInterval(100);   // 1回目 100ms
-        backoff.setMultiplier(2.0);        // 倍々
-        backoff.setMaxInterval(1000);      // 上限 1s
-        template.setBackOffPolicy(backoff);
+        // 1) バックオフ（指数＋ジッタ）。待ちは期限の残りで打ち切る
+        template.setBackOffPolicy(new JitteredBackOffPolicy(Duration.ofMillis(50), Duration.ofMillis(200)));
 
         // 2) ポリシー：例外でルーティング
+        Map<Class<? extends Throwable>, RetryPolicy> policies = new HashMap<>();
+        TRANSIENT.forEach(type -> policies.put(type, simple(3))); // リトライするポリシー（最大3回）
         ExceptionClassifierRetryPolicy classifier = new ExceptionClassifierRetryPolicy();
-        classifier.setExceptionClassifier(new SubclassClassifier<>(Map.of(
-                // リトライするポリシー（最大3回）
-                RedisConnectionFailureException.class, simple(3),
-                RedisSystemException.class,            simple(3),
-                QueryTimeoutException.class,           simple(3),
-                RedisCommandTimeoutException.class,    simple(3),
-                RedisConnectionException.class,        simple(3)
-        ), new NeverRetryPolicy())); // デフォルトはリトライしない
+        classifier.setExceptionClassifier(
+                new SubclassClassifier<>(policies, new NeverRetryPolicy())); // デフォルトはリトライしない
 
-        template.setRetryPolicy(classifier);
+        // 3) リトライ予算（成功の10%＋毎秒10回まで）と期限（1回の論理呼び出しで 1 秒まで）を重ねる
+        RetryBudget budget = new RetryBudget(0.1, 10, 100);
+        template.setRetryPolicy(new GuardedRetryPolicy(classifier, budget, DEADLINE));
+        template.registerListener(budget);
 
         return template;
     }
 
+    /** 一時的な Redis 障害か（リトライ対象・ブレーカの失敗扱い）。リアクティブ側の判定にも使う。 */
+    public static boolean isTransient(Throwable e) {
+        return TRANSIENT.stream().anyMatch(type -> type.isInstance(e));
+    }
+
+    /** redisRetryTemplate にメトリクス用リスナを登録。 */
+    @Bean
+    public RetryMetrics redisRetryMetrics(MeterRegistry registry, RetryTemplate redisRetryTemplate) {
+        RetryMetrics metrics = new RetryMetrics(registry);
+        redisRetryTemplate.registerListener(metrics);
+        if (redisRetryTemplate instanceof ResilientRetryTemplate resilient) {
+            // 0=CLOSED, 1=OPEN, 2=HALF_OPEN
+            Gauge.builder("redis.circuit.state", resilient.circuitBreaker(), b -> b.state().ordinal())
+                    .description("Redis circuit breaker state")
+                    .register(registry);
+        }
+        return metrics;
+    }
+
     private RetryPolicy simple(int maxAttempts) {
         // 指定回数（試行回数＝例外発生後の再試行含めて maxAttempts）
         return new SimpleRetryPolicy(maxAttempts);
@@ -0,0 +1,54 @@
+package com.example.spring_redis_practice.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.retry.RetryCallback;
+import org.springframework.retry.RetryContext;
+import org.springframework.retry.RetryListener;
+
+/**
+ * redisRetryTemplate の実際のリトライ状況を出す RetryListener。
+ * ・redis.retry.errors   : 試行ごとの失敗（tag: exception=例外クラス名）
+ * ・redis.retry.calls    : 論理呼び出しの結果（tag: outcome=success|recovered|exhausted）
+ * ・redis.retry.attempts : 1回の論理呼び出しに要した試行回数の分布
+ */
+public class RetryMetrics implements RetryListener {
+
+    private final MeterRegistry registry;
+    private final Counter success;
+    private final Counter recovered;
+    private final Counter exhausted;
+    private final DistributionSummary attempts;
+
+    public RetryMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        this.success = calls("success");
+        this.recovered = calls("recovered");
+        this.exhausted = calls("exhausted");
+        this.attempts = DistributionSummary.builder("redis.retry.attempts")
+                .description("Attempts per logical Redis call")
+                .register(registry);
+    }
+
+    private Counter calls(String outcome) {
+        return Counter.builder("redis.retry.calls").tag("outcome", outcome).register(registry);
+    }
+
+    @Override
+    public <T, E extends Throwable> void onError(RetryContext context, RetryCallback<T, E> callback,
+                                                Throwable throwable) {
+        // 失敗は稀なので、例外クラスごとのカウンタはその都度引く
+        registry.counter("redis.retry.errors", "exception", throwable.getClass().getSimpleName()).increment();
+    }
+
+    @Override
+    public <T, E extends Throwable> void close(RetryContext context, RetryCallback<T, E> callback,
+                                              Throwable throwable) {
+        int failures = context.getRetryCount();
+        attempts.record(throwable == null ? failures + 1 : failures);
+        if (throwable != null) exhausted.increment();
+        else if (failures > 0) recovered.increment();
+        else success.increment();
+    }
+}
@@ -0,0 +1,94 @@
+package com.example.spring_redis_practice.config;
+
+import org.springframework.data.redis.connection.RedisClusterConnection;
+import org.springframework.data.redis.connection.RedisConfiguration;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.lettuce.LettuceClientConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.connection.lettuce.LettuceReactiveRedisClusterConnection;
+import org.springframework.data.redis.connection.lettuce.LettuceReactiveRedisConnection;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 共有接続を複数本持ち、呼び出しスレッドで振り分ける接続ファクトリ（app.redis.connection.strategy=STRIPED）。
+ * 1 本の多重化接続ではイベントループ 1 スレッドでのエンコード/デコードが詰まる負荷向け。
+ * ストライプはスレッドごとに初めて使うときに乱数で選び、以後そのスレッドは常に同じ接続を使うので、
+ * 1 スレッド内のコマンドの順序は保たれる（スレッド ID に依らないので、仮想スレッドでも偏らない）。
+ * <p>
+ * 自身も LettuceConnectionFactory として振る舞う（getNativeClient / getClientConfiguration を
+ * SessionNearCache・SessionReplicaReads・SessionShards が使う）が、接続は各ストライプから払い出す。
+ * 自身の共有接続は使わないので、eagerInitialization を指定されても start 時に張らない。
+ */
+final class StripedLettuceConnectionFactory extends LettuceConnectionFactory {
+
+    private final List<LettuceConnectionFactory> stripes;
+    private final ThreadLocal<LettuceConnectionFactory> assigned;
+
+    StripedLettuceConnectionFactory(RedisConfiguration server, LettuceClientConfiguration client,
+                                    List<LettuceConnectionFactory> stripes) {
+        super(server, client);
+        if (stripes.isEmpty()) throw new IllegalArgumentException("stripes must not be empty");
+        this.stripes = List.copyOf(stripes);
+        this.assigned = ThreadLocal.withInitial(
+                () -> this.stripes.get(ThreadLocalRandom.current().nextInt(this.stripes.size())));
+        super.setEagerInitialization(false);
+    }
+
+    /** 呼び出しスレッドに割り当てたストライプ。 */
+    LettuceConnectionFactory stripe() {
+        return assigned.get();
+    }
+
+    int stripeCount() { return stripes.size(); }
+
+    @Override
+    public RedisConnection getConnection() { return stripe().getConnection(); }
+
+    @Override
+    public RedisClusterConnection getClusterConnection() { return stripe().getClusterConnection(); }
+
+    @Override
+    public LettuceReactiveRedisConnection getReactiveConnection() { return stripe().getReactiveConnection(); }
+
+    @Override
+    public LettuceReactiveRedisClusterConnection getReactiveClusterConnection() {
+        return stripe().getReactiveClusterConnection();
+    }
+
+    /** 自身の共有接続は使わないので常に false（各ストライプにはそれぞれの設定が効く）。 */
+    @Override
+    public void setEagerInitialization(boolean eagerInitialization) {
+        super.setEagerInitialization(false);
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        super.afterPropertiesSet();
+        stripes.forEach(LettuceConnectionFactory::afterPropertiesSet);
+    }
+
+    @Override
+    public void start() {
+        super.start();
+        stripes.forEach(LettuceConnectionFactory::start);
+    }
+
+    @Override
+    public void stop() {
+        stripes.forEach(LettuceConnectionFactory::stop);
+        super.stop();
+    }
+
+    @Override
+    public void resetConnection() {
+        stripes.forEach(LettuceConnectionFactory::resetConnection);
+    }
+
+    @Override
+    public void destroy() {
+        stripes.forEach(LettuceConnectionFactory::destroy);
+        super.destroy();
+    }
+}
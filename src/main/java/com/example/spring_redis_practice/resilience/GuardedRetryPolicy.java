@@ -0,0 +1,62 @@
+package com.example.spring_redis_practice.resilience;
+
+import org.springframework.retry.RetryContext;
+import org.springframework.retry.RetryPolicy;
+
+import java.time.Duration;
+
+/**
+ * 既存のリトライポリシー（例外による分類）に、次の 2 つの上限を重ねるデコレータ。
+ * ・期限：論理呼び出しの開始から deadline を過ぎたら、それ以上リトライしない
+ * ・予算：リトライのたびに RetryBudget からトークンを引き、尽きていたらリトライしない
+ * 初回試行は常に許可する（予算も消費しない）。
+ * 期限は RedisDeadline にも置き（close で戻す）、各試行のコマンドタイムアウトも期限の残りで頭打ちにする。
+ */
+public class GuardedRetryPolicy implements RetryPolicy {
+
+    /** 期限（System.nanoTime 基準）を RetryContext に置くための属性名。JitteredBackOffPolicy も参照する。 */
+    static final String DEADLINE = "redis.deadline.nanos";
+    private static final String PREVIOUS_DEADLINE = "redis.deadline.previous";
+
+    private final RetryPolicy delegate;
+    private final RetryBudget budget;
+    private final long deadlineNanos;
+
+    public GuardedRetryPolicy(RetryPolicy delegate, RetryBudget budget, Duration deadline) {
+        this.delegate = delegate;
+        this.budget = budget;
+        this.deadlineNanos = deadline.toNanos();
+    }
+
+    @Override
+    public RetryContext open(RetryContext parent) {
+        RetryContext context = delegate.open(parent);
+        long deadline = System.nanoTime() + deadlineNanos;
+        context.setAttribute(DEADLINE, deadline);
+        context.setAttribute(PREVIOUS_DEADLINE, RedisDeadline.enter(deadline));
+        return context;
+    }
+
+    @Override
+    public boolean canRetry(RetryContext context) {
+        if (!delegate.canRetry(context)) return false;
+        if (context.getLastThrowable() == null) return true; // 初回
+        return remainingNanos(context) > 0 && budget.tryAcquire();
+    }
+
+    @Override
+    public void close(RetryContext context) {
+        RedisDeadline.exit((Long) context.getAttribute(PREVIOUS_DEADLINE));
+        delegate.close(context);
+    }
+
+    @Override
+    public void registerThrowable(RetryContext context, Throwable throwable) {
+        delegate.registerThrowable(context, throwable);
+    }
+
+    static long remainingNanos(RetryContext context) {
+        Object deadline = context.getAttribute(DEADLINE);
+        return deadline == null ? Long.MAX_VALUE : (Long) deadline - System.nanoTime();
+    }
+}
@@ -0,0 +1,54 @@
+package com.example.spring_redis_practice.resilience;
+
+import org.springframework.retry.RetryContext;
+import org.springframework.retry.backoff.BackOffContext;
+import org.springframework.retry.backoff.BackOffInterruptedException;
+import org.springframework.retry.backoff.BackOffPolicy;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 指数バックオフ＋フルジッタ。待ち時間は GuardedRetryPolicy の期限の残りを超えない。
+ * ・n 回目の待ち = random(0, min(max, initial × 2^n))
+ * ・ジッタで複数スレッド/ノードのリトライが同時に押し寄せるのを避ける
+ * ・期限を越えて眠らないので、論理呼び出し全体の所要時間が上限で抑えられる
+ */
+public class JitteredBackOffPolicy implements BackOffPolicy {
+
+    private final long initialNanos;
+    private final long maxNanos;
+
+    public JitteredBackOffPolicy(Duration initial, Duration max) {
+        this.initialNanos = initial.toNanos();
+        this.maxNanos = max.toNanos();
+    }
+
+    @Override
+    public BackOffContext start(RetryContext context) {
+        return new Context(context);
+    }
+
+    @Override
+    public void backOff(BackOffContext backOffContext) throws BackOffInterruptedException {
+        Context ctx = (Context) backOffContext;
+        long ceiling = Math.min(maxNanos, initialNanos << Math.min(ctx.attempt++, 20));
+        long sleep = Math.min(ThreadLocalRandom.current().nextLong(ceiling + 1),
+                GuardedRetryPolicy.remainingNanos(ctx.retryContext));
+        if (sleep <= 0) return;
+        try {
+            TimeUnit.NANOSECONDS.sleep(sleep);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BackOffInterruptedException("Interrupted during backoff", e);
+        }
+    }
+
+    private static final class Context implements BackOffContext {
+        private final RetryContext retryContext;
+        private int attempt;
+
+        Context(RetryContext retryContext) { this.retryContext = retryContext; }
+    }
+}
@@ -0,0 +1,115 @@
+package com.example.spring_redis_practice.resilience;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
+
+/**
+ * Redis 呼び出し用の簡易サーキットブレーカ。
+ * <p>
+ * 状態遷移：
+ *   CLOSED    : 通常。windowSize 件ごとに失敗率を評価し、minCalls 以上かつ failureRate 以上なら OPEN
+ *   OPEN      : openDuration の間は即失敗（RedisCircuitOpenException）。Redis にもスレッドにも負荷をかけない
+ *   HALF_OPEN : openDuration 経過後、1 件だけ試行を通す。成功なら CLOSED、失敗なら再び OPEN、取り消しなら次の呼び出しが試行する
+ * <p>
+ * 集計はロックを使わない件数窓（tumbling window）。厳密なスライディング窓ではないが、
+ * リクエストスレッドがここで詰まらないことを優先している。
+ */
+public class RedisCircuitBreaker {
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final int windowSize;
+    private final int minCalls;
+    private final double failureRate;
+    private final long openNanos;
+    private final LongSupplier nanoClock;
+
+    private final AtomicReference<State> state = new AtomicReference<>(State.CLOSED);
+    private final AtomicLong openedAt = new AtomicLong();
+    private final AtomicBoolean probeInFlight = new AtomicBoolean();
+    private final AtomicInteger calls = new AtomicInteger();
+    private final AtomicInteger failures = new AtomicInteger();
+
+    public RedisCircuitBreaker(int windowSize, int minCalls, double failureRate, Duration openDuration) {
+        this(windowSize, minCalls, failureRate, openDuration, System::nanoTime);
+    }
+
+    RedisCircuitBreaker(int windowSize, int minCalls, double failureRate, Duration openDuration,
+                        LongSupplier nanoClock) {
+        this.windowSize = windowSize;
+        this.minCalls = minCalls;
+        this.failureRate = failureRate;
+        this.openNanos = openDuration.toNanos();
+        this.nanoClock = nanoClock;
+    }
+
+    public State state() { return state.get(); }
+
+    /** 呼び出し前の許可取り。通せない場合は即例外。 */
+    public void acquirePermission() {
+        State s = state.get();
+        if (s == State.CLOSED) return;
+        if (s == State.OPEN) {
+            if (nanoClock.getAsLong() - openedAt.get() < openNanos) throw rejected();
+            state.compareAndSet(State.OPEN, State.HALF_OPEN);
+        }
+        // HALF_OPEN：試行は 1 件だけ
+        if (!probeInFlight.compareAndSet(false, true)) throw rejected();
+    }
+
+    public void onSuccess() {
+        if (state.get() == State.HALF_OPEN) {
+            resetWindow();
+            state.set(State.CLOSED);
+            probeInFlight.set(false);
+            return;
+        }
+        count(false);
+    }
+
+    public void onFailure() {
+        if (state.get() == State.HALF_OPEN) {
+            open();
+            probeInFlight.set(false);
+            return;
+        }
+        count(true);
+    }
+
+    /**
+     * 結果が出ないまま呼び出しが取り消された（購読のキャンセルなど）。成功とも失敗とも数えない。
+     * HALF_OPEN の試行なら枠を返し、次の呼び出しが改めて試行する（返さないと HALF_OPEN のまま全呼び出しを拒否し続ける）。
+     */
+    public void onCancel() {
+        if (state.get() == State.HALF_OPEN) probeInFlight.set(false);
+    }
+
+    private void count(boolean failed) {
+        int f = failed ? failures.incrementAndGet() : failures.get();
+        int n = calls.incrementAndGet();
+        if (n >= minCalls && (double) f / n >= failureRate) {
+            open();
+        } else if (n >= windowSize) {
+            resetWindow();
+        }
+    }
+
+    private void open() {
+        openedAt.set(nanoClock.getAsLong());
+        state.set(State.OPEN);
+        resetWindow();
+    }
+
+    private void resetWindow() {
+        calls.set(0);
+        failures.set(0);
+    }
+
+    private RedisCircuitOpenException rejected() {
+        return new RedisCircuitOpenException("Redis circuit breaker is " + state.get() + "; failing fast");
+    }
+}
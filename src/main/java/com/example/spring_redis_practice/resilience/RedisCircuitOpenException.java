@@ -0,0 +1,14 @@
+package com.example.spring_redis_practice.resilience;
+
+import org.springframework.data.redis.RedisConnectionFailureException;
+
+/**
+ * サーキットブレーカが開いているため、Redis へ送らずに即失敗させたことを表す。
+ * 呼び出し側からは接続障害（RedisConnectionFailureException）と同じに扱える。
+ */
+public class RedisCircuitOpenException extends RedisConnectionFailureException {
+
+    public RedisCircuitOpenException(String msg) {
+        super(msg);
+    }
+}
@@ -0,0 +1,32 @@
+package com.example.spring_redis_practice.resilience;
+
+/**
+ * 実行中の論理呼び出し（GuardedRetryPolicy が開いた RetryContext）の期限を、呼び出しスレッドに置いておく。
+ * GuardedRetryPolicy の期限はリトライを止めるだけなので、応答しない 1 回の試行はコマンドタイムアウトまで待ってしまう。
+ * コマンドを送る側（config.DeadlineTimeoutSource）がこの残りをタイムアウトに使い、試行そのものも期限で打ち切る。
+ * 入れ子の呼び出しでは早い方の期限を使う。
+ */
+public final class RedisDeadline {
+
+    private static final ThreadLocal<Long> CURRENT = new ThreadLocal<>();
+
+    private RedisDeadline() {}
+
+    /** このスレッドの期限までの残り（ナノ秒）。論理呼び出しの外なら Long.MAX_VALUE。 */
+    public static long remainingNanos() {
+        Long deadline = CURRENT.get();
+        return deadline == null ? Long.MAX_VALUE : deadline - System.nanoTime();
+    }
+
+    /** 期限を設定し、元に戻すための直前の値を返す。 */
+    static Long enter(long deadlineNanos) {
+        Long previous = CURRENT.get();
+        CURRENT.set(previous != null && previous - deadlineNanos < 0 ? previous : deadlineNanos);
+        return previous;
+    }
+
+    static void exit(Long previous) {
+        if (previous == null) CURRENT.remove();
+        else CURRENT.set(previous);
+    }
+}
@@ -0,0 +1,46 @@
+package com.example.spring_redis_practice.resilience;
+
+import org.springframework.retry.ExhaustedRetryException;
+import org.springframework.retry.RecoveryCallback;
+import org.springframework.retry.RetryCallback;
+import org.springframework.retry.RetryState;
+import org.springframework.retry.support.RetryTemplate;
+
+import java.util.function.Predicate;
+
+/**
+ * サーキットブレーカ付きの RetryTemplate。
+ * ・OPEN の間は RetryCallback を一切実行せず即失敗（リトライもバックオフもしない）
+ * ・論理呼び出し（リトライ込み）の最終結果をブレーカに記録する
+ *   失敗として数えるのは isFailure が true の例外（接続断/タイムアウト等）だけ。入力エラー等は数えない
+ * 既存の RetryTemplate を受け取る Repository 等からは、そのまま差し替えて使える。
+ */
+public class ResilientRetryTemplate extends RetryTemplate {
+
+    private final RedisCircuitBreaker breaker;
+    private final Predicate<Throwable> isFailure;
+
+    public ResilientRetryTemplate(RedisCircuitBreaker breaker, Predicate<Throwable> isFailure) {
+        this.breaker = breaker;
+        this.isFailure = isFailure;
+    }
+
+    public RedisCircuitBreaker circuitBreaker() { return breaker; }
+
+    @Override
+    protected <T, E extends Throwable> T doExecute(RetryCallback<T, E> retryCallback,
+                                                   RecoveryCallback<T> recoveryCallback,
+                                                   RetryState state) throws E, ExhaustedRetryException {
+        breaker.acquirePermission();
+        boolean failed = false;
+        try {
+            return super.doExecute(retryCallback, recoveryCallback, state);
+        } catch (RuntimeException | Error e) {
+            failed = isFailure.test(e);
+            throw e;
+        } finally {
+            if (failed) breaker.onFailure();
+            else breaker.onSuccess();
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.spring_redis_practice.resilience;
+
+import org.springframework.retry.RetryCallback;
+import org.springframework.retry.RetryContext;
+import org.springframework.retry.RetryListener;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * アプリ全体で共有するリトライ予算（トークンバケット）。
+ * ・成功した論理呼び出し 1 件ごとに ratio トークンを貯める（= リトライは直近成功数の ratio 倍まで）
+ * ・それとは別に、毎秒 minPerSecond トークンを補充する（低トラフィック時でも最低限はリトライできる）
+ * ・バケットの上限は maxTokens
+ * 障害時は成功が止まるので予算が尽き、リトライによる負荷の増幅（リトライストーム）を防ぐ。
+ * 内部は 1/1000 トークン単位の AtomicLong（ロックなし）。
+ */
+public class RetryBudget implements RetryListener {
+
+    private static final long UNIT = 1000;
+
+    private final long depositPerSuccess;
+    private final long refillPerSecond;
+    private final long max;
+    private final LongSupplier nanoClock;
+
+    private final AtomicLong tokens;
+    private final AtomicLong lastRefill;
+
+    public RetryBudget(double ratio, int minPerSecond, int maxTokens) {
+        this(ratio, minPerSecond, maxTokens, System::nanoTime);
+    }
+
+    RetryBudget(double ratio, int minPerSecond, int maxTokens, LongSupplier nanoClock) {
+        this.depositPerSuccess = (long) (ratio * UNIT);
+        this.refillPerSecond = minPerSecond * UNIT;
+        this.max = maxTokens * UNIT;
+        this.nanoClock = nanoClock;
+        this.tokens = new AtomicLong(refillPerSecond);
+        this.lastRefill = new AtomicLong(nanoClock.getAsLong());
+    }
+
+    /** リトライ 1 回分を引き出す。予算が無ければ false（＝リトライせずに失敗させる）。 */
+    public boolean tryAcquire() {
+        refill();
+        while (true) {
+            long t = tokens.get();
+            if (t < UNIT) return false;
+            if (tokens.compareAndSet(t, t - UNIT)) return true;
+        }
+    }
+
+    public void onSuccess() { deposit(depositPerSuccess); }
+
+    /** RetryTemplate の論理呼び出しが成功で終わったら貯金する。 */
+    @Override
+    public <T, E extends Throwable> void close(RetryContext context, RetryCallback<T, E> callback,
+                                              Throwable throwable) {
+        if (throwable == null) onSuccess();
+    }
+
+    private void refill() {
+        long now = nanoClock.getAsLong();
+        long last = lastRefill.get();
+        long elapsed = now - last;
+        if (elapsed < 1_000_000L || !lastRefill.compareAndSet(last, now)) return; // 1ms 未満は省略
+        deposit(refillPerSecond * elapsed / 1_000_000_000L);
+    }
+
+    private void deposit(long amount) {
+        if (amount <= 0) return;
+        tokens.accumulateAndGet(amount, (t, a) -> Math.min(max, t + a));
+    }
+}
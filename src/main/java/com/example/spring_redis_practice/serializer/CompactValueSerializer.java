@@ -0,0 +1,163 @@
+package com.example.spring_redis_practice.serializer;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * セッション値向けのコンパクトなバイナリシリアライザ。
+ * <p>
+ * 形式：先頭 1 バイトのタグ＋本体
+ *   0x01 String   : UTF-8 バイト列
+ *   0x02 Long     : ZigZag + 可変長整数
+ *   0x03 Integer  : ZigZag + 可変長整数
+ *   0x04 / 0x05   : Boolean true / false（本体なし）
+ *   0x06 Double   : IEEE754 8バイト
+ *   0x07 登録型   : 可変長の型ID + CBOR（クラス名を埋め込まない）
+ * 上記以外の型は、これまでどおり GenericJackson2JsonRedisSerializer の JSON をそのまま書く。
+ * （0x10 は CompressingSerializer の圧縮ヘッダとして予約）
+ * <p>
+ * 移行：JSON は制御文字（0x01〜0x07）で始まらないので、先頭バイトでどちらの形式か判別できる。
+ * 既存の JSON 値はそのまま読めるし、JSON モードへ戻す場合も新形式の値を読むにはこのクラスが必要になる点に注意。
+ * 登録型の CBOR 変換は Jackson 内部のバッファ再利用（BufferRecycler）に任せている。
+ */
+public class CompactValueSerializer implements RedisSerializer<Object> {
+
+    static final byte STRING = 0x01;
+    static final byte LONG = 0x02;
+    static final byte INT = 0x03;
+    static final byte TRUE = 0x04;
+    static final byte FALSE = 0x05;
+    static final byte DOUBLE = 0x06;
+    static final byte REGISTERED = 0x07;
+
+    private static final byte[] EMPTY = new byte[0];
+
+    private final GenericJackson2JsonRedisSerializer json;
+    private final ObjectMapper cbor = new ObjectMapper(new CBORFactory());
+    private final Map<Class<?>, Integer> idsByType = new HashMap<>();
+    private final Map<Integer, Class<?>> typesById = new HashMap<>();
+
+    public CompactValueSerializer(GenericJackson2JsonRedisSerializer json, Map<Integer, Class<?>> registeredTypes) {
+        this.json = json;
+        registeredTypes.forEach((id, type) -> {
+            if (id < 0) throw new IllegalArgumentException("type id must be >= 0: " + id);
+            typesById.put(id, type);
+            idsByType.put(type, id);
+        });
+    }
+
+    @Override
+    public byte[] serialize(Object value) throws SerializationException {
+        if (value == null) return EMPTY;
+        if (value instanceof String s) return tagged(STRING, s.getBytes(StandardCharsets.UTF_8));
+        if (value instanceof Long l) return varint(LONG, zigzag(l));
+        if (value instanceof Integer i) return varint(INT, zigzag(i));
+        if (value instanceof Boolean b) return new byte[]{b ? TRUE : FALSE};
+        if (value instanceof Double d) return fixed64(DOUBLE, Double.doubleToRawLongBits(d));
+
+        Integer id = idsByType.get(value.getClass());
+        if (id == null) return json.serialize(value); // 未登録型は従来の JSON
+        try {
+            byte[] body = cbor.writeValueAsBytes(value);
+            byte[] head = varint(REGISTERED, id);
+            byte[] out = new byte[head.length + body.length];
+            System.arraycopy(head, 0, out, 0, head.length);
+            System.arraycopy(body, 0, out, head.length, body.length);
+            return out;
+        } catch (IOException e) {
+            throw new SerializationException("Could not write " + value.getClass().getName(), e);
+        }
+    }
+
+    @Override
+    public Object deserialize(byte[] bytes) throws SerializationException {
+        if (bytes == null || bytes.length == 0) return null;
+        switch (bytes[0]) {
+            case STRING:
+                return new String(bytes, 1, bytes.length - 1, StandardCharsets.UTF_8);
+            case LONG:
+                return unzigzag(readVarint(bytes, new int[]{1}));
+            case INT:
+                return (int) unzigzag(readVarint(bytes, new int[]{1}));
+            case TRUE:
+                return Boolean.TRUE;
+            case FALSE:
+                return Boolean.FALSE;
+            case DOUBLE:
+                return Double.longBitsToDouble(readFixed64(bytes, 1));
+            case REGISTERED: {
+                int[] pos = {1};
+                int id = (int) readVarint(bytes, pos);
+                Class<?> type = typesById.get(id);
+                if (type == null) throw new SerializationException("Unknown registered type id " + id);
+                try {
+                    return cbor.readValue(bytes, pos[0], bytes.length - pos[0], type);
+                } catch (IOException e) {
+                    throw new SerializationException("Could not read " + type.getName(), e);
+                }
+            }
+            default:
+                return json.deserialize(bytes); // 既存（JSON）形式
+        }
+    }
+
+    // ---- エンコード/デコードの小物 ----
+
+    private static byte[] tagged(byte tag, byte[] body) {
+        byte[] out = new byte[body.length + 1];
+        out[0] = tag;
+        System.arraycopy(body, 0, out, 1, body.length);
+        return out;
+    }
+
+    private static long zigzag(long v) { return (v << 1) ^ (v >> 63); }
+
+    private static long unzigzag(long v) { return (v >>> 1) ^ -(v & 1); }
+
+    private static byte[] varint(byte tag, long v) {
+        byte[] buf = new byte[11]; // tag + 最大10バイト
+        buf[0] = tag;
+        int n = 1;
+        while ((v & ~0x7FL) != 0) {
+            buf[n++] = (byte) ((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        buf[n++] = (byte) v;
+        byte[] out = new byte[n];
+        System.arraycopy(buf, 0, out, 0, n);
+        return out;
+    }
+
+    private static long readVarint(byte[] bytes, int[] pos) {
+        long v = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            if (pos[0] >= bytes.length) throw new SerializationException("Truncated varint");
+            byte b = bytes[pos[0]++];
+            v |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return v;
+        }
+        throw new SerializationException("Malformed varint");
+    }
+
+    private static byte[] fixed64(byte tag, long v) {
+        byte[] out = new byte[9];
+        out[0] = tag;
+        for (int i = 0; i < 8; i++) out[1 + i] = (byte) (v >>> (56 - 8 * i));
+        return out;
+    }
+
+    private static long readFixed64(byte[] bytes, int off) {
+        if (bytes.length < off + 8) throw new SerializationException("Truncated double");
+        long v = 0;
+        for (int i = 0; i < 8; i++) v = (v << 8) | (bytes[off + i] & 0xFFL);
+        return v;
+    }
+}
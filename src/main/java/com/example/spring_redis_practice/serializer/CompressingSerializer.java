@@ -0,0 +1,93 @@
+package com.example.spring_redis_practice.serializer;
+
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * しきい値を超える値だけを Deflate 圧縮するデコレータ。
+ * <p>
+ * 形式：
+ *   圧縮あり：0x10 + 元の長さ（4バイト, big-endian）+ Deflate 本体
+ *   圧縮なし：委譲先のバイト列そのまま（ヘッダなし）
+ * JSON も CompactValueSerializer のタグも 0x10 では始まらないため、先頭バイトで判別できる。
+ * 既存の値（圧縮導入前）は「圧縮なし」としてそのまま読める。
+ * 圧縮しても小さくならない値は圧縮せずに書く。
+ * 圧縮を無効にしても読み取りはこのデコレータを通す（decompressOnly）。無効に戻しても圧縮済みの値は読める。
+ * ヘッダの長さは信用せず、負の値や Deflate の最大圧縮率・MAX_LENGTH を超える値は展開前に拒否する。
+ */
+public class CompressingSerializer implements RedisSerializer<Object> {
+
+    static final byte COMPRESSED = 0x10;
+    private static final int HEADER = 5;
+    /** 展開後の長さの上限（Redis の文字列の上限 proto-max-bulk-len の既定値）。 */
+    static final int MAX_LENGTH = 512 * 1024 * 1024;
+    /** Deflate の最大圧縮率（約 1032:1）に余裕を持たせた値。これを超える長さは壊れた値とみなす。 */
+    private static final int MAX_RATIO = 1100;
+
+    private final RedisSerializer<Object> delegate;
+    private final int threshold;
+    private final int level;
+
+    public CompressingSerializer(RedisSerializer<Object> delegate, int threshold, int level) {
+        this.delegate = delegate;
+        this.threshold = threshold;
+        this.level = level;
+    }
+
+    /** 書き込みでは圧縮せず、圧縮済みの値の読み取りだけを受け持つ（compression.enabled=false 用）。 */
+    public static CompressingSerializer decompressOnly(RedisSerializer<Object> delegate) {
+        return new CompressingSerializer(delegate, Integer.MAX_VALUE, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    @Override
+    public byte[] serialize(Object value) throws SerializationException {
+        byte[] raw = delegate.serialize(value);
+        if (raw == null || raw.length < threshold) return raw;
+
+        Deflater deflater = new Deflater(level);
+        try {
+            deflater.setInput(raw);
+            deflater.finish();
+            byte[] buf = new byte[HEADER + raw.length]; // これより大きくなるなら圧縮しない
+            int n = deflater.deflate(buf, HEADER, raw.length);
+            if (!deflater.finished()) return raw;
+            buf[0] = COMPRESSED;
+            buf[1] = (byte) (raw.length >>> 24);
+            buf[2] = (byte) (raw.length >>> 16);
+            buf[3] = (byte) (raw.length >>> 8);
+            buf[4] = (byte) raw.length;
+            byte[] out = new byte[HEADER + n];
+            System.arraycopy(buf, 0, out, 0, out.length);
+            return out;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    @Override
+    public Object deserialize(byte[] bytes) throws SerializationException {
+        if (bytes == null || bytes.length == 0 || bytes[0] != COMPRESSED) return delegate.deserialize(bytes);
+        if (bytes.length < HEADER) throw new SerializationException("Truncated compressed value");
+
+        int length = ((bytes[1] & 0xFF) << 24) | ((bytes[2] & 0xFF) << 16) | ((bytes[3] & 0xFF) << 8) | (bytes[4] & 0xFF);
+        if (length < 0 || length > MAX_LENGTH || length > (long) (bytes.length - HEADER) * MAX_RATIO) {
+            throw new SerializationException("Corrupt compressed value: declared length " + length);
+        }
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(bytes, HEADER, bytes.length - HEADER);
+            byte[] raw = new byte[length];
+            int n = inflater.inflate(raw);
+            if (n != length || !inflater.finished()) throw new SerializationException("Corrupt compressed value");
+            return delegate.deserialize(raw);
+        } catch (DataFormatException e) {
+            throw new SerializationException("Corrupt compressed value", e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.example.spring_redis_practice.serializer;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+/**
+ * シリアライズ後のサイズを記録するデコレータ（redis.value.bytes, tag: direction=write|read）。
+ * 圧縮を挟む場合は一番外側に置き、ネットワーク/Redis 上の実サイズを測る。
+ */
+public class MeteredSerializer implements RedisSerializer<Object> {
+
+    private final RedisSerializer<Object> delegate;
+    private final DistributionSummary written;
+    private final DistributionSummary read;
+
+    public MeteredSerializer(RedisSerializer<Object> delegate, MeterRegistry registry) {
+        this.delegate = delegate;
+        this.written = summary(registry, "write");
+        this.read = summary(registry, "read");
+    }
+
+    private static DistributionSummary summary(MeterRegistry registry, String direction) {
+        return DistributionSummary.builder("redis.value.bytes")
+                .description("Serialized Redis value size")
+                .baseUnit("bytes")
+                .tag("direction", direction)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    @Override
+    public byte[] serialize(Object value) throws SerializationException {
+        byte[] bytes = delegate.serialize(value);
+        if (bytes != null) written.record(bytes.length);
+        return bytes;
+    }
+
+    @Override
+    public Object deserialize(byte[] bytes) throws SerializationException {
+        if (bytes != null) read.record(bytes.length);
+        return delegate.deserialize(bytes);
+    }
+}
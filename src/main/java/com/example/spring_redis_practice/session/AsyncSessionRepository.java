@@ -0,0 +1,104 @@
+package com.example.spring_redis_practice.session;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+/**
+ * CompletionStage で返すセッション API（Servlet の非同期処理や CompletableFuture ベースのコードから使う）。
+ * 実体は ReactiveSessionRepository（Lettuce の非同期 I/O）で、TTL延長・リトライ・ブレーカ・計測の挙動も同じ。
+ * <p>
+ * 各メソッドは呼んだ時点で Redis へのコマンド送信を開始し、スレッドは待たない。
+ * 完了は Lettuce の I/O スレッドでそのまま通知する（別スレッドへの受け渡しを挟まない）。
+ * thenApply などの同期の後続はその I/O スレッドで走るので、重い処理やブロックする処理（同期版の Repository を呼ぶなど）は
+ * thenApplyAsync などで繋ぐこと。Executor を省略した ...Async は applicationTaskExecutor で実行される
+ * （spring.threads.virtual.enabled=true なら仮想スレッド）。
+ */
+@Component
+public class AsyncSessionRepository {
+
+    private final ReactiveSessionRepository reactive;
+    private final Executor executor;
+
+    public AsyncSessionRepository(ReactiveSessionRepository reactive,
+                                  @Qualifier("applicationTaskExecutor") Executor executor) {
+        this.reactive = reactive;
+        this.executor = executor;
+    }
+
+    /** セッション全属性（無ければ空Map）。 */
+    public CompletionStage<Map<Object, Object>> load(String sid) {
+        return async(reactive.load(sid));
+    }
+
+    /** 単一属性（無ければ null で完了）。 */
+    public CompletionStage<Object> getAttr(String sid, String name) {
+        return async(reactive.getAttr(sid, name));
+    }
+
+    /** versioning 有効時、破棄済み・期限切れのセッションなら何も書かずに false（putAll / write も同じ）。 */
+    public CompletionStage<Boolean> setAttr(String sid, String name, Object value) {
+        return async(reactive.setAttr(sid, name, value));
+    }
+
+    public CompletionStage<Boolean> putAll(String sid, Map<String, Object> values) {
+        return async(reactive.putAll(sid, values));
+    }
+
+    public CompletionStage<Boolean> write(String sid, Map<String, Object> puts, Collection<String> removes) {
+        return async(reactive.write(sid, puts, removes));
+    }
+
+    /** 新しいセッションを作る（versioning 有効時は「まだ無い」ときだけ。既に有れば false）。 */
+    public CompletionStage<Boolean> create(String sid, Map<String, Object> values) {
+        return async(reactive.create(sid, values));
+    }
+
+    public CompletionStage<Void> invalidate(String sid) {
+        return async(reactive.invalidate(sid));
+    }
+
+    public CompletionStage<Duration> ttl(String sid) {
+        return async(reactive.ttl(sid));
+    }
+
+    private <T> CompletionStage<T> async(Mono<T> mono) {
+        CompletableFuture<T> source = mono.toFuture();
+        TaskFuture<T> result = new TaskFuture<>(executor);
+        source.whenComplete((value, error) -> {
+            if (error != null) result.completeExceptionally(error);
+            else result.complete(value);
+        });
+        result.whenComplete((value, error) -> {
+            if (result.isCancelled()) source.cancel(false); // 購読も取り消す
+        });
+        return result;
+    }
+
+    /** Executor を省略した ...Async の後続を applicationTaskExecutor で実行する CompletableFuture。 */
+    private static final class TaskFuture<T> extends CompletableFuture<T> {
+
+        private final Executor executor;
+
+        TaskFuture(Executor executor) {
+            this.executor = executor;
+        }
+
+        @Override
+        public Executor defaultExecutor() {
+            return executor;
+        }
+
+        @Override
+        public <U> CompletableFuture<U> newIncompleteFuture() {
+            return new TaskFuture<>(executor);
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.example.spring_redis_practice.session;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 一括操作の SID ごとの結果。
+ * 成功した SID は values に、リトライしても失敗したチャンクの SID は failures に入る（どちらかにだけ入る）。
+ */
+public class BatchResult<T> {
+
+    private final Map<String, T> values = new LinkedHashMap<>();
+    private final Map<String, RuntimeException> failures = new LinkedHashMap<>();
+
+    void succeeded(String sid, T value) { values.put(sid, value); }
+
+    void failed(String sid, RuntimeException error) { failures.put(sid, error); }
+
+    /** 成功した SID → 結果（入力順）。 */
+    public Map<String, T> getValues() { return Collections.unmodifiableMap(values); }
+
+    /** 失敗した SID → 最後の例外（同じチャンクの SID は同じ例外を共有する）。 */
+    public Map<String, RuntimeException> getFailures() { return Collections.unmodifiableMap(failures); }
+
+    public boolean isComplete() { return failures.isEmpty(); }
+}
@@ -0,0 +1,60 @@
+package com.example.spring_redis_practice.session;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * 仮想ノード付きの一貫性ハッシュリング（ketama 方式：MD5 の先頭 8 バイトをリング上の位置にする）。
+ * ・ノード 1 台あたり virtualNodes 個の点を置き、キーはハッシュ値以上で最初の点のノードに割り当てる
+ * ・ノードを足しても、移動するのはおおよそ 1/(N+1) のキーだけ
+ * ・hashTags=true なら Redis Cluster と同じく "{...}" の中身だけをハッシュする（同じタグのキーは同じノード）
+ * 構築後は読み取り専用なので、スレッド間で共有してよい。
+ */
+final class ConsistentHashRing<T> {
+
+    private static final ThreadLocal<MessageDigest> MD5 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
+    private final NavigableMap<Long, T> ring = new TreeMap<>();
+    private final boolean hashTags;
+
+    /** nodes：ノード名（"host:port" など、点の位置を決める）→ ノード。 */
+    ConsistentHashRing(Map<String, T> nodes, int virtualNodes, boolean hashTags) {
+        if (nodes.isEmpty()) throw new IllegalArgumentException("ring needs at least one node");
+        this.hashTags = hashTags;
+        nodes.forEach((name, node) -> {
+            for (int i = 0; i < virtualNodes; i++) ring.put(hash(name + "#" + i), node);
+        });
+    }
+
+    T nodeFor(String key) {
+        Map.Entry<Long, T> e = ring.ceilingEntry(hash(hashTags ? hashTag(key) : key));
+        return e != null ? e.getValue() : ring.firstEntry().getValue();
+    }
+
+    /** Redis Cluster の規則：最初の '{' の後に空でない '}' までがあれば、その中身だけを使う。 */
+    static String hashTag(String key) {
+        int start = key.indexOf('{');
+        if (start >= 0) {
+            int end = key.indexOf('}', start + 1);
+            if (end > start + 1) return key.substring(start + 1, end);
+        }
+        return key;
+    }
+
+    private static long hash(String s) {
+        byte[] d = MD5.get().digest(s.getBytes(StandardCharsets.UTF_8));
+        long h = 0;
+        for (int i = 0; i < 8; i++) h = (h << 8) | (d[i] & 0xFFL);
+        return h;
+    }
+}
@@ -0,0 +1,43 @@
+package com.example.spring_redis_practice.session;
+
+import org.slf4j.Logger;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.util.Properties;
+
+/**
+ * キー空間通知（notify-keyspace-events）の有効化。UserSessionIndex と KnownSessionIds が共用する。
+ * 現在の設定にフラグを足す（上書きすると、他の機能やサーバ側で設定したフラグが消えるため）。
+ */
+final class KeyspaceNotifications {
+
+    static final String CONFIG = "notify-keyspace-events";
+
+    private KeyspaceNotifications() {}
+
+    /** flags を足す。マネージド Redis では CONFIG が禁止されていることがあるので失敗は警告のみ。 */
+    static void enable(RedisTemplate<String, Object> redis, String flags, Logger log) {
+        try {
+            redis.execute((RedisCallback<Void>) connection -> {
+                Properties current = connection.serverCommands().getConfig(CONFIG);
+                String value = current != null ? current.getProperty(CONFIG, "") : "";
+                String merged = merge(value, flags);
+                if (!merged.equals(value)) connection.serverCommands().setConfig(CONFIG, merged);
+                return null;
+            });
+        } catch (RuntimeException e) {
+            log.warn("Could not enable keyspace notifications (add {} to {} on the server): {}",
+                    flags, CONFIG, e.toString());
+        }
+    }
+
+    /** 既存のフラグに無い文字だけを足す（"A" は個別のフラグを含むが、重複指定は Redis 側で問題にならない）。 */
+    static String merge(String current, String flags) {
+        StringBuilder merged = new StringBuilder(current);
+        for (char c : flags.toCharArray()) {
+            if (merged.indexOf(String.valueOf(c)) < 0) merged.append(c);
+        }
+        return merged.toString();
+    }
+}
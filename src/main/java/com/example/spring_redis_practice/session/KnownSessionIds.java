@@ -0,0 +1,167 @@
+package com.example.spring_redis_practice.session;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.connection.SubscriptionListener;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.listener.PatternTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 生きている（かもしれない）SID の近似集合。SessionFilter が、集合に無い SID のクッキーを
+ * Redis を引かずに「セッションなし」として扱うために使う（偽造・期限切れ SID のリクエストを無料にする）。
+ * <p>
+ * 集合は RotatingBloomFilter（世代の周期 = セッション TTL）。生きているセッションは TTL 以内に
+ * 必ず書き込みか EXPIRE を受けているので、その時に add しておけば、通知が届いた後は偽陰性は出ない。
+ * 通知は非同期なので、他ノードで作られた直後（ログイン直後のリクエストが別ノードに来た場合など）はまだ集合に無い。
+ * そのため SID の発行時刻（SessionIds）が freshWindow 以内のものは、集合に無くても「あるかも」とする
+ * （発行時刻を持たない以前の形式の SID は集合だけで判定する）。
+ * ・自ノードの書き込み：SessionFilter がフラッシュ後に add
+ * ・全ノードの書き込み/延長：キー空間通知（__keyevent@*__:hset / expire）を購読して add
+ * ・スナップショットからの復元（SessionSnapshots.restore）：RESTORE は hset/expire ではなく restore の通知を出すので、
+ *   __keyevent@*__:restore も購読して add
+ * ・破棄・期限切れ：Bloom フィルタからは消せないので、世代の入れ替えで 2 TTL 以内に抜ける
+ * <p>
+ * 起動時と購読の張り直し時（その間の通知は失われている）は、"session:*" を SCAN して作り直す。
+ * 作り直しが終わるまでは mightExist は常に true（従来どおり Redis を引く）。
+ * キー空間通知は DB 内の全 hset/expire/restore で流れる（セッション以外も）ので、書き込みの多い Redis では通知の量に注意。
+ * シャーディング（SessionShards）とは併用できない（シャードの通知を購読していないため）。
+ */
+@Component
+public class KnownSessionIds implements InitializingBean, DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(KnownSessionIds.class);
+
+    private static final String HSET_EVENTS = "__keyevent@*__:hset";
+    private static final String EXPIRE_EVENTS = "__keyevent@*__:expire";
+    private static final String RESTORE_EVENTS = "__keyevent@*__:restore";
+
+    private final SessionProperties.KnownIds props;
+    private final RedisTemplate<String, Object> redis;
+    private final RotatingBloomFilter filter; // null = 無効
+    private final long freshWindowMillis;
+    private final AtomicLong rebuilds = new AtomicLong();
+    private volatile boolean ready;
+    private ExecutorService rebuilder;
+    private RedisMessageListenerContainer listenerContainer;
+
+    public KnownSessionIds(SessionProperties props, RedisTemplate<String, Object> redis) {
+        this.props = props.getKnownIds();
+        this.redis = redis;
+        if (this.props.isEnabled() && props.getShards().isEnabled()) {
+            throw new IllegalStateException("app.session.known-ids cannot be combined with shards");
+        }
+        this.filter = this.props.isEnabled()
+                ? new RotatingBloomFilter(this.props.getExpectedSessions(), this.props.getFalsePositiveRate(),
+                        RedisSessionRepository.DEFAULT_TTL)
+                : null;
+        this.freshWindowMillis = this.props.getFreshWindow().toMillis();
+    }
+
+    /** 無効（常に「あるかも」）なインスタンス。SessionFilter を Spring 外で組み立てる場合用。 */
+    static KnownSessionIds disabled() {
+        return new KnownSessionIds(new SessionProperties(), null);
+    }
+
+    public boolean isEnabled() { return filter != null; }
+
+    /** false なら Redis にその SID のセッションは無い（無効時・作り直し中・発行直後の SID は常に true）。 */
+    boolean mightExist(String sid) {
+        return filter == null || !ready || filter.mightContain(sid) || isFresh(sid);
+    }
+
+    /** 発行から freshWindow 以内の SID か（時計のずれを見込んで、未来側も同じ幅まで認める）。 */
+    private boolean isFresh(String sid) {
+        long issuedAt = SessionIds.issuedAt(sid);
+        if (issuedAt < 0) return false;
+        long age = System.currentTimeMillis() - issuedAt;
+        return age >= -freshWindowMillis && age <= freshWindowMillis;
+    }
+
+    /** 自ノードで書き込んだ SID（通知を待たずに反映）。 */
+    void add(String sid) {
+        if (filter != null) filter.add(sid);
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        if (filter == null) return;
+        // E = keyevent, g = expire / restore などの汎用コマンド, h = ハッシュ
+        if (props.isConfigureNotifications()) KeyspaceNotifications.enable(redis, "Egh", log);
+        rebuilder = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "known-session-ids");
+            t.setDaemon(true);
+            return t;
+        });
+        listenerContainer = new RedisMessageListenerContainer();
+        listenerContainer.setConnectionFactory(redis.getConnectionFactory());
+        listenerContainer.addMessageListener(new Listener(),
+                List.of(new PatternTopic(HSET_EVENTS), new PatternTopic(EXPIRE_EVENTS),
+                        new PatternTopic(RESTORE_EVENTS)));
+        listenerContainer.afterPropertiesSet();
+        listenerContainer.start();
+    }
+
+    /** 購読が（張り直しを含めて）確立したら作り直す。通知を受け始めてから SCAN するので取りこぼさない。 */
+    private void rebuild() {
+        final long id = rebuilds.incrementAndGet();
+        ready = false;
+        rebuilder.execute(() -> {
+            if (rebuilds.get() != id) return; // 後の作り直しに任せる
+            filter.clear();
+            long n = 0;
+            ScanOptions options = ScanOptions.scanOptions()
+                    .match(RedisSessionRepository.KEY_PREFIX + "*").count(1000).build();
+            try (Cursor<String> keys = redis.scan(options)) {
+                while (keys.hasNext()) {
+                    filter.add(keys.next().substring(RedisSessionRepository.KEY_PREFIX.length()));
+                    n++;
+                }
+            } catch (RuntimeException e) {
+                // 作り直せなかったら準備中のまま（Redis を引き続ける）。次の張り直しで再試行
+                log.warn("Could not rebuild known session ids: {}", e.toString());
+                return;
+            }
+            if (rebuilds.get() == id) {
+                ready = true;
+                log.info("Known session ids rebuilt from {} sessions", n);
+            }
+        });
+    }
+
+    private class Listener implements MessageListener, SubscriptionListener {
+
+        @Override
+        public void onMessage(Message message, byte[] pattern) {
+            String key = new String(message.getBody(), StandardCharsets.UTF_8);
+            if (key.startsWith(RedisSessionRepository.KEY_PREFIX)) {
+                filter.add(key.substring(RedisSessionRepository.KEY_PREFIX.length()));
+            }
+        }
+
+        @Override
+        public void onPatternSubscribed(byte[] pattern, long count) {
+            // パターンごとに呼ばれるので、1 つで判定する
+            if (HSET_EVENTS.equals(new String(pattern, StandardCharsets.UTF_8))) rebuild();
+        }
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        if (listenerContainer != null) listenerContainer.destroy();
+        if (rebuilder != null) rebuilder.shutdownNow();
+    }
+}
@@ -0,0 +1,134 @@
+package com.example.spring_redis_practice.session;
+
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * SessionContext の WebFlux 版。ReactiveSessionFilter が生成し、exchange の属性に積む。
+ * ・読み取り：最初に購読された時点で Hash 全体を 1 回だけ load（結果はキャッシュして使い回す）
+ * ・書き込み：メモリ上に溜め、レスポンスのコミット直前に flush() で 1 往復にまとめて反映
+ * ・versioning 有効時の flush は、このリクエストで発行した SID なら「まだ無いこと」、それ以外は「まだ有ること」を条件に書く。
+ *   セッションが無くなっていたら（期限切れ・破棄済み）その SID には書かず、新しい SID で変更だけを持つセッションを作る
+ *   （onCreate でクッキーを差し替える。SessionContext と同じ）
+ * <p>
+ * 1 リクエスト内で並行に変更しない前提（Reactor のオペレータ連鎖は逐次に実行される）。
+ * Handler などからは ReactiveSessionContext.from(exchange) で取得する。
+ */
+public class ReactiveSessionContext {
+
+    private String id;
+    private final ReactiveSessionRepository repo;
+    private final Consumer<String> onCreate;
+    private boolean created; // このリクエストで発行し、まだ Redis に書いていない SID
+    private Mono<Map<Object, Object>> loaded; // 購読されるまで load しない（cache 済み）
+    private final Map<String, Object> dirty = new LinkedHashMap<>();
+    private final Set<String> removed = new LinkedHashSet<>();
+
+    ReactiveSessionContext(String id, ReactiveSessionRepository repo) {
+        this(id, repo, false, sid -> {});
+    }
+
+    /** created はこのリクエストで発行した SID か。flush で別の SID に作り直したら onCreate に渡す。 */
+    ReactiveSessionContext(String id, ReactiveSessionRepository repo, boolean created, Consumer<String> onCreate) {
+        this.id = id;
+        this.repo = repo;
+        this.created = created;
+        this.onCreate = onCreate;
+        this.loaded = Mono.defer(() -> repo.load(id)).cache();
+    }
+
+    /** ReactiveSessionFilter が積んだコンテキストを取り出す（フィルタ外なら null）。 */
+    public static ReactiveSessionContext from(ServerWebExchange exchange) {
+        return exchange.getAttribute(SessionFilter.REQ_ATTR_SESSION);
+    }
+
+    public String getId() { return id; }
+
+    /** 単一属性を取得。未ロードならここで Hash 全体を読む。無ければ空の Mono。 */
+    public Mono<Object> getAttr(String name) {
+        if (removed.contains(name)) return Mono.empty();
+        if (dirty.containsKey(name)) return Mono.justOrEmpty(dirty.get(name));
+        return loaded.mapNotNull(m -> m.get(name));
+    }
+
+    /** 全属性（未フラッシュの変更を反映した読み取り専用ビュー）。 */
+    public Mono<Map<Object, Object>> getAttrs() {
+        return loaded.map(m -> {
+            Map<Object, Object> view = new HashMap<>(m);
+            removed.forEach(view::remove);
+            view.putAll(dirty);
+            return Collections.unmodifiableMap(view);
+        });
+    }
+
+    /** 属性を変更。Redis への反映は flush() まで遅延（ロードは不要）。 */
+    public void setAttr(String name, Object value) {
+        removed.remove(name);
+        dirty.put(name, value);
+    }
+
+    /** 属性を削除。Redis への反映は flush() まで遅延。 */
+    public void removeAttr(String name) {
+        dirty.remove(name);
+        removed.add(name);
+    }
+
+    /** セッション破棄。未フラッシュの変更は捨てる。 */
+    public Mono<Void> invalidate() {
+        dirty.clear();
+        removed.clear();
+        return repo.invalidate(id).doOnSuccess(v -> loaded = Mono.just(Map.of()));
+    }
+
+    public boolean isDirty() { return !dirty.isEmpty() || !removed.isEmpty(); }
+
+    /** 溜まった変更を 1 往復で反映し、TTL も延長する。変更がなければ何もしない。 */
+    public Mono<Void> flush() {
+        if (!isDirty()) return Mono.empty();
+        final Map<String, Object> puts = new LinkedHashMap<>(dirty);
+        final Set<String> removes = new LinkedHashSet<>(removed);
+        if (!repo.isVersioned()) return repo.write(id, puts, removes).doOnSuccess(v -> flushed(puts, removes)).then();
+        final long expected = created ? VersionedSession.ABSENT : RedisSessionRepository.ANY_VERSION;
+        return repo.compareAndWrite(id, expected, puts, removes).flatMap(applied -> {
+            created = false;
+            if (applied) {
+                flushed(puts, removes);
+                return Mono.empty();
+            }
+            loaded = Mono.just(Map.of());
+            removed.clear(); // 新しいセッションには消すものが無い
+            if (puts.isEmpty()) return Mono.empty();
+            final String sid = SessionIds.newId();
+            return repo.compareAndWrite(sid, VersionedSession.ABSENT, puts, List.of()).doOnNext(recreated -> {
+                if (!recreated) {
+                    dirty.clear();
+                    return;
+                }
+                id = sid;
+                onCreate.accept(sid);
+                flushed(puts, Set.of());
+            }).then();
+        });
+    }
+
+    /** 書き込んだ変更を読み取り側へ反映する。未ロードなら load を起こさず、ロードされた時点で反映されるよう合成しておく。 */
+    private void flushed(Map<String, Object> puts, Set<String> removes) {
+        loaded = loaded.map(m -> {
+            Map<Object, Object> next = new HashMap<>(m);
+            removes.forEach(next::remove);
+            next.putAll(puts);
+            return next;
+        }).cache();
+        puts.keySet().forEach(dirty::remove);
+        removed.removeAll(removes);
+    }
+}
@@ -0,0 +1,70 @@
+package com.example.spring_redis_practice.session;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpCookie;
+import org.springframework.http.ResponseCookie;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+/**
+ * SessionFilter の WebFlux 版（リアクティブ Web アプリとして起動した場合のみ有効）。
+ * - SIDクッキーを確認し、なければ新規発行して付与する（HttpOnly/Secure/SameSite=Lax）。
+ *   versioning 有効時に期限切れの SID へ書こうとした場合は、flush で発行し直した SID のクッキーに差し替える。
+ * - リクエスト単位の ReactiveSessionContext を用意し、変更はレスポンスのコミット直前に 1 往復で反映する。
+ *
+ * Handler などからは exchange.getAttribute(REQ_ATTR_SESSION_ID) でSIDが、
+ * ReactiveSessionContext.from(exchange) でセッションが取れる（属性名は SessionFilter と共通）。
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveSessionFilter implements WebFilter {
+
+    private final ReactiveSessionRepository sessions;
+
+    public ReactiveSessionFilter(ReactiveSessionRepository sessions) {
+        this.sessions = sessions;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        // 1) 既存のSIDをCookieから探す。無ければ新規発行してSet-Cookie。
+        HttpCookie cookie = exchange.getRequest().getCookies().getFirst(SessionFilter.COOKIE_NAME);
+        String sid;
+        if (cookie != null) {
+            sid = cookie.getValue();
+        } else {
+            sid = SessionIds.newId();
+            addCookie(exchange, sid);
+        }
+
+        // 2) 後続処理で使えるよう、exchange の属性に積む
+        ReactiveSessionContext session = new ReactiveSessionContext(sid, sessions, cookie == null, reissued -> {
+            addCookie(exchange, reissued); // コミット前（beforeCommit の中）なので間に合う
+            exchange.getAttributes().put(SessionFilter.REQ_ATTR_SESSION_ID, reissued);
+        });
+        exchange.getAttributes().put(SessionFilter.REQ_ATTR_SESSION_ID, sid);
+        exchange.getAttributes().put(SessionFilter.REQ_ATTR_SESSION, session);
+
+        // 3) コミット直前に変更をフラッシュ（WebFlux はコミット前フックを Mono で待てる）
+        exchange.getResponse().beforeCommit(session::flush);
+        return chain.filter(exchange);
+    }
+
+    private static void addCookie(ServerWebExchange exchange, String sid) {
+        // Max-Ageは設定しない（ブラウザ終了で消える＝サーバ側TTLと分離しておく）
+        // 同名のクッキーは置き換える（flush で SID を発行し直した場合）
+        ResponseCookie cookie = ResponseCookie.from(SessionFilter.COOKIE_NAME, sid)
+                .path("/")
+                .httpOnly(true)
+                .secure(true)
+                .sameSite("Lax")
+                .build();
+        exchange.getResponse().getCookies().set(SessionFilter.COOKIE_NAME, cookie);
+    }
+}
@@ -0,0 +1,364 @@
+package com.example.spring_redis_practice.session;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.example.spring_redis_practice.config.RetryConfig;
+import com.example.spring_redis_practice.resilience.RedisCircuitBreaker;
+import com.example.spring_redis_practice.resilience.ResilientRetryTemplate;
+import com.example.spring_redis_practice.session.SessionMetrics.Op;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.RedisElementReader;
+import org.springframework.data.redis.serializer.RedisElementWriter;
+import org.springframework.data.redis.serializer.RedisSerializationContext.SerializationPair;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.util.ByteUtils;
+import org.springframework.retry.support.RetryTemplate;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+import reactor.util.retry.Retry;
+import reactor.util.retry.RetryBackoffSpec;
+
+/**
+ * RedisSessionRepository のリアクティブ版（ReactiveRedisTemplate / Lettuce のノンブロッキング I/O）。
+ * Redis の応答待ちでスレッドを占有しないので、少ないスレッドで多数の同時接続をさばける。
+ * <p>
+ * 同期版と同じ振る舞い：
+ * ・キー、Hash の表現、スライディングTTL（TouchThrottle による間引き含む）
+ * ・スクリプトモードでは SessionScripts の Lua を使う
+ * ・リトライは同期版の RetryTemplate と同じ方針（一時的障害のみ、最大 3 回、50ms〜200ms のジッタ付き指数バックオフ、
+ *   論理呼び出し全体で 1 秒の期限）。待ちはスレッドを寝かせず Reactor のタイマーで行う
+ * ・サーキットブレーカは同期版と共有する（どちらの経路の失敗も同じ窓で数える）
+ * ・レイテンシは SessionMetrics（redis.session.op）に同期版と同じタグで記録する
+ * ・app.session.versioning 有効時は、書き込みを SessionScripts.CAS_WRITE 1 回で行い、版の field は読み取り結果に含めない。
+ *   setAttr/putAll/write は「まだ有る」条件で書き、破棄済み・期限切れのセッションなら何も書かずに false で完了する。
+ *   新規セッションは create（「まだ無い」条件）で作る。update / loadVersioned は同期版のみ
+ * 違い：
+ * ・SessionNearCache（L1）は使わない。L1 を PUBSUB モードで使う場合、ここからの書き込みは他ノードの L1 に通知されない
+ *   （TRACKING モードなら Redis 側から通知されるので問題ない）
+ * ・リトライ予算（RetryBudget）は同期版の RetryTemplate 内部にあるため共有していない
+ * ・UserSessionIndex（userId → SID）は更新しない。索引を使う場合、userId の書き込みとログアウトは同期版で行うこと
+ * ・SessionShards によるシャーディングには対応しない（常に既定の接続先を使う）。シャーディング時は同期版を使うこと
+ * ・SessionHashLayout（app.session.compact の別名）は解さない。compact を有効にする場合は同期版を使うこと
+ * <p>
+ * 返す Mono はすべてコールド（購読するまで Redis に何も送らない）。
+ */
+@Component
+public class ReactiveSessionRepository {
+
+    static final Duration DEADLINE = Duration.ofSeconds(1);
+
+    private static final RedisElementWriter<byte[]> RAW_WRITER = RedisElementWriter.from(RedisSerializer.byteArray());
+    private static final RedisElementReader<byte[]> RAW_READER = RedisElementReader.from(RedisSerializer.byteArray());
+    private static final byte[] TTL_ARG =
+            Long.toString(RedisSessionRepository.DEFAULT_TTL.toSeconds()).getBytes(StandardCharsets.UTF_8);
+    private static final byte[] NO_TOUCH_ARG = "0".getBytes(StandardCharsets.UTF_8);
+
+    /** 同期版（RetryConfig）と同じ：初回＋再試行 2 回、指数バックオフ＋ジッタ、一時的障害のみ。 */
+    private static final RetryBackoffSpec RETRY = Retry.backoff(2, Duration.ofMillis(50))
+            .maxBackoff(Duration.ofMillis(200))
+            .jitter(1.0)
+            .filter(RetryConfig::isTransient)
+            .onRetryExhaustedThrow((spec, signal) -> signal.failure());
+
+    private final ReactiveRedisTemplate<String, Object> redis;
+    private final RedisCircuitBreaker breaker; // null = ブレーカなし
+    private final boolean useScripts;
+    private final boolean versioned;
+    private final TouchThrottle touch;
+    private final SessionMetrics metrics;
+    private final SerializationPair<String> hashKeys;
+    private final SerializationPair<Object> hashValues;
+
+    public ReactiveSessionRepository(ReactiveRedisTemplate<String, Object> reactiveRedisTemplate,
+                                     RetryTemplate redisRetryTemplate,
+                                     SessionProperties props, SessionMetrics metrics) {
+        this.redis = reactiveRedisTemplate;
+        this.breaker = redisRetryTemplate instanceof ResilientRetryTemplate resilient
+                ? resilient.circuitBreaker() : null;
+        this.useScripts = props.getScripts().isEnabled();
+        this.versioned = props.getVersioning().isEnabled();
+        this.touch = new TouchThrottle(props.getTouch(), RedisSessionRepository.DEFAULT_TTL);
+        this.metrics = metrics;
+        this.hashKeys = reactiveRedisTemplate.getSerializationContext().getHashKeySerializationPair();
+        this.hashValues = reactiveRedisTemplate.getSerializationContext().getHashValueSerializationPair();
+    }
+
+    private String getKey(String sid) { return RedisSessionRepository.KEY_PREFIX + sid; }
+
+    /** セッション全属性を取得。取得に成功したらTTL延長（スライディング）。無ければ空Map。 */
+    public Mono<Map<Object, Object>> load(String sid) {
+        return metrics.record(Op.LOAD, Mono.defer(() -> {
+            final String k = getKey(sid);
+            final boolean due = touch.isDue(k);
+            Mono<Map<Object, Object>> read = useScripts
+                    ? loadByScript(k, due)
+                    : redis.<Object, Object>opsForHash().entries(k)
+                            .filter(e -> !RedisSessionRepository.VERSION_FIELD.equals(e.getKey()))
+                            .collectMap(Map.Entry::getKey, Map.Entry::getValue)
+                            .flatMap(m -> m.isEmpty() || !due
+                                    ? Mono.just(m)
+                                    : redis.expire(k, RedisSessionRepository.DEFAULT_TTL).thenReturn(m));
+            return guarded(read).doOnNext(m -> {
+                if (due && !m.isEmpty()) touch.touched(k);
+            });
+        }));
+    }
+
+    /** 単一属性を取得。値が存在する場合のみTTL延長。無ければ空の Mono。 */
+    public Mono<Object> getAttr(String sid, String name) {
+        return metrics.record(Op.GET_ATTR, Mono.defer(() -> {
+            final String k = getKey(sid);
+            final boolean due = touch.isDue(k);
+            Mono<Object> read = useScripts
+                    ? eval(SessionScripts.GET, k, List.of(due ? TTL_ARG : NO_TOUCH_ARG, hashField(name)))
+                            .next()
+                            .map(raw -> fromHashValue((byte[]) raw))
+                    : redis.opsForHash().get(k, name)
+                            .flatMap(v -> due
+                                    ? redis.expire(k, RedisSessionRepository.DEFAULT_TTL).thenReturn(v)
+                                    : Mono.just(v));
+            return guarded(read).doOnNext(v -> {
+                if (due) touch.touched(k);
+            });
+        }));
+    }
+
+    /**
+     * 単一属性の保存。put後にキー全体のTTLを設定/延長。
+     * versioning 有効時は既存のセッションにだけ書き、無ければ何も書かずに false（新規作成は create）。それ以外は true。
+     */
+    public Mono<Boolean> setAttr(String sid, String name, Object value) {
+        return metrics.record(Op.SET_ATTR, Mono.defer(() -> {
+            final String k = getKey(sid);
+            if (versioned) return casWrite(k, RedisSessionRepository.ANY_VERSION,
+                    Collections.singletonMap(name, value), List.of());
+            Mono<?> op = useScripts
+                    ? eval(SessionScripts.PUT, k, List.of(TTL_ARG, hashField(name), hashValue(value))).then()
+                    : redis.opsForHash().put(k, name, value)
+                            .then(redis.expire(k, RedisSessionRepository.DEFAULT_TTL));
+            return written(guarded(op), k);
+        }));
+    }
+
+    /**
+     * 複数属性をまとめて保存。保存後にTTL設定/延長。
+     * versioning 有効時は既存のセッションにだけ書き、無ければ何も書かずに false（新規作成は create）。それ以外は true。
+     */
+    public Mono<Boolean> putAll(String sid, Map<String, Object> values) {
+        return metrics.record(Op.PUT_ALL, Mono.defer(() -> {
+            if (values.isEmpty()) return Mono.just(true);
+            final String k = getKey(sid);
+            if (versioned) return casWrite(k, RedisSessionRepository.ANY_VERSION, values, List.of());
+            Mono<?> op = useScripts
+                    ? eval(SessionScripts.PUT, k, putArgs(values)).then()
+                    : redis.opsForHash().putAll(k, values)
+                            .then(redis.expire(k, RedisSessionRepository.DEFAULT_TTL));
+            return written(guarded(op), k);
+        }));
+    }
+
+    /**
+     * 属性の更新・削除とTTL延長をまとめて反映（ReactiveSessionContext のフラッシュ用）。
+     * スクリプトモードでは WRITE スクリプト 1 回。コマンドモードでは HDEL と HSET を同時に送り、
+     * 両方の完了後に EXPIRE を送る（新規キーに先に EXPIRE が届くと TTL なしで作られるため）。
+     * versioning 有効時は既存のセッションにだけ書き、無ければ何も書かずに false。それ以外は true。
+     */
+    public Mono<Boolean> write(String sid, Map<String, Object> puts, Collection<String> removes) {
+        return metrics.record(Op.WRITE, Mono.defer(() -> {
+            if (puts.isEmpty() && removes.isEmpty()) return Mono.just(true);
+            final String k = getKey(sid);
+            if (versioned) return casWrite(k, RedisSessionRepository.ANY_VERSION, puts, removes);
+            Mono<?> op;
+            if (useScripts) {
+                op = eval(SessionScripts.WRITE, k, writeArgs(puts, removes)).then();
+            } else {
+                Mono<Long> remove = removes.isEmpty()
+                        ? Mono.empty() : redis.opsForHash().remove(k, removes.toArray());
+                Mono<Boolean> put = puts.isEmpty()
+                        ? Mono.empty() : redis.opsForHash().putAll(k, puts);
+                op = Mono.when(remove, put).then(redis.expire(k, RedisSessionRepository.DEFAULT_TTL));
+            }
+            return written(guarded(op), k);
+        }));
+    }
+
+    /**
+     * 新しいセッションを作る（SID を発行した直後の最初の書き込み）。
+     * versioning 有効時は「まだ無い」ときだけ書き、既に有れば何も書かずに false。無効時は putAll と同じで常に true。
+     */
+    public Mono<Boolean> create(String sid, Map<String, Object> values) {
+        if (values.isEmpty()) return Mono.error(new IllegalArgumentException("A new session needs at least one attribute"));
+        if (!versioned) return putAll(sid, values);
+        return metrics.record(Op.CREATE,
+                Mono.defer(() -> casWrite(getKey(sid), VersionedSession.ABSENT, values, List.of())));
+    }
+
+    /**
+     * 版が expectedVersion のときだけ属性の更新・削除を反映し、版を上げて TTL を延長する（CAS_WRITE 1 回）。
+     * expectedVersion は VersionedSession.ABSENT（まだ無いこと）か RedisSessionRepository.ANY_VERSION（まだ有ること）、
+     * または同期版の loadVersioned で読んだ版。条件を満たさなければ何も書かずに false。要 versioning。
+     */
+    public Mono<Boolean> compareAndWrite(String sid, long expectedVersion, Map<String, Object> puts,
+                                         Collection<String> removes) {
+        if (!versioned) return Mono.error(new IllegalStateException("app.session.versioning.enabled is false"));
+        return metrics.record(Op.COMPARE_AND_WRITE,
+                Mono.defer(() -> casWrite(getKey(sid), expectedVersion, puts, removes)));
+    }
+
+    /** 書き込みが成功したら延長済みとして記録し、true で完了する。 */
+    private Mono<Boolean> written(Mono<?> op, String k) {
+        return op.doOnSuccess(r -> touch.touched(k)).thenReturn(true);
+    }
+
+    /**
+     * CAS_WRITE を 1 回実行し、適用されたら true。書き込みトークンは論理呼び出しごとに 1 つ
+     * （再試行の再購読でも同じ引数を送る）なので、応答が失われた書き込みを二重に適用しない。
+     */
+    private Mono<Boolean> casWrite(String k, long expectedVersion, Map<String, Object> puts,
+                                   Collection<String> removes) {
+        final List<Object> args = casArgs(expectedVersion, puts, removes);
+        return guarded(eval(SessionScripts.CAS_WRITE, k, args)
+                        .concatMapIterable(ReactiveSessionRepository::flatten)
+                        .next())
+                .map(status -> ((Long) status) == 1L)
+                .doOnNext(applied -> {
+                    if (applied) touch.touched(k);
+                });
+    }
+
+    /** 書き込みごとに版を上げているか（ReactiveSessionContext が条件付きで書くかの判断に使う）。 */
+    public boolean isVersioned() { return versioned; }
+
+    /** セッション破棄。ログアウト時などに使用。 */
+    public Mono<Void> invalidate(String sid) {
+        return metrics.record(Op.INVALIDATE, Mono.defer(() -> {
+            final String k = getKey(sid);
+            return guarded(redis.delete(k)).doOnSuccess(n -> touch.forget(k)).then();
+        }));
+    }
+
+    /** 残りTTLの確認（キーなし/TTLなしなら Duration.ZERO）。 */
+    public Mono<Duration> ttl(String sid) {
+        return metrics.record(Op.TTL, Mono.defer(() -> guarded(redis.getExpire(getKey(sid)))
+                .map(d -> d.isNegative() ? Duration.ZERO : d)
+                .defaultIfEmpty(Duration.ZERO)));
+    }
+
+    /**
+     * リトライ・期限・ブレーカを被せる（同期版の ResilientRetryTemplate 相当）。
+     * 期限切れは QueryTimeoutException に変換する（同期版と同じく一時的障害として扱われる）。
+     * 結果が出る前にキャンセルされた（クライアント切断・上流の timeout・toFuture().cancel など）呼び出しは
+     * ブレーカに onCancel で返す（HALF_OPEN の試行枠を握ったままにしない）。
+     */
+    private <T> Mono<T> guarded(Mono<T> op) {
+        Mono<T> retried = op.retryWhen(RETRY)
+                .timeout(DEADLINE)
+                .onErrorMap(TimeoutException.class,
+                        e -> new QueryTimeoutException("Redis call exceeded " + DEADLINE.toMillis() + "ms", e));
+        if (breaker == null) return retried;
+        return Mono.defer(() -> {
+            breaker.acquirePermission();
+            AtomicBoolean settled = new AtomicBoolean(); // 結果をブレーカに記録したか（購読ごと）
+            return retried
+                    .doOnSuccess(v -> {
+                        if (settled.compareAndSet(false, true)) breaker.onSuccess();
+                    })
+                    .doOnError(e -> {
+                        if (!settled.compareAndSet(false, true)) return;
+                        if (RetryConfig.isTransient(e)) breaker.onFailure();
+                        else breaker.onSuccess();
+                    })
+                    .doFinally(signal -> {
+                        if (signal == SignalType.CANCEL && settled.compareAndSet(false, true)) breaker.onCancel();
+                    });
+        });
+    }
+
+    // ---- スクリプトモード用のヘルパ（同期版と同じく引数/戻り値は byte[] のまま受け渡す） ----
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private Flux<Object> eval(RedisScript<?> script, String k, List<?> args) {
+        return redis.execute((RedisScript) script, List.of(k), args, RAW_WRITER, (RedisElementReader) RAW_READER);
+    }
+
+    /** LOAD の戻り（[field, value, ...]）は 1 要素の List でも要素ごとでも届きうるので平らにしてから詰める。 */
+    private Mono<Map<Object, Object>> loadByScript(String k, boolean due) {
+        return eval(SessionScripts.LOAD, k, List.of(due ? TTL_ARG : NO_TOUCH_ARG))
+                .concatMapIterable(ReactiveSessionRepository::flatten)
+                .collectList()
+                .map(flat -> {
+                    if (flat.isEmpty()) return Map.of();
+                    Map<Object, Object> m = new LinkedHashMap<>(flat.size());
+                    for (int i = 0; i + 1 < flat.size(); i += 2) {
+                        String field = hashKeys.read(ByteBuffer.wrap((byte[]) flat.get(i)));
+                        if (!RedisSessionRepository.VERSION_FIELD.equals(field)) {
+                            m.put(field, fromHashValue((byte[]) flat.get(i + 1)));
+                        }
+                    }
+                    return m;
+                });
+    }
+
+    private static List<?> flatten(Object element) {
+        return element instanceof List<?> list ? list : List.of(element);
+    }
+
+    private List<Object> putArgs(Map<String, Object> values) {
+        List<Object> args = new ArrayList<>(1 + values.size() * 2);
+        args.add(TTL_ARG);
+        values.forEach((name, value) -> {
+            args.add(hashField(name));
+            args.add(hashValue(value));
+        });
+        return args;
+    }
+
+    private List<Object> writeArgs(Map<String, Object> puts, Collection<String> removes) {
+        List<Object> args = new ArrayList<>(2 + removes.size() + puts.size() * 2);
+        args.add(TTL_ARG);
+        args.add(Integer.toString(removes.size()).getBytes(StandardCharsets.UTF_8));
+        removes.forEach(name -> args.add(hashField(name)));
+        puts.forEach((name, value) -> {
+            args.add(hashField(name));
+            args.add(hashValue(value));
+        });
+        return args;
+    }
+
+    /** 引数の並びは同期版（RedisSessionRepository#casArgs）と同じ。 */
+    private List<Object> casArgs(long expectedVersion, Map<String, Object> puts, Collection<String> removes) {
+        List<Object> args = new ArrayList<>(5 + removes.size() + puts.size() * 2);
+        args.add(TTL_ARG);
+        args.add(Long.toString(expectedVersion).getBytes(StandardCharsets.UTF_8));
+        args.add(hashField(RedisSessionRepository.VERSION_FIELD));
+        args.add(Long.toHexString(ThreadLocalRandom.current().nextLong()).getBytes(StandardCharsets.UTF_8));
+        args.add(Integer.toString(removes.size()).getBytes(StandardCharsets.UTF_8));
+        removes.forEach(name -> args.add(hashField(name)));
+        puts.forEach((name, value) -> {
+            args.add(hashField(name));
+            args.add(hashValue(value));
+        });
+        return args;
+    }
+
+    private byte[] hashField(String name) { return ByteUtils.getBytes(hashKeys.write(name)); }
+
+    private byte[] hashValue(Object value) { return ByteUtils.getBytes(hashValues.write(value)); }
+
+    private Object fromHashValue(byte[] raw) { return raw == null ? null : hashValues.read(ByteBuffer.wrap(raw)); }
+}
@@ -0,0 +1,106 @@
+package com.example.spring_redis_practice.session;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * 同じセッションへの同時読み取りを 1 回の Redis 呼び出しにまとめる「実行中の読み取り」表。
+ * ・最初のスレッドが読み、同じ読み取りで後から来たスレッドはその結果（例外も）を共有する。TTL 延長も 1 回で済む
+ * ・表はセッションキー → そのキーの実行中の読み取り の ConcurrentHashMap（参照はロックなし、登録/削除はキーのビン単位）で、
+ *   完了したら取り除く。結果をキャッシュするわけではないので、保持するのは実行中の読み取りだけ
+ * ・書き込みが完了したら forget() で実行中の読み取りを切り離す。書き込み後に始めた読み取りが、
+ *   書き込み前に始まった読み取りの結果を受け取らない（自分の書き込みが必ず見える）ようにするため。
+ *   キーごとの表を丸ごと外すだけなので、実行中の読み取りの数によらず O(1)
+ * ・待つ側は CompletableFuture#join（仮想スレッドでもキャリアを手放す）
+ */
+final class ReadCoalescer {
+
+    enum Kind { LOAD, ATTR, TOUCH }
+
+    /** 読み取りの識別：種類・キー・属性名（ATTR のみ）・レプリカから読むか。 */
+    record Read(Kind kind, String key, String field, boolean replica) {}
+
+    private final boolean enabled;
+    private final SessionMetrics metrics;
+    /** キー → 実行中の読み取り。内側の表の更新は外側の compute の中（キーのビンのロック下）でだけ行う。 */
+    private final ConcurrentHashMap<String, Map<Read, CompletableFuture<Object>>> inFlight = new ConcurrentHashMap<>();
+
+    ReadCoalescer(boolean enabled, SessionMetrics metrics) {
+        this.enabled = enabled;
+        this.metrics = metrics;
+    }
+
+    boolean isEnabled() { return enabled; }
+
+    /** 同じ読み取りが実行中ならその結果を待ち、無ければ自分で body を実行して結果を配る。 */
+    @SuppressWarnings("unchecked")
+    <T> T coalesce(Read read, Supplier<T> body) {
+        if (!enabled) return body.get();
+        CompletableFuture<Object> mine = new CompletableFuture<>();
+        CompletableFuture<Object> running = register(read, mine);
+        if (running != null) {
+            metrics.coalesced();
+            return (T) await(running);
+        }
+        try {
+            T result = body.get();
+            mine.complete(result);
+            return result;
+        } catch (RuntimeException | Error e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            unregister(read, mine);
+        }
+    }
+
+    /** read を登録する。同じ読み取りが実行中ならそれを返す（登録しない）。 */
+    private CompletableFuture<Object> register(Read read, CompletableFuture<Object> mine) {
+        @SuppressWarnings("unchecked")
+        CompletableFuture<Object>[] running = new CompletableFuture[1];
+        inFlight.compute(read.key(), (key, reads) -> {
+            if (reads == null) reads = new ConcurrentHashMap<>(4);
+            running[0] = reads.putIfAbsent(read, mine);
+            return reads;
+        });
+        return running[0];
+    }
+
+    /** 完了した read を外す（forget で切り離し済みなら、後から登録された読み取りには触れない）。 */
+    private void unregister(Read read, CompletableFuture<Object> mine) {
+        inFlight.computeIfPresent(read.key(), (key, reads) -> {
+            reads.remove(read, mine);
+            return reads.isEmpty() ? null : reads;
+        });
+    }
+
+    /** 同じセッションの Hash 全体の読み取りが実行中なら、その結果を待って返す（getAttr の相乗り用）。無ければ null。 */
+    @SuppressWarnings("unchecked")
+    Map<Object, Object> joinLoad(String key, boolean replica) {
+        if (!enabled) return null;
+        Map<Read, CompletableFuture<Object>> reads = inFlight.get(key);
+        CompletableFuture<Object> running = reads == null ? null : reads.get(new Read(Kind.LOAD, key, null, replica));
+        if (running == null) return null;
+        metrics.coalesced();
+        return (Map<Object, Object>) await(running);
+    }
+
+    /** key への書き込みが完了した。実行中の読み取りには以後だれも相乗りさせない。 */
+    void forget(String key) {
+        if (!enabled) return;
+        inFlight.remove(key);
+    }
+
+    private static Object await(CompletableFuture<Object> running) {
+        try {
+            return running.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException re) throw re;
+            if (e.getCause() instanceof Error err) throw err;
+            throw e;
+        }
+    }
+}
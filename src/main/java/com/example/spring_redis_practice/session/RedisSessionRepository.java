@@ -1,9 +1,33 @@
 package com.example.spring_redis_practice.session;
 
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
 
+import com.example.spring_redis_practice.session.ReadCoalescer.Kind;
+import com.example.spring_redis_practice.session.ReadCoalescer.Read;
+import com.example.spring_redis_practice.session.SessionMetrics.Op;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.retry.RetryCallback;
 import org.springframework.retry.support.RetryTemplate;
 import org.springframework.stereotype.Component;
@@ -19,8 +43,42 @@ import org.springframework.stereotype.Component;
  * - 入力エラーなど恒久的失敗は即時例外
  * - 各メソッドの「1回の論理操作」を 1 回の RetryTemplate 実行に収め、冪等性を担保
  * 注意：
- *  - setAttr/putAll は「put → expire」の2操作。どちらかが失敗した場合の再試行で二重実行されても
- *    結果は同一（冪等）になるため安全。
+ *  - コマンドモード（既定）では setAttr/putAll は「put → expire」の2操作。
+ *    どちらかが失敗した場合の再試行で二重実行されても結果は同一（冪等）になるため安全。
+ *  - スクリプトモード（app.session.scripts.enabled=true）では、読み書きとTTL延長を
+ *    SessionScripts の Lua で 1 回の EVALSHA にまとめる（1 RTT・アトミック）。
+ *  - app.session.touch.enabled=true なら、読み取り時の延長は TouchThrottle で間引く
+ *    （自ノードで最近延長済みなら EXPIRE を送らない＝読み取りが書き込みにならない）。
+ *  - app.session.near-cache.enabled=true なら、読み取りは SessionNearCache（ノード内 L1）を先に見る。
+ *    ヒット時は Redis に触れず、延長が必要なときだけ EXPIRE を 1 回送る。
+ *  - 各操作のレイテンシは SessionMetrics（redis.session.op）に記録する（リトライ込みの論理操作単位）。
+ *  - 一括操作（loadMany / invalidateMany / touchMany）は batch.size 件ずつパイプラインで送り、
+ *    リトライもチャンク単位（失敗したチャンクだけを再送）。結果は SID ごとに BatchResult で返す。
+ *  - app.session.user-index.enabled=true なら、userId 属性の書き込み/破棄に合わせて UserSessionIndex
+ *    （userId → SID 集合）を同じ Lua で原子的に更新する。invalidateAllForUser / sessionIdsOf で使う。
+ *  - app.session.replica-reads.enabled=true なら、load/getAttr/ttl をレプリカから読む（SessionReplicaReads）。
+ *    ただし「そのセッションへの書き込みから stickyWindow 以内」（自ノードの記録か、呼び出し側が渡す最終書き込み時刻）
+ *    と「TTL延長が必要な読み取り」はプライマリで行う。touch を有効にしておかないと大半の読み取りがプライマリに残る。
+ *  - app.session.shards.enabled=true なら、セッションキーは SessionShards（複数 Standalone への一貫性ハッシュ）
+ *    の担当ノードへ送る。一括操作はノードごとにまとめてからチャンクに分ける。
+ *  - app.session.coalesce.enabled=true なら、同じセッションへの同時読み取りは ReadCoalescer で 1 回の
+ *    Redis 呼び出し（と 1 回のTTL延長）にまとめる。書き込みの完了後に始めた読み取りは、それ以前の読み取りに相乗りしない。
+ *  - app.session.fallback.enabled=true なら、単一セッションの読み書き（load/getAttr/ttl/setAttr/putAll/write/invalidate）が
+ *    一時的な障害で失敗したとき（ブレーカが開いている間の即失敗を含む）は SessionFallbackStore で受け、復旧後に書き戻す。
+ *    一括操作と user-index の照会は従来どおり失敗を返す。
+ *  - app.session.versioning.enabled=true なら、ハッシュに版（VERSION_FIELD）を持たせ、単一セッションの書き込みは
+ *    すべて SessionScripts.CAS_WRITE 1 回（HSET と EXPIRE が分かれないので、破棄と競合しても TTL の無いキーが残らない）。
+ *    compareAndWrite は期待した版（または「まだ無い」「まだ有る」）のときだけ書き、update は競合したら読み直して
+ *    versioning.maxAttempts 回まで繰り返す。競合時の応答に最新の属性が載るので、再試行に読み取りの往復は要らない。
+ *    setAttr/putAll/write と SessionContext は「まだ有る」条件で書くので、並行リクエストでログアウト（破棄）された
+ *    セッションや期限切れのセッションを復活させない（setAttr/putAll/write は何も書かずに false、SessionContext は
+ *    新しい SID で作り直す）。新規セッションは create（「まだ無い」条件）で作る。
+ *    条件なしで書くのは、障害中にローカルで受けた変更の書き戻しだけ。
+ *  - app.session.compact.enabled=true なら、属性名は SessionHashLayout の別名（短い field 名）で保存し、
+ *    値の大きさを listpack の上限と比べる（超えたら redis.session.oversized に数えるか拒否）。
+ *    別名を有効にする前に書かれたセッションも読める（getAttr は別名の field が無いときだけ元の名前でも引く）。
+ *  - 仮想スレッド（spring.threads.virtual.enabled=true）から呼ばれても、Redis 待ち・バックオフ待ちの間は
+ *    キャリアスレッドを手放す（ここでは synchronized で I/O を囲まない。待ちは j.u.c と sleep のみ）。
  * <p>
  * getExpire() の戻り特性：
  *   -2 : キーが存在しない
@@ -30,76 +88,991 @@ import org.springframework.stereotype.Component;
 public class RedisSessionRepository {
 
     // 15分をデフォルトTTLとする（必要に応じて外出し設定化可）
-    private static final Duration DEFAULT_TTL = Duration.ofMinutes(15);
-    private static final String KEY_PREFIX = "session:";
+    static final Duration DEFAULT_TTL = Duration.ofMinutes(15);
+    static final String KEY_PREFIX = "session:";
+    /** バージョンを入れる field（load などの戻り値には含めない）。 */
+    static final String VERSION_FIELD = "__v";
+    /** compareAndWrite の期待値：存在していれば版は問わない（破棄済みのセッションを作り直さない）。 */
+    public static final long ANY_VERSION = -2;
+    /** CAS_WRITE の期待値：条件なし（障害中の変更の書き戻し専用）。 */
+    private static final long UNCONDITIONAL = -3;
+
+    private static final RedisSerializer<byte[]> RAW = RedisSerializer.byteArray();
+    private static final byte[] TTL_ARG =
+            Long.toString(DEFAULT_TTL.toSeconds()).getBytes(StandardCharsets.UTF_8);
+    private static final byte[] NO_TOUCH_ARG = "0".getBytes(StandardCharsets.UTF_8);
 
     private final RedisTemplate<String, Object> redis;
     private final RetryTemplate retry; // ★ 追加：リトライ器
+    private final boolean useScripts;
+    private final TouchThrottle touch;
+    private final SessionNearCache nearCache;
+    private final SessionMetrics metrics;
+    private final UserSessionIndex userIndex;
+    private final RedisTemplate<String, Object> replica; // null = 常にプライマリ
+    private final WriteWatermark watermark;
+    private final SessionShards shards;
+    private final ReadCoalescer reads;
+    private final SessionFallbackStore fallback;
+    private final SessionProperties.Versioning versioning;
+    private final SessionHashLayout layout;
+    private final int batchSize;
 
     public RedisSessionRepository(RedisTemplate<String, Object> redis, RetryTemplate redisRetryTemplate) {
+        this(redis, redisRetryTemplate, new SessionProperties(), SessionNearCache.disabled(), SessionMetrics.noop(),
+                UserSessionIndex.disabled(), SessionReplicaReads.disabled(), SessionShards.disabled(),
+                SessionFallbackStore.disabled());
+    }
+
+    @Autowired
+    public RedisSessionRepository(RedisTemplate<String, Object> redis, RetryTemplate redisRetryTemplate,
+                                  SessionProperties props, SessionNearCache nearCache, SessionMetrics metrics,
+                                  UserSessionIndex userIndex, SessionReplicaReads replicaReads,
+                                  SessionShards shards, SessionFallbackStore fallback) {
+        if (shards.isEnabled() && (userIndex.isEnabled() || replicaReads.template() != null)) {
+            // 索引は複数キーを 1 つの Lua で更新し、レプリカ振り分けは単一プライマリ前提のため
+            throw new IllegalStateException("app.session.shards cannot be combined with user-index or replica-reads");
+        }
+        if (props.getVersioning().isEnabled() && userIndex.isEnabled()) {
+            // 索引の更新は INDEXED_WRITE（版を扱わない）で行うため
+            throw new IllegalStateException("app.session.versioning cannot be combined with user-index");
+        }
         this.redis = redis;
         this.retry = redisRetryTemplate;
+        this.useScripts = props.getScripts().isEnabled();
+        this.touch = new TouchThrottle(props.getTouch(), DEFAULT_TTL);
+        this.nearCache = nearCache;
+        this.metrics = metrics;
+        this.userIndex = userIndex;
+        this.replica = replicaReads.template();
+        this.watermark = new WriteWatermark(props.getReplicaReads());
+        this.shards = shards;
+        this.reads = new ReadCoalescer(props.getCoalesce().isEnabled(), metrics);
+        this.fallback = fallback;
+        fallback.onReconcile(this::writeBack);
+        this.versioning = props.getVersioning();
+        this.layout = new SessionHashLayout(props.getCompact());
+        this.batchSize = Math.max(1, props.getBatch().getSize());
     }
 
     private String getKey(String sid) { return KEY_PREFIX + sid; }
 
-    /** セッション全属性を取得。取得に成功したらTTL延長（スライディング）。 */
+    /**
+     * セッション全属性を取得。取得に成功したらTTL延長（スライディング）。
+     * L1 や同時読み取りの相乗りが有効な場合、返す Map は他の呼び出しと共有するので変更しないこと。
+     */
     public Map<Object, Object> load(String sid) {
-        final String k = getKey(sid);
-        return retry.execute(ctx -> {
-            // Hash全体をMapで受け取る。存在しない場合は空Mapを返す。
-            Map<Object, Object> m = redis.opsForHash().entries(k);
-            if (m == null || m.isEmpty()) return Map.of();
-            // アクセスがあったので延長（expire失敗もまとめてリトライ対象）
-            redis.expire(k, DEFAULT_TTL);
-            return m;
+        return load(sid, 0L);
+    }
+
+    /**
+     * load の読み取り振り分け付き版。writeWatermark はこのセッションの最終書き込み時刻（エポックミリ秒、不明なら 0）。
+     * 他ノードで書き込んだ直後のリクエスト（SessionFilter の SIDW クッキー）をプライマリへ送るために使う。
+     */
+    public Map<Object, Object> load(String sid, long writeWatermark) {
+        return metrics.record(Op.LOAD, () -> {
+            final String k = getKey(sid);
+            return degradable(k, () -> {
+                if (nearCache.isEnabled()) return loadCached(k, writeWatermark);
+                return loadFromRedis(k, writeWatermark);
+            }, () -> loadLocal(k));
+        });
+    }
+
+    private Map<Object, Object> loadFromRedis(String k, long writeWatermark) {
+        final boolean due = touch.isDue(k);
+        final RedisTemplate<String, Object> from = due ? null : replicaFor(k, writeWatermark);
+        return reads.coalesce(new Read(Kind.LOAD, k, null, from != null), () -> {
+            // L1 に載せるのは実際に読んだスレッドだけ（相乗りした側の読み取り開始時刻は stamp より後になりうる）
+            long stamp = nearCache.stamp(k);
+            Map<Object, Object> result;
+            if (from != null) {
+                result = retry.execute(ctx -> entries(from, k));
+            } else if (useScripts) {
+                result = retry.execute(ctx -> loadByScript(k, due));
+            } else {
+                result = retry.execute(ctx -> {
+                    // Hash全体をMapで受け取る。存在しない場合は空Mapを返す。
+                    RedisTemplate<String, Object> t = redisFor(k);
+                    Map<Object, Object> m = entries(t, k);
+                    if (m.isEmpty()) return Map.of();
+                    // アクセスがあったので延長（expire失敗もまとめてリトライ対象）
+                    if (due) t.expire(k, DEFAULT_TTL);
+                    return m;
+                });
+            }
+            if (due && !result.isEmpty()) touch.touched(k);
+            if (!reads.isEnabled() && !nearCache.isEnabled()) return result;
+            Map<Object, Object> shared = Collections.unmodifiableMap(result);
+            nearCache.put(k, shared, stamp);
+            return shared;
         });
     }
 
     /** 単一属性を取得。値が存在する場合のみTTL延長。 */
     public Object getAttr(String sid, String name) {
-        final String k = getKey(sid);
+        return getAttr(sid, name, 0L);
+    }
+
+    /** getAttr の読み取り振り分け付き版（writeWatermark は load(String, long) と同じ）。 */
+    public Object getAttr(String sid, String name, long writeWatermark) {
+        return metrics.record(Op.GET_ATTR, () -> {
+            final String k = getKey(sid);
+            return degradable(k, () -> getAttrFromRedis(k, name, writeWatermark), () -> loadLocal(k).get(name));
+        });
+    }
+
+    private Object getAttrFromRedis(String k, String name, long writeWatermark) {
+        // L1 有効時は Hash 全体をキャッシュ単位にする（同じセッションの他属性の読み取りもヒットさせる）
+        if (nearCache.isEnabled()) return loadCached(k, writeWatermark).get(name);
+        final boolean due = touch.isDue(k);
+        final RedisTemplate<String, Object> from = due ? null : replicaFor(k, writeWatermark);
+        // 同じセッションの Hash 全体の読み取りが実行中なら、その結果から取り出す
+        Map<Object, Object> running = reads.joinLoad(k, from != null);
+        if (running != null) return running.get(name);
+        return reads.coalesce(new Read(Kind.ATTR, k, name, from != null), () -> {
+            Object value = getField(k, layout.field(name), from, due);
+            if (value == null && layout.legacyField(name) != null) {
+                value = getField(k, layout.legacyField(name), from, due); // 別名を有効にする前に書かれたセッション
+            }
+            if (due && value != null) touch.touched(k);
+            return value;
+        });
+    }
+
+    /** Redis 上の field を 1 つ読む（from が null ならプライマリ。due なら値があれば延長）。 */
+    private Object getField(String k, String field, RedisTemplate<String, Object> from, boolean due) {
+        if (from != null) {
+            return retry.execute(ctx -> from.opsForHash().get(k, field));
+        }
+        if (useScripts) {
+            final byte[] rawField = hashKeySerializer().serialize(field);
+            final byte[] ttlArg = due ? TTL_ARG : NO_TOUCH_ARG;
+            return retry.execute(ctx -> fromHashValue(eval(SessionScripts.GET, k, ttlArg, rawField)));
+        }
         return retry.execute(ctx -> {
-            Object v = redis.opsForHash().get(k, name);
-            if (v != null) redis.expire(k, DEFAULT_TTL);
+            RedisTemplate<String, Object> t = redisFor(k);
+            Object v = t.opsForHash().get(k, field);
+            if (v != null && due) t.expire(k, DEFAULT_TTL);
             return v;
         });
     }
 
-    /** 単一属性の保存。put後にキー全体のTTLを設定/延長。 */
-    public void setAttr(String sid, String name, Object value) {
-        final String k = getKey(sid);
-        retry.execute((RetryCallback<Void, RuntimeException>) ctx -> {
-            redis.opsForHash().put(k, name, value);
-            redis.expire(k, DEFAULT_TTL);
-            return null;
+    /**
+     * 単一属性の保存。put後にキー全体のTTLを設定/延長。
+     * versioning 有効時は既存のセッションにだけ書き、無ければ何も書かずに false（新規作成は create）。それ以外は true。
+     */
+    public boolean setAttr(String sid, String name, Object value) {
+        return metrics.record(Op.SET_ATTR, () -> {
+            final String k = getKey(sid);
+            final Map<String, Object> puts = Collections.singletonMap(name, value);
+            return degradable(k, () -> {
+                if (versioning.isEnabled()) {
+                    if (casWrite(k, ANY_VERSION, puts, List.of()) != null) return false; // 破棄済み・期限切れ
+                } else if (userIndex.affects(puts.keySet())) {
+                    indexedWrite(sid, puts, List.of());
+                } else if (useScripts) {
+                    final Object[] args = {TTL_ARG, hashField(name), hashValue(name, value)};
+                    retry.execute(ctx -> eval(SessionScripts.PUT, k, args));
+                } else {
+                    checkValues(puts);
+                    final String field = layout.field(name);
+                    retry.execute((RetryCallback<Void, RuntimeException>) ctx -> {
+                        RedisTemplate<String, Object> t = redisFor(k);
+                        t.opsForHash().put(k, field, value);
+                        t.expire(k, DEFAULT_TTL);
+                        return null;
+                    });
+                }
+                written(k);
+                return true;
+            }, () -> {
+                writeLocal(k, puts, List.of());
+                return true;
+            });
         });
     }
 
-    /** 複数属性をまとめて保存。保存後にTTL設定/延長。 */
-    public void putAll(String sid, Map<String, Object> values) {
-        final String k = getKey(sid);
-        retry.execute((RetryCallback<Void, RuntimeException>) ctx -> {
-            redis.opsForHash().putAll(k, values);
-            redis.expire(k, DEFAULT_TTL);
-            return null;
+    /**
+     * 複数属性をまとめて保存。保存後にTTL設定/延長。
+     * versioning 有効時は既存のセッションにだけ書き、無ければ何も書かずに false（新規作成は create）。それ以外は true。
+     */
+    public boolean putAll(String sid, Map<String, Object> values) {
+        return metrics.record(Op.PUT_ALL, () -> {
+            final String k = getKey(sid);
+            return degradable(k, () -> {
+                if (versioning.isEnabled()) {
+                    if (values.isEmpty()) return true; // 版だけのハッシュを作らない
+                    if (casWrite(k, ANY_VERSION, values, List.of()) != null) return false; // 破棄済み・期限切れ
+                } else if (userIndex.affects(values.keySet())) {
+                    indexedWrite(sid, values, List.of());
+                } else if (useScripts) {
+                    if (values.isEmpty()) return true; // HSET は field 無しだとエラーになる
+                    final Object[] args = putArgs(values);
+                    retry.execute(ctx -> eval(SessionScripts.PUT, k, args));
+                } else {
+                    checkValues(values);
+                    final Map<String, Object> fields = toFields(values);
+                    retry.execute((RetryCallback<Void, RuntimeException>) ctx -> {
+                        RedisTemplate<String, Object> t = redisFor(k);
+                        t.opsForHash().putAll(k, fields);
+                        t.expire(k, DEFAULT_TTL);
+                        return null;
+                    });
+                }
+                written(k);
+                return true;
+            }, () -> {
+                writeLocal(k, values, List.of());
+                return true;
+            });
+        });
+    }
+
+    /**
+     * 属性の更新・削除とTTL延長を 1 往復でまとめて反映（SessionContext のフラッシュ用）。
+     * スクリプトモードでは WRITE スクリプト 1 回、コマンドモードでは HDEL/HSET/EXPIRE をパイプラインで送る。
+     * versioning 有効時は既存のセッションにだけ書き、無ければ何も書かずに false。それ以外は true。
+     */
+    public boolean write(String sid, Map<String, Object> puts, Collection<String> removes) {
+        return metrics.record(Op.WRITE, () -> {
+            if (puts.isEmpty() && removes.isEmpty()) return true;
+            final String k = getKey(sid);
+            return degradable(k, () -> writeToRedis(sid, ANY_VERSION, puts, removes), () -> {
+                writeLocal(k, puts, removes);
+                return true;
+            });
         });
     }
 
+    /**
+     * expectedVersion は versioning 有効時だけ使う（ANY_VERSION か、書き戻し用の UNCONDITIONAL）。
+     * 条件を満たさず書かなかったら false。
+     */
+    private boolean writeToRedis(String sid, long expectedVersion, Map<String, Object> puts, Collection<String> removes) {
+        final String k = getKey(sid);
+        if (versioning.isEnabled()) {
+            if (casWrite(k, expectedVersion, puts, removes) != null) return false; // 破棄済み・期限切れ
+        } else if (userIndex.affects(puts.keySet()) || userIndex.affects(removes)) {
+            indexedWrite(sid, puts, removes);
+        } else if (useScripts) {
+            final Object[] args = writeArgs(puts, removes);
+            retry.execute(ctx -> eval(SessionScripts.WRITE, k, args));
+        } else {
+            final byte[] rawKey = rawKey(k);
+            final byte[][] rawRemoves =
+                    layout.removedFields(removes).stream().map(this::rawField).toArray(byte[][]::new);
+            final Map<byte[], byte[]> rawPuts = new LinkedHashMap<>(puts.size());
+            puts.forEach((name, value) -> rawPuts.put(hashField(name), hashValue(name, value)));
+            retry.execute(ctx -> redisFor(k).executePipelined((RedisCallback<Object>) connection -> {
+                if (rawRemoves.length > 0) connection.hashCommands().hDel(rawKey, rawRemoves);
+                if (!rawPuts.isEmpty()) connection.hashCommands().hMSet(rawKey, rawPuts);
+                connection.keyCommands().expire(rawKey, DEFAULT_TTL.toSeconds());
+                return null;
+            }));
+        }
+        written(k);
+        return true;
+    }
+
+    /** 書き込み成功後の後始末（延長済みの記録・書き込み時刻・相乗りの切り離し・L1 の破棄）。 */
+    private void written(String k) {
+        touch.touched(k);
+        watermark.written(k);
+        reads.forget(k);
+        nearCache.evict(k);
+    }
+
     /** セッション破棄。ログアウト時などに使用。 */
     public void invalidate(String sid) {
-        final String k = getKey(sid);
-        retry.execute((RetryCallback<Void, RuntimeException>) ctx -> {
-            redis.delete(k);
-            return null;
+        metrics.record(Op.INVALIDATE, () -> {
+            final String k = getKey(sid);
+            degradable(k, () -> invalidateInRedis(sid), () -> {
+                fallback.invalidate(k);
+                reads.forget(k);
+            });
         });
     }
 
+    private void invalidateInRedis(String sid) {
+        final String k = getKey(sid);
+        if (userIndex.isEnabled()) {
+            final byte[] rawSid = UserSessionIndex.utf8(sid);
+            final byte[] prefix = UserSessionIndex.utf8(UserSessionIndex.USER_KEY_PREFIX);
+            retry.execute(ctx -> eval(UserSessionIndex.UNINDEX, List.of(k, UserSessionIndex.REVERSE_KEY),
+                    rawSid, prefix));
+        } else {
+            retry.execute((RetryCallback<Void, RuntimeException>) ctx -> {
+                redisFor(k).delete(k);
+                return null;
+            });
+        }
+        touch.forget(k);
+        watermark.written(k);
+        reads.forget(k);
+        nearCache.evict(k);
+    }
+
     /** 残りTTLの確認（負値やnullなら Duration.ZERO を返す）。 */
     public Duration ttl(String sid) {
+        return ttl(sid, 0L);
+    }
+
+    /** ttl の読み取り振り分け付き版（writeWatermark は load(String, long) と同じ）。 */
+    public Duration ttl(String sid, long writeWatermark) {
+        return metrics.record(Op.TTL, () -> {
+            final String k = getKey(sid);
+            return degradable(k, () -> {
+                final RedisTemplate<String, Object> replicaOrNull = replicaFor(k, writeWatermark);
+                final RedisTemplate<String, Object> from = replicaOrNull != null ? replicaOrNull : redisFor(k);
+                Long sec = retry.execute(ctx -> from.getExpire(k));
+                if (sec == null || sec < 0) return Duration.ZERO; // -2=キーなし, -1=TTLなし（=永続）
+                return Duration.ofSeconds(sec);
+            }, () -> fallback.ttl(k));
+        });
+    }
+
+    /**
+     * 新しいセッションを作る（SID を発行した直後の最初の書き込み）。
+     * versioning 有効時は「まだ無い」ときだけ書き、既に有れば何も書かずに false。無効時は putAll と同じで常に true。
+     */
+    public boolean create(String sid, Map<String, Object> values) {
+        if (values.isEmpty()) throw new IllegalArgumentException("A new session needs at least one attribute");
+        if (!versioning.isEnabled()) {
+            putAll(sid, values);
+            return true;
+        }
+        return metrics.record(Op.CREATE, () -> {
+            final String k = getKey(sid);
+            return degradable(k, () -> {
+                if (casWrite(k, VersionedSession.ABSENT, values, List.of()) != null) return false;
+                written(k);
+                return true;
+            }, () -> {
+                writeLocal(k, values, List.of());
+                return true;
+            });
+        });
+    }
+
+    // ---- バージョン付きの書き込み（app.session.versioning）----
+
+    /** 書き込みごとに版を上げているか（SessionContext が条件付きで書くかの判断に使う）。 */
+    public boolean isVersioned() { return versioning.isEnabled(); }
+
+    /** 属性と版を 1 往復で読む（TTL延長も行う）。L1・レプリカ・相乗りは使わず、常にプライマリから読む。要 versioning。 */
+    public VersionedSession loadVersioned(String sid) {
+        requireVersioning();
+        return metrics.record(Op.LOAD_VERSIONED, () -> {
+            final String k = getKey(sid);
+            return degradable(k, () -> {
+                final boolean due = touch.isDue(k);
+                VersionedSession s = retry.execute(ctx -> versioned(eval(SessionScripts.LOAD, k, due ? TTL_ARG : NO_TOUCH_ARG)));
+                if (due && s.exists()) touch.touched(k);
+                return s;
+            }, () -> {
+                Map<Object, Object> local = loadLocal(k);
+                return new VersionedSession(local, local.isEmpty() ? VersionedSession.ABSENT : 0);
+            });
+        });
+    }
+
+    /**
+     * 版が expectedVersion のときだけ属性の更新・削除を反映し、版を上げて TTL を延長する（CAS_WRITE 1 回）。
+     * expectedVersion は loadVersioned の版、VersionedSession.ABSENT（まだ無いこと＝新規作成）、
+     * ANY_VERSION（まだ有ること）のいずれか。条件を満たさなければ何も書かずに false。要 versioning。
+     * 一時的な障害でローカルへ退避した場合は、版を確かめずに書いて true を返す。
+     */
+    public boolean compareAndWrite(String sid, long expectedVersion, Map<String, Object> puts,
+                                   Collection<String> removes) {
+        requireVersioning();
+        return metrics.record(Op.COMPARE_AND_WRITE, () -> {
+            final String k = getKey(sid);
+            return degradable(k, () -> {
+                if (casWrite(k, expectedVersion, puts, removes) != null) return false;
+                written(k);
+                return true;
+            }, () -> {
+                writeLocal(k, puts, removes);
+                return true;
+            });
+        });
+    }
+
+    /**
+     * 読み取り → change → 条件付き書き込みを、競合したら最新の属性でやり直す（read-modify-write）。
+     * change は現在の属性（読み取り専用）から変更後の属性を作って返す。差分だけを書き、差分が無ければ書かない。
+     * セッションが無い・途中で破棄された場合は false（作り直さない）。
+     * versioning.maxAttempts 回続けて競合したら OptimisticLockingFailureException。要 versioning。
+     * change は競合のたびに呼び直されるので、副作用を持たせないこと。
+     */
+    public boolean update(String sid, UnaryOperator<Map<Object, Object>> change) {
+        requireVersioning();
+        return metrics.record(Op.UPDATE, () -> {
+            final String k = getKey(sid);
+            return degradable(k, () -> updateInRedis(k, change), () -> {
+                Map<Object, Object> current = loadLocal(k);
+                if (current.isEmpty()) return false;
+                Map<String, Object> puts = new LinkedHashMap<>();
+                Set<String> removes = new LinkedHashSet<>();
+                diff(current, change.apply(current), puts, removes);
+                if (!puts.isEmpty() || !removes.isEmpty()) writeLocal(k, puts, removes);
+                return true;
+            });
+        });
+    }
+
+    private boolean updateInRedis(String k, UnaryOperator<Map<Object, Object>> change) {
+        VersionedSession current = retry.execute(ctx -> versioned(eval(SessionScripts.LOAD, k, NO_TOUCH_ARG)));
+        int maxAttempts = Math.max(1, versioning.getMaxAttempts());
+        for (int attempt = 1; ; attempt++) {
+            if (!current.exists()) return false;
+            Map<String, Object> puts = new LinkedHashMap<>();
+            Set<String> removes = new LinkedHashSet<>();
+            diff(current.attributes(), change.apply(current.attributes()), puts, removes);
+            if (puts.isEmpty() && removes.isEmpty()) return true;
+            VersionedSession conflict = casWrite(k, current.version(), puts, removes);
+            if (conflict == null) {
+                written(k);
+                return true;
+            }
+            if (!conflict.exists()) return false;
+            if (attempt >= maxAttempts) {
+                throw new OptimisticLockingFailureException(
+                        "Session " + k + " changed concurrently on " + attempt + " attempts");
+            }
+            metrics.conflict();
+            backOffAfterConflict(attempt);
+            current = conflict; // 競合時の応答に最新の版と属性が載っている
+        }
+    }
+
+    /**
+     * CAS_WRITE を 1 回実行する。適用されたら null（後始末の written は呼び出し側）、条件を満たさなければその時点のセッション。
+     * 書き込みトークンは論理操作ごとに 1 つ（RetryTemplate の再送では同じもの）なので、応答が失われた書き込みを二重に適用しない。
+     */
+    private VersionedSession casWrite(String k, long expectedVersion, Map<String, Object> puts,
+                                      Collection<String> removes) {
+        final Object[] args = casArgs(expectedVersion, puts, removes);
+        List<?> reply = retry.execute(ctx -> eval(SessionScripts.CAS_WRITE, k, args));
+        if (((Long) reply.get(0)) == 1L) return null;
+        nearCache.evict(k); // 自ノードの L1 も古い可能性がある
+        if ((Long) reply.get(1) == VersionedSession.ABSENT) return new VersionedSession(Map.of(), VersionedSession.ABSENT);
+        return versioned((List<?>) reply.get(2));
+    }
+
+    /** 競合後の待ち。試行ごとに上限を倍にし、その範囲で一様に選ぶ（同時に競合した書き手がずれて再試行する）。 */
+    private void backOffAfterConflict(int attempt) {
+        long initial = versioning.getBackoffInitial().toNanos();
+        long ceiling = Math.min(versioning.getBackoffMax().toNanos(), initial << Math.min(attempt - 1, 20));
+        long sleep = ThreadLocalRandom.current().nextLong(ceiling + 1);
+        if (sleep <= 0) return;
+        try {
+            TimeUnit.NANOSECONDS.sleep(sleep);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new OptimisticLockingFailureException("Interrupted while retrying a session update", e);
+        }
+    }
+
+    /** current → next の差分（値が変わった/増えた属性を puts、無くなった属性を removes）。 */
+    private static void diff(Map<Object, Object> current, Map<Object, Object> next,
+                             Map<String, Object> puts, Set<String> removes) {
+        next.forEach((name, value) -> {
+            if (!current.containsKey(name) || !Objects.equals(current.get(name), value)) {
+                puts.put(String.valueOf(name), value);
+            }
+        });
+        current.keySet().forEach(name -> {
+            if (!next.containsKey(name)) removes.add(String.valueOf(name));
+        });
+    }
+
+    private void requireVersioning() {
+        if (!versioning.isEnabled()) throw new IllegalStateException("app.session.versioning.enabled is false");
+    }
+
+    // ---- 障害時の退避（SessionFallbackStore）----
+
+    /**
+     * Redis で実行し、一時的な障害で失敗したら（または書き戻し待ちの変更があるセッションなら）ローカルで実行する。
+     * 退避が無効なら remote をそのまま実行する。
+     */
+    private <T> T degradable(String k, Supplier<T> remote, Supplier<T> local) {
+        if (fallback.holds(k)) return local.get();
+        try {
+            return remote.get();
+        } catch (RuntimeException e) {
+            if (!fallback.takesOver(e)) throw e;
+            try {
+                return local.get();
+            } catch (RuntimeException rejected) {
+                // ローカルも満杯：元の Redis の失敗も辿れるようにする
+                rejected.addSuppressed(e);
+                throw rejected;
+            }
+        }
+    }
+
+    private void degradable(String k, Runnable remote, Runnable local) {
+        degradable(k, () -> {
+            remote.run();
+            return null;
+        }, () -> {
+            local.run();
+            return null;
+        });
+    }
+
+    /** ローカルのセッション。無ければ L1 に残っているもの（障害前のスナップショット）、それも無ければ空。 */
+    private Map<Object, Object> loadLocal(String k) {
+        Map<String, byte[]> raw = fallback.load(k);
+        if (raw == null) {
+            Map<Object, Object> cached = nearCache.peek(k);
+            return cached != null ? cached : Map.of();
+        }
+        Map<Object, Object> m = new LinkedHashMap<>(raw.size());
+        raw.forEach((name, value) -> m.put(name, fromHashValue(value)));
+        return Collections.unmodifiableMap(m);
+    }
+
+    private void writeLocal(String k, Map<String, Object> puts, Collection<String> removes) {
+        Map<String, byte[]> rawPuts = new LinkedHashMap<>(puts.size());
+        puts.forEach((name, value) -> rawPuts.put(name, hashValue(name, value)));
+        fallback.write(k, rawPuts, removes, () -> {
+            Map<Object, Object> cached = nearCache.peek(k);
+            if (cached == null) return null;
+            Map<String, byte[]> base = new LinkedHashMap<>(cached.size());
+            cached.forEach((name, value) -> base.put(String.valueOf(name), hashValue(value)));
+            return base;
+        });
+        reads.forget(k);
+    }
+
+    /** 障害中の変更を Redis へ書き戻す（SessionFallbackStore の書き戻しスレッドから呼ばれる）。 */
+    private void writeBack(SessionFallbackStore.Change change) {
+        String sid = change.key().substring(KEY_PREFIX.length());
+        if (change.invalidate()) {
+            invalidateInRedis(sid);
+            return;
+        }
+        Map<String, Object> puts = new LinkedHashMap<>(change.puts().size());
+        change.puts().forEach((name, value) -> puts.put(name, fromHashValue(value)));
+        // 障害中に作られたセッションもあるので条件なしで書く（障害中の破棄は invalidate として届く）
+        writeToRedis(sid, UNCONDITIONAL, puts, change.removes());
+    }
+
+    /**
+     * 複数セッションの全属性をまとめて取得（HGETALL をパイプラインで送る）。存在しない SID は空Map。
+     * 延長が必要なものだけ、続けて EXPIRE をパイプラインで送る（チャンクあたり最大 2 RTT）。L1 は使わない。
+     */
+    public BatchResult<Map<Object, Object>> loadMany(Collection<String> sids) {
+        return metrics.record(Op.LOAD_MANY, () -> batched(sids, keys -> {
+            final List<byte[]> rawKeys = keys.stream().map(this::rawKey).toList();
+            List<Object> replies = rawPipelined(redisFor(keys),
+                    connection -> rawKeys.forEach(connection.hashCommands()::hGetAll));
+            List<Map<Object, Object>> maps = new ArrayList<>(keys.size());
+            List<String> due = new ArrayList<>();
+            for (int i = 0; i < keys.size(); i++) {
+                Map<Object, Object> m = fromRawHash(replies.get(i));
+                maps.add(m);
+                if (!m.isEmpty() && touch.isDue(keys.get(i))) due.add(keys.get(i));
+            }
+            if (!due.isEmpty()) {
+                expirePipelined(due);
+                due.forEach(touch::touched);
+            }
+            return maps;
+        }));
+    }
+
+    /** 複数セッションをまとめて破棄（DEL をパイプラインで送る）。値は「キーが存在して消したか」。 */
+    public BatchResult<Boolean> invalidateMany(Collection<String> sids) {
+        return metrics.record(Op.INVALIDATE_MANY, () -> deleteMany(sids));
+    }
+
+    /**
+     * ユーザの全セッションを破棄（全端末からログアウト）。要 user-index。
+     * 手間はそのユーザのセッション数に比例する（索引の SMEMBERS 1 回＋invalidateMany と同じパイプライン）。
+     */
+    public BatchResult<Boolean> invalidateAllForUser(String userId) {
+        return metrics.record(Op.INVALIDATE_USER, () -> {
+            requireUserIndex();
+            final byte[] userKey = rawKey(UserSessionIndex.userKey(userId));
+            Set<String> sids = retry.execute(ctx -> redis.execute((RedisCallback<Set<String>>) connection ->
+                    decodeSids(connection.setCommands().sMembers(userKey))));
+            // 索引の掃除は deleteMany 側で行う（空になった Set は Redis が消す）
+            return deleteMany(sids);
+        });
+    }
+
+    /**
+     * ユーザの有効なセッション ID 一覧。要 user-index。
+     * 期限切れ通知の取りこぼしに備え、存在確認（EXISTS のパイプライン）で消えていたものは索引から外す。
+     */
+    public Set<String> sessionIdsOf(String userId) {
+        return metrics.record(Op.USER_SESSIONS, () -> {
+            requireUserIndex();
+            final byte[] userKey = rawKey(UserSessionIndex.userKey(userId));
+            final byte[] reverseKey = rawKey(UserSessionIndex.REVERSE_KEY);
+            return retry.execute(ctx -> {
+                List<String> sids = new ArrayList<>(redis.execute((RedisCallback<Set<String>>) connection ->
+                        decodeSids(connection.setCommands().sMembers(userKey))));
+                if (sids.isEmpty()) return Set.<String>of();
+                List<Object> exists = redis.executePipelined((RedisCallback<Object>) connection -> {
+                    sids.forEach(sid -> connection.keyCommands().exists(rawKey(getKey(sid))));
+                    return null;
+                }, RAW);
+                Set<String> live = new LinkedHashSet<>();
+                List<byte[]> stale = new ArrayList<>();
+                for (int i = 0; i < sids.size(); i++) {
+                    if (Boolean.TRUE.equals(exists.get(i))) live.add(sids.get(i));
+                    else stale.add(UserSessionIndex.utf8(sids.get(i)));
+                }
+                if (!stale.isEmpty()) {
+                    final byte[][] staleSids = stale.toArray(byte[][]::new);
+                    redis.executePipelined((RedisCallback<Object>) connection -> {
+                        connection.setCommands().sRem(userKey, staleSids);
+                        connection.hashCommands().hDel(reverseKey, staleSids);
+                        return null;
+                    }, RAW);
+                }
+                return live;
+            });
+        });
+    }
+
+    /** ユーザの有効なセッション数（sessionIdsOf と同じく掃除込み）。 */
+    public int countSessions(String userId) {
+        return sessionIdsOf(userId).size();
+    }
+
+    /**
+     * DEL のパイプライン。user-index 有効時は、チャンクごとに逆引き（HMGET）してから
+     * DEL と同じパイプラインで索引からも外す（チャンクあたり 2 RTT）。
+     */
+    private BatchResult<Boolean> deleteMany(Collection<String> sids) {
+        return batched(sids, keys -> {
+            final List<byte[]> rawKeys = keys.stream().map(this::rawKey).toList();
+            final byte[][] rawSids = keys.stream()
+                    .map(k -> UserSessionIndex.utf8(k.substring(KEY_PREFIX.length())))
+                    .toArray(byte[][]::new);
+            final byte[] reverseKey = rawKey(UserSessionIndex.REVERSE_KEY);
+            final List<byte[]> users = userIndex.isEnabled()
+                    ? redis.execute((RedisCallback<List<byte[]>>) connection ->
+                            connection.hashCommands().hMGet(reverseKey, rawSids))
+                    : List.of();
+            List<Object> replies = redisFor(keys).executePipelined((RedisCallback<Object>) connection -> {
+                rawKeys.forEach(k -> connection.keyCommands().del(k));
+                for (int i = 0; i < users.size(); i++) {
+                    byte[] user = users.get(i);
+                    if (user == null) continue;
+                    connection.setCommands().sRem(
+                            rawKey(UserSessionIndex.userKey(new String(user, StandardCharsets.UTF_8))), rawSids[i]);
+                }
+                if (!users.isEmpty()) connection.hashCommands().hDel(reverseKey, rawSids);
+                return null;
+            }, RAW);
+            keys.forEach(k -> {
+                touch.forget(k);
+                watermark.written(k);
+                reads.forget(k);
+                nearCache.evict(k);
+            });
+            return replies.subList(0, keys.size()).stream().map(r -> r instanceof Long n && n > 0).toList();
+        });
+    }
+
+    /** 複数セッションのTTLをまとめて延長（EXPIRE をパイプラインで送る）。値は「キーが存在したか」。 */
+    public BatchResult<Boolean> touchMany(Collection<String> sids) {
+        return metrics.record(Op.TOUCH_MANY, () -> batched(sids, keys -> {
+            List<Boolean> alive = expirePipelined(keys);
+            for (int i = 0; i < keys.size(); i++) {
+                if (alive.get(i)) touch.touched(keys.get(i));
+                else nearCache.evict(keys.get(i));
+            }
+            return alive;
+        }));
+    }
+
+    /**
+     * SID を重複除去し（シャーディング時は担当ノードごとにまとめてから）batchSize 件ずつに分け、チャンクごとに 1 回の RetryTemplate 実行で処理する。
+     * リトライしても失敗したチャンクは、その SID だけ failures に入れて次のチャンクへ進む。
+     * call はキー（"session:{sid}"）のリストを受け取り、同じ順序で結果を返すこと。
+     */
+    private <T> BatchResult<T> batched(Collection<String> sids, Function<List<String>, List<T>> call) {
+        BatchResult<T> result = new BatchResult<>();
+        for (List<String> unique : groupByShard(new LinkedHashSet<>(sids))) {
+            for (int from = 0; from < unique.size(); from += batchSize) {
+                List<String> chunk = unique.subList(from, Math.min(from + batchSize, unique.size()));
+                List<String> keys = chunk.stream().map(this::getKey).toList();
+                try {
+                    List<T> values = retry.execute(ctx -> call.apply(keys));
+                    for (int i = 0; i < chunk.size(); i++) result.succeeded(chunk.get(i), values.get(i));
+                } catch (RuntimeException e) {
+                    chunk.forEach(sid -> result.failed(sid, e));
+                }
+            }
+        }
+        return result;
+    }
+
+    /** シャーディング無効なら入力順のまま 1 グループ。 */
+    private Collection<List<String>> groupByShard(Collection<String> sids) {
+        if (!shards.isEnabled()) return List.of(new ArrayList<>(sids));
+        Map<String, List<String>> groups = new LinkedHashMap<>();
+        sids.forEach(sid -> groups.computeIfAbsent(shards.nodeFor(getKey(sid)), n -> new ArrayList<>()).add(sid));
+        return groups.values();
+    }
+
+    /** キーの担当ノードの RedisTemplate（シャーディング無効なら既定のもの）。 */
+    private RedisTemplate<String, Object> redisFor(String k) {
+        return shards.isEnabled() ? shards.route(k) : redis;
+    }
+
+    /** 同じノードのキーの並び（batched のチャンク）用。移行中なら各キーを先に新しい担当へ移す。 */
+    private RedisTemplate<String, Object> redisFor(List<String> keys) {
+        if (!shards.isEnabled()) return redis;
+        RedisTemplate<String, Object> t = null;
+        for (String k : keys) t = shards.route(k);
+        return t;
+    }
+
+    private List<Boolean> expirePipelined(List<String> keys) {
+        final List<byte[]> rawKeys = keys.stream().map(this::rawKey).toList();
+        final long seconds = DEFAULT_TTL.toSeconds();
+        List<Object> replies = redisFor(keys).executePipelined((RedisCallback<Object>) connection -> {
+            rawKeys.forEach(k -> connection.keyCommands().expire(k, seconds));
+            return null;
+        }, RAW);
+        return replies.stream().map(Boolean.TRUE::equals).toList();
+    }
+
+    /** レプリカから読んでよければその RedisTemplate、プライマリから読むべきなら null。 */
+    private RedisTemplate<String, Object> replicaFor(String k, long writeWatermark) {
+        if (replica == null || watermark.usePrimary(k, writeWatermark)) return null;
+        return replica;
+    }
+
+    /** 読み取りをレプリカへ振り分けているか（SessionFilter が書き込み時刻のクッキーを出すかの判断に使う）。 */
+    public boolean routesReadsToReplicas() { return replica != null; }
+
+    /** user-index 対象の属性を含む書き込み。スクリプト/コマンドモードに関わらず INDEXED_WRITE 1 回。 */
+    private void indexedWrite(String sid, Map<String, Object> puts, Collection<String> removes) {
         final String k = getKey(sid);
-        Long sec = retry.execute(ctx -> redis.getExpire(k));
-        if (sec == null || sec < 0) return Duration.ZERO; // -2=キーなし, -1=TTLなし（=永続）
-        return Duration.ofSeconds(sec);
+        final String attr = userIndex.attribute();
+        final String userId = puts.containsKey(attr) && puts.get(attr) != null ? String.valueOf(puts.get(attr)) : "";
+        final Collection<String> removedFields = layout.removedFields(removes);
+        List<Object> args = new ArrayList<>(5 + removedFields.size() + puts.size() * 2);
+        args.add(TTL_ARG);
+        args.add(UserSessionIndex.utf8(sid));
+        args.add(UserSessionIndex.utf8(UserSessionIndex.USER_KEY_PREFIX));
+        args.add(UserSessionIndex.utf8(userId));
+        args.add(Integer.toString(removedFields.size()).getBytes(StandardCharsets.UTF_8));
+        removedFields.forEach(field -> args.add(rawField(field)));
+        puts.forEach((name, value) -> {
+            args.add(hashField(name));
+            args.add(hashValue(name, value));
+        });
+        final Object[] argv = args.toArray();
+        retry.execute(ctx -> eval(UserSessionIndex.INDEXED_WRITE, List.of(k, UserSessionIndex.REVERSE_KEY), argv));
+    }
+
+    private void requireUserIndex() {
+        if (!userIndex.isEnabled()) throw new IllegalStateException("app.session.user-index.enabled is false");
+    }
+
+    private static Set<String> decodeSids(Set<byte[]> raw) {
+        if (raw == null) return Set.of();
+        Set<String> sids = new LinkedHashSet<>(raw.size());
+        raw.forEach(b -> sids.add(new String(b, StandardCharsets.UTF_8)));
+        return sids;
+    }
+
+    /**
+     * L1 経由の読み取り。ヒット時は延長が必要なときだけ EXPIRE を送る。
+     * EXPIRE が false（キーが既に消えている）なら L1 を捨てて空を返す。
+     */
+    private Map<Object, Object> loadCached(String k, long writeWatermark) {
+        Map<Object, Object> cached = nearCache.get(k);
+        if (cached != null) {
+            if (!touch.isDue(k)) return cached;
+            Boolean alive = reads.coalesce(new Read(Kind.TOUCH, k, null, false),
+                    () -> retry.execute(ctx -> redisFor(k).expire(k, DEFAULT_TTL)));
+            if (Boolean.TRUE.equals(alive)) {
+                touch.touched(k);
+                return cached;
+            }
+            nearCache.evict(k);
+            return Map.of();
+        }
+        return loadFromRedis(k, writeWatermark);
+    }
+
+    // ---- スクリプトモード用のヘルパ ----
+    // 引数/戻り値は byte[] のまま受け渡し、field/value の (デ)シリアライズは
+    // RedisTemplate に設定された HashKey/HashValue シリアライザで行う（コマンドモードと同じ表現）。
+
+    /** 結果が byte[]（または byte[] のリスト）のまま返るよう、引数/結果とも素通しで実行する。 */
+    private <T> T eval(RedisScript<T> script, String k, Object... args) {
+        return eval(script, List.of(k), args);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private <T> T eval(RedisScript<T> script, List<String> keys, Object... args) {
+        return redisFor(keys.get(0)).execute(script, RAW, (RedisSerializer<T>) (RedisSerializer) RAW, keys, args);
+    }
+
+    private Map<Object, Object> loadByScript(String k, boolean touch) {
+        return versioned(eval(SessionScripts.LOAD, k, touch ? TTL_ARG : NO_TOUCH_ARG)).attributes();
+    }
+
+    /** [field, value, ...] の HGETALL 応答を属性と版に分ける（版の field は属性に含めない）。 */
+    private VersionedSession versioned(List<?> flat) {
+        if (flat == null || flat.isEmpty()) return new VersionedSession(Map.of(), VersionedSession.ABSENT);
+        Map<Object, Object> m = new LinkedHashMap<>(flat.size());
+        long version = 0;
+        for (int i = 0; i + 1 < flat.size(); i += 2) {
+            String field = String.valueOf(hashKeySerializer().deserialize((byte[]) flat.get(i)));
+            if (VERSION_FIELD.equals(field)) version = parseVersion((byte[]) flat.get(i + 1));
+            else layout.put(m, field, fromHashValue((byte[]) flat.get(i + 1)));
+        }
+        return new VersionedSession(m, version);
+    }
+
+    /** 版の値 "版:トークン" から版を取り出す。 */
+    private static long parseVersion(byte[] raw) {
+        String v = new String(raw, StandardCharsets.UTF_8);
+        int colon = v.indexOf(':');
+        return Long.parseLong(colon < 0 ? v : v.substring(0, colon));
+    }
+
+    /**
+     * HGETALL の結果を属性 Map にする（版の field は含めない）。
+     * versioning 有効時は版の値（"版:トークン"）を値のシリアライザに通せないので、素のバイト列で受けて field ごとに変換する。
+     */
+    private Map<Object, Object> entries(RedisTemplate<String, Object> t, String k) {
+        if (!versioning.isEnabled()) {
+            Map<Object, Object> m = t.opsForHash().entries(k);
+            if (m == null || m.isEmpty()) return Map.of();
+            if (!layout.isEnabled() && !m.containsKey(VERSION_FIELD)) return m;
+            Map<Object, Object> attrs = new LinkedHashMap<>(m.size());
+            m.forEach((field, value) -> {
+                if (!VERSION_FIELD.equals(field)) layout.put(attrs, String.valueOf(field), value);
+            });
+            return attrs;
+        }
+        final byte[] rawKey = rawKey(k);
+        return fromRawHash(t.execute((RedisCallback<Map<byte[], byte[]>>) c -> c.hashCommands().hGetAll(rawKey)));
+    }
+
+    /**
+     * パイプラインの応答を接続が返したまま（HGETALL なら byte[] の Map）受け取る。
+     * executePipelined は値のシリアライザに RAW を渡しても Map の応答を Hash のシリアライザで変換してしまうため、
+     * Hash の応答を素のバイト列で扱いたいときはこちらを使う。
+     */
+    static List<Object> rawPipelined(RedisTemplate<String, Object> t, Consumer<RedisConnection> commands) {
+        return t.execute((RedisCallback<List<Object>>) connection -> {
+            connection.openPipeline();
+            try {
+                commands.accept(connection);
+            } catch (RuntimeException e) {
+                connection.closePipeline(); // 送りかけたコマンドの応答を捨てて接続を通常状態に戻す
+                throw e;
+            }
+            return connection.closePipeline();
+        });
+    }
+
+    /** パイプラインの HGETALL 応答（byte[] の Map）を属性 Map に戻す。 */
+    private Map<Object, Object> fromRawHash(Object reply) {
+        if (!(reply instanceof Map<?, ?> raw) || raw.isEmpty()) return Map.of();
+        Map<Object, Object> m = new LinkedHashMap<>(raw.size());
+        raw.forEach((rawField, value) -> {
+            String field = String.valueOf(hashKeySerializer().deserialize((byte[]) rawField));
+            if (!VERSION_FIELD.equals(field)) layout.put(m, field, fromHashValue((byte[]) value));
+        });
+        return m;
+    }
+
+    private Object[] putArgs(Map<String, Object> values) {
+        List<Object> args = new ArrayList<>(1 + values.size() * 2);
+        args.add(TTL_ARG);
+        values.forEach((name, value) -> {
+            args.add(hashField(name));
+            args.add(hashValue(name, value));
+        });
+        return args.toArray();
+    }
+
+    private Object[] writeArgs(Map<String, Object> puts, Collection<String> removes) {
+        final Collection<String> removedFields = layout.removedFields(removes);
+        List<Object> args = new ArrayList<>(2 + removedFields.size() + puts.size() * 2);
+        args.add(TTL_ARG);
+        args.add(Integer.toString(removedFields.size()).getBytes(StandardCharsets.UTF_8));
+        removedFields.forEach(field -> args.add(rawField(field)));
+        puts.forEach((name, value) -> {
+            args.add(hashField(name));
+            args.add(hashValue(name, value));
+        });
+        return args.toArray();
+    }
+
+    private Object[] casArgs(long expectedVersion, Map<String, Object> puts, Collection<String> removes) {
+        final Collection<String> removedFields = layout.removedFields(removes);
+        List<Object> args = new ArrayList<>(5 + removedFields.size() + puts.size() * 2);
+        args.add(TTL_ARG);
+        args.add(Long.toString(expectedVersion).getBytes(StandardCharsets.UTF_8));
+        args.add(rawField(VERSION_FIELD));
+        args.add(Long.toHexString(ThreadLocalRandom.current().nextLong()).getBytes(StandardCharsets.UTF_8));
+        args.add(Integer.toString(removedFields.size()).getBytes(StandardCharsets.UTF_8));
+        removedFields.forEach(field -> args.add(rawField(field)));
+        puts.forEach((name, value) -> {
+            args.add(hashField(name));
+            args.add(hashValue(name, value));
+        });
+        return args.toArray();
+    }
+
+    @SuppressWarnings("unchecked")
+    private byte[] rawKey(String k) { return ((RedisSerializer<String>) redis.getKeySerializer()).serialize(k); }
+
+    /** 属性名の field（compact 有効時は別名）。 */
+    private byte[] hashField(String name) { return rawField(layout.field(name)); }
+
+    private byte[] rawField(String field) { return hashKeySerializer().serialize(field); }
+
+    private byte[] hashValue(Object value) { return hashValueSerializer().serialize(value); }
+
+    /** 書き込む値。compact 有効時は大きさも確かめる。 */
+    private byte[] hashValue(String name, Object value) {
+        byte[] raw = hashValue(value);
+        if (layout.checkValue(name, raw)) metrics.oversized();
+        return raw;
+    }
+
+    /** コマンドモード（RedisTemplate に値のシリアライズを任せる経路）用の値の確認。 */
+    private void checkValues(Map<String, Object> values) {
+        if (layout.isEnabled()) values.forEach(this::hashValue);
+    }
+
+    /** 属性名 → field 名に置き換えた Map（compact 無効ならそのまま）。 */
+    private Map<String, Object> toFields(Map<String, Object> values) {
+        if (!layout.isEnabled()) return values;
+        Map<String, Object> fields = new LinkedHashMap<>(values.size());
+        values.forEach((name, value) -> fields.put(layout.field(name), value));
+        return fields;
+    }
+
+    private Object fromHashValue(byte[] raw) { return raw == null ? null : hashValueSerializer().deserialize(raw); }
+
+    @SuppressWarnings("unchecked")
+    private RedisSerializer<Object> hashKeySerializer() {
+        return (RedisSerializer<Object>) redis.getHashKeySerializer();
+    }
+
+    @SuppressWarnings("unchecked")
+    private RedisSerializer<Object> hashValueSerializer() {
+        return (RedisSerializer<Object>) redis.getHashValueSerializer();
     }
 }
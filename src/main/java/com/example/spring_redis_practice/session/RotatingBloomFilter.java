@@ -0,0 +1,123 @@
+package com.example.spring_redis_practice.session;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
+
+/**
+ * 世代を回す Bloom フィルタ（「最近 add されたもの」の近似集合）。
+ * ・add は現世代に入れ、mightContain は現世代か前世代にあれば true
+ * ・period ごとに前世代を捨て、現世代を前世代にして空の現世代を作る。add したものは少なくとも period の間は残る
+ * ・偽陽性はあるが偽陰性はない（period 以内に add したものは必ず true）
+ * 世代の入れ替えは呼び出し時に時刻を見て行う（タイマースレッドは持たない）。ビットの更新は CAS なのでロック不要。
+ */
+final class RotatingBloomFilter {
+
+    private record Generations(Bits current, Bits previous, long startedAt) {}
+
+    private final int bits;
+    private final int hashes;
+    private final long periodNanos;
+    private final LongSupplier nanoClock;
+    private final AtomicReference<Generations> generations;
+
+    RotatingBloomFilter(long expectedItems, double falsePositiveRate, Duration period) {
+        this(expectedItems, falsePositiveRate, period, System::nanoTime);
+    }
+
+    RotatingBloomFilter(long expectedItems, double falsePositiveRate, Duration period, LongSupplier nanoClock) {
+        // m = -n ln p / (ln 2)^2, k = m/n ln 2
+        double m = -expectedItems * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2));
+        this.bits = (int) Math.min(Integer.MAX_VALUE - 64, Math.max(64, Math.ceil(m)));
+        this.hashes = (int) Math.max(1, Math.round((double) bits / expectedItems * Math.log(2)));
+        this.periodNanos = period.toNanos();
+        this.nanoClock = nanoClock;
+        this.generations = new AtomicReference<>(new Generations(newBits(), newBits(), nanoClock.getAsLong()));
+    }
+
+    void add(String item) {
+        generations().current().add(item);
+    }
+
+    boolean mightContain(String item) {
+        Generations g = generations();
+        return g.current().mightContain(item) || g.previous().mightContain(item);
+    }
+
+    /** 全世代を空にする。 */
+    void clear() {
+        generations.set(new Generations(newBits(), newBits(), nanoClock.getAsLong()));
+    }
+
+    private Generations generations() {
+        Generations g = generations.get();
+        long now = nanoClock.getAsLong();
+        while (now - g.startedAt() >= periodNanos) {
+            // 2 世代分以上触れられていなければ、どちらの世代も期限切れ
+            Generations next = now - g.startedAt() >= 2 * periodNanos
+                    ? new Generations(newBits(), newBits(), now)
+                    : new Generations(newBits(), g.current(), g.startedAt() + periodNanos);
+            g = generations.compareAndSet(g, next) ? next : generations.get();
+        }
+        return g;
+    }
+
+    private Bits newBits() {
+        return new Bits(bits, hashes);
+    }
+
+    /** 1 世代分のビット列（Kirsch–Mitzenmacher：64bit ハッシュの上下 32bit から k 個の位置を作る）。 */
+    private static final class Bits {
+        private final AtomicLongArray words;
+        private final int size;
+        private final int hashes;
+
+        Bits(int size, int hashes) {
+            this.words = new AtomicLongArray((size + 63) >>> 6);
+            this.size = size;
+            this.hashes = hashes;
+        }
+
+        void add(String item) {
+            long h = hash64(item);
+            int h1 = (int) h;
+            int h2 = (int) (h >>> 32);
+            for (int i = 0; i < hashes; i++) {
+                int bit = index(h1 + i * h2);
+                long mask = 1L << (bit & 63);
+                if ((words.get(bit >>> 6) & mask) == 0) words.accumulateAndGet(bit >>> 6, mask, (a, b) -> a | b);
+            }
+        }
+
+        boolean mightContain(String item) {
+            long h = hash64(item);
+            int h1 = (int) h;
+            int h2 = (int) (h >>> 32);
+            for (int i = 0; i < hashes; i++) {
+                int bit = index(h1 + i * h2);
+                if ((words.get(bit >>> 6) & (1L << (bit & 63))) == 0) return false;
+            }
+            return true;
+        }
+
+        private int index(int combined) {
+            return (combined < 0 ? ~combined : combined) % size;
+        }
+    }
+
+    /** FNV-1a に Murmur3 の最終ミックスをかけた 64bit ハッシュ（SID のような短い文字列向け）。 */
+    static long hash64(String s) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < s.length(); i++) {
+            h ^= s.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,168 @@
+package com.example.spring_redis_practice.session;
+
+import jakarta.servlet.http.HttpServletRequest;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * 1リクエスト分のセッションビュー。SessionFilter が生成し、リクエスト属性に積む。
+ * ・読み取り：最初にアクセスされた時点で Hash 全体を 1 回だけ load（以降はメモリから）
+ * ・書き込み：メモリ上に「変更/削除された属性」として溜め、flush() で 1 往復にまとめて反映
+ * ・一度も触られなければ Redis には何も送らない
+ * ・新規セッション（id が null）は、最初の setAttr で SID を発行する（onCreate でクッキーを付ける）。
+ *   それまでは読み取りも空として扱い、Redis に触れない
+ * ・versioning 有効時の flush は、新規なら「まだ無いこと」、既存なら「まだ有ること」を条件に書く。
+ *   期限切れ・並行リクエストでのログアウトでセッションが無くなっていたら、その SID には書かない（復活させない）。
+ *   変更は新しい SID のセッションとして作り直す（onCreate でクッキーを差し替える。古いセッションの属性は引き継がない）
+ * <p>
+ * スレッドセーフではない（1リクエスト＝1スレッドで使う前提）。
+ * Controller などからは SessionContext.from(req) で取得する。
+ */
+public class SessionContext {
+
+    private String id; // null = まだ発行していない新規セッション
+    private final RedisSessionRepository repo;
+    private final long writeWatermark; // リクエストが持ってきた最終書き込み時刻（0 = 不明）
+    private final Consumer<String> onCreate;
+    private boolean written;
+    private boolean created; // このリクエストで SID を発行し、まだ Redis に書いていない
+
+    private Map<Object, Object> loaded;  // null = 未ロード
+    private final Map<String, Object> dirty = new LinkedHashMap<>();
+    private final Set<String> removed = new LinkedHashSet<>();
+
+    SessionContext(String id, RedisSessionRepository repo) {
+        this(id, repo, 0L);
+    }
+
+    SessionContext(String id, RedisSessionRepository repo, long writeWatermark) {
+        this(id, repo, writeWatermark, created -> {});
+    }
+
+    /** id が null なら新規セッション。SID を発行したら onCreate に渡す。 */
+    SessionContext(String id, RedisSessionRepository repo, long writeWatermark, Consumer<String> onCreate) {
+        this.id = id;
+        this.repo = repo;
+        this.writeWatermark = writeWatermark;
+        this.onCreate = onCreate;
+    }
+
+    /** SessionFilter が積んだコンテキストを取り出す（フィルタ外なら null）。 */
+    public static SessionContext from(HttpServletRequest req) {
+        return (SessionContext) req.getAttribute(SessionFilter.REQ_ATTR_SESSION);
+    }
+
+    /** SID。まだ何も書き込んでいない新規セッションなら null。 */
+    public String getId() { return id; }
+
+    /** SID が発行済み（クッキーで持ってきたか、このリクエストで作った）か。 */
+    public boolean exists() { return id != null; }
+
+    /** 単一属性を取得。未ロードならここで Hash 全体を読む（TTL延長も load 側で行われる）。 */
+    public Object getAttr(String name) {
+        if (removed.contains(name)) return null;
+        if (dirty.containsKey(name)) return dirty.get(name);
+        return attrs().get(name);
+    }
+
+    /** 全属性（未フラッシュの変更を反映した読み取り専用ビュー）。 */
+    public Map<Object, Object> getAttrs() {
+        Map<Object, Object> view = new HashMap<>(attrs());
+        removed.forEach(view::remove);
+        view.putAll(dirty);
+        return Collections.unmodifiableMap(view);
+    }
+
+    /** 属性を変更。Redis への反映は flush() まで遅延（ロードは不要）。 */
+    public void setAttr(String name, Object value) {
+        create();
+        removed.remove(name);
+        dirty.put(name, value);
+    }
+
+    /** 属性を削除。Redis への反映は flush() まで遅延。 */
+    public void removeAttr(String name) {
+        dirty.remove(name);
+        if (id != null) removed.add(name); // 新規セッションには消すものが無い
+    }
+
+    /** セッション破棄。ログアウトは即時に反映する（未フラッシュの変更は捨てる）。 */
+    public void invalidate() {
+        if (id != null) {
+            repo.invalidate(id);
+            written = true;
+        }
+        dirty.clear();
+        removed.clear();
+        loaded = Map.of();
+    }
+
+    public boolean isDirty() { return !dirty.isEmpty() || !removed.isEmpty(); }
+
+    /** このリクエストで Redis に書き込んだか（flush / invalidate）。 */
+    boolean hasWritten() { return written; }
+
+    /** 溜まった変更を 1 往復で反映し、TTL も延長する。変更がなければ何もしない。 */
+    public void flush() {
+        if (!isDirty()) return;
+        if (repo.isVersioned()) {
+            long expected = created ? VersionedSession.ABSENT : RedisSessionRepository.ANY_VERSION;
+            created = false;
+            if (!repo.compareAndWrite(id, expected, new LinkedHashMap<>(dirty), new LinkedHashSet<>(removed))) {
+                removed.clear(); // 新しいセッションには消すものが無い
+                loaded = Map.of();
+                if (dirty.isEmpty() || !recreate()) {
+                    dirty.clear();
+                    return;
+                }
+            }
+        } else {
+            repo.write(id, new LinkedHashMap<>(dirty), new LinkedHashSet<>(removed));
+        }
+        written = true;
+        if (loaded != null) {
+            Map<Object, Object> merged = new HashMap<>(loaded);
+            removed.forEach(merged::remove);
+            merged.putAll(dirty);
+            loaded = merged;
+        }
+        dirty.clear();
+        removed.clear();
+    }
+
+    /** 新規セッションなら SID を発行する。中身は空と分かっているので load しない。 */
+    private void create() {
+        if (id != null) return;
+        id = SessionIds.newId();
+        created = true;
+        loaded = Map.of();
+        onCreate.accept(id);
+    }
+
+    /**
+     * 書き込み先のセッションが無かった（期限切れ・破棄済み、新規なら SID の衝突）。
+     * 古い SID は捨て、新しい SID で未フラッシュの変更だけを持つセッションを作る。作れなければ false。
+     */
+    private boolean recreate() {
+        String sid = SessionIds.newId();
+        if (!repo.create(sid, new LinkedHashMap<>(dirty))) return false;
+        id = sid;
+        onCreate.accept(sid);
+        return true;
+    }
+
+    private Map<Object, Object> attrs() {
+        if (id == null) return Map.of();
+        if (loaded == null) {
+            // 書き込み時刻が分からなければ通常の load（振り分けは自ノードの記録だけで判断）
+            loaded = writeWatermark > 0 ? repo.load(id, writeWatermark) : repo.load(id);
+        }
+        return loaded;
+    }
+}
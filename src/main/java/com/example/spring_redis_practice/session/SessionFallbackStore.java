@@ -0,0 +1,351 @@
+package com.example.spring_redis_practice.session;
+
+import com.example.spring_redis_practice.config.RetryConfig;
+import com.example.spring_redis_practice.resilience.RedisCircuitBreaker;
+import com.example.spring_redis_practice.resilience.ResilientRetryTemplate;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.TransientDataAccessResourceException;
+import org.springframework.retry.support.RetryTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Redis 障害中のセッションのノード内退避先（app.session.fallback.enabled=true）。
+ * <p>
+ * RedisSessionRepository は、一時的な障害（RetryConfig#isTransient。ブレーカが開いている間の即失敗を含む）で
+ * 失敗した読み書きをここで受ける。ブレーカが開いている間は Redis へ送らず即座にここへ来るので、
+ * リクエストはリトライを待たずに低レイテンシで返る。
+ * ・書き込み：ローカルのセッションに反映し、変更を書き戻し用のジャーナルに積む
+ * ・読み取り：ローカルにあればそれを返す。無ければ呼び出し側が L1（SessionNearCache）の残りを使う
+ * ・復旧：reconcileInterval ごとに（ブレーカが開いていなければ）ジャーナルを古い順に Redis へ書き戻す
+ * 書き戻し待ちの変更があるセッションは、Redis が復旧していても書き戻しが終わるまでローカルで読み書きする
+ * （後から来た書き込みが、古い変更の書き戻しで上書きされないように）。
+ * <p>
+ * 値はシリアライズ済みの byte[] で持つ（Redis に書くものと同じ表現。メモリの見積もりもそのまま使える）。
+ * ローカルのセッションはどれも書き戻し待ちなので、上限を超えても捨てない（捨てると書いたばかりの属性が読めなくなる）。
+ * 書き戻しが済めばローカルから消える。セッション数か合計サイズが上限に達している間は、
+ * 新しいセッションの書き込みと、属性を増やす書き込みを拒否する（redis.session.fallback.rejected に数え、例外を投げる）。
+ * ジャーナルが上限を超えたら古い変更から捨てる（失われる）。
+ * 書き戻しは最後に書いたものが勝つ（障害中に他ノードが同じセッションを書いていれば上書きする）。
+ * <p>
+ * 状態の更新は 1 つのロックの中で行う（メモリ上の操作だけで、I/O は含めない）。
+ */
+@Component
+public class SessionFallbackStore implements InitializingBean, DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(SessionFallbackStore.class);
+
+    /** 1 セッション/1 属性あたりの管理領域の概算（Map のエントリ・オブジェクトヘッダ等）。 */
+    private static final int ENTRY_OVERHEAD = 96;
+    private static final int FIELD_OVERHEAD = 64;
+
+    /** 書き戻す変更。invalidate なら破棄、そうでなければ属性の更新/削除（値はシリアライズ済み）。 */
+    record Change(String key, Map<String, byte[]> puts, Set<String> removes, boolean invalidate) {}
+
+    private static final class Entry {
+        final Map<String, byte[]> fields = new LinkedHashMap<>();
+        boolean deleted;
+        long expiresAt;
+        long bytes;
+    }
+
+    private final SessionProperties.Fallback props;
+    private final RedisCircuitBreaker breaker; // null = ブレーカなし（常に書き戻しを試みる）
+    private final long ttlMillis;
+    private final LongSupplier clock;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LinkedHashMap<String, Entry> sessions = new LinkedHashMap<>();
+    private final ArrayDeque<Change> journal = new ArrayDeque<>();
+    /** キーごとの書き戻し待ちの変更数。ロック外からも holds で読む。 */
+    private final Map<String, Integer> pending = new ConcurrentHashMap<>();
+    private long bytes;
+    private volatile Consumer<Change> replay;
+    private ScheduledExecutorService reconciler;
+
+    private final Counter served;
+    private final Counter dropped;
+    private final Counter reconciled;
+    private final Counter rejected;
+
+    @Autowired
+    public SessionFallbackStore(SessionProperties props, RetryTemplate redisRetryTemplate, MeterRegistry registry) {
+        this(props.getFallback(), redisRetryTemplate, registry, System::currentTimeMillis);
+    }
+
+    SessionFallbackStore(SessionProperties.Fallback props, RetryTemplate redisRetryTemplate, MeterRegistry registry,
+                         LongSupplier clock) {
+        this.props = props;
+        this.breaker = redisRetryTemplate instanceof ResilientRetryTemplate resilient
+                ? resilient.circuitBreaker() : null;
+        this.ttlMillis = RedisSessionRepository.DEFAULT_TTL.toMillis();
+        this.clock = clock;
+        this.served = Counter.builder("redis.session.fallback.served")
+                .description("Session operations served by the local fallback store")
+                .register(registry);
+        this.dropped = Counter.builder("redis.session.fallback.dropped")
+                .description("Journaled session changes discarded before they could be written back")
+                .register(registry);
+        this.reconciled = Counter.builder("redis.session.fallback.reconciled")
+                .description("Journaled session changes written back to Redis")
+                .register(registry);
+        this.rejected = Counter.builder("redis.session.fallback.rejected")
+                .description("Session writes refused because the fallback store was full of unsynced sessions")
+                .register(registry);
+        if (props.isEnabled()) {
+            Gauge.builder("redis.session.fallback.sessions", this, s -> s.sessions.size()).register(registry);
+            Gauge.builder("redis.session.fallback.bytes", this, s -> s.bytes).baseUnit("bytes").register(registry);
+            Gauge.builder("redis.session.fallback.journal", this, s -> s.journal.size()).register(registry);
+        }
+    }
+
+    /** 無効なインスタンス。Repository を Spring 外で組み立てる場合用。 */
+    static SessionFallbackStore disabled() {
+        return new SessionFallbackStore(new SessionProperties(), null, new CompositeMeterRegistry());
+    }
+
+    public boolean isEnabled() { return props.isEnabled(); }
+
+    /** 書き戻しの実処理（RedisSessionRepository が登録する）。失敗時は例外を投げること。 */
+    void onReconcile(Consumer<Change> replay) { this.replay = replay; }
+
+    /** この失敗をローカルで引き受けるか（一時的な Redis 障害のみ）。 */
+    boolean takesOver(RuntimeException e) {
+        return isEnabled() && RetryConfig.isTransient(e);
+    }
+
+    /** 書き戻し待ちの変更があるか（あれば Redis ではなくローカルで読み書きする）。 */
+    boolean holds(String key) {
+        return !pending.isEmpty() && pending.containsKey(key);
+    }
+
+    /** ローカルのセッション。null = ローカルに無い（不明）、空 = 無い/破棄済み。読み取りでローカルの TTL を延長する。 */
+    Map<String, byte[]> load(String key) {
+        served.increment();
+        lock.lock();
+        try {
+            Entry e = live(key);
+            if (e == null) return null;
+            if (e.deleted) return Map.of();
+            e.expiresAt = clock.getAsLong() + ttlMillis;
+            return new LinkedHashMap<>(e.fields);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** ローカルの残り TTL（ローカルに無い/破棄済みなら 0）。 */
+    Duration ttl(String key) {
+        served.increment();
+        lock.lock();
+        try {
+            Entry e = live(key);
+            if (e == null || e.deleted) return Duration.ZERO;
+            return Duration.ofMillis(Math.max(0, e.expiresAt - clock.getAsLong())).truncatedTo(ChronoUnit.SECONDS);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 属性の更新/削除。ローカルに無いセッションは base（L1 に残っていた全属性など。無ければ null）から始める。
+     * base の属性は書き戻さない（Redis に既にあるもの）。
+     * 上限に達していれば、新しいセッションと属性を増やす書き込みは TransientDataAccessResourceException で拒否する。
+     */
+    void write(String key, Map<String, byte[]> puts, Collection<String> removes, Supplier<Map<String, byte[]>> base) {
+        served.increment();
+        lock.lock();
+        try {
+            Entry existing = live(key);
+            admit(existing == null, !puts.isEmpty());
+            final Entry e = existing != null ? existing : newEntry(key);
+            if (existing == null) {
+                Map<String, byte[]> initial = base.get();
+                if (initial != null) initial.forEach((name, value) -> put(e, name, value));
+            }
+            e.deleted = false;
+            removes.forEach(name -> remove(e, name));
+            puts.forEach((name, value) -> put(e, name, value));
+            e.expiresAt = clock.getAsLong() + ttlMillis;
+            journal(new Change(key, Map.copyOf(puts), Set.copyOf(removes), false));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 破棄。ローカルには「破棄済み」として残し（L1 の古い値を読ませない）、書き戻しで DEL する。
+     * ローカルに無いセッションは、セッション数が上限に達していれば拒否する。
+     */
+    void invalidate(String key) {
+        served.increment();
+        lock.lock();
+        try {
+            admit(live(key) == null, false);
+            Entry e = sessions.remove(key);
+            if (e != null) bytes -= e.bytes;
+            Entry tombstone = newEntry(key);
+            tombstone.deleted = true;
+            tombstone.expiresAt = clock.getAsLong() + ttlMillis;
+            journal(new Change(key, Map.of(), Set.of(), true));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * ジャーナルを古い順に書き戻す。失敗したらそこで止め、残りは次回に回す。戻り値は書き戻した件数。
+     * 書き戻し待ちが無くなったセッションはローカルから消す（以降は Redis で読み書きする）。
+     */
+    int reconcile() {
+        Consumer<Change> r = replay;
+        if (r == null) return 0;
+        int applied = 0;
+        while (true) {
+            Change next;
+            lock.lock();
+            try {
+                next = journal.peekFirst();
+            } finally {
+                lock.unlock();
+            }
+            if (next == null) break;
+            try {
+                r.accept(next);
+            } catch (RuntimeException e) {
+                log.debug("Session write-back paused: {}", e.toString());
+                break;
+            }
+            lock.lock();
+            try {
+                // 書き戻し中に溢れて捨てられていなければ取り除く
+                if (journal.peekFirst() == next) {
+                    journal.pollFirst();
+                    settled(next.key());
+                }
+            } finally {
+                lock.unlock();
+            }
+            reconciled.increment();
+            applied++;
+        }
+        if (applied > 0) log.info("Wrote back {} session changes made while Redis was unavailable", applied);
+        return applied;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        if (!isEnabled()) return;
+        reconciler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "session-fallback-reconciler");
+            t.setDaemon(true);
+            return t;
+        });
+        long interval = props.getReconcileInterval().toMillis();
+        reconciler.scheduleWithFixedDelay(() -> {
+            if (pending.isEmpty()) return;
+            if (breaker != null && breaker.state() == RedisCircuitBreaker.State.OPEN) return;
+            try {
+                reconcile();
+            } catch (RuntimeException e) {
+                log.warn("Session write-back failed: {}", e.toString());
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void destroy() {
+        if (reconciler != null) reconciler.shutdownNow();
+        if (!journal.isEmpty()) log.warn("{} session changes were not written back to Redis", journal.size());
+    }
+
+    // ---- 以下はロック内から呼ぶ ----
+
+    /**
+     * 上限の確認。ローカルのセッションは書き戻し待ちで捨てられないので、空きが無ければ書き込みを拒否する
+     * （上限は書き込み 1 回分だけ超えうる）。
+     */
+    private void admit(boolean newSession, boolean grows) {
+        boolean full = (newSession && sessions.size() >= props.getMaxEntries())
+                || ((newSession || grows) && bytes >= props.getMaxBytes().toBytes());
+        if (!full) return;
+        rejected.increment();
+        throw new TransientDataAccessResourceException(
+                "Session fallback store is full (" + sessions.size() + " sessions, " + bytes + " bytes)");
+    }
+
+    /** 期限切れのローカルセッションは捨てる（書き戻し待ちの変更はジャーナルに残る）。 */
+    private Entry live(String key) {
+        Entry e = sessions.get(key);
+        if (e != null && e.expiresAt <= clock.getAsLong()) {
+            sessions.remove(key);
+            bytes -= e.bytes;
+            return null;
+        }
+        return e;
+    }
+
+    private Entry newEntry(String key) {
+        Entry e = new Entry();
+        e.bytes = ENTRY_OVERHEAD + key.length();
+        bytes += e.bytes;
+        sessions.put(key, e);
+        return e;
+    }
+
+    private void put(Entry e, String name, byte[] value) {
+        byte[] old = e.fields.put(name, value);
+        long delta = (old == null ? FIELD_OVERHEAD + name.length() : -old.length) + value.length;
+        e.bytes += delta;
+        bytes += delta;
+    }
+
+    private void remove(Entry e, String name) {
+        byte[] old = e.fields.remove(name);
+        if (old == null) return;
+        long delta = FIELD_OVERHEAD + name.length() + old.length;
+        e.bytes -= delta;
+        bytes -= delta;
+    }
+
+    private void journal(Change change) {
+        journal.addLast(change);
+        pending.merge(change.key(), 1, Integer::sum);
+        while (journal.size() > props.getMaxJournal()) {
+            Change lost = journal.pollFirst();
+            settled(lost.key());
+            dropped.increment();
+        }
+    }
+
+    /** 書き戻し（または破棄）が済んだ変更。そのキーの待ちが無くなればローカルからも消す。 */
+    private void settled(String key) {
+        Integer left = pending.computeIfPresent(key, (k, n) -> n > 1 ? n - 1 : null);
+        if (left == null) {
+            Entry e = sessions.remove(key);
+            if (e != null) bytes -= e.bytes;
+        }
+    }
+}
@@ -6,23 +6,31 @@ import jakarta.servlet.http.Cookie;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.Ordered;
 import org.springframework.core.annotation.Order;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
-import java.security.SecureRandom;
 import java.util.Arrays;
-import java.util.Base64;
 import java.util.Optional;
 
 /**
- * 役割：リクエストごとに「SIDクッキー」を確認し、なければ新規発行して付与する。
- * - このFilterは「IDの配布のみ」を担当。セッション属性の操作は Repository 側が担当。
+ * 役割：リクエストごとに「SIDクッキー」を確認し、リクエスト単位の SessionContext（遅延ロード＋書き込みの集約）を用意する。
+ * - SID はセッションに初めて書き込むとき（SessionContext#setAttr）に発行して Set-Cookie する。
+ *   クッキーを持たないリクエスト（ボット、ヘルスチェック等）は、何も書き込まなければ SID 生成もクッキーも無い。
+ * - app.session.known-ids.enabled=true なら、KnownSessionIds に無い SID（偽造・期限切れ）は
+ *   Redis を引かずに新規セッションとして扱う。ただし発行直後の SID（他ノードで作られて通知がまだ届いていないもの）は
+ *   集合に無くても Redis を引く（known-ids.freshWindow）。
+ * - 変更はレスポンスのコミット直前（または処理完了時）に 1 往復で Redis へ反映される。
+ *   SID の発行がコミット後になった場合はクッキーを付けられないので、書き込みはコミット前に行うこと。
  * - Cookieは HttpOnly/Secure/SameSite=Lax を強く推奨（HTTPS前提）。
  *
- * Controller などからは、req.getAttribute(REQ_ATTR_SESSION_ID) でSIDが取れる。
+ * Controller などからは、req.getAttribute(REQ_ATTR_SESSION_ID) でSIDが（新規セッションは発行後のみ）、
+ * SessionContext.from(req) でセッションが取れる。
  */
 @Component
 @Order(Ordered.HIGHEST_PRECEDENCE)
@@ -30,28 +38,65 @@ public class SessionFilter extends OncePerRequestFilter {
 
     public static final String COOKIE_NAME = "SID";
     public static final String REQ_ATTR_SESSION_ID = "session.id";
+    public static final String REQ_ATTR_SESSION = "session.context";
+    /** 最終書き込み時刻（エポックミリ秒）。レプリカ読み取り時に、書き込み直後の読み取りをプライマリへ送るため。 */
+    public static final String WATERMARK_COOKIE_NAME = "SIDW";
 
-    private final SecureRandom random = new SecureRandom();
+    private static final Logger log = LoggerFactory.getLogger(SessionFilter.class);
+
+    private final RedisSessionRepository sessions;
+    private final KnownSessionIds knownIds;
+
+    public SessionFilter(RedisSessionRepository sessions) {
+        this(sessions, KnownSessionIds.disabled());
+    }
+
+    @Autowired
+    public SessionFilter(RedisSessionRepository sessions, KnownSessionIds knownIds) {
+        this.sessions = sessions;
+        this.knownIds = knownIds;
+    }
 
     @Override
     protected void doFilterInternal(HttpServletRequest req, HttpServletResponse res, FilterChain chain)
             throws ServletException, IOException {
 
-        // 1) 既存のSIDをCookieから探す。無ければ新規発行してSet-Cookie。
-        String sid = readCookie(req, COOKIE_NAME).orElseGet(() -> {
-            String s = newSessionId();                // URL-safe ランダム文字列
-            addCookie(res, COOKIE_NAME, s, true, true); // HttpOnly/Secure推奨
-            return s;
-        });
+        // 1) 既存のSIDをCookieから探す。無い・知らないSIDなら新規セッション（SIDは最初の書き込みで発行）。
+        String sid = readCookie(req, COOKIE_NAME).filter(knownIds::mightExist).orElse(null);
 
         // 2) 後続処理（Controller等）で使えるよう、リクエスト属性に積む
-        req.setAttribute(REQ_ATTR_SESSION_ID, sid);
+        SessionContext session = new SessionContext(sid, sessions, readWatermark(req), created -> {
+            if (res.isCommitted()) log.warn("Session created after the response was committed; SID cookie not sent");
+            addCookie(res, COOKIE_NAME, created, true, true); // HttpOnly/Secure推奨
+            req.setAttribute(REQ_ATTR_SESSION_ID, created);
+        });
+        if (sid != null) req.setAttribute(REQ_ATTR_SESSION_ID, sid);
+        req.setAttribute(REQ_ATTR_SESSION, session);
 
-        // 3) 次のFilter/Controllerへ
-        chain.doFilter(req, res);
+        // 3) 次のFilter/Controllerへ。コミット直前に変更をフラッシュ、取りこぼしは最後に反映。
+        chain.doFilter(req, new SessionFlushingResponseWrapper(res, () -> flush(session, res)));
+        flush(session, res);
     }
 
-    private Optional<String> readCookie(HttpServletRequest req, String name) {
+    /** 変更を反映し、書き込んだならレプリカ読み取り用に最終書き込み時刻のクッキーを付ける（コミット前のみ有効）。 */
+    private void flush(SessionContext session, HttpServletResponse res) {
+        session.flush();
+        if (session.hasWritten()) knownIds.add(session.getId());
+        if (session.hasWritten() && sessions.routesReadsToReplicas() && !res.isCommitted()
+                && res.getHeaders("Set-Cookie").stream().noneMatch(h -> h.startsWith(WATERMARK_COOKIE_NAME + "="))) {
+            addCookie(res, WATERMARK_COOKIE_NAME, Long.toString(System.currentTimeMillis()), true, true);
+        }
+    }
+
+    private long readWatermark(HttpServletRequest req) {
+        try {
+            return readCookie(req, WATERMARK_COOKIE_NAME).map(Long::parseLong).orElse(0L);
+        } catch (NumberFormatException e) {
+            return 0L;
+        }
+    }
+
+    Optional<String> readCookie(HttpServletRequest req, String name) {
         if (req.getCookies() == null) return Optional.empty();
         return Arrays.stream(req.getCookies())
                 .filter(c -> name.equals(c.getName()))
@@ -78,12 +123,8 @@ public class SessionFilter extends OncePerRequestFilter {
                         .replace("; ;", ";"));
     }
 
-    /**
-     * 144bitのランダム値をURL-safe Base64で表現（固定長/パディングなし）
-     */
-    private String newSessionId() {
-        byte[] buf = new byte[18]; // 18 bytes = 144 bits
-        random.nextBytes(buf);
-        return Base64.getUrlEncoder().withoutPadding().encodeToString(buf);
+    /** 新しい SID（発行時刻＋144bit のランダム値, URL-safe Base64）。 */
+    String newSessionId() {
+        return SessionIds.newId();
     }
 }
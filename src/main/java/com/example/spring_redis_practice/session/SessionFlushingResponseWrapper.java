@@ -0,0 +1,113 @@
+package com.example.spring_redis_practice.session;
+
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletResponseWrapper;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+
+/**
+ * レスポンスがコミットされる直前に onCommit を呼ぶラッパ（コミット後は呼ばない）。
+ * SessionContext の変更を「クライアントが応答を受け取る前に」Redis へ反映するために使う。
+ * <p>
+ * 捕捉するのは明示的なコミット（flush/close, sendError, sendRedirect, flushBuffer）。
+ * バッファ溢れによる暗黙のコミットは拾えないため、SessionFilter 側でも最後に flush する。
+ */
+class SessionFlushingResponseWrapper extends HttpServletResponseWrapper {
+
+    private final Runnable onCommit;
+    private boolean committing;
+    private ServletOutputStream out;
+    private PrintWriter writer;
+
+    SessionFlushingResponseWrapper(HttpServletResponse res, Runnable onCommit) {
+        super(res);
+        this.onCommit = onCommit;
+    }
+
+    /** コミット前のフック。flush() が複数回来ても、変更が無ければ onCommit 側で何もしない前提。 */
+    private void beforeCommit() {
+        if (committing || isCommitted()) return;
+        committing = true;
+        try {
+            onCommit.run();
+        } finally {
+            committing = false;
+        }
+    }
+
+    @Override
+    public void sendError(int sc) throws IOException {
+        beforeCommit();
+        super.sendError(sc);
+    }
+
+    @Override
+    public void sendError(int sc, String msg) throws IOException {
+        beforeCommit();
+        super.sendError(sc, msg);
+    }
+
+    @Override
+    public void sendRedirect(String location) throws IOException {
+        beforeCommit();
+        super.sendRedirect(location);
+    }
+
+    @Override
+    public void flushBuffer() throws IOException {
+        beforeCommit();
+        super.flushBuffer();
+    }
+
+    @Override
+    public ServletOutputStream getOutputStream() throws IOException {
+        if (out == null) out = new CommitAwareOutputStream(super.getOutputStream());
+        return out;
+    }
+
+    @Override
+    public PrintWriter getWriter() throws IOException {
+        if (writer == null) {
+            writer = new PrintWriter(super.getWriter()) {
+                @Override
+                public void flush() {
+                    beforeCommit();
+                    super.flush();
+                }
+
+                @Override
+                public void close() {
+                    beforeCommit();
+                    super.close();
+                }
+            };
+        }
+        return writer;
+    }
+
+    private class CommitAwareOutputStream extends ServletOutputStream {
+        private final ServletOutputStream delegate;
+
+        CommitAwareOutputStream(ServletOutputStream delegate) { this.delegate = delegate; }
+
+        @Override public void write(int b) throws IOException { delegate.write(b); }
+        @Override public void write(byte[] b, int off, int len) throws IOException { delegate.write(b, off, len); }
+        @Override public boolean isReady() { return delegate.isReady(); }
+        @Override public void setWriteListener(WriteListener listener) { delegate.setWriteListener(listener); }
+
+        @Override
+        public void flush() throws IOException {
+            beforeCommit();
+            delegate.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            beforeCommit();
+            delegate.close();
+        }
+    }
+}
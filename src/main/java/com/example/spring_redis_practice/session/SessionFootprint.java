@@ -0,0 +1,229 @@
+package com.example.spring_redis_practice.session;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.connection.ValueEncoding;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.retry.support.RetryTemplate;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * セッションのメモリ使用量の調査（/actuator/sessionfootprint）。
+ * ・SCAN（MATCH = footprint.keyPattern）で最大 sampleSize 件を選び、MEMORY USAGE / OBJECT ENCODING / HGETALL を
+ *   scanCount 件ずつパイプラインで送る（値は読むだけで TTL は延長しない）
+ * ・1 セッションあたりの使用量と field 数の分布、エンコーディング（listpack / hashtable）の内訳、
+ *   field ごとの値の大きさの分布と listpack の上限を超える値の数を返す
+ * ・field は Redis 上の名前で集計する（別名と元の名前が混在していれば別々に出るので、compact の効果と移行の進み具合が見える）。
+ *   版（RedisSessionRepository.VERSION_FIELD）も 1 つの field として数える
+ * ・listpack の上限は CONFIG GET で読む（使えなければ app.session.compact / footprint の設定値）
+ * ・シャーディング有効時は全ノードを調べる（sampleSize はノードごと）
+ */
+@Component
+public class SessionFootprint {
+
+    private static final Logger log = LoggerFactory.getLogger(SessionFootprint.class);
+    private static final byte[] USAGE = "USAGE".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] SAMPLES = "SAMPLES".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] ALL_SAMPLES = "0".getBytes(StandardCharsets.UTF_8);
+
+    /** 分布（バイト数・件数）。パーセンタイルは最近傍順位。 */
+    public record Distribution(long count, double mean, long p50, long p90, long p99, long max) {}
+
+    /**
+     * Redis 上の field 1 つ分。attribute はその属性名（別名なら元の名前）、sessions は field を持つセッション数、
+     * nameBytes は field 名が占める合計バイト数（別名にすれば減らせる分の目安）。
+     */
+    public record Field(String attribute, long sessions, long nameBytes, Distribution valueBytes, long oversized) {}
+
+    /** listpack のまま保てる上限（field 数と値の大きさ）。 */
+    public record Listpack(long maxEntries, long maxValueBytes) {}
+
+    /**
+     * 調査結果。memoryBytes は MEMORY USAGE（キー・TTL・内部構造込み）、overEntries は field 数が上限を超えたセッション数、
+     * oversizedValues は上限を超える値の数（どちらかがあればそのセッションは hashtable になる）。
+     */
+    public record Report(long sessions, Distribution memoryBytes, Distribution fields, Map<String, Long> encodings,
+                         long overEntries, long oversizedValues, Listpack listpack,
+                         Map<String, Field> perField, Map<String, String> aliases, Duration took) {}
+
+    private final SessionProperties.Footprint props;
+    private final SessionHashLayout layout;
+    private final RedisTemplate<String, Object> redis;
+    private final RetryTemplate retry;
+    private final SessionShards shards;
+
+    public SessionFootprint(SessionProperties props, RedisTemplate<String, Object> redis,
+                            RetryTemplate redisRetryTemplate, SessionShards shards) {
+        this.props = props.getFootprint();
+        this.layout = new SessionHashLayout(props.getCompact());
+        this.redis = redis;
+        this.retry = redisRetryTemplate;
+        this.shards = shards;
+    }
+
+    /** 既定の件数（footprint.sampleSize）で調べる。 */
+    public Report analyze() {
+        return analyze(props.getSampleSize());
+    }
+
+    public Report analyze(int sampleSize) {
+        long started = System.nanoTime();
+        int scanCount = Math.max(1, props.getScanCount());
+        Tally tally = new Tally(listpack());
+        for (RedisTemplate<String, Object> source : sources()) {
+            ScanOptions options = ScanOptions.scanOptions().match(props.getKeyPattern()).count(scanCount).build();
+            int seen = 0;
+            try (Cursor<String> cursor = source.scan(options)) {
+                List<String> batch = new ArrayList<>(scanCount);
+                while (seen < sampleSize && cursor.hasNext()) {
+                    batch.add(cursor.next());
+                    seen++;
+                    if (batch.size() == scanCount) {
+                        inspect(source, batch, tally);
+                        batch.clear();
+                    }
+                }
+                if (!batch.isEmpty()) inspect(source, batch, tally);
+            }
+        }
+        Report report = tally.report(layout.aliases(), Duration.ofNanos(System.nanoTime() - started));
+        log.info("Sampled {} sessions: mean {} bytes, p99 {} bytes, encodings {}",
+                report.sessions(), Math.round(report.memoryBytes().mean()), report.memoryBytes().p99(),
+                report.encodings());
+        return report;
+    }
+
+    /** 1 バッチ分の MEMORY USAGE / OBJECT ENCODING / HGETALL を送って集計に足す。 */
+    @SuppressWarnings("unchecked")
+    private void inspect(RedisTemplate<String, Object> source, List<String> keys, Tally tally) {
+        final List<byte[]> raw = keys.stream().map(k -> k.getBytes(StandardCharsets.UTF_8)).toList();
+        // executePipelined だと HGETALL の応答が Hash のシリアライザで変換されるので、素のバイト列で受ける
+        List<Object> replies = retry.execute(ctx -> RedisSessionRepository.rawPipelined(source, connection -> {
+            for (byte[] key : raw) {
+                connection.execute("MEMORY", USAGE, key, SAMPLES, ALL_SAMPLES);
+                connection.keyCommands().encodingOf(key);
+                connection.hashCommands().hGetAll(key);
+            }
+        }));
+        for (int i = 0; i < raw.size(); i++) {
+            Object usage = replies.get(3 * i);
+            Object encoding = replies.get(3 * i + 1);
+            Object hash = replies.get(3 * i + 2);
+            if (!(usage instanceof Long bytes) || !(hash instanceof Map<?, ?> fields) || fields.isEmpty()) {
+                continue; // SCAN の後に消えた（または Hash でない）キー
+            }
+            tally.add(bytes, encoding instanceof ValueEncoding e && e.raw() != null ? e.raw() : "unknown",
+                    (Map<byte[], byte[]>) fields);
+        }
+    }
+
+    /** サーバの listpack の上限。CONFIG が使えない環境（マネージド Redis など）では設定値。 */
+    private Listpack listpack() {
+        long entries = props.getMaxListpackEntries();
+        long value = layout.maxValueBytes();
+        try {
+            Properties config = redis.execute((RedisCallback<Properties>) c -> c.serverCommands()
+                    .getConfig("hash-max-listpack-*"));
+            if (config != null) {
+                entries = parse(config, "hash-max-listpack-entries", entries);
+                value = parse(config, "hash-max-listpack-value", value);
+            }
+        } catch (RuntimeException e) {
+            log.debug("CONFIG GET hash-max-listpack-* failed; using configured thresholds: {}", e.toString());
+        }
+        return new Listpack(entries, value);
+    }
+
+    private static long parse(Properties config, String name, long fallback) {
+        String v = config.getProperty(name);
+        return v == null ? fallback : Long.parseLong(v.trim());
+    }
+
+    private List<RedisTemplate<String, Object>> sources() {
+        return shards.isEnabled() ? shards.templates() : List.of(redis);
+    }
+
+    /** 調査中の集計（1 回の analyze 内でだけ使う）。 */
+    private final class Tally {
+
+        private final Listpack listpack;
+        private final Samples memory = new Samples();
+        private final Samples fieldCounts = new Samples();
+        private final Map<String, Long> encodings = new TreeMap<>();
+        private final Map<String, Samples> values = new TreeMap<>();
+        private final Map<String, long[]> oversized = new TreeMap<>();
+        private long overEntries;
+        private long oversizedValues;
+
+        Tally(Listpack listpack) {
+            this.listpack = listpack;
+        }
+
+        void add(long memoryBytes, String encoding, Map<byte[], byte[]> hash) {
+            memory.add(memoryBytes);
+            fieldCounts.add(hash.size());
+            encodings.merge(encoding, 1L, Long::sum);
+            if (hash.size() > listpack.maxEntries()) overEntries++;
+            hash.forEach((rawField, value) -> {
+                String field = new String(rawField, StandardCharsets.UTF_8);
+                int size = value == null ? 0 : value.length; // Redis に保存されているバイト数（圧縮・シリアライズ後）
+                values.computeIfAbsent(field, f -> new Samples()).add(size);
+                long[] over = oversized.computeIfAbsent(field, f -> new long[1]);
+                if (size > listpack.maxValueBytes()) {
+                    over[0]++;
+                    oversizedValues++;
+                }
+            });
+        }
+
+        Report report(Map<String, String> aliases, Duration took) {
+            Map<String, Field> perField = new TreeMap<>();
+            values.forEach((field, sizes) -> perField.put(field, new Field(layout.name(field), sizes.size(),
+                    (long) field.getBytes(StandardCharsets.UTF_8).length * sizes.size(),
+                    sizes.summarize(), oversized.get(field)[0])));
+            return new Report(memory.size(), memory.summarize(), fieldCounts.summarize(), encodings,
+                    overEntries, oversizedValues, listpack, perField, aliases, took);
+        }
+    }
+
+    /** 分布を取るための値の列。 */
+    static final class Samples {
+
+        private long[] values = new long[64];
+        private int size;
+
+        void add(long value) {
+            if (size == values.length) values = Arrays.copyOf(values, size * 2);
+            values[size++] = value;
+        }
+
+        int size() { return size; }
+
+        Distribution summarize() {
+            if (size == 0) return new Distribution(0, 0, 0, 0, 0, 0);
+            long[] sorted = Arrays.copyOf(values, size);
+            Arrays.sort(sorted);
+            long sum = 0;
+            for (long v : sorted) sum += v;
+            return new Distribution(size, (double) sum / size,
+                    percentile(sorted, 0.50), percentile(sorted, 0.90), percentile(sorted, 0.99), sorted[size - 1]);
+        }
+
+        private static long percentile(long[] sorted, double p) {
+            int rank = (int) Math.ceil(p * sorted.length);
+            return sorted[Math.max(0, rank - 1)];
+        }
+    }
+}
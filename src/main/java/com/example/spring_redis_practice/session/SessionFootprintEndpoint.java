@@ -0,0 +1,28 @@
+package com.example.spring_redis_practice.session;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+/**
+ * セッションのメモリ使用量の調査用エンドポイント（/actuator/sessionfootprint）。
+ * ・GET（?samples=N）：N 件（省略時は app.session.footprint.sample-size）を調べる（SessionFootprint#analyze）
+ * 調査中はノードに MEMORY USAGE / HGETALL を送り続けるので、件数は控えめに。
+ * 公開はしていない。使うときは management.endpoints.web.exposure.include に sessionfootprint を足すこと。
+ */
+@Component
+@Endpoint(id = "sessionfootprint")
+public class SessionFootprintEndpoint {
+
+    private final SessionFootprint footprint;
+
+    public SessionFootprintEndpoint(SessionFootprint footprint) {
+        this.footprint = footprint;
+    }
+
+    @ReadOperation
+    public SessionFootprint.Report analyze(@Nullable Integer samples) {
+        return samples == null ? footprint.analyze() : footprint.analyze(samples);
+    }
+}
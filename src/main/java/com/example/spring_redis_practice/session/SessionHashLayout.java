@@ -0,0 +1,102 @@
+package com.example.spring_redis_practice.session;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * セッション Hash の「属性名 ⇔ Redis 上の field 名」の対応と、値の大きさの上限（app.session.compact）。
+ * ・有効なら aliases の属性は短い field 名で保存する（field 名は全セッションに繰り返し載るので、短いほど効く）
+ * ・読み取りは別名・元の名前のどちらの field も属性名に戻す。両方あれば別名の方を正とする
+ *   （有効にする前に書かれたセッションもそのまま読める。残った元の名前の field は削除時にまとめて消す）
+ * ・値がシリアライズ後に maxValueSize を超えると、その Hash は listpack から hashtable に変わる（1 セッションの
+ *   使用量が数倍になる）。超えた書き込みは数える／rejectOversized なら IllegalArgumentException で拒否する
+ * 別名は、別名を持たない属性の名前と重ならないものを選ぶこと（読み戻すと別名の属性として扱われる）。
+ * 無効なら名前をそのまま使い、値も確かめない（従来どおり）。
+ */
+final class SessionHashLayout {
+
+    private final boolean enabled;
+    private final Map<String, String> fields;   // 属性名 → field 名
+    private final Map<String, String> names;    // field 名 → 属性名
+    private final long maxValueBytes;
+    private final boolean rejectOversized;
+
+    SessionHashLayout(SessionProperties.Compact props) {
+        this.enabled = props.isEnabled();
+        this.fields = enabled ? Map.copyOf(props.getAliases()) : Map.of();
+        this.names = new HashMap<>();
+        fields.forEach((name, field) -> {
+            if (field.isEmpty() || name.equals(RedisSessionRepository.VERSION_FIELD)
+                    || field.equals(RedisSessionRepository.VERSION_FIELD)) {
+                throw new IllegalStateException("Invalid app.session.compact alias: " + name + " -> " + field);
+            }
+            if (names.put(field, name) != null) {
+                // 別名が重なると、読み戻したときにどちらの属性か決まらない
+                throw new IllegalStateException("Ambiguous app.session.compact alias: " + field);
+            }
+        });
+        this.maxValueBytes = props.getMaxValueSize().toBytes();
+        this.rejectOversized = props.isRejectOversized();
+    }
+
+    static SessionHashLayout plain() {
+        return new SessionHashLayout(new SessionProperties.Compact());
+    }
+
+    boolean isEnabled() { return enabled; }
+
+    /** 書き込みに使う field 名。 */
+    String field(String name) {
+        return fields.getOrDefault(name, name);
+    }
+
+    /** 読み取った field 名の属性名。 */
+    String name(String field) {
+        return names.getOrDefault(field, field);
+    }
+
+    /** 別名を持つ属性の、有効にする前の field 名（無ければ null）。 */
+    String legacyField(String name) {
+        return fields.containsKey(name) ? name : null;
+    }
+
+    /**
+     * 読み取った field を属性 Map に入れる。別名の field は常に上書きし、
+     * 別名を持つ属性の元の名前の field は、別名の方がまだ無いときだけ入れる。
+     */
+    void put(Map<Object, Object> attributes, String field, Object value) {
+        String name = name(field);
+        if (!field.equals(name) || !fields.containsKey(name)) attributes.put(name, value);
+        else attributes.putIfAbsent(name, value);
+    }
+
+    /** 削除する field 名（別名を持つ属性は元の名前の field も消す）。 */
+    Collection<String> removedFields(Collection<String> removes) {
+        if (fields.isEmpty() || removes.isEmpty()) return removes;
+        Set<String> out = new LinkedHashSet<>(removes.size() * 2);
+        for (String name : removes) {
+            out.add(field(name));
+            out.add(name);
+        }
+        return out;
+    }
+
+    /** 書き込む値の大きさを確かめる。戻り値は上限を超えたか（rejectOversized なら超えた時点で例外）。 */
+    boolean checkValue(String name, byte[] value) {
+        if (!enabled || value == null || value.length <= maxValueBytes) return false;
+        if (rejectOversized) {
+            throw new IllegalArgumentException("Session attribute '" + name + "' is " + value.length
+                    + " bytes, over app.session.compact.max-value-size (" + maxValueBytes + ")");
+        }
+        return true;
+    }
+
+    /** 調査結果の表示用：別名の一覧（属性名 → field 名）。 */
+    Map<String, String> aliases() { return fields; }
+
+    long maxValueBytes() { return maxValueBytes; }
+}
+
@@ -0,0 +1,55 @@
+package com.example.spring_redis_practice.session;
+
+import java.security.SecureRandom;
+import java.util.Base64;
+
+/**
+ * SID の生成（Servlet/WebFlux 両方のフィルタで共用）。
+ * SID の先頭には発行時刻を入れる。KnownSessionIds が、他ノードで発行されてまだ通知の届いていない SID を
+ * 「知らない SID」として切り捨てないようにするため（発行時刻は秘密ではなく、推測されにくさはランダム部分だけで担保する）。
+ */
+final class SessionIds {
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+    /** 発行時刻（エポックミリ秒、48bit）のバイト数。Base64 で先頭 8 文字になる。 */
+    private static final int TIME_BYTES = 6;
+    private static final int RANDOM_BYTES = 18; // 144 bits
+    /** 発行時刻入りの SID の長さ（24 bytes → 32 文字）。これ以外の長さは発行時刻を持たない（以前の形式）。 */
+    private static final int LENGTH = 32;
+
+    private SessionIds() {}
+
+    /**
+     * 48bit の発行時刻＋144bit のランダム値を URL-safe Base64 で表現（固定長/パディングなし）
+     */
+    static String newId() {
+        return newId(System.currentTimeMillis());
+    }
+
+    static String newId(long issuedAtMillis) {
+        byte[] buf = new byte[TIME_BYTES + RANDOM_BYTES];
+        long t = issuedAtMillis;
+        for (int i = TIME_BYTES - 1; i >= 0; i--) {
+            buf[i] = (byte) t;
+            t >>>= 8;
+        }
+        byte[] random = new byte[RANDOM_BYTES];
+        RANDOM.nextBytes(random);
+        System.arraycopy(random, 0, buf, TIME_BYTES, RANDOM_BYTES);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(buf);
+    }
+
+    /** SID の発行時刻（エポックミリ秒）。発行時刻を持たない SID（以前の形式・形式外）は -1。 */
+    static long issuedAt(String sid) {
+        if (sid == null || sid.length() != LENGTH) return -1;
+        byte[] time;
+        try {
+            time = Base64.getUrlDecoder().decode(sid.substring(0, 8));
+        } catch (IllegalArgumentException e) {
+            return -1;
+        }
+        long t = 0;
+        for (byte b : time) t = (t << 8) | (b & 0xff);
+        return t;
+    }
+}
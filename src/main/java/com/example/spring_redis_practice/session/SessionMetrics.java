@@ -0,0 +1,125 @@
+package com.example.spring_redis_practice.session;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * RedisSessionRepository の操作ごとのレイテンシ計測。
+ * ・メトリクス名：redis.session.op（tag: op, outcome=success|error）
+ * ・Prometheus 向けのヒストグラムとクライアント側パーセンタイル（p50/p95/p99）を出す
+ * ・Timer は起動時に全組み合わせを登録しておき、呼び出しごとのレジストリ検索はしない
+ * ・ReactiveSessionRepository の Mono も同じ Timer に記録する（購読から完了まで）
+ * ・同時読み取りの相乗り（ReadCoalescer）の件数は redis.session.coalesced
+ * ・バージョン付き書き込みの競合（読み直して再試行した回数）は redis.session.conflicts
+ * ・listpack の上限を超える値の書き込み（app.session.compact）は redis.session.oversized
+ * ・L1 の PUBSUB 無効化の publish に失敗した件数は redis.session.near-cache.publish-failures
+ */
+@Component
+public class SessionMetrics {
+
+    public enum Op {
+        LOAD, GET_ATTR, SET_ATTR, PUT_ALL, WRITE, INVALIDATE, TTL,
+        LOAD_MANY, INVALIDATE_MANY, TOUCH_MANY,
+        INVALIDATE_USER, USER_SESSIONS,
+        LOAD_VERSIONED, COMPARE_AND_WRITE, UPDATE, CREATE
+    }
+
+    private final Map<Op, Timer> success = new EnumMap<>(Op.class);
+    private final Map<Op, Timer> error = new EnumMap<>(Op.class);
+    private final Counter coalesced;
+    private final Counter conflicts;
+    private final Counter oversized;
+    private final Counter publishFailures;
+
+    public SessionMetrics(MeterRegistry registry) {
+        for (Op op : Op.values()) {
+            success.put(op, timer(registry, op, "success"));
+            error.put(op, timer(registry, op, "error"));
+        }
+        this.coalesced = Counter.builder("redis.session.coalesced")
+                .description("Session reads served by another thread's in-flight Redis call")
+                .register(registry);
+        this.conflicts = Counter.builder("redis.session.conflicts")
+                .description("Versioned session writes that lost a race and were retried")
+                .register(registry);
+        this.oversized = Counter.builder("redis.session.oversized")
+                .description("Session attribute values written above the compact layout's max value size")
+                .register(registry);
+        this.publishFailures = Counter.builder("redis.session.near-cache.publish-failures")
+                .description("Near-cache invalidations that could not be published to other nodes")
+                .register(registry);
+    }
+
+    /** どこにも出力しない計測器（Spring 外で Repository を組み立てる場合用）。 */
+    static SessionMetrics noop() {
+        return new SessionMetrics(new CompositeMeterRegistry());
+    }
+
+    private static Timer timer(MeterRegistry registry, Op op, String outcome) {
+        return Timer.builder("redis.session.op")
+                .description("RedisSessionRepository operation latency (including retries)")
+                .tag("op", op.name().toLowerCase())
+                .tag("outcome", outcome)
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    /** 実行中の読み取りに相乗りした（Redis を呼ばなかった）読み取り。 */
+    void coalesced() {
+        coalesced.increment();
+    }
+
+    /** バージョン付き書き込みが競合した（update が読み直して再試行する）。 */
+    void conflict() {
+        conflicts.increment();
+    }
+
+    /** listpack の上限を超える値を書いた（その Hash は hashtable 表現になる）。 */
+    void oversized() {
+        oversized.increment();
+    }
+
+    /** L1 の無効化を他ノードへ publish できなかった（他ノードは expireAfterWrite まで古い値を返しうる）。 */
+    void publishFailed() {
+        publishFailures.increment();
+    }
+
+    <T> T record(Op op, Supplier<T> body) {
+        long start = System.nanoTime();
+        try {
+            T result = body.get();
+            success.get(op).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            return result;
+        } catch (RuntimeException e) {
+            error.get(op).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            throw e;
+        }
+    }
+
+    void record(Op op, Runnable body) {
+        record(op, () -> {
+            body.run();
+            return null;
+        });
+    }
+
+    /** Mono 版。購読から完了/エラーまでを計測する（キャンセルは記録しない）。 */
+    <T> Mono<T> record(Op op, Mono<T> body) {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return body
+                    .doOnSuccess(v -> success.get(op).record(System.nanoTime() - start, TimeUnit.NANOSECONDS))
+                    .doOnError(e -> error.get(op).record(System.nanoTime() - start, TimeUnit.NANOSECONDS));
+        });
+    }
+}
@@ -0,0 +1,230 @@
+package com.example.spring_redis_practice.session;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.lettuce.core.AbstractRedisClient;
+import io.lettuce.core.RedisChannelHandler;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisConnectionStateAdapter;
+import io.lettuce.core.TrackingArgs;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.push.PushListener;
+import io.lettuce.core.api.push.PushMessage;
+import io.lettuce.core.codec.StringCodec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import java.net.SocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * セッション Hash のノード内 L1 キャッシュ（キー："session:{sid}" → 全属性のスナップショット）。
+ * <p>
+ * 整合性：
+ * ・自ノードの書き込み/破棄時はその場で evict
+ * ・他ノードの書き込みは次のどちらかで evict
+ *   - TRACKING：専用の RESP3 接続で CLIENT TRACKING ON BCAST PREFIX session: を有効化し、
+ *     Redis からの invalidate プッシュを受ける（書き込み側は何もしなくてよい）
+ *   - PUBSUB：書き込んだノードが独自チャネルへキーを publish し、各ノードが購読して evict。
+ *     publish は書き込みの成功後なので、失敗しても呼び出し元には投げない（redis.session.near-cache.publish-failures に
+ *     数え、他ノードの古い値は expireAfterWrite で消える。TRACKING で通知を取りこぼした場合と同じ扱い）
+ * ・通知の取りこぼしに備え、エントリは expireAfterWrite で必ず捨てる
+ * ・「読み取り中に無効化が来た」場合に古い値を載せないよう、無効化ごとに進む世代番号で put を弾く。
+ *   世代はキーのハッシュで STRIPES 個に分けて持つ（他のキーの無効化では put を弾かない。同じ区画に落ちた別キーだけ巻き添え）
+ * ・TRACKING 接続が切れている間はキャッシュを使わない（通知を受けられないため）
+ * ・シャーディング（app.session.shards）有効時は常に PUBSUB（チャネルは既定の接続先に置く）
+ * <p>
+ * 取り出した Map は共有スナップショットなので読み取り専用として扱うこと。
+ */
+@Component
+public class SessionNearCache implements InitializingBean, DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(SessionNearCache.class);
+    /** 世代番号の区画数（2 のべき乗）。 */
+    static final int STRIPES = 4096;
+
+    private final SessionProperties.NearCache props;
+    private final RedisTemplate<String, Object> redis;
+    private final SessionMetrics metrics;
+    private final Cache<String, Map<Object, Object>> cache;
+    private final AtomicLongArray generations = new AtomicLongArray(STRIPES);
+    private volatile boolean connected = true;
+
+    private StatefulRedisConnection<String, String> trackingConnection;
+    private RedisMessageListenerContainer listenerContainer;
+
+    public SessionNearCache(SessionProperties props, RedisTemplate<String, Object> redis) {
+        this(props, redis, SessionMetrics.noop());
+    }
+
+    @Autowired
+    public SessionNearCache(SessionProperties props, RedisTemplate<String, Object> redis, SessionMetrics metrics) {
+        this.props = props.getNearCache();
+        this.redis = redis;
+        this.metrics = metrics;
+        if (props.getShards().isEnabled()
+                && this.props.getInvalidation() == SessionProperties.NearCache.Invalidation.TRACKING) {
+            // TRACKING は既定の接続先での書き込みしか通知しない。シャードへの書き込みは publish で知らせる
+            log.warn("CLIENT TRACKING does not see writes to session shards; using pub/sub invalidation");
+            this.props.setInvalidation(SessionProperties.NearCache.Invalidation.PUBSUB);
+        }
+        this.cache = this.props.isEnabled()
+                ? Caffeine.newBuilder()
+                        .maximumSize(this.props.getMaxEntries())
+                        .expireAfterWrite(this.props.getExpireAfterWrite())
+                        .build()
+                : null;
+    }
+
+    /** 無効（常にミス）なインスタンス。Repository を Spring 外で組み立てる場合用。 */
+    static SessionNearCache disabled() {
+        return new SessionNearCache(new SessionProperties(), null);
+    }
+
+    public boolean isEnabled() { return cache != null && connected; }
+
+    /** 読み取り開始前に取得しておき、put 時に渡す（途中でそのキーの無効化があれば put しない）。 */
+    long stamp(String key) { return generations.get(stripe(key)); }
+
+    Map<Object, Object> get(String key) {
+        return isEnabled() ? cache.getIfPresent(key) : null;
+    }
+
+    /** 接続状態に関わらず残っているエントリ（Redis 障害中の SessionFallbackStore 用。古い可能性がある）。 */
+    Map<Object, Object> peek(String key) {
+        return cache != null ? cache.getIfPresent(key) : null;
+    }
+
+    void put(String key, Map<Object, Object> value, long stamp) {
+        if (!isEnabled() || value.isEmpty()) return;
+        cache.put(key, value);
+        // put の前後どちらかで無効化が走っていたら、載せた値は古い可能性があるので捨てる
+        if (generations.get(stripe(key)) != stamp) cache.invalidate(key);
+    }
+
+    /** 自ノードでの書き込み/破棄。ローカルを捨て、PUBSUB モードなら他ノードにも通知。 */
+    void evict(String key) {
+        if (cache == null) return;
+        evictLocal(key);
+        if (props.getInvalidation() == SessionProperties.NearCache.Invalidation.PUBSUB) {
+            final byte[] channel = props.getChannel().getBytes(StandardCharsets.UTF_8);
+            final byte[] message = key.getBytes(StandardCharsets.UTF_8);
+            try {
+                redis.execute((RedisCallback<Long>) c -> c.publish(channel, message));
+            } catch (RuntimeException e) {
+                metrics.publishFailed();
+                log.debug("Could not publish near-cache invalidation for {}: {}", key, e.toString());
+            }
+        }
+    }
+
+    private void evictLocal(String key) {
+        generations.incrementAndGet(stripe(key));
+        cache.invalidate(key);
+    }
+
+    /** 全区画の世代を進めてから全破棄（再接続時・FLUSHALL の通知時だけなので区画数分の更新で構わない）。 */
+    private void evictAll() {
+        for (int i = 0; i < STRIPES; i++) generations.incrementAndGet(i);
+        cache.invalidateAll();
+    }
+
+    static int stripe(String key) {
+        int h = key.hashCode();
+        return (h ^ (h >>> 16)) & (STRIPES - 1);
+    }
+
+    /** TRACKING 接続が切れた。再接続まで通知を受けられないのでキャッシュを使わない。 */
+    void trackingLost() {
+        connected = false;
+        evictAll();
+    }
+
+    /** TRACKING を張り直した。切れていた間の通知は失われているので全破棄してから使い始める。 */
+    void trackingRestored() {
+        evictAll();
+        connected = true;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        if (cache == null) return;
+        if (props.getInvalidation() == SessionProperties.NearCache.Invalidation.TRACKING && startTracking()) return;
+        startPubSub();
+    }
+
+    /** CLIENT TRACKING 用の専用接続を張る。Standalone の RedisClient 以外なら false（PUBSUB に切替）。 */
+    private boolean startTracking() {
+        RedisConnectionFactory cf = redis.getConnectionFactory();
+        AbstractRedisClient nativeClient = cf instanceof LettuceConnectionFactory lcf ? lcf.getNativeClient() : null;
+        if (!(nativeClient instanceof RedisClient client)) {
+            log.warn("CLIENT TRACKING requires a standalone Lettuce RedisClient; using pub/sub invalidation");
+            props.setInvalidation(SessionProperties.NearCache.Invalidation.PUBSUB);
+            return false;
+        }
+        trackingConnection = client.connect(StringCodec.UTF8);
+        trackingConnection.addListener((PushListener) this::onPush);
+        trackingConnection.sync().clientTracking(trackingArgs());
+
+        // 再接続時は TRACKING が外れているので張り直し、その間の通知は失われているので全破棄
+        client.addListener(new RedisConnectionStateAdapter() {
+            @Override
+            public void onRedisDisconnected(RedisChannelHandler<?, ?> connection) {
+                if (connection != trackingConnection) return;
+                trackingLost();
+            }
+
+            @Override
+            public void onRedisConnected(RedisChannelHandler<?, ?> connection, SocketAddress socketAddress) {
+                if (connection != trackingConnection) return;
+                trackingConnection.async().clientTracking(trackingArgs()).thenRun(SessionNearCache.this::trackingRestored);
+            }
+        });
+        return true;
+    }
+
+    private static TrackingArgs trackingArgs() {
+        return TrackingArgs.Builder.enabled().bcast().prefixes(RedisSessionRepository.KEY_PREFIX);
+    }
+
+    /** invalidate プッシュ：[ "invalidate", [key, ...] ]。キー一覧が null なら FLUSHALL 等による全無効化。 */
+    private void onPush(PushMessage message) {
+        if (!"invalidate".equals(message.getType())) return;
+        List<Object> content = message.getContent(StringCodec.UTF8::decodeKey);
+        Object keys = content.size() > 1 ? content.get(1) : null;
+        if (keys instanceof List<?> list) {
+            list.forEach(k -> evictLocal((String) k));
+        } else {
+            evictAll();
+        }
+    }
+
+    private void startPubSub() {
+        listenerContainer = new RedisMessageListenerContainer();
+        listenerContainer.setConnectionFactory(redis.getConnectionFactory());
+        listenerContainer.addMessageListener(
+                (message, pattern) -> evictLocal(new String(message.getBody(), StandardCharsets.UTF_8)),
+                new ChannelTopic(props.getChannel()));
+        listenerContainer.afterPropertiesSet();
+        listenerContainer.start();
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        if (trackingConnection != null) trackingConnection.close();
+        if (listenerContainer != null) listenerContainer.destroy();
+    }
+}
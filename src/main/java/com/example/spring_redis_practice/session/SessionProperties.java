@@ -0,0 +1,389 @@
+package com.example.spring_redis_practice.session;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * セッション関連の設定（application.yml の app.session.*）。
+ * クラスの既定値は従来どおりの挙動（コマンドを個別に発行）になる値にしている（application.yml が無い組み立てやテスト用）。
+ * 同梱の application.yml はスクリプトモード・TTL延長の間引き・読み取りの相乗り・起動時のウォームアップを有効にしている
+ * （それぞれ false にすれば従来の挙動に戻る）。
+ */
+@ConfigurationProperties(prefix = "app.session")
+public class SessionProperties {
+
+    private final Scripts scripts = new Scripts();
+    private final Touch touch = new Touch();
+    private final NearCache nearCache = new NearCache();
+    private final Batch batch = new Batch();
+    private final UserIndex userIndex = new UserIndex();
+    private final ReplicaReads replicaReads = new ReplicaReads();
+    private final Shards shards = new Shards();
+    private final Coalesce coalesce = new Coalesce();
+    private final KnownIds knownIds = new KnownIds();
+    private final Fallback fallback = new Fallback();
+    private final Snapshot snapshot = new Snapshot();
+    private final Versioning versioning = new Versioning();
+    private final Compact compact = new Compact();
+    private final Footprint footprint = new Footprint();
+    private final Warmup warmup = new Warmup();
+
+    public Scripts getScripts() { return scripts; }
+    public Touch getTouch() { return touch; }
+    public NearCache getNearCache() { return nearCache; }
+    public Batch getBatch() { return batch; }
+    public UserIndex getUserIndex() { return userIndex; }
+    public ReplicaReads getReplicaReads() { return replicaReads; }
+    public Shards getShards() { return shards; }
+    public Coalesce getCoalesce() { return coalesce; }
+    public KnownIds getKnownIds() { return knownIds; }
+    public Fallback getFallback() { return fallback; }
+    public Snapshot getSnapshot() { return snapshot; }
+    public Versioning getVersioning() { return versioning; }
+    public Compact getCompact() { return compact; }
+    public Footprint getFootprint() { return footprint; }
+    public Warmup getWarmup() { return warmup; }
+
+    /** Lua スクリプトモードの設定。 */
+    public static class Scripts {
+        /** true なら「読み書き＋TTL延長」を EVALSHA 1回（=1 RTT・アトミック）で実行する。 */
+        private boolean enabled = false;
+        /** 起動時に SCRIPT LOAD しておくか（しなくても NOSCRIPT 時は EVAL にフォールバック）。 */
+        private boolean preload = true;
+
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+        public boolean isPreload() { return preload; }
+        public void setPreload(boolean preload) { this.preload = preload; }
+    }
+
+    /**
+     * 読み取り時のTTL延長（EXPIRE）の間引き設定。
+     * 最後に自ノードで延長してから一定時間経つまでは EXPIRE を送らない（判定はローカルのみ）。
+     */
+    public static class Touch {
+        private boolean enabled = false;
+        /** 前回の延長からこの時間が経過するまでは再延長しない。 */
+        private Duration minInterval = Duration.ofMinutes(1);
+        /** 残TTLが TTL×この比率 を下回ったら再延長する（0 なら minInterval のみで判定）。 */
+        private double refreshBelowRatio = 0.0;
+        /** ローカルに覚えておくセッション数の上限（超えたら一旦忘れる＝次回は必ず延長）。 */
+        private int maxTracked = 100_000;
+
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+        public Duration getMinInterval() { return minInterval; }
+        public void setMinInterval(Duration minInterval) { this.minInterval = minInterval; }
+        public double getRefreshBelowRatio() { return refreshBelowRatio; }
+        public void setRefreshBelowRatio(double refreshBelowRatio) { this.refreshBelowRatio = refreshBelowRatio; }
+        public int getMaxTracked() { return maxTracked; }
+        public void setMaxTracked(int maxTracked) { this.maxTracked = maxTracked; }
+    }
+
+    /**
+     * ノード内のセッション L1 キャッシュ（SessionNearCache）の設定。
+     * 他ノードでの更新は Redis のクライアントサイドキャッシュ通知（CLIENT TRACKING）か Pub/Sub で無効化する。
+     */
+    public static class NearCache {
+        public enum Invalidation { TRACKING, PUBSUB }
+
+        private boolean enabled = false;
+        /** 保持するセッション数の上限。 */
+        private long maxEntries = 10_000;
+        /** 無効化通知を取りこぼした場合の保険として、この時間で必ず捨てる。 */
+        private Duration expireAfterWrite = Duration.ofSeconds(30);
+        /** TRACKING = RESP3 の CLIENT TRACKING (BCAST)、PUBSUB = 独自チャネルで通知。 */
+        private Invalidation invalidation = Invalidation.TRACKING;
+        /** PUBSUB モードで使うチャネル名。 */
+        private String channel = "session-invalidation";
+
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+        public long getMaxEntries() { return maxEntries; }
+        public void setMaxEntries(long maxEntries) { this.maxEntries = maxEntries; }
+        public Duration getExpireAfterWrite() { return expireAfterWrite; }
+        public void setExpireAfterWrite(Duration expireAfterWrite) { this.expireAfterWrite = expireAfterWrite; }
+        public Invalidation getInvalidation() { return invalidation; }
+        public void setInvalidation(Invalidation invalidation) { this.invalidation = invalidation; }
+        public String getChannel() { return channel; }
+        public void setChannel(String channel) { this.channel = channel; }
+    }
+
+    /** 一括操作（loadMany / invalidateMany / touchMany）の設定。 */
+    public static class Batch {
+        /** 1 回のパイプラインに載せるセッション数（リトライもこの単位）。 */
+        private int size = 500;
+
+        public int getSize() { return size; }
+        public void setSize(int size) { this.size = size; }
+    }
+
+    /** userId → SID の二次インデックス（UserSessionIndex）の設定。 */
+    public static class UserIndex {
+        private boolean enabled = false;
+        /** インデックスに使う属性名。 */
+        private String attribute = "userId";
+        /** 起動時に CONFIG SET notify-keyspace-events Exe を試みるか（サーバ側で設定済みなら false）。 */
+        private boolean configureNotifications = true;
+
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+        public String getAttribute() { return attribute; }
+        public void setAttribute(String attribute) { this.attribute = attribute; }
+        public boolean isConfigureNotifications() { return configureNotifications; }
+        public void setConfigureNotifications(boolean configureNotifications) {
+            this.configureNotifications = configureNotifications;
+        }
+    }
+
+    /**
+     * セッション読み取り（load / getAttr / ttl）をレプリカに振り分ける設定（SessionReplicaReads）。
+     * 書き込みから stickyWindow 以内の同一セッションの読み取りはプライマリへ送る（自分の書き込みが見えなくなるのを防ぐ）。
+     */
+    public static class ReplicaReads {
+        private boolean enabled = false;
+        /** Lettuce の ReadFrom 名（replicaPreferred, replica, nearest, any など）。 */
+        private String readFrom = "replicaPreferred";
+        /** Standalone 構成のときのレプリカ（host:port）。Sentinel/Cluster では不要（トポロジから取得）。 */
+        private List<String> replicas = new ArrayList<>();
+        /** 書き込み後、この時間はプライマリから読む（レプリケーション遅延の上限の目安より長く）。 */
+        private Duration stickyWindow = Duration.ofSeconds(5);
+        /** ノードローカルに覚えておく「最終書き込み時刻」の件数上限。 */
+        private int maxTracked = 100_000;
+
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+        public String getReadFrom() { return readFrom; }
+        public void setReadFrom(String readFrom) { this.readFrom = readFrom; }
+        public List<String> getReplicas() { return replicas; }
+        public void setReplicas(List<String> replicas) { this.replicas = replicas; }
+        public Duration getStickyWindow() { return stickyWindow; }
+        public void setStickyWindow(Duration stickyWindow) { this.stickyWindow = stickyWindow; }
+        public int getMaxTracked() { return maxTracked; }
+        public void setMaxTracked(int maxTracked) { this.maxTracked = maxTracked; }
+    }
+
+    /**
+     * セッションのクライアント側シャーディング（SessionShards）の設定。
+     * ノードを増やすときは、旧構成を previousNodes に残したまま nodes を更新してデプロイし、
+     * 再配置（SessionShardsEndpoint の rebalance）が終わったら previousNodes を外す。
+     */
+    public static class Shards {
+        private boolean enabled = false;
+        /** 各シャード（Standalone）の host:port。パスワード/DB 番号は spring.data.redis.* と同じものを使う。 */
+        private List<String> nodes = new ArrayList<>();
+        /** 移行中のみ：変更前の nodes。担当が変わったキーは触れたときに新しい担当へ移す。 */
+        private List<String> previousNodes = new ArrayList<>();
+        /** 1 ノードあたりの仮想ノード数（多いほど偏りが小さい）。 */
+        private int virtualNodes = 160;
+        /** キーに "{...}" があれば中身だけでノードを決める（Redis Cluster と同じ規則）。 */
+        private boolean hashTags = true;
+
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+        public List<String> getNodes() { return nodes; }
+        public void setNodes(List<String> nodes) { this.nodes = nodes; }
+        public List<String> getPreviousNodes() { return previousNodes; }
+        public void setPreviousNodes(List<String> previousNodes) { this.previousNodes = previousNodes; }
+        public int getVirtualNodes() { return virtualNodes; }
+        public void setVirtualNodes(int virtualNodes) { this.virtualNodes = virtualNodes; }
+        public boolean isHashTags() { return hashTags; }
+        public void setHashTags(boolean hashTags) { this.hashTags = hashTags; }
+    }
+
+    /**
+     * 同じセッションへの同時読み取り（load / getAttr / L1 ヒット時の EXPIRE）を 1 回の Redis 呼び出しにまとめる設定。
+     * ページ読み込みで同じ SID のリクエストが並行して来る場合に効く。
+     */
+    public static class Coalesce {
+        private boolean enabled = false;
+
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+    }
+
+    /**
+     * 生きている SID の近似集合（KnownSessionIds）の設定。
+     * 集合に無い SID のクッキーは、Redis を引かずに「セッションなし」として扱う。
+     */
+    public static class KnownIds {
+        private boolean enabled = false;
+        /** 想定するセッション数（TTL の間に作られる/延長される数）。超えると偽陽性率が上がるだけで誤りにはならない。 */
+        private long expectedSessions = 1_000_000;
+        /** 偽陽性率（知らない SID を「あるかも」と判定して Redis を引いてしまう割合）。 */
+        private double falsePositiveRate = 0.01;
+        /** 起動時に CONFIG SET notify-keyspace-events に Egh を足すか（サーバ側で設定済みなら false）。 */
+        private boolean configureNotifications = true;
+        /** 発行からこの時間以内の SID は、集合に無くても Redis を引く（他ノードで作られて通知がまだ届いていないもの）。 */
+        private Duration freshWindow = Duration.ofSeconds(30);
+
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+        public long getExpectedSessions() { return expectedSessions; }
+        public void setExpectedSessions(long expectedSessions) { this.expectedSessions = expectedSessions; }
+        public double getFalsePositiveRate() { return falsePositiveRate; }
+        public void setFalsePositiveRate(double falsePositiveRate) { this.falsePositiveRate = falsePositiveRate; }
+        public boolean isConfigureNotifications() { return configureNotifications; }
+        public void setConfigureNotifications(boolean configureNotifications) {
+            this.configureNotifications = configureNotifications;
+        }
+        public Duration getFreshWindow() { return freshWindow; }
+        public void setFreshWindow(Duration freshWindow) { this.freshWindow = freshWindow; }
+    }
+
+    /**
+     * Redis 障害時のノード内退避（SessionFallbackStore）の設定。
+     * 一時的な障害（サーキットブレーカが開いている間を含む）で失敗した読み書きをローカルで受け、復旧後に Redis へ書き戻す。
+     */
+    public static class Fallback {
+        private boolean enabled = false;
+        /** 退避中に保持するセッション数の上限（書き戻し待ちのものは捨てないので、達したら新しいセッションの書き込みを拒否する）。 */
+        private int maxEntries = 10_000;
+        /** 退避中に保持する属性の合計サイズの上限（シリアライズ後のバイト数の概算。達したら属性を増やす書き込みを拒否する）。 */
+        private DataSize maxBytes = DataSize.ofMegabytes(64);
+        /** 書き戻し待ちの変更の上限（超えたら古いものから捨てる）。 */
+        private int maxJournal = 100_000;
+        /** 書き戻しを試みる間隔（ブレーカが開いている間は試みない）。 */
+        private Duration reconcileInterval = Duration.ofSeconds(1);
+
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+        public int getMaxEntries() { return maxEntries; }
+        public void setMaxEntries(int maxEntries) { this.maxEntries = maxEntries; }
+        public DataSize getMaxBytes() { return maxBytes; }
+        public void setMaxBytes(DataSize maxBytes) { this.maxBytes = maxBytes; }
+        public int getMaxJournal() { return maxJournal; }
+        public void setMaxJournal(int maxJournal) { this.maxJournal = maxJournal; }
+        public Duration getReconcileInterval() { return reconcileInterval; }
+        public void setReconcileInterval(Duration reconcileInterval) { this.reconcileInterval = reconcileInterval; }
+    }
+
+    /**
+     * セッションのスナップショット（SessionSnapshots）の設定。
+     * Redis の入れ替え・再構築時に、全セッションを TTL ごとファイルへ書き出して別の Redis へ戻す。
+     */
+    public static class Snapshot {
+        /** ファイルの置き場所。エンドポイントから指定するファイル名はこの下に限る。 */
+        private String directory = "snapshots";
+        /** 書き出すキー（SCAN の MATCH）。user-index を使う場合は "user-sessions:*" も足す。 */
+        private List<String> keyPatterns = new ArrayList<>(List.of(RedisSessionRepository.KEY_PREFIX + "*"));
+        /** SCAN 1 回あたりの件数の目安（DUMP/PTTL もこの単位でパイプラインに載せる）。 */
+        private int scanCount = 1000;
+        /** ファイルのチャンクの大きさ（復元は 1 チャンクずつパイプラインで送る）。 */
+        private DataSize chunkSize = DataSize.ofMegabytes(1);
+        /** 復元時に並行して送るチャンク数（メモリはおおよそ chunkSize × 2 × この値）。 */
+        private int restoreThreads = 4;
+        /** 復元先に既にあるキーを上書きするか（false なら復元先を正として残す）。 */
+        private boolean replace = false;
+
+        public String getDirectory() { return directory; }
+        public void setDirectory(String directory) { this.directory = directory; }
+        public List<String> getKeyPatterns() { return keyPatterns; }
+        public void setKeyPatterns(List<String> keyPatterns) { this.keyPatterns = keyPatterns; }
+        public int getScanCount() { return scanCount; }
+        public void setScanCount(int scanCount) { this.scanCount = scanCount; }
+        public DataSize getChunkSize() { return chunkSize; }
+        public void setChunkSize(DataSize chunkSize) { this.chunkSize = chunkSize; }
+        public int getRestoreThreads() { return restoreThreads; }
+        public void setRestoreThreads(int restoreThreads) { this.restoreThreads = restoreThreads; }
+        public boolean isReplace() { return replace; }
+        public void setReplace(boolean replace) { this.replace = replace; }
+    }
+
+    /**
+     * バージョン付きの書き込み（楽観的排他）の設定。
+     * 有効なら単一セッションの書き込みはすべて SessionScripts.CAS_WRITE 1 回（書き込みごとに版が上がり、TTL も同時に延長）。
+     * compareAndWrite / update はこの版で競合を検出する。user-index とは併用できない。
+     */
+    public static class Versioning {
+        private boolean enabled = false;
+        /** update が競合して読み直す回数の上限（初回を含む試行回数）。 */
+        private int maxAttempts = 5;
+        /** 競合後の待ちの初期値（試行ごとに倍、フルジッタ）。 */
+        private Duration backoffInitial = Duration.ofMillis(1);
+        /** 競合後の待ちの上限。 */
+        private Duration backoffMax = Duration.ofMillis(50);
+
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+        public int getMaxAttempts() { return maxAttempts; }
+        public void setMaxAttempts(int maxAttempts) { this.maxAttempts = maxAttempts; }
+        public Duration getBackoffInitial() { return backoffInitial; }
+        public void setBackoffInitial(Duration backoffInitial) { this.backoffInitial = backoffInitial; }
+        public Duration getBackoffMax() { return backoffMax; }
+        public void setBackoffMax(Duration backoffMax) { this.backoffMax = backoffMax; }
+    }
+
+    /**
+     * セッション Hash の省メモリ配置（SessionHashLayout）の設定。
+     * 属性名を短い field 名に置き換え、値の大きさを listpack の上限以下に抑えて、Hash を compact な表現のまま保つ。
+     */
+    public static class Compact {
+        private boolean enabled = false;
+        /** 属性名 → Redis 上の field 名（例: userId: u）。ここに無い属性は名前のまま保存する。 */
+        private Map<String, String> aliases = new LinkedHashMap<>();
+        /** 値（シリアライズ後）の大きさの上限。Redis の hash-max-listpack-value に合わせる。 */
+        private DataSize maxValueSize = DataSize.ofBytes(64);
+        /** true なら上限を超える値の書き込みを拒否する（false なら redis.session.oversized に数えて書く）。 */
+        private boolean rejectOversized = false;
+
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+        public Map<String, String> getAliases() { return aliases; }
+        public void setAliases(Map<String, String> aliases) { this.aliases = aliases; }
+        public DataSize getMaxValueSize() { return maxValueSize; }
+        public void setMaxValueSize(DataSize maxValueSize) { this.maxValueSize = maxValueSize; }
+        public boolean isRejectOversized() { return rejectOversized; }
+        public void setRejectOversized(boolean rejectOversized) { this.rejectOversized = rejectOversized; }
+    }
+
+    /** セッションのメモリ使用量の調査（SessionFootprint）の設定。 */
+    public static class Footprint {
+        /** 調べるキー（SCAN の MATCH）。 */
+        private String keyPattern = RedisSessionRepository.KEY_PREFIX + "*";
+        /** 1 回の調査で見るセッション数の上限（ノードごと）。 */
+        private int sampleSize = 10_000;
+        /** SCAN 1 回あたりの件数の目安（MEMORY USAGE などもこの単位でパイプラインに載せる）。 */
+        private int scanCount = 500;
+        /** listpack の上限（CONFIG GET が使えないときに使う。Redis の既定値）。 */
+        private int maxListpackEntries = 128;
+
+        public String getKeyPattern() { return keyPattern; }
+        public void setKeyPattern(String keyPattern) { this.keyPattern = keyPattern; }
+        public int getSampleSize() { return sampleSize; }
+        public void setSampleSize(int sampleSize) { this.sampleSize = sampleSize; }
+        public int getScanCount() { return scanCount; }
+        public void setScanCount(int scanCount) { this.scanCount = scanCount; }
+        public int getMaxListpackEntries() { return maxListpackEntries; }
+        public void setMaxListpackEntries(int maxListpackEntries) { this.maxListpackEntries = maxListpackEntries; }
+    }
+
+    /**
+     * 起動時のウォームアップ（SessionWarmup）の設定。
+     * Redis への接続・スクリプトの登録・シリアライザとセッション操作の初回実行を、readiness が ACCEPTING_TRAFFIC になる前に済ませる。
+     */
+    public static class Warmup {
+        private boolean enabled = false;
+        /** セッション操作（作成 → 読み取り → 更新 → 一括読み取り → 破棄）を繰り返す回数。 */
+        private int iterations = 500;
+        /** ウォームアップ全体の上限。超えたら残りを打ち切って起動を続ける。 */
+        private Duration timeout = Duration.ofSeconds(15);
+        /** true なら Redis に繋がらないときに起動を失敗させる（false なら警告だけで起動を続ける）。 */
+        private boolean required = false;
+
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+        public int getIterations() { return iterations; }
+        public void setIterations(int iterations) { this.iterations = iterations; }
+        public Duration getTimeout() { return timeout; }
+        public void setTimeout(Duration timeout) { this.timeout = timeout; }
+        public boolean isRequired() { return required; }
+        public void setRequired(boolean required) { this.required = required; }
+    }
+}
@@ -0,0 +1,110 @@
+package com.example.spring_redis_practice.session;
+
+import com.example.spring_redis_practice.config.RedisConfig;
+import io.lettuce.core.ReadFrom;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.data.redis.connection.RedisConfiguration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.RedisStaticMasterReplicaConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceClientConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.stereotype.Component;
+
+/**
+ * セッション読み取り用の RedisTemplate（Lettuce の ReadFrom でレプリカへ振り分ける）。
+ * <p>
+ * Boot が作った接続（spring.data.redis.*）と同じ接続先・クライアント設定に ReadFrom だけを足した
+ * LettuceConnectionFactory をもう 1 つ作る。
+ * ・Sentinel / Cluster：トポロジからレプリカを見つける
+ * ・Standalone：app.session.replica-reads.replicas に列挙したノードを静的な Master/Replica 構成として使う
+ * Lettuce は書き込み系コマンド（EXPIRE, EVALSHA 等）をこの接続でもプライマリへ送るので、
+ * 読み取り経路でのTTL延長はそのまま動く（ただしプライマリへの往復になる）。
+ * <p>
+ * 無効時・レプリカが無い構成では template() は null（＝常にプライマリ）。
+ */
+@Component
+public class SessionReplicaReads implements DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(SessionReplicaReads.class);
+
+    private final LettuceConnectionFactory connectionFactory;
+    private final RedisTemplate<String, Object> template;
+
+    public SessionReplicaReads(SessionProperties props, RedisConnectionFactory primary,
+                               RedisSerializer<Object> redisValueSerializer) {
+        this.connectionFactory = props.getReplicaReads().isEnabled()
+                ? replicaConnectionFactory(props.getReplicaReads(), primary) : null;
+        if (connectionFactory != null) {
+            connectionFactory.afterPropertiesSet();
+            this.template = RedisConfig.template(connectionFactory, redisValueSerializer);
+        } else {
+            this.template = null;
+        }
+    }
+
+    private SessionReplicaReads() {
+        this.connectionFactory = null;
+        this.template = null;
+    }
+
+    /** 無効なインスタンス。Repository を Spring 外で組み立てる場合用。 */
+    static SessionReplicaReads disabled() {
+        return new SessionReplicaReads();
+    }
+
+    /** レプリカから読む RedisTemplate（無効なら null）。 */
+    RedisTemplate<String, Object> template() { return template; }
+
+    private static LettuceConnectionFactory replicaConnectionFactory(SessionProperties.ReplicaReads props,
+                                                                     RedisConnectionFactory primary) {
+        if (!(primary instanceof LettuceConnectionFactory lcf)) {
+            log.warn("Replica reads require a LettuceConnectionFactory; reading from the primary");
+            return null;
+        }
+        RedisConfiguration topology;
+        if (lcf.getSentinelConfiguration() != null) {
+            topology = lcf.getSentinelConfiguration();
+        } else if (lcf.getClusterConfiguration() != null) {
+            topology = lcf.getClusterConfiguration();
+        } else if (!props.getReplicas().isEmpty()) {
+            RedisStandaloneConfiguration standalone = lcf.getStandaloneConfiguration();
+            RedisStaticMasterReplicaConfiguration staticTopology =
+                    new RedisStaticMasterReplicaConfiguration(standalone.getHostName(), standalone.getPort());
+            for (String node : props.getReplicas()) {
+                String[] hp = node.split(":");
+                staticTopology.node(hp[0], Integer.parseInt(hp[1]));
+            }
+            staticTopology.setPassword(standalone.getPassword());
+            staticTopology.setDatabase(standalone.getDatabase());
+            topology = staticTopology;
+        } else {
+            log.warn("Replica reads enabled but no replicas are configured; reading from the primary");
+            return null;
+        }
+        return new LettuceConnectionFactory(topology, withReadFrom(lcf.getClientConfiguration(),
+                ReadFrom.valueOf(props.getReadFrom())));
+    }
+
+    /** Boot 側のクライアント設定を引き継ぎ、ReadFrom だけ差し替える。 */
+    private static LettuceClientConfiguration withReadFrom(LettuceClientConfiguration base, ReadFrom readFrom) {
+        LettuceClientConfiguration.LettuceClientConfigurationBuilder builder = LettuceClientConfiguration.builder()
+                .readFrom(readFrom)
+                .commandTimeout(base.getCommandTimeout())
+                .shutdownTimeout(base.getShutdownTimeout());
+        base.getClientOptions().ifPresent(builder::clientOptions);
+        base.getClientResources().ifPresent(builder::clientResources);
+        base.getClientName().ifPresent(builder::clientName);
+        if (base.isUseSsl()) builder.useSsl();
+        return builder.build();
+    }
+
+    @Override
+    public void destroy() {
+        if (connectionFactory != null) connectionFactory.destroy();
+    }
+}
@@ -0,0 +1,139 @@
+package com.example.spring_redis_practice.session;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationStartedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * セッション操作用の Lua スクリプト群。
+ * ・読み書きとスライディングTTLの延長を Redis 側で 1 回に束ねる（1 RTT・アトミック）
+ * ・共通引数：KEYS[1] = "session:{sid}", ARGV[1] = TTL秒
+ *   （読み取り系は ARGV[1] = "0" なら延長しない＝TouchThrottle による間引き）
+ * <p>
+ * 実行は RedisTemplate#execute(RedisScript, ...) に任せる。
+ * 内部では EVALSHA を投げ、NOSCRIPT（スクリプト未登録）なら EVAL にフォールバックする。
+ * 起動時に SCRIPT LOAD しておけば、初回から EVALSHA で済む。
+ */
+@Component
+public class SessionScripts {
+
+    private static final Logger log = LoggerFactory.getLogger(SessionScripts.class);
+
+    /** HGETALL → 空でなければ EXPIRE（ARGV[1]="0" なら省略）。戻り値は [field, value, field, value, ...]。 */
+    @SuppressWarnings("rawtypes")
+    static final RedisScript<List> LOAD = new DefaultRedisScript<>("""
+            local h = redis.call('HGETALL', KEYS[1])
+            if #h > 0 and ARGV[1] ~= '0' then redis.call('EXPIRE', KEYS[1], ARGV[1]) end
+            return h
+            """, List.class);
+
+    /** HGET → 値があれば EXPIRE（ARGV[1]="0" なら省略）。ARGV[2] = field。 */
+    static final RedisScript<byte[]> GET = new DefaultRedisScript<>("""
+            local v = redis.call('HGET', KEYS[1], ARGV[2])
+            if v and ARGV[1] ~= '0' then redis.call('EXPIRE', KEYS[1], ARGV[1]) end
+            return v
+            """, byte[].class);
+
+    /** HSET（複数 field/value 可）→ EXPIRE。ARGV[2..] = field, value, field, value, ... */
+    static final RedisScript<Long> PUT = new DefaultRedisScript<>("""
+            redis.call('HSET', KEYS[1], unpack(ARGV, 2))
+            redis.call('EXPIRE', KEYS[1], ARGV[1])
+            return 1
+            """, Long.class);
+
+    /**
+     * HDEL（削除分）→ HSET（更新分）→ EXPIRE をまとめて実行（SessionContext のフラッシュ用）。
+     * ARGV[2] = 削除 field 数 n, ARGV[3..2+n] = 削除 field, ARGV[3+n..] = field, value, ...
+     */
+    static final RedisScript<Long> WRITE = new DefaultRedisScript<>("""
+            local n = tonumber(ARGV[2])
+            if n > 0 then redis.call('HDEL', KEYS[1], unpack(ARGV, 3, 2 + n)) end
+            if #ARGV > 2 + n then redis.call('HSET', KEYS[1], unpack(ARGV, 3 + n)) end
+            redis.call('EXPIRE', KEYS[1], ARGV[1])
+            return 1
+            """, Long.class);
+
+    /**
+     * バージョン付きの条件付き書き込み（app.session.versioning）。条件を満たせば HDEL → HSET → バージョン更新 → EXPIRE。
+     * ARGV[2] = 期待バージョン（-1 = 存在しないこと, -2 = 存在すること, -3 = 条件なし, 0 以上 = 一致すること）,
+     * ARGV[3] = バージョンの field, ARGV[4] = 書き込みトークン, ARGV[5] = 削除 field 数 n,
+     * ARGV[6..5+n] = 削除 field, ARGV[6+n..] = field, value, ...
+     * <p>
+     * バージョンの値は "版:トークン"（版のないハッシュは版 0、キーが無ければ -1 として比べる）。
+     * 直前の書き込みと同じトークンなら、応答が失われた書き込みの再送とみなして適用済みを返す。
+     * 戻り値：適用 {1, 新しい版}／不一致 {0, 現在の版, HGETALL}（キーが無ければ {0, -1}）。
+     */
+    @SuppressWarnings("rawtypes")
+    static final RedisScript<List> CAS_WRITE = new DefaultRedisScript<>("""
+            local raw = redis.call('HGET', KEYS[1], ARGV[3])
+            local current, token = -1, ''
+            if raw then
+              local v, t = string.match(raw, '^(%d+):(.*)$')
+              current, token = tonumber(v) or 0, t or ''
+            elseif redis.call('EXISTS', KEYS[1]) == 1 then
+              current = 0
+            end
+            if token == ARGV[4] then return {1, current} end
+            local expected = tonumber(ARGV[2])
+            if not (expected == -3 or (expected == -2 and current >= 0) or current == expected) then
+              if current < 0 then return {0, current} end
+              return {0, current, redis.call('HGETALL', KEYS[1])}
+            end
+            local n = tonumber(ARGV[5])
+            if n > 0 then redis.call('HDEL', KEYS[1], unpack(ARGV, 6, 5 + n)) end
+            local nextv = math.max(current, 0) + 1
+            if #ARGV > 5 + n then
+              redis.call('HSET', KEYS[1], ARGV[3], nextv .. ':' .. ARGV[4], unpack(ARGV, 6 + n))
+            else
+              redis.call('HSET', KEYS[1], ARGV[3], nextv .. ':' .. ARGV[4])
+            end
+            redis.call('EXPIRE', KEYS[1], ARGV[1])
+            return {1, nextv}
+            """, List.class);
+
+    static final List<RedisScript<?>> ALL =
+            List.of(LOAD, GET, PUT, WRITE, CAS_WRITE,
+                    UserSessionIndex.INDEXED_WRITE, UserSessionIndex.UNINDEX, UserSessionIndex.GONE);
+
+    private final RedisTemplate<String, Object> redis;
+    private final SessionProperties props;
+
+    public SessionScripts(RedisTemplate<String, Object> redis, SessionProperties props) {
+        this.redis = redis;
+        this.props = props;
+    }
+
+    /**
+     * 起動完了時にスクリプトを登録しておく。
+     * 失敗しても致命的ではない（実行時の NOSCRIPT フォールバックで動く）ので警告のみ。
+     */
+    @EventListener(ApplicationStartedEvent.class)
+    public void preload() {
+        if (!props.getScripts().isEnabled() || !props.getScripts().isPreload()) return;
+        try {
+            load(redis);
+        } catch (RuntimeException e) {
+            log.warn("Lua script preload failed; falling back to EVAL on first use: {}", e.toString());
+        }
+    }
+
+    /** 全スクリプトを target のノードに SCRIPT LOAD する（SessionWarmup がシャードの各ノードにも使う）。 */
+    void load(RedisTemplate<String, Object> target) {
+        target.execute((RedisCallback<Void>) connection -> {
+            for (RedisScript<?> s : ALL) {
+                connection.scriptingCommands()
+                        .scriptLoad(s.getScriptAsString().getBytes(StandardCharsets.UTF_8));
+            }
+            return null;
+        });
+    }
+}
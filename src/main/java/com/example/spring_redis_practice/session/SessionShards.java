@@ -0,0 +1,206 @@
+package com.example.spring_redis_practice.session;
+
+import com.example.spring_redis_practice.config.RedisConfig;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * セッションキーを複数の Standalone Redis に一貫性ハッシュで振り分ける（Redis Cluster を使わないスケールアウト）。
+ * ・シャードごとに LettuceConnectionFactory / RedisTemplate を 1 つずつ持つ（クライアント設定は Boot のものを共有）
+ * ・振り分けは ConsistentHashRing（仮想ノード、Cluster 互換のハッシュタグ）
+ * <p>
+ * ノード追加時の移行：
+ * ・previousNodes（旧構成）が設定されている間、route() は旧担当と新担当が違うキーを先に新担当へ移す
+ *   （PTTL/DUMP を 1 往復 → 新担当へ RESTORE → 旧担当から DEL）。触れられたセッションから順に移るので、読み取りで見失わない
+ * ・新担当に既にあれば（新構成で書かれた・他のノードが先に移した）RESTORE は BUSYKEY で失敗し、新担当を正とする
+ * ・移した（旧担当に無かった）キーはノード内で覚えておき、以降の route() では旧担当を見に行かない
+ * ・触れられないセッションは rebalance()（SessionShardsEndpoint から実行）で SCAN して移す
+ * ・全ノードへ新構成をデプロイしてから rebalance すること（旧構成のノードは旧担当へ書き続けるため）
+ */
+@Component
+public class SessionShards implements DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(SessionShards.class);
+    private static final RedisSerializer<byte[]> RAW = RedisSerializer.byteArray();
+    private static final int SETTLED_KEYS = 100_000;
+
+    /** 1 シャード。name は "host:port"。 */
+    record Shard(String name, LettuceConnectionFactory connectionFactory, RedisTemplate<String, Object> template) {}
+
+    private final Map<String, Shard> shards = new LinkedHashMap<>();
+    private final ConsistentHashRing<Shard> ring;
+    private final ConsistentHashRing<Shard> previousRing; // null = 移行中でない
+    /** 移行中のみ：新担当にあることを確かめたキー（件数上限つき。溢れたら次の route() で確かめ直すだけ）。 */
+    private final Cache<String, Boolean> settled;
+
+    public SessionShards(SessionProperties props, RedisConnectionFactory primary,
+                         RedisSerializer<Object> redisValueSerializer) {
+        SessionProperties.Shards cfg = props.getShards();
+        if (!cfg.isEnabled()) {
+            this.ring = null;
+            this.previousRing = null;
+            this.settled = null;
+            return;
+        }
+        if (cfg.getNodes().isEmpty()) throw new IllegalStateException("app.session.shards.nodes is empty");
+        if (!(primary instanceof LettuceConnectionFactory lcf)) {
+            throw new IllegalStateException("Session sharding requires a LettuceConnectionFactory");
+        }
+        Set<String> names = new LinkedHashSet<>(cfg.getNodes());
+        names.addAll(cfg.getPreviousNodes());
+        for (String name : names) shards.put(name, connect(name, lcf, redisValueSerializer));
+
+        this.ring = ring(cfg.getNodes(), cfg);
+        this.previousRing = cfg.getPreviousNodes().isEmpty() ? null : ring(cfg.getPreviousNodes(), cfg);
+        this.settled = previousRing == null ? null : Caffeine.newBuilder()
+                .maximumSize(SETTLED_KEYS)
+                .expireAfterWrite(RedisSessionRepository.DEFAULT_TTL)
+                .build();
+    }
+
+    private SessionShards() {
+        this.ring = null;
+        this.previousRing = null;
+        this.settled = null;
+    }
+
+    /** 無効なインスタンス。Repository を Spring 外で組み立てる場合用。 */
+    static SessionShards disabled() {
+        return new SessionShards();
+    }
+
+    public boolean isEnabled() { return ring != null; }
+
+    /** キーの担当ノード名（一括操作のグループ分け用。移行はしない）。 */
+    String nodeFor(String key) { return ring.nodeFor(key).name(); }
+
+    /** キーの担当ノードの RedisTemplate。移行中で担当が変わったキーなら、先に新しい担当へ移す。 */
+    RedisTemplate<String, Object> route(String key) {
+        Shard target = ring.nodeFor(key);
+        if (previousRing != null) {
+            Shard source = previousRing.nodeFor(key);
+            if (source != target && settled.getIfPresent(key) == null) move(key, source, target);
+        }
+        return target.template();
+    }
+
+    /** 全ノード（移行中なら旧構成のノードも）の RedisTemplate。 */
+    List<RedisTemplate<String, Object>> templates() {
+        return shards.values().stream().map(Shard::template).toList();
+    }
+
+    /** キーの担当ノードの RedisTemplate（route と違い、移行はしない）。 */
+    RedisTemplate<String, Object> templateFor(String key) { return ring.nodeFor(key).template(); }
+
+    /** 全ノードの名前 → 格納キー数（DBSIZE。セッション以外のキーも含む）。 */
+    public Map<String, Long> sizes() {
+        Map<String, Long> sizes = new LinkedHashMap<>();
+        shards.forEach((name, shard) ->
+                sizes.put(name, shard.template().execute((RedisCallback<Long>) c -> c.serverCommands().dbSize())));
+        return sizes;
+    }
+
+    /**
+     * 旧構成の各ノードを SCAN し、担当が変わったセッションを新しい担当へ移す。戻り値は移動元ノード → 移した件数。
+     * 何度実行してもよい（既に移したキーは旧ノードに残っていない）。
+     */
+    public Map<String, Long> rebalance() {
+        if (previousRing == null) throw new IllegalStateException("app.session.shards.previous-nodes is empty");
+        Map<String, Long> moved = new LinkedHashMap<>();
+        ScanOptions options = ScanOptions.scanOptions()
+                .match(RedisSessionRepository.KEY_PREFIX + "*").count(1000).build();
+        for (Shard source : new LinkedHashSet<>(shards.values())) {
+            long n = 0;
+            try (Cursor<String> keys = source.template().scan(options)) {
+                while (keys.hasNext()) {
+                    String key = keys.next();
+                    Shard target = ring.nodeFor(key);
+                    if (target != source && move(key, source, target)) n++;
+                }
+            }
+            moved.put(source.name(), n);
+            log.info("Rebalanced {} session keys away from {}", n, source.name());
+        }
+        return moved;
+    }
+
+    /**
+     * 1 キーを移す（TTL を保ったまま）。移行先に既にある場合は移行先を正とする（新構成で書かれた方が新しい）。
+     * 移した/移行先を正として旧キーを消した場合 true。旧担当に無ければ false（どちらの場合も以降は確かめない）。
+     */
+    private boolean move(String key, Shard from, Shard to) {
+        final byte[] raw = key.getBytes(StandardCharsets.UTF_8);
+        List<Object> replies = from.template().executePipelined((RedisCallback<Object>) c -> {
+            c.keyCommands().pTtl(raw);
+            c.keyCommands().dump(raw);
+            return null;
+        }, RAW);
+        Long pttl = (Long) replies.get(0);
+        byte[] dump = (byte[]) replies.get(1);
+        if (dump == null || pttl == null || pttl == -2) { // 移行済み・まだ無い・期限切れ
+            settled.put(key, Boolean.TRUE);
+            return false;
+        }
+        final long ttl = Math.max(pttl, 0); // -1（TTLなし）は 0 = 無期限で復元
+        try {
+            to.template().execute((RedisCallback<Void>) c -> {
+                c.keyCommands().restore(raw, ttl, dump);
+                return null;
+            });
+        } catch (RuntimeException e) {
+            if (!isBusyKey(e)) throw e;
+            // 移行先に既にある：移行先を正とし、旧キーは消す
+        }
+        from.template().execute((RedisCallback<Long>) c -> c.keyCommands().del(raw));
+        settled.put(key, Boolean.TRUE);
+        return true;
+    }
+
+    /** RESTORE が既存キーで失敗した（BUSYKEY）か。Spring の例外に包まれていても原因をたどって判定する。 */
+    static boolean isBusyKey(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t.getMessage() != null && t.getMessage().contains("BUSYKEY")) return true;
+        }
+        return false;
+    }
+
+    private ConsistentHashRing<Shard> ring(List<String> names, SessionProperties.Shards cfg) {
+        Map<String, Shard> nodes = new LinkedHashMap<>();
+        names.forEach(name -> nodes.put(name, shards.get(name)));
+        return new ConsistentHashRing<>(nodes, cfg.getVirtualNodes(), cfg.isHashTags());
+    }
+
+    private static Shard connect(String name, LettuceConnectionFactory primary, RedisSerializer<Object> values) {
+        String[] hp = name.split(":");
+        RedisStandaloneConfiguration node = new RedisStandaloneConfiguration(hp[0], Integer.parseInt(hp[1]));
+        node.setPassword(primary.getStandaloneConfiguration().getPassword());
+        node.setDatabase(primary.getStandaloneConfiguration().getDatabase());
+        LettuceConnectionFactory cf = new LettuceConnectionFactory(node, primary.getClientConfiguration());
+        cf.afterPropertiesSet();
+        return new Shard(name, cf, RedisConfig.template(cf, values));
+    }
+
+    @Override
+    public void destroy() {
+        shards.values().forEach(s -> s.connectionFactory().destroy());
+    }
+}
@@ -0,0 +1,35 @@
+package com.example.spring_redis_practice.session;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * シャーディングの運用用エンドポイント（/actuator/sessionshards）。
+ * ・GET ：各ノードのキー数
+ * ・POST：旧構成（previous-nodes）から担当が変わったセッションを移す（SessionShards#rebalance）
+ * 公開はしていない。使うときは management.endpoints.web.exposure.include に sessionshards を足すこと。
+ */
+@Component
+@Endpoint(id = "sessionshards")
+public class SessionShardsEndpoint {
+
+    private final SessionShards shards;
+
+    public SessionShardsEndpoint(SessionShards shards) {
+        this.shards = shards;
+    }
+
+    @ReadOperation
+    public Map<String, Long> sizes() {
+        return shards.isEnabled() ? shards.sizes() : Map.of();
+    }
+
+    @WriteOperation
+    public Map<String, Long> rebalance() {
+        return shards.rebalance();
+    }
+}
@@ -0,0 +1,284 @@
+package com.example.spring_redis_practice.session;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * セッションスナップショットのファイル形式（SessionSnapshots が読み書きする）。
+ * <pre>
+ * ヘッダ   : MAGIC(8) | version(int) | createdAtMillis(long)
+ * チャンク : payloadBytes(int) | records(int) | baseMillis(long) | crc32(int) | payload
+ * 終端     : -1(int) | totalRecords(long)
+ * レコード : keyLen(varint, 最下位ビット = "session:" を省略) | key | expiry(varlong) | dumpLen(varint) | dump
+ * </pre>
+ * ・値は DUMP の直列化形式のまま持つ（RESTORE でそのまま戻せる。復元先は同じか新しい Redis であること）
+ * ・expiry は失効時刻（epoch ミリ秒）のチャンク内 baseMillis からの差（zigzag + 1。0 = TTL なし）。
+ *   残り TTL ではなく時刻で持つので、エクスポートから復元までに経った分はそのまま差し引かれる
+ * ・ファイルは一定サイズの窓ごとにメモリマップして読み書きする（ヒープに載るのは 1 チャンク分まで）
+ */
+final class SessionSnapshotFile {
+
+    static final long NO_EXPIRY = Long.MIN_VALUE;
+
+    private static final byte[] MAGIC = "RSESSNAP".getBytes(StandardCharsets.US_ASCII);
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = MAGIC.length + 4 + 8;
+    private static final int CHUNK_HEADER_BYTES = 4 + 4 + 8 + 4;
+    private static final int FOOTER_BYTES = 4 + 8;
+    private static final int END = -1;
+    private static final byte[] SESSION_PREFIX = RedisSessionRepository.KEY_PREFIX.getBytes(StandardCharsets.UTF_8);
+    static final int DEFAULT_WINDOW = 64 << 20;
+
+    private SessionSnapshotFile() {
+    }
+
+    /** 1 キー分。expireAtMillis は失効時刻（{@link #NO_EXPIRY} = TTL なし）。 */
+    record Record(byte[] key, long expireAtMillis, byte[] dump) {
+        /** now 時点の残り TTL（ミリ秒）。0 = TTL なし、負 = 失効済み。 */
+        long ttlMillis(long now) {
+            if (expireAtMillis == NO_EXPIRY) return 0;
+            long ttl = expireAtMillis - now;
+            return ttl > 0 ? ttl : -1;
+        }
+    }
+
+    /** 書き込み側。add を順に呼び、最後に close する（close しないと終端が無く、読み込みで途中切れとして扱う）。 */
+    static final class Writer implements Closeable {
+
+        private final FileChannel channel;
+        private final int windowSize;
+        private final int chunkSize;
+        private ByteBuffer chunk;
+        private final ByteBuffer chunkHeader = ByteBuffer.allocate(CHUNK_HEADER_BYTES);
+        private final CRC32 crc = new CRC32();
+        private MappedByteBuffer window;
+        private long windowStart;
+        private int chunkRecords;
+        private long chunkBase;
+        private long total;
+
+        Writer(Path file, int chunkSize) throws IOException {
+            this(file, chunkSize, DEFAULT_WINDOW);
+        }
+
+        Writer(Path file, int chunkSize, int windowSize) throws IOException {
+            this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            this.chunkSize = chunkSize;
+            this.windowSize = windowSize;
+            this.chunk = ByteBuffer.allocate(chunkSize);
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES)
+                    .put(MAGIC).putInt(VERSION).putLong(System.currentTimeMillis());
+            put(header.flip());
+        }
+
+        void add(byte[] key, long expireAtMillis, byte[] dump) throws IOException {
+            if (chunkRecords == 0) chunkBase = expireAtMillis == NO_EXPIRY ? System.currentTimeMillis() : expireAtMillis;
+            boolean prefixed = startsWith(key, SESSION_PREFIX);
+            int keyLen = prefixed ? key.length - SESSION_PREFIX.length : key.length;
+            long expiry = expireAtMillis == NO_EXPIRY ? 0 : zigzag(expireAtMillis - chunkBase) + 1;
+            int size = varintSize((keyLen << 1) | (prefixed ? 1 : 0)) + keyLen
+                    + varintSize(expiry) + varintSize(dump.length) + dump.length;
+            if (chunk.remaining() < size) {
+                flushChunk();
+                if (chunk.capacity() < size) chunk = ByteBuffer.allocate(size); // 1 件でチャンクを超えるキーはそれだけで 1 チャンク
+                chunkBase = expireAtMillis == NO_EXPIRY ? System.currentTimeMillis() : expireAtMillis;
+                expiry = expireAtMillis == NO_EXPIRY ? 0 : 1;
+            }
+            putVarlong(chunk, (keyLen << 1) | (prefixed ? 1 : 0));
+            chunk.put(key, key.length - keyLen, keyLen);
+            putVarlong(chunk, expiry);
+            putVarlong(chunk, dump.length);
+            chunk.put(dump);
+            chunkRecords++;
+            total++;
+        }
+
+        long records() { return total; }
+
+        private void flushChunk() throws IOException {
+            if (chunkRecords == 0) return;
+            chunk.flip();
+            crc.reset();
+            crc.update(chunk.duplicate());
+            chunkHeader.clear().putInt(chunk.remaining()).putInt(chunkRecords).putLong(chunkBase).putInt((int) crc.getValue());
+            put(chunkHeader.flip());
+            put(chunk);
+            if (chunk.capacity() > chunkSize) chunk = ByteBuffer.allocate(chunkSize);
+            chunk.clear();
+            chunkRecords = 0;
+        }
+
+        /** マップ中の窓に書く。入りきらなければ続きの位置から窓を張り直す（ファイルはマップで伸びる）。 */
+        private void put(ByteBuffer src) throws IOException {
+            if (window == null || window.remaining() < src.remaining()) {
+                long position = window == null ? 0 : windowStart + window.position();
+                window = channel.map(FileChannel.MapMode.READ_WRITE, position, Math.max(windowSize, src.remaining()));
+                windowStart = position;
+            }
+            window.put(src);
+        }
+
+        /** 残りのチャンクと終端を書き、余った領域を切り詰める。 */
+        @Override
+        public void close() throws IOException {
+            try {
+                flushChunk();
+                put(ByteBuffer.allocate(FOOTER_BYTES).putInt(END).putLong(total).flip());
+                window.force();
+                channel.truncate(windowStart + window.position());
+            } finally {
+                channel.close();
+            }
+        }
+    }
+
+    /** 読み込み側。next でチャンクを順に返す（チャンクの中身はマップした領域のビュー）。 */
+    static final class Reader implements Closeable {
+
+        private final FileChannel channel;
+        private final long size;
+        private final int windowSize;
+        private final long createdAt;
+        private MappedByteBuffer window;
+        private long windowStart;
+        private long position = HEADER_BYTES;
+        private long total;
+        private boolean ended;
+
+        Reader(Path file) throws IOException {
+            this(file, DEFAULT_WINDOW);
+        }
+
+        Reader(Path file, int windowSize) throws IOException {
+            this.channel = FileChannel.open(file, StandardOpenOption.READ);
+            this.size = channel.size();
+            this.windowSize = windowSize;
+            try {
+                ByteBuffer header = view(0, HEADER_BYTES);
+                byte[] magic = new byte[MAGIC.length];
+                header.get(magic);
+                if (!Arrays.equals(magic, MAGIC)) throw new IOException("Not a session snapshot: " + file);
+                int version = header.getInt();
+                if (version != VERSION) throw new IOException("Unsupported session snapshot version " + version);
+                this.createdAt = header.getLong();
+            } catch (IOException e) {
+                channel.close();
+                throw e;
+            }
+        }
+
+        long createdAtMillis() { return createdAt; }
+
+        /** 次のチャンク。終端なら null（件数も照合する）。 */
+        Chunk next() throws IOException {
+            if (ended) return null;
+            int payloadBytes = view(position, 4).getInt();
+            if (payloadBytes == END) {
+                long expected = view(position + 4, 8).getLong();
+                if (expected != total) throw new IOException("Snapshot has " + total + " records, footer says " + expected);
+                ended = true;
+                return null;
+            }
+            ByteBuffer header = view(position, CHUNK_HEADER_BYTES);
+            header.getInt();
+            int records = header.getInt();
+            long base = header.getLong();
+            int checksum = header.getInt();
+            if (payloadBytes < 0) throw new IOException("Corrupt chunk header at offset " + position);
+            ByteBuffer payload = view(position + CHUNK_HEADER_BYTES, payloadBytes);
+            CRC32 crc = new CRC32();
+            crc.update(payload.duplicate());
+            if ((int) crc.getValue() != checksum) throw new IOException("Checksum mismatch in chunk at offset " + position);
+            position += CHUNK_HEADER_BYTES + payloadBytes;
+            total += records;
+            return new Chunk(records, base, payload);
+        }
+
+        /** [pos, pos+len) のビュー。窓の外なら pos から窓を張り直す。 */
+        private ByteBuffer view(long pos, int len) throws IOException {
+            if (pos + len > size) throw new IOException("Truncated session snapshot (expected " + (pos + len) + " bytes, file has " + size + ")");
+            if (window == null || pos < windowStart || pos + len > windowStart + window.capacity()) {
+                window = channel.map(FileChannel.MapMode.READ_ONLY, pos, Math.min(Math.max(windowSize, len), size - pos));
+                windowStart = pos;
+            }
+            return window.slice((int) (pos - windowStart), len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    /** 1 チャンク分のレコード（復元は 1 チャンク単位でパイプラインに載せる）。 */
+    record Chunk(int size, long baseMillis, ByteBuffer payload) {
+
+        List<Record> records() {
+            ByteBuffer in = payload.duplicate();
+            List<Record> records = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                int keyHeader = (int) getVarlong(in);
+                boolean prefixed = (keyHeader & 1) != 0;
+                int keyLen = keyHeader >>> 1;
+                byte[] key;
+                if (prefixed) {
+                    key = Arrays.copyOf(SESSION_PREFIX, SESSION_PREFIX.length + keyLen);
+                    in.get(key, SESSION_PREFIX.length, keyLen);
+                } else {
+                    key = new byte[keyLen];
+                    in.get(key);
+                }
+                long expiry = getVarlong(in);
+                byte[] dump = new byte[(int) getVarlong(in)];
+                in.get(dump);
+                records.add(new Record(key, expiry == 0 ? NO_EXPIRY : baseMillis + unzigzag(expiry - 1), dump));
+            }
+            return records;
+        }
+    }
+
+    private static boolean startsWith(byte[] key, byte[] prefix) {
+        return key.length >= prefix.length && Arrays.equals(key, 0, prefix.length, prefix, 0, prefix.length);
+    }
+
+    private static long zigzag(long v) { return (v << 1) ^ (v >> 63); }
+
+    private static long unzigzag(long v) { return (v >>> 1) ^ -(v & 1); }
+
+    private static int varintSize(long v) {
+        int n = 1;
+        while ((v & ~0x7FL) != 0) {
+            v >>>= 7;
+            n++;
+        }
+        return n;
+    }
+
+    private static void putVarlong(ByteBuffer out, long v) {
+        while ((v & ~0x7FL) != 0) {
+            out.put((byte) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        out.put((byte) v);
+    }
+
+    private static long getVarlong(ByteBuffer in) {
+        long v = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = in.get();
+            v |= (long) (b & 0x7F) << shift;
+            if (b >= 0) return v;
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package com.example.spring_redis_practice.session;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.connection.RedisPipelineException;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.retry.support.RetryTemplate;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 全セッションを TTL ごとファイルへ書き出し（export）、別の Redis へ戻す（restore）。Redis の入れ替え・再構築用。
+ * <p>
+ * ・export：SCAN（MATCH = key-patterns）で集めた scanCount 件ごとに DUMP と PTTL をパイプラインで送り、
+ *   SessionSnapshotFile へ流す。保持するのは SCAN 1 回分とチャンク 1 つ分だけ
+ * ・restore：チャンクごとに RESTORE（失効時刻から求めた残り TTL 付き）をパイプラインで送る。
+ *   restoreThreads 本で並行に送り、読み込みはその 2 倍のチャンクまでで止めて待つ
+ * ・replace=false なら、先に EXISTS をパイプラインで送って復元先に既にあるキーを除く（チャンクあたり 1 RTT 増える）。
+ *   応答が失われたパイプラインをリトライで送り直したとき、前の試行で戻したキーの BUSYKEY を「既存」と数えないため
+ * ・エクスポート中に書かれたセッションは、SCAN の時点によって新旧どちらかの値になる（SCAN は重複も返しうる）。
+ *   止めてから取るか、切り替え後に触れられたセッションは復元先を正とする（replace=false）こと
+ * ・シャーディング有効時は全ノードから書き出し、各キーを新構成の担当ノードへ戻す
+ */
+@Component
+public class SessionSnapshots {
+
+    private static final Logger log = LoggerFactory.getLogger(SessionSnapshots.class);
+    private static final RedisSerializer<byte[]> RAW = RedisSerializer.byteArray();
+
+    /** 1 回の export / restore の結果。skipped は復元先に既にあって残したキー、expired は途中で失効したキー。 */
+    public record Result(long keys, long skipped, long expired, long bytes, Duration took) {}
+
+    private final SessionProperties.Snapshot props;
+    private final RedisTemplate<String, Object> redis;
+    private final RetryTemplate retry;
+    private final SessionShards shards;
+    private final Path directory;
+
+    public SessionSnapshots(SessionProperties props, RedisTemplate<String, Object> redis,
+                            RetryTemplate redisRetryTemplate, SessionShards shards) {
+        this.props = props.getSnapshot();
+        this.redis = redis;
+        this.retry = redisRetryTemplate;
+        this.shards = shards;
+        this.directory = Path.of(this.props.getDirectory()).toAbsolutePath().normalize();
+    }
+
+    /** directory 配下のファイル。外を指す名前（"../" など）は拒否する。 */
+    public Path resolve(String name) {
+        Path file = directory.resolve(name).normalize();
+        if (!file.startsWith(directory) || file.equals(directory)) {
+            throw new IllegalArgumentException("Snapshot file must be inside " + directory + ": " + name);
+        }
+        return file;
+    }
+
+    public Result export(Path file) throws IOException {
+        long started = System.nanoTime();
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        long[] expired = {0};
+        int scanCount = Math.max(1, props.getScanCount());
+        long keys;
+        try (SessionSnapshotFile.Writer out = new SessionSnapshotFile.Writer(file, (int) props.getChunkSize().toBytes())) {
+            for (RedisTemplate<String, Object> source : sources()) {
+                for (String pattern : props.getKeyPatterns()) {
+                    ScanOptions options = ScanOptions.scanOptions().match(pattern).count(scanCount).build();
+                    try (Cursor<String> cursor = source.scan(options)) {
+                        List<String> batch = new ArrayList<>(scanCount);
+                        while (cursor.hasNext()) {
+                            batch.add(cursor.next());
+                            if (batch.size() == scanCount) {
+                                expired[0] += dump(source, batch, out);
+                                batch.clear();
+                            }
+                        }
+                        if (!batch.isEmpty()) expired[0] += dump(source, batch, out);
+                    }
+                }
+            }
+            keys = out.records();
+        }
+        Result result = new Result(keys, 0, expired[0], Files.size(file), Duration.ofNanos(System.nanoTime() - started));
+        log.info("Exported {} session keys to {} ({} bytes, {} ms)", keys, file, result.bytes(), result.took().toMillis());
+        return result;
+    }
+
+    /** 1 バッチ分の DUMP/PTTL を書く。戻り値は間に消えていたキーの数。 */
+    private long dump(RedisTemplate<String, Object> source, List<String> keys, SessionSnapshotFile.Writer out)
+            throws IOException {
+        final List<byte[]> raw = keys.stream().map(k -> k.getBytes(StandardCharsets.UTF_8)).toList();
+        List<Object> replies = retry.execute(ctx -> source.executePipelined((RedisCallback<Object>) connection -> {
+            for (byte[] key : raw) {
+                connection.keyCommands().pTtl(key);
+                connection.keyCommands().dump(key);
+            }
+            return null;
+        }, RAW));
+        long now = System.currentTimeMillis();
+        long gone = 0;
+        for (int i = 0; i < raw.size(); i++) {
+            Long pttl = (Long) replies.get(2 * i);
+            byte[] value = (byte[]) replies.get(2 * i + 1);
+            if (value == null || pttl == null || pttl == -2) {
+                gone++;
+                continue;
+            }
+            out.add(raw.get(i), pttl < 0 ? SessionSnapshotFile.NO_EXPIRY : now + pttl, value);
+        }
+        return gone;
+    }
+
+    public Result restore(Path file) throws IOException, InterruptedException {
+        long started = System.nanoTime();
+        int threads = Math.max(1, props.getRestoreThreads());
+        Semaphore inFlight = new Semaphore(threads * 2);
+        LongAdder restored = new LongAdder();
+        LongAdder skipped = new LongAdder();
+        LongAdder expired = new LongAdder();
+        AtomicReference<RuntimeException> failure = new AtomicReference<>();
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads, r -> new Thread(r, "session-restore"));
+        try (SessionSnapshotFile.Reader in = new SessionSnapshotFile.Reader(file)) {
+            SessionSnapshotFile.Chunk chunk;
+            while (failure.get() == null && (chunk = in.next()) != null) {
+                inFlight.acquire();
+                final SessionSnapshotFile.Chunk c = chunk;
+                pool.execute(() -> {
+                    try {
+                        restore(c, restored, skipped, expired);
+                    } catch (RuntimeException e) {
+                        failure.compareAndSet(null, e);
+                    } finally {
+                        inFlight.release();
+                    }
+                });
+            }
+            pool.shutdown();
+            pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } finally {
+            pool.shutdownNow();
+        }
+        if (failure.get() != null) throw failure.get();
+
+        Result result = new Result(restored.sum(), skipped.sum(), expired.sum(), Files.size(file),
+                Duration.ofNanos(System.nanoTime() - started));
+        log.info("Restored {} session keys from {} (skipped {}, expired {}, {} ms)",
+                result.keys(), file, result.skipped(), result.expired(), result.took().toMillis());
+        return result;
+    }
+
+    private void restore(SessionSnapshotFile.Chunk chunk, LongAdder restored, LongAdder skipped, LongAdder expired) {
+        long now = System.currentTimeMillis();
+        Map<RedisTemplate<String, Object>, List<SessionSnapshotFile.Record>> byTarget = new LinkedHashMap<>();
+        for (SessionSnapshotFile.Record r : chunk.records()) {
+            if (r.ttlMillis(now) < 0) {
+                expired.increment();
+                continue;
+            }
+            byTarget.computeIfAbsent(target(r.key()), t -> new ArrayList<>()).add(r);
+        }
+        boolean replace = props.isReplace();
+        byTarget.forEach((target, records) -> {
+            List<SessionSnapshotFile.Record> pending = replace ? records : absent(target, records);
+            skipped.add(records.size() - pending.size());
+            if (pending.isEmpty()) return;
+            long busy = retry.execute(ctx -> {
+                try {
+                    target.executePipelined((RedisCallback<Object>) connection -> {
+                        for (SessionSnapshotFile.Record r : pending) {
+                            connection.keyCommands().restore(r.key(), r.ttlMillis(now), r.dump(), replace);
+                        }
+                        return null;
+                    }, RAW);
+                    return 0L;
+                } catch (RedisPipelineException e) {
+                    long n = busyKeys(e);
+                    // 送り直しで BUSYKEY なら、応答が失われた前の試行で戻せている（既存キーは absent で除いてある）
+                    return ctx.getRetryCount() > 0 ? 0L : n;
+                }
+            });
+            restored.add(pending.size() - busy);
+            skipped.add(busy);
+        });
+    }
+
+    /** 復元先にまだ無いレコードだけを返す（EXISTS のパイプライン）。 */
+    private List<SessionSnapshotFile.Record> absent(RedisTemplate<String, Object> target,
+                                                   List<SessionSnapshotFile.Record> records) {
+        List<Object> exists = retry.execute(ctx -> target.executePipelined((RedisCallback<Object>) connection -> {
+            for (SessionSnapshotFile.Record r : records) connection.keyCommands().exists(r.key());
+            return null;
+        }, RAW));
+        List<SessionSnapshotFile.Record> absent = new ArrayList<>(records.size());
+        for (int i = 0; i < records.size(); i++) {
+            if (!Boolean.TRUE.equals(exists.get(i))) absent.add(records.get(i));
+        }
+        return absent;
+    }
+
+    /** 既存キーによる失敗（BUSYKEY）だけなら件数を返す。それ以外の失敗はそのまま投げる。 */
+    private static long busyKeys(RedisPipelineException e) {
+        long busy = 0;
+        for (Object reply : e.getResults()) {
+            if (!(reply instanceof Exception failure)) continue;
+            if (failure.getMessage() == null || !failure.getMessage().contains("BUSYKEY")) throw e;
+            busy++;
+        }
+        return busy;
+    }
+
+    private List<RedisTemplate<String, Object>> sources() {
+        return shards.isEnabled() ? shards.templates() : List.of(redis);
+    }
+
+    private RedisTemplate<String, Object> target(byte[] key) {
+        return shards.isEnabled() ? shards.templateFor(new String(key, StandardCharsets.UTF_8)) : redis;
+    }
+}
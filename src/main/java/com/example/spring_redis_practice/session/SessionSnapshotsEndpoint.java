@@ -0,0 +1,35 @@
+package com.example.spring_redis_practice.session;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+
+/**
+ * セッションのスナップショットの運用用エンドポイント（/actuator/sessionsnapshots）。
+ * ・POST /export  {"file": "xxx.snap"}：全セッションを書き出す（SessionSnapshots#export）
+ * ・POST /restore {"file": "xxx.snap"}：書き出したファイルから戻す（SessionSnapshots#restore）
+ * ファイルは app.session.snapshot.directory の下に限る。
+ * 公開はしていない。使うときは management.endpoints.web.exposure.include に sessionsnapshots を足すこと。
+ */
+@Component
+@Endpoint(id = "sessionsnapshots")
+public class SessionSnapshotsEndpoint {
+
+    private final SessionSnapshots snapshots;
+
+    public SessionSnapshotsEndpoint(SessionSnapshots snapshots) {
+        this.snapshots = snapshots;
+    }
+
+    @WriteOperation
+    public SessionSnapshots.Result run(@Selector String action, String file) throws IOException, InterruptedException {
+        return switch (action) {
+            case "export" -> snapshots.export(snapshots.resolve(file));
+            case "restore" -> snapshots.restore(snapshots.resolve(file));
+            default -> throw new IllegalArgumentException("Unknown action: " + action);
+        };
+    }
+}
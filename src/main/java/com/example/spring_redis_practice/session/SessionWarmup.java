@@ -0,0 +1,147 @@
+package com.example.spring_redis_practice.session;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 起動時のウォームアップ（app.session.warmup）。最初のリクエストが払っていた初回コストを起動中に払っておく。
+ * ・Redis への接続（プライマリ・シャードの各ノード・レプリカ・リアクティブ側）を張る
+ *   （strategy=STRIPED で張られるのはこのスレッドのストライプだけ。全本を張るなら app.redis.connection.eager-initialization）
+ * ・Lua スクリプトを各ノードに SCRIPT LOAD する（SessionScripts#preload は既定のノードだけ）
+ * ・値のシリアライザ（RedisConfig の redisValueSerializer）を代表的な型で往復させる（Jackson の型情報の構築など）
+ * ・SessionContext / RedisSessionRepository の作成 → 読み取り → 更新 → 一括読み取り → 破棄を iterations 回繰り返す
+ *   （SID 生成の SecureRandom、スクリプト/コマンドの各経路、JIT のコンパイルを済ませる）
+ * <p>
+ * ApplicationRunner として動くので、Boot が readiness を ACCEPTING_TRAFFIC にする（ApplicationReadyEvent）前に終わる。
+ * /actuator/health/readiness を見ているロードバランサは、ウォームアップが済むまでトラフィックを送らない。
+ * timeout を超えたら残りを打ち切る。Redis に繋がらなければ警告だけで起動を続ける（required=true なら起動失敗）。
+ * 作ったセッションは毎回破棄するが、途中で失敗した分は TTL で消える。操作の計測（redis.session.op）にも記録される。
+ */
+@Component
+public class SessionWarmup implements ApplicationRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(SessionWarmup.class);
+    private static final String ATTR = "warmup";
+    private static final String DATA_ATTR = "warmupData";
+
+    /** 直近のウォームアップの結果。completed は iterations 回をやり切ったか（打ち切り・失敗なら false）。 */
+    public record Result(int iterations, Duration took, boolean completed) {}
+
+    private final SessionProperties.Warmup props;
+    private final boolean scriptsEnabled;
+    private final RedisSessionRepository repo;
+    private final RedisTemplate<String, Object> redis;
+    private final ReactiveRedisTemplate<String, Object> reactive;
+    private final RedisSerializer<Object> values;
+    private final SessionScripts scripts;
+    private final SessionShards shards;
+    private final SessionReplicaReads replicaReads;
+    private volatile Result last; // null = 未実行
+
+    public SessionWarmup(SessionProperties props, RedisSessionRepository repo, RedisTemplate<String, Object> redis,
+                         ReactiveRedisTemplate<String, Object> reactiveRedisTemplate,
+                         RedisSerializer<Object> redisValueSerializer, SessionScripts scripts,
+                         SessionShards shards, SessionReplicaReads replicaReads) {
+        this.props = props.getWarmup();
+        this.scriptsEnabled = props.getScripts().isEnabled();
+        this.repo = repo;
+        this.redis = redis;
+        this.reactive = reactiveRedisTemplate;
+        this.values = redisValueSerializer;
+        this.scripts = scripts;
+        this.shards = shards;
+        this.replicaReads = replicaReads;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!props.isEnabled()) return;
+        long started = System.nanoTime();
+        long deadline = started + props.getTimeout().toNanos();
+        int iterations = Math.max(0, props.getIterations());
+        int done = 0;
+        try {
+            connect();
+            loadScripts();
+            roundTripValues();
+            while (done < iterations && System.nanoTime() < deadline) {
+                exerciseSessions(done);
+                done++;
+            }
+        } catch (RuntimeException e) {
+            if (props.isRequired()) throw new IllegalStateException("Redis warm-up failed", e);
+            log.warn("Redis warm-up failed after {} iterations; continuing startup: {}", done, e.toString());
+        }
+        last = new Result(done, Duration.ofNanos(System.nanoTime() - started), done == iterations);
+        log.info("Redis warm-up finished: {} of {} iterations in {} ms", done, iterations, last.took().toMillis());
+    }
+
+    /** 直近の結果（無効か未実行なら null）。 */
+    public Result last() { return last; }
+
+    /** 各ノードに PING して接続を張る（失敗はそのまま投げる）。 */
+    private void connect() {
+        for (RedisTemplate<String, Object> t : nodes()) t.execute((RedisCallback<String>) RedisConnection::ping);
+        RedisTemplate<String, Object> replica = replicaReads.template();
+        if (replica != null) replica.execute((RedisCallback<String>) RedisConnection::ping);
+        reactive.execute(connection -> connection.ping()).blockLast(props.getTimeout());
+    }
+
+    private void loadScripts() {
+        if (!scriptsEnabled) return;
+        for (RedisTemplate<String, Object> t : nodes()) scripts.load(t);
+    }
+
+    /** セッション属性に入りうる型をシリアライズ → デシリアライズする（圧縮の閾値を超える値も含む）。 */
+    private void roundTripValues() {
+        Map<String, Object> nested = new LinkedHashMap<>();
+        nested.put("id", 42L);
+        nested.put("roles", List.of("USER", "ADMIN"));
+        nested.put("flags", Map.of("beta", true));
+        List<Object> samples = List.of("text", 1, 1L << 40, 1.5d, true, List.of("a", "b"), nested, "x".repeat(4096));
+        for (Object sample : samples) values.deserialize(values.serialize(sample));
+    }
+
+    /** 1 回分：作成 → 読み取り → 更新・削除 → 単発/一括の読み取り → 破棄。 */
+    private void exerciseSessions(int i) {
+        SessionContext created = new SessionContext(null, repo);
+        created.setAttr(ATTR, i);
+        created.setAttr(DATA_ATTR, Map.of("n", i, "tags", List.of("a", "b")));
+        created.flush();
+        String sid = created.getId();
+
+        SessionContext next = new SessionContext(sid, repo);
+        next.getAttr(ATTR);
+        next.getAttrs();
+        next.setAttr(ATTR, i + 1);
+        next.removeAttr(DATA_ATTR);
+        next.flush();
+
+        repo.getAttr(sid, ATTR);
+        repo.ttl(sid);
+        repo.loadMany(List.of(sid));
+        repo.invalidate(sid);
+    }
+
+    /** 書き込み先のノード（シャーディング時は全シャード）。 */
+    private List<RedisTemplate<String, Object>> nodes() {
+        List<RedisTemplate<String, Object>> nodes = new ArrayList<>();
+        nodes.add(redis);
+        if (shards.isEnabled()) nodes.addAll(shards.templates());
+        return nodes;
+    }
+}
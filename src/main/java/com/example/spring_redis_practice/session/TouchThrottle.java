@@ -0,0 +1,63 @@
+package com.example.spring_redis_practice.session;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * 読み取り時のスライディングTTL延長を間引くための、ノードローカルな「最終延長時刻」表。
+ * ・自ノードが延長してから interval 未満なら、Redis 側の残TTLは少なくとも TTL - interval 残っている
+ *   ので、EXPIRE を省略しても期限切れにはならない（他ノードの延長は知らなくても安全側）。
+ * ・ネットワーク往復は増やさない（判定はメモリ上のみ）。
+ * ・表が maxTracked を超えたら丸ごと捨てる。忘れたセッションは次の読み取りで延長されるだけ。
+ */
+class TouchThrottle {
+
+    private final boolean enabled;
+    private final long intervalNanos;
+    private final int maxTracked;
+    private final LongSupplier nanoClock;
+    private final Map<String, Long> lastTouch = new ConcurrentHashMap<>();
+
+    TouchThrottle(SessionProperties.Touch props, Duration ttl) {
+        this(props, ttl, System::nanoTime);
+    }
+
+    TouchThrottle(SessionProperties.Touch props, Duration ttl, LongSupplier nanoClock) {
+        this.enabled = props.isEnabled();
+        this.intervalNanos = interval(props, ttl).toNanos();
+        this.maxTracked = props.getMaxTracked();
+        this.nanoClock = nanoClock;
+    }
+
+    /** minInterval と「残TTLが ratio を下回る時点」の早い方を再延長の間隔とする。 */
+    private static Duration interval(SessionProperties.Touch props, Duration ttl) {
+        Duration interval = props.getMinInterval();
+        double ratio = props.getRefreshBelowRatio();
+        if (ratio > 0) {
+            Duration byRatio = Duration.ofMillis((long) (ttl.toMillis() * (1.0 - ratio)));
+            if (byRatio.compareTo(interval) < 0) interval = byRatio;
+        }
+        return interval.compareTo(ttl) < 0 ? interval : ttl;
+    }
+
+    /** 今回の読み取りで EXPIRE を送るべきか。 */
+    boolean isDue(String key) {
+        if (!enabled) return true;
+        Long last = lastTouch.get(key);
+        return last == null || nanoClock.getAsLong() - last >= intervalNanos;
+    }
+
+    /** TTL を張り直した（書き込み・延長の成功）ことを記録。 */
+    void touched(String key) {
+        if (!enabled) return;
+        if (lastTouch.size() >= maxTracked) lastTouch.clear();
+        lastTouch.put(key, nanoClock.getAsLong());
+    }
+
+    /** 破棄されたセッションは忘れる。 */
+    void forget(String key) {
+        if (enabled) lastTouch.remove(key);
+    }
+}
@@ -0,0 +1,161 @@
+package com.example.spring_redis_practice.session;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.listener.PatternTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * userId → SID 集合の二次インデックス（「全端末からログアウト」やユーザごとのセッション数を、
+ * キー空間全体の SCAN ではなくそのユーザのセッション数に比例する手間で行うため）。
+ * <p>
+ * キー：
+ *   "user-sessions:{userId}" : SID の Set
+ *   "session-users"          : SID → userId の Hash（逆引き。期限切れ時にどの Set から外すかを知るため）
+ * どちらも "session:" の外に置く（L1 の TRACKING や期限切れ通知の対象にしない）。
+ * <p>
+ * 更新：
+ * ・userId 属性の書き込み/削除は、セッション Hash の更新と同じ Lua（INDEXED_WRITE）で原子的に反映する
+ * ・invalidate は UNINDEX で DEL と同時に外す
+ * ・TTL による期限切れ/追い出しはキー空間通知（__keyevent@*__:expired / evicted）を購読して外す（GONE）。
+ *   期限切れは触れたときにも起きるので、通知が届いた時点で同じ SID のセッションが書き直されていることがある。
+ *   その場合は何もしない（DEL も索引の付け替えもしない）。
+ *   通知は取りこぼしうるので、RedisSessionRepository#sessionIdsOf は読み取り時にも存在確認して掃除する
+ * <p>
+ * Lua 内で userId から Set のキーを組み立てるので、Redis Cluster ではそのままは使えない（スタンドアロン/Sentinel 前提）。
+ */
+@Component
+public class UserSessionIndex implements InitializingBean, DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(UserSessionIndex.class);
+
+    static final String USER_KEY_PREFIX = "user-sessions:";
+    static final String REVERSE_KEY = "session-users";
+
+    /**
+     * セッション Hash の更新＋EXPIRE と、インデックスの付け替えを 1 回で行う。
+     * KEYS[1] = "session:{sid}", KEYS[2] = 逆引き Hash
+     * ARGV[1] = TTL秒, ARGV[2] = sid, ARGV[3] = Set のキー接頭辞, ARGV[4] = 新しい userId（"" なら削除）,
+     * ARGV[5] = 削除 field 数 n, ARGV[6..5+n] = 削除 field, ARGV[6+n..] = field, value, ...
+     */
+    static final RedisScript<Long> INDEXED_WRITE = new DefaultRedisScript<>("""
+            local n = tonumber(ARGV[5])
+            if n > 0 then redis.call('HDEL', KEYS[1], unpack(ARGV, 6, 5 + n)) end
+            if #ARGV > 5 + n then redis.call('HSET', KEYS[1], unpack(ARGV, 6 + n)) end
+            redis.call('EXPIRE', KEYS[1], ARGV[1])
+            local old = redis.call('HGET', KEYS[2], ARGV[2])
+            if old and old ~= ARGV[4] then redis.call('SREM', ARGV[3] .. old, ARGV[2]) end
+            if ARGV[4] ~= '' then
+              redis.call('SADD', ARGV[3] .. ARGV[4], ARGV[2])
+              redis.call('HSET', KEYS[2], ARGV[2], ARGV[4])
+            elseif old then
+              redis.call('HDEL', KEYS[2], ARGV[2])
+            end
+            return 1
+            """, Long.class);
+
+    /**
+     * セッションを消し、インデックスからも外す（invalidate 用）。
+     * KEYS[1] = "session:{sid}", KEYS[2] = 逆引き Hash, ARGV[1] = sid, ARGV[2] = Set のキー接頭辞。戻り値は DEL の件数。
+     */
+    static final RedisScript<Long> UNINDEX = new DefaultRedisScript<>("""
+            local n = redis.call('DEL', KEYS[1])
+            local u = redis.call('HGET', KEYS[2], ARGV[1])
+            if u then
+              redis.call('SREM', ARGV[2] .. u, ARGV[1])
+              redis.call('HDEL', KEYS[2], ARGV[1])
+            end
+            return n
+            """, Long.class);
+
+    /**
+     * 期限切れ/追い出しで消えたセッションをインデックスから外す（通知用。DEL はしない）。
+     * 通知が届くまでに同じ SID で書き直されていれば（その書き込みが索引も付け直している）何もせずに 0。
+     * KEYS / ARGV は UNINDEX と同じ。
+     */
+    static final RedisScript<Long> GONE = new DefaultRedisScript<>("""
+            if redis.call('EXISTS', KEYS[1]) == 1 then return 0 end
+            local u = redis.call('HGET', KEYS[2], ARGV[1])
+            if u then
+              redis.call('SREM', ARGV[2] .. u, ARGV[1])
+              redis.call('HDEL', KEYS[2], ARGV[1])
+            end
+            return 1
+            """, Long.class);
+
+    private static final RedisSerializer<byte[]> RAW = RedisSerializer.byteArray();
+    /** 整数応答はデシリアライズされずそのまま返るので、結果用シリアライザは型合わせのためだけ。 */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static final RedisSerializer<Long> LONG = (RedisSerializer) RAW;
+
+    private final SessionProperties.UserIndex props;
+    private final RedisTemplate<String, Object> redis;
+    private RedisMessageListenerContainer listenerContainer;
+
+    public UserSessionIndex(SessionProperties props, RedisTemplate<String, Object> redis) {
+        this.props = props.getUserIndex();
+        this.redis = redis;
+    }
+
+    /** 無効なインスタンス。Repository を Spring 外で組み立てる場合用。 */
+    static UserSessionIndex disabled() {
+        return new UserSessionIndex(new SessionProperties(), null);
+    }
+
+    public boolean isEnabled() { return props.isEnabled(); }
+
+    /** インデックス対象の属性名（既定 "userId"）。 */
+    String attribute() { return props.getAttribute(); }
+
+    boolean affects(Iterable<String> names) {
+        if (!isEnabled()) return false;
+        for (String name : names) {
+            if (props.getAttribute().equals(name)) return true;
+        }
+        return false;
+    }
+
+    static String userKey(String userId) { return USER_KEY_PREFIX + userId; }
+
+    static byte[] utf8(String s) { return s.getBytes(StandardCharsets.UTF_8); }
+
+    @Override
+    public void afterPropertiesSet() {
+        if (!isEnabled()) return;
+        // 期限切れ通知（既存の notify-keyspace-events に足す）
+        if (props.isConfigureNotifications()) KeyspaceNotifications.enable(redis, "Exe", log);
+        listenerContainer = new RedisMessageListenerContainer();
+        listenerContainer.setConnectionFactory(redis.getConnectionFactory());
+        listenerContainer.addMessageListener(
+                (message, pattern) -> onGone(new String(message.getBody(), StandardCharsets.UTF_8)),
+                List.of(new PatternTopic("__keyevent@*__:expired"), new PatternTopic("__keyevent@*__:evicted")));
+        listenerContainer.afterPropertiesSet();
+        listenerContainer.start();
+    }
+
+    /** セッションキーが期限切れ/追い出しで消えた。全ノードが受けるが GONE は冪等なので問題ない。 */
+    private void onGone(String key) {
+        if (!key.startsWith(RedisSessionRepository.KEY_PREFIX)) return;
+        String sid = key.substring(RedisSessionRepository.KEY_PREFIX.length());
+        try {
+            redis.execute(GONE, RAW, LONG, List.of(key, REVERSE_KEY), utf8(sid), utf8(USER_KEY_PREFIX));
+        } catch (RuntimeException e) {
+            log.warn("Could not unindex expired session {}: {}", sid, e.toString());
+        }
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        if (listenerContainer != null) listenerContainer.destroy();
+    }
+}
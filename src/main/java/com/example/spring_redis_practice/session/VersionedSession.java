@@ -0,0 +1,19 @@
+package com.example.spring_redis_practice.session;
+
+import java.util.Map;
+
+/**
+ * バージョン付きで読んだセッション（RedisSessionRepository#loadVersioned）。
+ * version は書き込みのたびに Redis 側で 1 ずつ上がる（版のない古いハッシュは 0）。
+ * compareAndWrite にそのまま渡せば、読んでから誰も書いていないときだけ書き込める。
+ *
+ * @param attributes 属性（読み取り専用）
+ * @param version    版。{@link #ABSENT} ならセッションが存在しない
+ */
+public record VersionedSession(Map<Object, Object> attributes, long version) {
+
+    /** 存在しないセッションの版。compareAndWrite の期待値に渡すと「まだ無ければ作る」。 */
+    public static final long ABSENT = -1;
+
+    public boolean exists() { return version != ABSENT; }
+}
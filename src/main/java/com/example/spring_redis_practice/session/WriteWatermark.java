@@ -0,0 +1,50 @@
+package com.example.spring_redis_practice.session;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * 「このセッションは直近に書き込まれたか」の判定（レプリカ読み取りの振り分け用）。
+ * ・ノードローカル：自ノードで書き込んだ時刻を覚える
+ * ・リクエスト由来：SessionFilter がクッキー（SIDW）で持ち回る最終書き込み時刻（他ノードでの書き込みも分かる）
+ * どちらかが stickyWindow 以内ならプライマリから読む。時刻はエポックミリ秒（ノード間の時計ずれは窓の余裕で吸収する）。
+ * 表が maxTracked を超えたら丸ごと捨てる（忘れたセッションはクッキー側の判定だけになる）。
+ */
+class WriteWatermark {
+
+    private final boolean enabled;
+    private final long windowMillis;
+    private final int maxTracked;
+    private final LongSupplier clock;
+    private final Map<String, Long> lastWrite = new ConcurrentHashMap<>();
+
+    WriteWatermark(SessionProperties.ReplicaReads props) {
+        this(props, System::currentTimeMillis);
+    }
+
+    WriteWatermark(SessionProperties.ReplicaReads props, LongSupplier clock) {
+        this.enabled = props.isEnabled();
+        this.windowMillis = props.getStickyWindow().toMillis();
+        this.maxTracked = props.getMaxTracked();
+        this.clock = clock;
+    }
+
+    long now() { return clock.getAsLong(); }
+
+    /** プライマリから読むべきか。requestWatermark はリクエストが持ってきた最終書き込み時刻（無ければ 0）。 */
+    boolean usePrimary(String key, long requestWatermark) {
+        if (!enabled) return true;
+        long now = clock.getAsLong();
+        if (requestWatermark > 0 && now - requestWatermark < windowMillis) return true;
+        Long last = lastWrite.get(key);
+        return last != null && now - last < windowMillis;
+    }
+
+    /** 書き込み（破棄含む）に成功したことを記録。 */
+    void written(String key) {
+        if (!enabled) return;
+        if (lastWrite.size() >= maxTracked) lastWrite.clear();
+        lastWrite.put(key, clock.getAsLong());
+    }
+}
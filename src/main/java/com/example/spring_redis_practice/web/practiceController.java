@@ -1,7 +1,7 @@
 package com.example.spring_redis_practice.web;
 
 import com.example.spring_redis_practice.session.RedisSessionRepository;
-import com.example.spring_redis_practice.session.SessionFilter;
+import com.example.spring_redis_practice.session.SessionContext;
 import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.web.bind.annotation.*;
 
@@ -14,6 +14,7 @@ import java.util.Map;
  * - POST /me/logout           : セッション破棄
  *
  * 実サービスでは、userIdの代わりに認証済みユーザ情報やCSRFトークン等を保持する想定。
+ * セッションは SessionFilter が用意した SessionContext 経由で操作する（読み書きをリクエスト単位で集約）。
  */
 @RestController
 @RequestMapping("/me")
@@ -27,33 +28,31 @@ public class practiceController {
 
     @PostMapping("/login")
     public Map<String, Object> login(HttpServletRequest req, @RequestParam String userId) {
-        // Filterが付与した SID を取得
-        String sid = (String) req.getAttribute(SessionFilter.REQ_ATTR_SESSION_ID);
+        // Filterが用意したセッションを取得
+        SessionContext session = SessionContext.from(req);
 
-        // セッションに userId を保存。保存時/アクセス時にTTLが延長される。
-        sessions.setAttr(sid, "userId", userId);
+        // セッションに userId を保存。残TTLを返すため、ここでは明示的に反映しておく。
+        session.setAttr("userId", userId);
+        session.flush();
 
         return Map.of(
                 "status", "ok",
-                "sid", sid,
-                "ttlSec", sessions.ttl(sid).toSeconds()  // 現在の残TTLを確認
+                "sid", session.getId(),
+                "ttlSec", sessions.ttl(session.getId()).toSeconds()  // 現在の残TTLを確認
         );
     }
 
     @GetMapping
     public Map<String, Object> me(HttpServletRequest req) {
-        String sid = (String) req.getAttribute(SessionFilter.REQ_ATTR_SESSION_ID);
-
-        // 取得成功時はスライディングTTLにより expire() で延長される
-        Object userId = sessions.getAttr(sid, "userId");
+        // 初回アクセスで Hash を 1 回だけ読む。取得成功時はスライディングTTLにより延長される
+        Object userId = SessionContext.from(req).getAttr("userId");
 
         return Map.of("userId", userId);
     }
 
     @PostMapping("/logout")
     public Map<String, Object> logout(HttpServletRequest req) {
-        String sid = (String) req.getAttribute(SessionFilter.REQ_ATTR_SESSION_ID);
-        sessions.invalidate(sid); // Redis上の "sess:{sid}" を削除
+        SessionContext.from(req).invalidate(); // Redis上の "session:{sid}" を削除
         return Map.of("status", "logged-out");
     }
 }
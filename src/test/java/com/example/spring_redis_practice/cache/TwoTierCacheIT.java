@@ -0,0 +1,107 @@
+package com.example.spring_redis_practice.cache;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.Cache;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * TwoTierCacheManager を実際の Redis で確認：キャッシュごとの TTL、同時読み込みの集約、他ノードの L1 の無効化。
+ */
+@ExtendWith(SpringExtension.class)
+@SpringBootTest(properties = "app.cache.caches.it-short.ttl=5s")
+@Testcontainers
+public class TwoTierCacheIT {
+
+    @Autowired
+    TwoTierCacheManager cacheManager;
+
+    @Autowired
+    TwoTierCacheProperties props;
+
+    @Autowired
+    RedisTemplate<String, Object> redis;
+
+    @Test
+    void per_cache_ttl_is_applied_to_l2() {
+        Cache cache = cacheManager.getCache("it-short");
+        cache.put("k", "v");
+
+        Long ttl = redis.getExpire("cache:it-short::k", TimeUnit.SECONDS);
+        assertThat(ttl).isBetween(1L, 5L);
+        assertThat(cache.get("k", String.class)).isEqualTo("v");
+
+        cache.evict("k");
+        assertThat(redis.hasKey("cache:it-short::k")).isFalse();
+    }
+
+    @Test
+    void concurrent_loads_of_the_same_key_run_once() throws Exception {
+        Cache cache = cacheManager.getCache("it-flight");
+        cache.clear();
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(16);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < 16; i++) {
+                results.add(pool.submit(() -> {
+                    start.await();
+                    return cache.get("slow", () -> {
+                        calls.incrementAndGet();
+                        Thread.sleep(300);
+                        return "computed";
+                    });
+                }));
+            }
+            start.countDown();
+            for (Future<String> f : results) assertThat(f.get(5, TimeUnit.SECONDS)).isEqualTo("computed");
+        } finally {
+            pool.shutdownNow();
+        }
+        assertThat(calls).hasValue(1);
+    }
+
+    @Test
+    void writes_on_one_node_invalidate_l1_on_another() throws Exception {
+        TwoTierCacheManager other = new TwoTierCacheManager(props, redis, new SimpleMeterRegistry());
+        other.afterPropertiesSet();
+        try {
+            Cache here = cacheManager.getCache("it-shared");
+            Cache there = other.getCache("it-shared");
+            here.put("k", 1);
+            assertThat(there.get("k", Integer.class)).isEqualTo(1); // L2 から読んで L1 に載る
+
+            here.put("k", 2);
+            long deadline = System.currentTimeMillis() + 2_000;
+            while (!Integer.valueOf(2).equals(there.get("k", Integer.class))
+                    && System.currentTimeMillis() < deadline) {
+                Thread.sleep(20);
+            }
+            assertThat(there.get("k", Integer.class)).isEqualTo(2);
+
+            here.evict("k");
+            deadline = System.currentTimeMillis() + 2_000;
+            while (there.get("k") != null && System.currentTimeMillis() < deadline) Thread.sleep(20);
+            assertThat(there.get("k")).isNull();
+        } finally {
+            other.destroy();
+        }
+    }
+}
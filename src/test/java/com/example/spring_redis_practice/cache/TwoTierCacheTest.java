@@ -0,0 +1,80 @@
+package com.example.spring_redis_practice.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+/**
+ * 期限前の確率的な再計算（XFetch）の判定と、L2 の読み取り中の無効化で L1 に古い値を残さないことを検証（Redis はモック）。
+ */
+class TwoTierCacheTest {
+
+    static final long EXPIRES_AT = 100_000;
+
+    @Test
+    void far_from_expiry_never_refreshes() {
+        // 再計算 100ms、期限まで 10 秒：rand がかなり小さくても再計算しない
+        assertThat(TwoTierCache.shouldRefreshEarly(EXPIRES_AT - 10_000, EXPIRES_AT, 100, 1.0, 0.01)).isFalse();
+    }
+
+    @Test
+    void probability_rises_near_expiry() {
+        // 期限まで 100ms（= 再計算時間）：-ln(rand) ≥ 1 つまり rand ≤ 1/e ≒ 0.37 のときだけ
+        long now = EXPIRES_AT - 100;
+        assertThat(TwoTierCache.shouldRefreshEarly(now, EXPIRES_AT, 100, 1.0, 0.30)).isTrue();
+        assertThat(TwoTierCache.shouldRefreshEarly(now, EXPIRES_AT, 100, 1.0, 0.50)).isFalse();
+        // beta を上げるとより早く作り直す
+        assertThat(TwoTierCache.shouldRefreshEarly(now, EXPIRES_AT, 100, 2.0, 0.50)).isTrue();
+    }
+
+    @Test
+    void at_expiry_always_refreshes() {
+        assertThat(TwoTierCache.shouldRefreshEarly(EXPIRES_AT, EXPIRES_AT, 100, 1.0, 1.0)).isTrue();
+    }
+
+    @Test
+    void disabled_without_delta_beta_or_expiry() {
+        long now = EXPIRES_AT - 1;
+        assertThat(TwoTierCache.shouldRefreshEarly(now, EXPIRES_AT, 0, 1.0, 0.01)).isFalse();
+        assertThat(TwoTierCache.shouldRefreshEarly(now, EXPIRES_AT, 100, 0.0, 0.01)).isFalse();
+        assertThat(TwoTierCache.shouldRefreshEarly(now, Long.MAX_VALUE, 100, 1.0, 0.01)).isFalse();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void invalidation_during_an_l2_read_drops_only_that_key() {
+        RedisTemplate<String, Object> redis = mock(RedisTemplate.class);
+        ValueOperations<String, Object> ops = mock(ValueOperations.class);
+        when(redis.opsForValue()).thenReturn(ops);
+        TwoTierCache cache = new TwoTierCache("items", new TwoTierCacheProperties(), redis, (n, k) -> {},
+                new SimpleMeterRegistry());
+        Cache<String, TwoTierCache.Entry> l1 = (Cache<String, TwoTierCache.Entry>) cache.getNativeCache();
+        Map<String, Object> envelope = Map.of("v", "value", "e", Long.MAX_VALUE, "d", 0L);
+        String other = "cache:items::b";
+        assertThat(TwoTierCache.stripe(other)).isNotEqualTo(TwoTierCache.stripe("cache:items::a"));
+
+        // 他のキーの無効化では、読んだ値を L1 に残す
+        when(ops.get("cache:items::a")).thenAnswer(inv -> {
+            cache.evictLocal(other);
+            return envelope;
+        });
+        assertThat(cache.get("a")).isNotNull();
+        assertThat(l1.getIfPresent("cache:items::a")).isNotNull();
+
+        // 同じキーの無効化なら、読んだ値は返すが L1 には残さない
+        l1.invalidateAll();
+        when(ops.get("cache:items::a")).thenAnswer(inv -> {
+            cache.evictLocal("cache:items::a");
+            return envelope;
+        });
+        assertThat(cache.get("a")).isNotNull();
+        assertThat(l1.getIfPresent("cache:items::a")).isNull();
+    }
+}
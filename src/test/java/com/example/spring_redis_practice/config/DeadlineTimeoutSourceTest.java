@@ -0,0 +1,49 @@
+package com.example.spring_redis_practice.config;
+
+import com.example.spring_redis_practice.resilience.GuardedRetryPolicy;
+import com.example.spring_redis_practice.resilience.RetryBudget;
+import org.junit.jupiter.api.Test;
+import org.springframework.retry.policy.SimpleRetryPolicy;
+import org.springframework.retry.support.RetryTemplate;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * コマンドタイムアウトが、論理呼び出しの外では設定値、中では期限の残り（入れ子なら早い方）になることを検証。
+ */
+class DeadlineTimeoutSourceTest {
+
+    static final long CONFIGURED = Duration.ofSeconds(3).toNanos();
+
+    DeadlineTimeoutSource source = new DeadlineTimeoutSource(Duration.ofSeconds(3));
+
+    @Test
+    void timeout_is_capped_by_the_deadline_of_the_running_call() {
+        assertThat(source.getTimeout(null)).isEqualTo(CONFIGURED);
+
+        long inside = new RetryConfig().redisRetryTemplate().execute(ctx -> source.getTimeout(null));
+        assertThat(inside).isPositive().isLessThanOrEqualTo(RetryConfig.DEADLINE.toNanos());
+
+        assertThat(source.getTimeout(null)).isEqualTo(CONFIGURED); // 呼び出しが終われば元に戻る
+    }
+
+    @Test
+    void nested_calls_keep_the_earlier_deadline_and_expired_ones_still_wait_briefly() {
+        RetryTemplate outer = guarded(Duration.ofMillis(500));
+        RetryTemplate inner = guarded(Duration.ofSeconds(10));
+        long nested = outer.execute(ctx -> inner.execute(c -> source.getTimeout(null)));
+        assertThat(nested).isLessThanOrEqualTo(Duration.ofMillis(500).toNanos());
+
+        long expired = guarded(Duration.ZERO).execute(ctx -> source.getTimeout(null));
+        assertThat(expired).isEqualTo(TimeUnit.MILLISECONDS.toNanos(1));
+    }
+
+    private static RetryTemplate guarded(Duration deadline) {
+        RetryTemplate template = new RetryTemplate();
+        template.setRetryPolicy(new GuardedRetryPolicy(new SimpleRetryPolicy(1), new RetryBudget(0.1, 10, 100), deadline));
+        return template;
+    }
+}
@@ -0,0 +1,94 @@
+package com.example.spring_redis_practice.config;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.data.redis.RedisProperties;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceClientConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.connection.lettuce.LettucePoolingClientConfiguration;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.*;
+
+/**
+ * 接続方式ごとのファクトリの組み立てと、STRIPED のスレッド振り分けを検証（Redis には接続しない）。
+ */
+class RedisConnectionStrategyTest {
+
+    static final RedisStandaloneConfiguration SERVER = new RedisStandaloneConfiguration("localhost", 6379);
+
+    @Test
+    void shared_uses_one_native_connection() {
+        LettuceConnectionFactory cf = factory(RedisConnectionProperties.Strategy.SHARED);
+        assertThat(cf).isNotInstanceOf(StripedLettuceConnectionFactory.class);
+        assertThat(cf.getShareNativeConnection()).isTrue();
+        assertThat(cf.getClientConfiguration()).isNotInstanceOf(LettucePoolingClientConfiguration.class);
+    }
+
+    @Test
+    void pooled_borrows_dedicated_connections() {
+        LettuceConnectionFactory cf = factory(RedisConnectionProperties.Strategy.POOLED);
+        assertThat(cf.getShareNativeConnection()).isFalse();
+        assertThat(cf.getClientConfiguration()).isInstanceOfSatisfying(LettucePoolingClientConfiguration.class,
+                pooling -> assertThat(pooling.getPoolConfig().getMaxTotal()).isEqualTo(16));
+    }
+
+    @Test
+    void striped_creates_the_configured_number_of_stripes() {
+        RedisConnectionProperties props = new RedisConnectionProperties();
+        props.setStrategy(RedisConnectionProperties.Strategy.STRIPED);
+        props.getStriped().setStripes(3);
+        LettuceConnectionFactory cf = RedisConfig.connectionFactory(SERVER, client(props), props);
+        assertThat(cf).isInstanceOfSatisfying(StripedLettuceConnectionFactory.class,
+                striped -> assertThat(striped.stripeCount()).isEqualTo(3));
+    }
+
+    @Test
+    void striped_keeps_a_thread_on_one_stripe_and_spreads_threads() throws Exception {
+        List<LettuceConnectionFactory> stripes = List.of(
+                mock(LettuceConnectionFactory.class), mock(LettuceConnectionFactory.class));
+        StripedLettuceConnectionFactory cf = new StripedLettuceConnectionFactory(SERVER,
+                LettuceClientConfiguration.defaultConfiguration(), stripes);
+
+        cf.getConnection();
+        cf.getConnection();
+        LettuceConnectionFactory mine = cf.stripe();
+        verify(mine, times(2)).getConnection();
+
+        // スレッドごとに乱数で選ぶので、64 スレッドあればどのストライプも使われる（外れる確率は 2^-63）
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 64; i++) threads.add(new Thread(cf::getConnection));
+        for (Thread t : threads) t.start();
+        for (Thread t : threads) t.join();
+        for (LettuceConnectionFactory stripe : stripes) verify(stripe, atLeastOnce()).getConnection();
+    }
+
+    @Test
+    void striped_does_not_eagerly_open_its_own_connection() {
+        StripedLettuceConnectionFactory cf = new StripedLettuceConnectionFactory(SERVER,
+                LettuceClientConfiguration.defaultConfiguration(), List.of(mock(LettuceConnectionFactory.class)));
+        cf.setEagerInitialization(true);
+        assertThat(cf.getEagerInitialization()).isFalse();
+    }
+
+    @Test
+    void striped_requires_at_least_one_stripe() {
+        assertThatThrownBy(() -> new StripedLettuceConnectionFactory(SERVER,
+                LettuceClientConfiguration.defaultConfiguration(), List.of()))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static LettuceConnectionFactory factory(RedisConnectionProperties.Strategy strategy) {
+        RedisConnectionProperties props = new RedisConnectionProperties();
+        props.setStrategy(strategy);
+        return RedisConfig.connectionFactory(SERVER, client(props), props);
+    }
+
+    private static LettuceClientConfiguration client(RedisConnectionProperties props) {
+        return RedisConfig.clientConfiguration(props, new RedisProperties(), false).build();
+    }
+}
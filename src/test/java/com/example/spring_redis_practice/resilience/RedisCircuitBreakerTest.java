@@ -0,0 +1,84 @@
+package com.example.spring_redis_practice.resilience;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * ブレーカの状態遷移（CLOSED → OPEN → HALF_OPEN → CLOSED/OPEN）と、取り消された試行が枠を返すことを疑似クロックで検証。
+ */
+class RedisCircuitBreakerTest {
+
+    AtomicLong now;
+    RedisCircuitBreaker breaker;
+
+    @BeforeEach
+    void setUp() {
+        now = new AtomicLong(0);
+        breaker = new RedisCircuitBreaker(10, 4, 0.5, Duration.ofSeconds(5), now::get);
+    }
+
+    private void tripOpen() {
+        while (breaker.state() == RedisCircuitBreaker.State.CLOSED) {
+            breaker.acquirePermission();
+            breaker.onFailure();
+        }
+    }
+
+    @Test
+    void opens_on_high_failure_rate_and_fails_fast() {
+        breaker.acquirePermission();
+        breaker.onSuccess();
+        breaker.acquirePermission();
+        breaker.onFailure();
+        assertThat(breaker.state()).isEqualTo(RedisCircuitBreaker.State.CLOSED); // 最低件数に満たない
+
+        tripOpen();
+        assertThat(breaker.state()).isEqualTo(RedisCircuitBreaker.State.OPEN);
+        assertThatThrownBy(breaker::acquirePermission).isInstanceOf(RedisCircuitOpenException.class);
+    }
+
+    @Test
+    void half_open_allows_single_probe_then_closes_on_success() {
+        tripOpen();
+        now.set(Duration.ofSeconds(5).toNanos());
+
+        breaker.acquirePermission(); // 試行 1 件目は通る
+        assertThat(breaker.state()).isEqualTo(RedisCircuitBreaker.State.HALF_OPEN);
+        assertThatThrownBy(breaker::acquirePermission).isInstanceOf(RedisCircuitOpenException.class);
+
+        breaker.onSuccess();
+        assertThat(breaker.state()).isEqualTo(RedisCircuitBreaker.State.CLOSED);
+        breaker.acquirePermission();
+    }
+
+    @Test
+    void failed_probe_reopens() {
+        tripOpen();
+        now.set(Duration.ofSeconds(5).toNanos());
+        breaker.acquirePermission();
+        breaker.onFailure();
+
+        assertThat(breaker.state()).isEqualTo(RedisCircuitBreaker.State.OPEN);
+        now.set(Duration.ofSeconds(9).toNanos());
+        assertThatThrownBy(breaker::acquirePermission).isInstanceOf(RedisCircuitOpenException.class);
+    }
+
+    @Test
+    void cancelled_probe_lets_the_next_call_probe() {
+        tripOpen();
+        now.set(Duration.ofSeconds(5).toNanos());
+        breaker.acquirePermission();
+        breaker.onCancel();
+
+        assertThat(breaker.state()).isEqualTo(RedisCircuitBreaker.State.HALF_OPEN);
+        breaker.acquirePermission(); // 次の呼び出しが試行になる
+        breaker.onSuccess();
+        assertThat(breaker.state()).isEqualTo(RedisCircuitBreaker.State.CLOSED);
+    }
+}
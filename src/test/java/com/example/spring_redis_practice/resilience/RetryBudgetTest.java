@@ -0,0 +1,37 @@
+package com.example.spring_redis_practice.resilience;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * リトライ予算：最低枠を使い切ったら止まり、成功と時間経過で回復することを検証。
+ */
+class RetryBudgetTest {
+
+    @Test
+    void budget_is_exhausted_and_refilled_by_successes_and_time() {
+        AtomicLong now = new AtomicLong(0);
+        RetryBudget budget = new RetryBudget(0.5, 2, 10, now::get);
+
+        // 初期は毎秒の最低枠（2回）だけ
+        assertThat(budget.tryAcquire()).isTrue();
+        assertThat(budget.tryAcquire()).isTrue();
+        assertThat(budget.tryAcquire()).isFalse();
+
+        // 成功2件 → 0.5 × 2 = 1回分
+        budget.onSuccess();
+        budget.onSuccess();
+        assertThat(budget.tryAcquire()).isTrue();
+        assertThat(budget.tryAcquire()).isFalse();
+
+        // 1秒経過 → 2回分補充
+        now.set(Duration.ofSeconds(1).toNanos());
+        assertThat(budget.tryAcquire()).isTrue();
+        assertThat(budget.tryAcquire()).isTrue();
+        assertThat(budget.tryAcquire()).isFalse();
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.spring_redis_practice.serializer;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * CompactValueSerializer の往復・旧形式（JSON）の読み取り・サイズ比較を検証。
+ */
+class CompactValueSerializerTest {
+
+    record Cart(String id, List<String> items, long total) {}
+
+    GenericJackson2JsonRedisSerializer json = new GenericJackson2JsonRedisSerializer();
+    CompactValueSerializer compact = new CompactValueSerializer(json, Map.of(1, Cart.class));
+
+    @Test
+    void primitives_round_trip() {
+        for (Object v : List.of("bob", "", "日本語", 0L, -1L, Long.MAX_VALUE, Long.MIN_VALUE,
+                42, Integer.MIN_VALUE, true, false, 3.14)) {
+            assertThat(compact.deserialize(compact.serialize(v))).isEqualTo(v);
+        }
+        assertThat(compact.deserialize(compact.serialize(null))).isNull();
+    }
+
+    @Test
+    void registered_type_round_trips_without_class_name() {
+        Cart cart = new Cart("c-1", List.of("apple", "banana"), 1200L);
+        byte[] bytes = compact.serialize(cart);
+
+        assertThat(compact.deserialize(bytes)).isEqualTo(cart);
+        assertThat(new String(bytes)).doesNotContain(Cart.class.getName());
+    }
+
+    @Test
+    void reads_values_written_by_json_serializer() {
+        // 既存データ（JSON）も読める＝段階的な移行が可能
+        assertThat(compact.deserialize(json.serialize("bob"))).isEqualTo("bob");
+        Map<String, Object> map = new HashMap<>(Map.of("k", "v"));
+        assertThat(compact.deserialize(json.serialize(map))).isEqualTo(map);
+        // 未登録型は JSON のまま書かれる
+        assertThat(compact.serialize(map)).isEqualTo(json.serialize(map));
+    }
+
+    @Test
+    void compact_is_smaller_than_json() {
+        Cart cart = new Cart("c-1", List.of("apple", "banana"), 1200L);
+        GenericJackson2JsonRedisSerializer typed = new GenericJackson2JsonRedisSerializer();
+
+        assertThat(compact.serialize("alice").length).isLessThan(json.serialize("alice").length);
+        assertThat(compact.serialize(1_700_000_000_000L).length).isLessThan(json.serialize(1_700_000_000_000L).length);
+        assertThat(compact.serialize(true).length).isLessThan(json.serialize(true).length);
+        assertThat(compact.serialize(cart).length).isLessThan(typed.serialize(cart).length);
+    }
+}
@@ -0,0 +1,68 @@
+package com.example.spring_redis_practice.serializer;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.util.Map;
+import java.util.zip.Deflater;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * しきい値による圧縮の切替と、圧縮導入前の値・圧縮を無効に戻した後の圧縮済みの値が読めること、
+ * ヘッダの長さが不正な値を展開前に拒否することを検証。
+ */
+class CompressingSerializerTest {
+
+    GenericJackson2JsonRedisSerializer json = new GenericJackson2JsonRedisSerializer();
+    CompactValueSerializer compact = new CompactValueSerializer(json, Map.of());
+    CompressingSerializer serializer = new CompressingSerializer(compact, 256, Deflater.BEST_SPEED);
+
+    @Test
+    void small_values_are_left_as_is() {
+        assertThat(serializer.serialize("alice")).isEqualTo(compact.serialize("alice"));
+    }
+
+    @Test
+    void large_values_are_compressed_and_round_trip() {
+        String permissions = "orders:read,orders:write,".repeat(200);
+        byte[] bytes = serializer.serialize(permissions);
+
+        assertThat(bytes[0]).isEqualTo(CompressingSerializer.COMPRESSED);
+        assertThat(bytes.length).isLessThan(compact.serialize(permissions).length / 10);
+        assertThat(serializer.deserialize(bytes)).isEqualTo(permissions);
+    }
+
+    @Test
+    void values_written_before_compression_remain_readable() {
+        String large = "x".repeat(1000);
+        assertThat(serializer.deserialize(json.serialize(large))).isEqualTo(large);
+        assertThat(serializer.deserialize(compact.serialize(large))).isEqualTo(large);
+    }
+
+    @Test
+    void compressed_values_stay_readable_after_compression_is_disabled() {
+        String large = "orders:read,".repeat(500);
+        byte[] stored = serializer.serialize(large);
+        CompressingSerializer disabled = CompressingSerializer.decompressOnly(compact);
+
+        assertThat(disabled.deserialize(stored)).isEqualTo(large);
+        assertThat(disabled.serialize(large)).isEqualTo(compact.serialize(large)); // 新しい書き込みは圧縮しない
+    }
+
+    @Test
+    void implausible_lengths_are_rejected_before_allocating() {
+        byte[] stored = serializer.serialize("orders:read,".repeat(500));
+
+        byte[] negative = stored.clone();
+        negative[1] = (byte) 0x80;
+        assertThatThrownBy(() -> serializer.deserialize(negative)).isInstanceOf(SerializationException.class);
+
+        byte[] huge = stored.clone();
+        huge[1] = 0x1F; // 約 500MB（本体の大きさからはありえない）
+        assertThatThrownBy(() -> serializer.deserialize(huge)).isInstanceOf(SerializationException.class)
+                .hasMessageContaining("declared length");
+    }
+}
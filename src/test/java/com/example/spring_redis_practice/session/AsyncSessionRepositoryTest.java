@@ -0,0 +1,63 @@
+package com.example.spring_redis_practice.session;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.*;
+
+/**
+ * AsyncSessionRepository が完了を Executor に回さずに通知し、Executor を省略した ...Async の後続だけを
+ * applicationTaskExecutor で実行すること、取り消しが購読まで届くことを、ReactiveSessionRepository をモックして検証。
+ */
+class AsyncSessionRepositoryTest {
+
+    ReactiveSessionRepository reactive;
+    AtomicInteger handoffs;
+    AsyncSessionRepository repo;
+
+    @BeforeEach
+    void setUp() {
+        reactive = mock(ReactiveSessionRepository.class);
+        handoffs = new AtomicInteger();
+        Executor executor = task -> {
+            handoffs.incrementAndGet();
+            task.run();
+        };
+        repo = new AsyncSessionRepository(reactive, executor);
+    }
+
+    @Test
+    void completion_is_not_handed_off_but_default_async_stages_use_the_executor() {
+        when(reactive.load("S1")).thenReturn(Mono.just(Map.of("userId", "alice")));
+
+        CompletableFuture<Map<Object, Object>> loaded = repo.load("S1").toCompletableFuture();
+        assertThat(loaded.join()).containsEntry("userId", "alice");
+        assertThat(handoffs).hasValue(0);
+
+        assertThat(loaded.thenApplyAsync(m -> m.get("userId")).join()).isEqualTo("alice");
+        assertThat(handoffs).hasValue(1);
+    }
+
+    @Test
+    void failures_are_propagated_and_cancellation_reaches_the_subscription() {
+        when(reactive.invalidate("S1")).thenReturn(Mono.error(new IllegalStateException("boom")));
+        assertThatThrownBy(() -> repo.invalidate("S1").toCompletableFuture().join())
+                .isInstanceOf(CompletionException.class)
+                .hasCauseInstanceOf(IllegalStateException.class);
+
+        AtomicInteger cancelled = new AtomicInteger();
+        when(reactive.ttl("S1")).thenReturn(Mono.<Duration>never().doOnCancel(cancelled::incrementAndGet));
+        repo.ttl("S1").toCompletableFuture().cancel(false);
+        assertThat(cancelled).hasValue(1);
+    }
+}
@@ -0,0 +1,68 @@
+package com.example.spring_redis_practice.session;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * ConsistentHashRing の偏り・ノード追加時の移動量・ハッシュタグの扱いを検証。
+ */
+class ConsistentHashRingTest {
+
+    static final int KEYS = 100_000;
+
+    static Map<String, String> nodes(int n) {
+        Map<String, String> nodes = new LinkedHashMap<>();
+        for (int i = 0; i < n; i++) nodes.put("redis-" + i + ":6379", "redis-" + i);
+        return nodes;
+    }
+
+    @Test
+    void keys_spread_evenly_across_nodes() {
+        ConsistentHashRing<String> ring = new ConsistentHashRing<>(nodes(4), 160, true);
+        Map<String, Integer> counts = new HashMap<>();
+        for (int i = 0; i < KEYS; i++) counts.merge(ring.nodeFor("session:" + i), 1, Integer::sum);
+
+        assertThat(counts).hasSize(4);
+        // 理想は 25%。仮想ノード 160 なら ±20% に収まる
+        assertThat(counts.values()).allSatisfy(c -> assertThat(c).isBetween(KEYS / 4 * 8 / 10, KEYS / 4 * 12 / 10));
+    }
+
+    @Test
+    void adding_a_node_moves_only_its_share_of_keys() {
+        ConsistentHashRing<String> before = new ConsistentHashRing<>(nodes(4), 160, true);
+        ConsistentHashRing<String> after = new ConsistentHashRing<>(nodes(5), 160, true);
+        int moved = 0;
+        for (int i = 0; i < KEYS; i++) {
+            String key = "session:" + i;
+            String from = before.nodeFor(key);
+            String to = after.nodeFor(key);
+            if (!from.equals(to)) {
+                moved++;
+                // 動くのは新ノードへの移動だけ
+                assertThat(to).isEqualTo("redis-4");
+            }
+        }
+        // 理想は 1/5 = 20%
+        assertThat(moved).isBetween(KEYS * 15 / 100, KEYS * 25 / 100);
+    }
+
+    @Test
+    void hash_tags_colocate_keys() {
+        ConsistentHashRing<String> ring = new ConsistentHashRing<>(nodes(8), 160, true);
+        String node = ring.nodeFor("session:{alice}:a");
+        for (int i = 0; i < 100; i++) assertThat(ring.nodeFor("session:{alice}:" + i)).isEqualTo(node);
+    }
+
+    @Test
+    void hash_tag_follows_redis_cluster_rules() {
+        assertThat(ConsistentHashRing.hashTag("session:{u1}:x")).isEqualTo("u1");
+        assertThat(ConsistentHashRing.hashTag("session:{}:x")).isEqualTo("session:{}:x");
+        assertThat(ConsistentHashRing.hashTag("session:{u1")).isEqualTo("session:{u1");
+        assertThat(ConsistentHashRing.hashTag("session:abc")).isEqualTo("session:abc");
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.spring_redis_practice.session;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * スナップショットから戻したセッション（hset/expire の通知が出ない RESTORE で作られたキー）も、
+ * restore の通知で既知の SID になること、発行直後の SID は集合に無くても切り捨てないことを確認。
+ */
+@ExtendWith(SpringExtension.class)
+@SpringBootTest(properties = "app.session.known-ids.enabled=true")
+@Testcontainers
+public class KnownSessionIdsIT {
+
+    @Autowired
+    RedisSessionRepository repo;
+
+    @Autowired
+    RedisTemplate<String, Object> redis;
+
+    @Autowired
+    SessionSnapshots snapshots;
+
+    @Autowired
+    KnownSessionIds known;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void restored_sessions_become_known() throws Exception {
+        // 起動時の作り直しが終わるまでは常に「あるかも」
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (known.mightExist("IT-K-NEVER") && System.currentTimeMillis() < deadline) Thread.sleep(20);
+        assertThat(known.mightExist("IT-K-NEVER")).isFalse();
+
+        // 別のキーの DUMP を、このノードがまだ見ていない SID のキーで書き出す（DUMP の中身はキー名を含まない）
+        repo.putAll("IT-K-SRC", Map.of("userId", "otto"));
+        final byte[] src = "session:IT-K-SRC".getBytes(StandardCharsets.UTF_8);
+        byte[] dump = redis.execute((RedisCallback<byte[]>) c -> c.keyCommands().dump(src));
+        Path file = dir.resolve("known.snap");
+        try (SessionSnapshotFile.Writer out = new SessionSnapshotFile.Writer(file, 64 * 1024)) {
+            out.add("session:IT-K-RESTORED".getBytes(StandardCharsets.UTF_8),
+                    System.currentTimeMillis() + 60_000, dump);
+        }
+        assertThat(known.mightExist("IT-K-RESTORED")).isFalse();
+
+        assertThat(snapshots.restore(file).keys()).isEqualTo(1);
+        deadline = System.currentTimeMillis() + 2_000;
+        while (!known.mightExist("IT-K-RESTORED") && System.currentTimeMillis() < deadline) Thread.sleep(20);
+        assertThat(known.mightExist("IT-K-RESTORED")).isTrue();
+        assertThat(repo.load("IT-K-RESTORED")).containsEntry("userId", "otto");
+
+        repo.invalidateMany(List.of("IT-K-SRC", "IT-K-RESTORED"));
+    }
+
+    @Test
+    void freshly_issued_ids_are_not_filtered_before_the_notification_arrives() throws Exception {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (known.mightExist("IT-K-NEVER") && System.currentTimeMillis() < deadline) Thread.sleep(20);
+
+        // 他ノードで発行された直後の SID（このノードにはまだ通知が届いていない）
+        assertThat(known.mightExist(SessionIds.newId())).isTrue();
+        // 発行から時間の経った SID・発行時刻が先の SID は集合だけで判定する
+        assertThat(known.mightExist(SessionIds.newId(System.currentTimeMillis() - 3_600_000))).isFalse();
+        assertThat(known.mightExist(SessionIds.newId(System.currentTimeMillis() + 3_600_000))).isFalse();
+    }
+}
@@ -0,0 +1,90 @@
+package com.example.spring_redis_practice.session;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+/**
+ * ReactiveSessionContext の「購読時に 1 回だけロード」と「書き込み集約」を、Repository をモックして検証。
+ */
+class ReactiveSessionContextTest {
+
+    ReactiveSessionRepository repo;
+    ReactiveSessionContext session;
+
+    @BeforeEach
+    void setUp() {
+        repo = mock(ReactiveSessionRepository.class);
+        session = new ReactiveSessionContext("S1", repo);
+    }
+
+    @Test
+    void untouched_session_costs_nothing() {
+        session.flush().block();
+        verifyNoInteractions(repo);
+    }
+
+    @Test
+    void reads_load_once_and_see_pending_writes() {
+        when(repo.load("S1")).thenReturn(Mono.just(Map.of("userId", "alice", "role", "user")));
+
+        assertThat(session.getAttr("userId").block()).isEqualTo("alice");
+        session.setAttr("role", "admin");
+        session.removeAttr("userId");
+
+        assertThat(session.getAttr("role").block()).isEqualTo("admin");
+        assertThat(session.getAttr("userId").block()).isNull();
+        assertThat(session.getAttrs().block()).containsExactly(Map.entry("role", "admin"));
+        verify(repo, times(1)).load("S1");
+    }
+
+    @Test
+    void flushed_writes_are_visible_without_reloading() {
+        when(repo.load("S1")).thenReturn(Mono.just(Map.of("userId", "alice")));
+        when(repo.write(eq("S1"), anyMap(), anyCollection())).thenReturn(Mono.empty());
+
+        session.setAttr("role", "admin");
+        session.removeAttr("userId");
+        session.flush().block();
+        session.flush().block(); // 2回目は変更なし
+
+        verify(repo, times(1)).write("S1", Map.of("role", "admin"), Set.of("userId"));
+        assertThat(session.isDirty()).isFalse();
+        assertThat(session.getAttrs().block()).containsExactly(Map.entry("role", "admin"));
+        verify(repo, times(1)).load("S1");
+    }
+
+    @Test
+    void versioned_flush_creates_new_sessions_and_reissues_the_sid_of_a_vanished_one() {
+        when(repo.isVersioned()).thenReturn(true);
+        when(repo.compareAndWrite(anyString(), anyLong(), anyMap(), anyCollection())).thenReturn(Mono.just(true));
+        ReactiveSessionContext fresh = new ReactiveSessionContext("NEW", repo, true, sid -> {});
+        fresh.setAttr("userId", "alice");
+        fresh.flush().block();
+        verify(repo).compareAndWrite("NEW", VersionedSession.ABSENT, Map.of("userId", "alice"), Set.of());
+
+        // 期限切れ：その SID には書かず、新しい SID で作り直してクッキーを差し替える
+        when(repo.compareAndWrite(eq("S1"), anyLong(), anyMap(), anyCollection())).thenReturn(Mono.just(false));
+        List<String> issued = new ArrayList<>();
+        ReactiveSessionContext expired = new ReactiveSessionContext("S1", repo, false, issued::add);
+        expired.setAttr("userId", "bob");
+        expired.removeAttr("cart");
+        expired.flush().block();
+
+        verify(repo).compareAndWrite("S1", RedisSessionRepository.ANY_VERSION, Map.of("userId", "bob"), Set.of("cart"));
+        assertThat(issued).hasSize(1);
+        verify(repo).compareAndWrite(issued.get(0), VersionedSession.ABSENT, Map.of("userId", "bob"), List.of());
+        assertThat(expired.getId()).isEqualTo(issued.get(0));
+        assertThat(expired.getAttrs().block()).isEqualTo(Map.of("userId", "bob"));
+        verify(repo, never()).write(anyString(), anyMap(), anyCollection());
+        verify(repo, never()).load(anyString());
+    }
+}
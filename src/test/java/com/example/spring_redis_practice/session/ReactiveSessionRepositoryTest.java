@@ -0,0 +1,105 @@
+package com.example.spring_redis_practice.session;
+
+import com.example.spring_redis_practice.config.RetryConfig;
+import com.example.spring_redis_practice.resilience.RedisCircuitBreaker;
+import com.example.spring_redis_practice.resilience.ResilientRetryTemplate;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.core.ReactiveHashOperations;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.RedisSerializationContext;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+/**
+ * リアクティブ版のブレーカ連携を、ReactiveRedisTemplate をモックして検証：
+ * HALF_OPEN の試行が結果を出さずにキャンセルされても、ブレーカが試行枠を握ったままにならないこと。
+ * versioning 有効時に、書き込みが CAS_WRITE を通り、読み取り結果に版の field が出ないこと。
+ */
+class ReactiveSessionRepositoryTest {
+
+    ReactiveRedisTemplate<String, Object> redis;
+    RedisCircuitBreaker breaker;
+    ReactiveSessionRepository repo;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        redis = mock(ReactiveRedisTemplate.class);
+        when(redis.getSerializationContext()).thenReturn(RedisSerializationContext
+                .<String, Object>newSerializationContext(RedisSerializer.string())
+                .value(RedisSerializer.json())
+                .hashKey(RedisSerializer.string())
+                .hashValue(RedisSerializer.json())
+                .build());
+        // openDuration 0：OPEN になった直後から HALF_OPEN の試行を受け付ける
+        breaker = new RedisCircuitBreaker(10, 4, 0.5, Duration.ZERO);
+        repo = new ReactiveSessionRepository(redis, new ResilientRetryTemplate(breaker, RetryConfig::isTransient),
+                new SessionProperties(), SessionMetrics.noop());
+    }
+
+    @Test
+    void cancelled_probe_does_not_keep_the_breaker_half_open() {
+        while (breaker.state() == RedisCircuitBreaker.State.CLOSED) {
+            breaker.acquirePermission();
+            breaker.onFailure();
+        }
+        when(redis.getExpire("session:S1")).thenReturn(Mono.never(), Mono.just(Duration.ofMinutes(10)));
+
+        Disposable probe = repo.ttl("S1").subscribe(); // 応答待ちの試行（HALF_OPEN の枠を取る）
+        assertThat(breaker.state()).isEqualTo(RedisCircuitBreaker.State.HALF_OPEN);
+        probe.dispose(); // クライアント切断など
+
+        assertThat(repo.ttl("S1").block()).isEqualTo(Duration.ofMinutes(10));
+        assertThat(breaker.state()).isEqualTo(RedisCircuitBreaker.State.CLOSED);
+    }
+
+    @Test
+    void transient_failures_are_recorded_once_per_call() {
+        when(redis.getExpire("session:S2")).thenReturn(Mono.error(new RedisConnectionFailureException("down")));
+
+        for (int i = 0; i < 3; i++) {
+            assertThat(repo.ttl("S2").onErrorResume(e -> Mono.empty()).block()).isNull();
+        }
+        assertThat(breaker.state()).isEqualTo(RedisCircuitBreaker.State.CLOSED); // リトライ分は数えない
+        assertThat(repo.ttl("S2").onErrorResume(e -> Mono.empty()).block()).isNull();
+        assertThat(breaker.state()).isEqualTo(RedisCircuitBreaker.State.OPEN); // 最低 4 件・失敗率 100%
+    }
+
+    @Test
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    void versioned_writes_go_through_cas_and_reads_hide_the_version() {
+        SessionProperties props = new SessionProperties();
+        props.getVersioning().setEnabled(true);
+        ReactiveSessionRepository versioned = new ReactiveSessionRepository(redis,
+                new ResilientRetryTemplate(breaker, RetryConfig::isTransient), props, SessionMetrics.noop());
+        // CAS_WRITE の応答：キーが無い（{0, -1}）
+        when(redis.execute(any(RedisScript.class), anyList(), anyList(), any(), any()))
+                .thenReturn((Flux) Flux.just(List.of(0L, -1L)));
+        ReactiveHashOperations<String, Object, Object> hash = mock(ReactiveHashOperations.class);
+        when(redis.opsForHash()).thenReturn((ReactiveHashOperations) hash);
+        when(hash.entries("session:S3")).thenReturn(Flux.just(
+                Map.<Object, Object>entry("userId", "alice"),
+                Map.<Object, Object>entry(RedisSessionRepository.VERSION_FIELD, "3:t")));
+        when(redis.expire(anyString(), any(Duration.class))).thenReturn(Mono.just(true));
+
+        assertThat(versioned.setAttr("S3", "role", "admin").block()).isFalse();
+        assertThat(versioned.write("S3", Map.of("role", "admin"), List.of()).block()).isFalse();
+        verify(redis, times(2)).execute(eq(SessionScripts.CAS_WRITE), eq(List.of("session:S3")), anyList(), any(), any());
+        verify(hash, never()).put(any(), any(), any());
+        verify(hash, never()).putAll(any(), anyMap());
+
+        assertThat(versioned.load("S3").block()).containsExactly(Map.entry("userId", "alice"));
+    }
+}
@@ -0,0 +1,149 @@
+package com.example.spring_redis_practice.session;
+
+import com.example.spring_redis_practice.session.ReadCoalescer.Kind;
+import com.example.spring_redis_practice.session.ReadCoalescer.Read;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * ReadCoalescer の相乗り・例外の共有・書き込み後の切り離し（そのキーだけ）を検証（Redis は使わない）。
+ */
+class ReadCoalescerTest {
+
+    static final Read LOAD_A = new Read(Kind.LOAD, "session:a", null, false);
+
+    SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    ReadCoalescer reads = new ReadCoalescer(true, new SessionMetrics(registry));
+    ExecutorService pool = Executors.newFixedThreadPool(16);
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+
+    @AfterEach
+    void tearDown() {
+        pool.shutdownNow();
+    }
+
+    @Test
+    void concurrent_reads_share_one_call() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        Future<Object> leader = pool.submit(() -> reads.coalesce(LOAD_A, () -> {
+            calls.incrementAndGet();
+            started.countDown();
+            await(release);
+            return Map.of("userId", "alice");
+        }));
+        started.await();
+
+        List<Future<Object>> joiners = new ArrayList<>();
+        for (int i = 0; i < 7; i++) {
+            joiners.add(pool.submit(() -> reads.coalesce(LOAD_A, () -> {
+                calls.incrementAndGet();
+                return Map.of();
+            })));
+        }
+        // getAttr は実行中の load から取り出せる
+        Future<Map<Object, Object>> attr = pool.submit(() -> reads.joinLoad("session:a", false));
+        waitForJoiners(8);
+        release.countDown();
+
+        assertThat(leader.get(1, TimeUnit.SECONDS)).isEqualTo(Map.of("userId", "alice"));
+        for (Future<Object> f : joiners) assertThat(f.get(1, TimeUnit.SECONDS)).isEqualTo(Map.of("userId", "alice"));
+        assertThat(attr.get(1, TimeUnit.SECONDS)).containsEntry("userId", "alice");
+        assertThat(calls).hasValue(1);
+    }
+
+    @Test
+    void failures_are_shared_and_not_remembered() throws Exception {
+        Future<Object> leader = pool.submit(() -> reads.coalesce(LOAD_A, () -> {
+            started.countDown();
+            await(release);
+            throw new IllegalStateException("boom");
+        }));
+        started.await();
+        Future<Object> joiner = pool.submit(() -> reads.coalesce(LOAD_A, () -> "unused"));
+        waitForJoiners(1);
+        release.countDown();
+
+        assertThatThrownBy(() -> joiner.get(1, TimeUnit.SECONDS)).hasRootCauseMessage("boom");
+        assertThatThrownBy(() -> leader.get(1, TimeUnit.SECONDS)).hasRootCauseMessage("boom");
+        // 完了した読み取りは残らない
+        assertThat(reads.coalesce(LOAD_A, () -> "fresh")).isEqualTo("fresh");
+    }
+
+    @Test
+    void reads_after_a_write_do_not_join_older_reads() throws Exception {
+        Future<Object> before = pool.submit(() -> reads.coalesce(LOAD_A, () -> {
+            started.countDown();
+            await(release);
+            return "before-write";
+        }));
+        started.await();
+
+        reads.forget("session:a");
+        assertThat(reads.coalesce(LOAD_A, () -> "after-write")).isEqualTo("after-write");
+        assertThat(reads.joinLoad("session:a", false)).isNull();
+
+        release.countDown();
+        assertThat(before.get(1, TimeUnit.SECONDS)).isEqualTo("before-write");
+    }
+
+    @Test
+    void forget_leaves_reads_of_other_sessions_joinable() throws Exception {
+        Future<Object> other = pool.submit(() -> reads.coalesce(LOAD_A, () -> {
+            started.countDown();
+            await(release);
+            return Map.of("userId", "bob");
+        }));
+        started.await();
+
+        reads.forget("session:b");
+        Future<Map<Object, Object>> joined = pool.submit(() -> reads.joinLoad("session:a", false));
+        waitForJoiners(1);
+        release.countDown();
+
+        assertThat(joined.get(1, TimeUnit.SECONDS)).containsEntry("userId", "bob");
+        assertThat(other.get(1, TimeUnit.SECONDS)).isEqualTo(Map.of("userId", "bob"));
+        assertThat(reads.joinLoad("session:a", false)).isNull(); // 完了したらキーごと消える
+    }
+
+    @Test
+    void disabled_always_calls_through() {
+        ReadCoalescer off = new ReadCoalescer(false, SessionMetrics.noop());
+        AtomicInteger calls = new AtomicInteger();
+        off.coalesce(LOAD_A, calls::incrementAndGet);
+        off.coalesce(LOAD_A, calls::incrementAndGet);
+        assertThat(calls).hasValue(2);
+        assertThat(off.joinLoad("session:a", false)).isNull();
+    }
+
+    /** n 件が実行中の読み取りに相乗りするまで待つ。 */
+    private void waitForJoiners(int n) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 2_000;
+        while (registry.counter("redis.session.coalesced").count() < n) {
+            if (System.currentTimeMillis() > deadline) throw new AssertionError("joiners did not arrive");
+            Thread.sleep(5);
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -8,6 +8,7 @@ import org.springframework.test.context.junit.jupiter.SpringExtension;
 import org.testcontainers.junit.jupiter.Testcontainers;
 
 import java.time.Duration;
+import java.util.List;
 import java.util.Map;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -48,4 +49,24 @@ public class RedisSessionRepositoryIT {
         repo.invalidate(sid);
         assertThat(repo.load(sid)).isEmpty();
     }
+
+    @Test
+    void bulk_load_touch_and_invalidate() {
+        repo.setAttr("IT-B1", "userId", "alice");
+        repo.setAttr("IT-B2", "userId", "carol");
+
+        BatchResult<Map<Object, Object>> loaded = repo.loadMany(List.of("IT-B1", "IT-B2", "IT-B-missing"));
+        assertThat(loaded.isComplete()).isTrue();
+        assertThat(loaded.getValues().get("IT-B1")).containsEntry("userId", "alice");
+        assertThat(loaded.getValues().get("IT-B2")).containsEntry("userId", "carol");
+        assertThat(loaded.getValues().get("IT-B-missing")).isEmpty();
+
+        assertThat(repo.touchMany(List.of("IT-B1", "IT-B-missing")).getValues())
+                .containsExactly(Map.entry("IT-B1", true), Map.entry("IT-B-missing", false));
+
+        BatchResult<Boolean> killed = repo.invalidateMany(List.of("IT-B1", "IT-B2", "IT-B-missing"));
+        assertThat(killed.getValues())
+                .containsExactly(Map.entry("IT-B1", true), Map.entry("IT-B2", true), Map.entry("IT-B-missing", false));
+        assertThat(repo.load("IT-B1")).isEmpty();
+    }
 }
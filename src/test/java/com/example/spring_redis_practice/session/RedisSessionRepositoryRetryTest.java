@@ -1,19 +1,23 @@
 package com.example.spring_redis_practice.session;
 
 import com.example.spring_redis_practice.config.RetryConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.InOrder;
 import org.springframework.dao.QueryTimeoutException;
 import org.springframework.data.redis.RedisConnectionFailureException;
 import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.retry.support.RetryTemplate;
 
 import java.time.Duration;
 import java.util.Map;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.Mockito.*;
 
 /**
@@ -21,6 +25,7 @@ import static org.mockito.Mockito.*;
  * - 1,2回目は put() 時に例外を投げる
  * - 3回目で成功させる
  * - expire() は成功試行のときだけ呼ばれること
+ * - 退避（SessionFallbackStore）有効時は、一時的な障害をローカルで受けて復旧後に書き戻すこと
  */
 class RedisSessionRepositoryRetryTest {
 
@@ -81,4 +86,36 @@ class RedisSessionRepositoryRetryTest {
         verify(hashOps, times(1)).entries(key);
         verify(redis, never()).expire(anyString(), any());
     }
+
+    @Test
+    void failed_writes_are_kept_locally_and_written_back_after_recovery() {
+        String key = "session:S1";
+        doReturn(RedisSerializer.string()).when(redis).getKeySerializer();
+        doReturn(RedisSerializer.string()).when(redis).getHashKeySerializer();
+        doReturn(RedisSerializer.json()).when(redis).getHashValueSerializer();
+        SessionProperties props = new SessionProperties();
+        props.getFallback().setEnabled(true);
+        SessionFallbackStore fallback = new SessionFallbackStore(props, retryTemplate, new SimpleMeterRegistry());
+        repo = new RedisSessionRepository(redis, RetryTemplate.builder().maxAttempts(1).build(), props,
+                SessionNearCache.disabled(), SessionMetrics.noop(), UserSessionIndex.disabled(),
+                SessionReplicaReads.disabled(), SessionShards.disabled(), fallback);
+
+        // Redis 停止中：書き込みは例外にならず、読み取りはローカルから
+        doThrow(new RedisConnectionFailureException("down")).when(hashOps).put(key, "userId", "alice");
+        repo.setAttr("S1", "userId", "alice");
+        assertThat(repo.getAttr("S1", "userId")).isEqualTo("alice");
+        assertThat(repo.load("S1")).containsEntry("userId", "alice");
+        verify(hashOps, never()).get(key, "userId");
+
+        // 入力エラーなど一時的でない失敗は引き受けない
+        doThrow(new IllegalArgumentException("bad")).when(hashOps).put("session:S2", "role", "x");
+        assertThatThrownBy(() -> repo.setAttr("S2", "role", "x")).isInstanceOf(IllegalArgumentException.class);
+
+        // 復旧：書き戻したら以降は Redis から読む
+        assertThat(fallback.reconcile()).isEqualTo(1);
+        verify(redis).executePipelined(any(RedisCallback.class));
+        when(hashOps.get(key, "userId")).thenReturn("alice");
+        assertThat(repo.getAttr("S1", "userId")).isEqualTo("alice");
+        verify(hashOps).get(key, "userId");
+    }
 }
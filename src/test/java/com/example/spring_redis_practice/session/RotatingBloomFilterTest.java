@@ -0,0 +1,78 @@
+package com.example.spring_redis_practice.session;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * RotatingBloomFilter の偽陰性なし・偽陽性率・世代の入れ替えを、疑似クロックで検証。
+ */
+class RotatingBloomFilterTest {
+
+    static final Duration PERIOD = Duration.ofMinutes(15);
+
+    AtomicLong now = new AtomicLong(0);
+
+    @Test
+    void added_items_are_always_found_and_false_positives_stay_near_target() {
+        RotatingBloomFilter filter = new RotatingBloomFilter(10_000, 0.01, PERIOD, now::get);
+        List<String> added = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            String sid = SessionIds.newId();
+            filter.add(sid);
+            added.add(sid);
+        }
+        assertThat(added).allMatch(filter::mightContain);
+
+        int falsePositives = 0;
+        for (int i = 0; i < 100_000; i++) {
+            if (filter.mightContain(SessionIds.newId())) falsePositives++;
+        }
+        assertThat(falsePositives).isLessThan(2_000); // 目標 1%（= 1,000 件）の 2 倍未満
+    }
+
+    @Test
+    void items_survive_at_least_one_period_and_drop_after_two() {
+        RotatingBloomFilter filter = new RotatingBloomFilter(1_000, 0.01, PERIOD, now::get);
+        now.set(PERIOD.toNanos() - 1);
+        filter.add("S1");
+
+        // 入れ替え直後は前世代として残る
+        now.set(PERIOD.toNanos() * 2 - 2);
+        assertThat(filter.mightContain("S1")).isTrue();
+
+        // 次の入れ替えで捨てられる
+        now.set(PERIOD.toNanos() * 2);
+        assertThat(filter.mightContain("S1")).isFalse();
+    }
+
+    @Test
+    void long_idle_period_drops_everything() {
+        RotatingBloomFilter filter = new RotatingBloomFilter(1_000, 0.01, PERIOD, now::get);
+        filter.add("S1");
+        now.set(PERIOD.toNanos() * 5);
+        assertThat(filter.mightContain("S1")).isFalse();
+        filter.add("S2");
+        assertThat(filter.mightContain("S2")).isTrue();
+    }
+
+    @Test
+    void clear_forgets_everything() {
+        RotatingBloomFilter filter = new RotatingBloomFilter(1_000, 0.01, PERIOD, now::get);
+        filter.add("S1");
+        filter.clear();
+        assertThat(filter.mightContain("S1")).isFalse();
+    }
+
+    @Test
+    void notification_flags_are_merged_not_replaced() {
+        assertThat(KeyspaceNotifications.merge("", "Egh")).isEqualTo("Egh");
+        assertThat(KeyspaceNotifications.merge("Exe", "Egh")).isEqualTo("Exegh");
+        assertThat(KeyspaceNotifications.merge("AKE", "Egh")).isEqualTo("AKEgh");
+    }
+}
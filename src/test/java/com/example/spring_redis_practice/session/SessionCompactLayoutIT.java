@@ -0,0 +1,111 @@
+package com.example.spring_redis_practice.session;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * compact 有効時に、属性が別名の field で保存されてセッションあたりの使用量が減ること、
+ * 有効にする前の配置のセッションも読めること、調査結果に別名と上限超えが出ることを確認。
+ */
+@ExtendWith(SpringExtension.class)
+@SpringBootTest(properties = {
+        "app.session.compact.enabled=true",
+        "app.session.compact.aliases.authenticatedUserId=u",
+        "app.session.compact.aliases.csrfProtectionToken=c",
+        "app.session.compact.aliases.preferredLanguageTag=l",
+        "app.session.compact.aliases.lastVisitedPagePath=p"})
+@Testcontainers
+public class SessionCompactLayoutIT {
+
+    @Autowired
+    RedisSessionRepository repo;
+
+    @Autowired
+    RedisTemplate<String, Object> redis;
+
+    @Autowired
+    SessionFootprint footprint;
+
+    @Test
+    void aliased_sessions_use_less_memory() {
+        Map<String, Object> attrs = attributes();
+        repo.putAll("IT-C1", attrs);
+        redis.opsForHash().putAll("session:IT-C0", attrs); // 有効にする前の配置
+
+        assertThat(redis.opsForHash().keys("session:IT-C1")).containsExactlyInAnyOrder("u", "c", "l", "p");
+        assertThat(repo.load("IT-C1")).isEqualTo(attrs);
+        assertThat(repo.getAttr("IT-C1", "preferredLanguageTag")).isEqualTo("ja-JP");
+        assertThat(memoryUsage("session:IT-C1")).isLessThan(memoryUsage("session:IT-C0"));
+
+        repo.invalidateMany(List.of("IT-C0", "IT-C1"));
+    }
+
+    @Test
+    void sessions_written_before_enabling_stay_readable() {
+        redis.opsForHash().put("session:IT-C2", "authenticatedUserId", "leo");
+        assertThat(repo.getAttr("IT-C2", "authenticatedUserId")).isEqualTo("leo");
+
+        repo.setAttr("IT-C2", "authenticatedUserId", "mia"); // 別名の field が正になる
+        assertThat(repo.load("IT-C2")).containsExactly(Map.entry("authenticatedUserId", "mia"));
+        assertThat(repo.getAttr("IT-C2", "authenticatedUserId")).isEqualTo("mia");
+
+        repo.write("IT-C2", Map.of("cart", 1), List.of("authenticatedUserId")); // 元の名前の field もまとめて消える
+        assertThat(redis.opsForHash().keys("session:IT-C2")).containsExactly("cart");
+
+        repo.invalidate("IT-C2");
+    }
+
+    @Test
+    void footprint_reports_fields_and_oversized_values() {
+        repo.putAll("IT-C3", attributes());
+        repo.setAttr("IT-C4", "authenticatedUserId", "nina");
+        repo.setAttr("IT-C4", "notes", "x".repeat(200)); // listpack の上限（64 バイト）を超える
+
+        SessionFootprint.Report report = footprint.analyze(1_000);
+        assertThat(report.sessions()).isGreaterThanOrEqualTo(2);
+        assertThat(report.memoryBytes().max()).isPositive();
+        assertThat(report.encodings()).containsKeys("listpack", "hashtable");
+        assertThat(report.oversizedValues()).isGreaterThanOrEqualTo(1);
+        assertThat(report.perField().get("u").attribute()).isEqualTo("authenticatedUserId");
+        assertThat(report.perField().get("notes").oversized()).isGreaterThanOrEqualTo(1);
+        // 値の大きさは Redis に保存されているバイト数
+        assertThat(report.perField().get("notes").valueBytes().max()).isEqualTo(storedLength("session:IT-C4", "notes"));
+        assertThat(report.aliases()).containsEntry("lastVisitedPagePath", "p");
+
+        repo.invalidateMany(List.of("IT-C3", "IT-C4"));
+    }
+
+    private static Map<String, Object> attributes() {
+        Map<String, Object> attrs = new LinkedHashMap<>();
+        attrs.put("authenticatedUserId", "kate");
+        attrs.put("csrfProtectionToken", "5f2b9c1e");
+        attrs.put("preferredLanguageTag", "ja-JP");
+        attrs.put("lastVisitedPagePath", "/me");
+        return attrs;
+    }
+
+    private long storedLength(String key, String field) {
+        final byte[] rawKey = key.getBytes(StandardCharsets.UTF_8);
+        final byte[] rawField = field.getBytes(StandardCharsets.UTF_8);
+        return redis.execute((RedisCallback<Long>) c -> c.hashCommands().hStrLen(rawKey, rawField));
+    }
+
+    private long memoryUsage(String key) {
+        final byte[] raw = key.getBytes(StandardCharsets.UTF_8);
+        return redis.execute((RedisCallback<Long>) c -> (Long) c.execute("MEMORY",
+                "USAGE".getBytes(StandardCharsets.UTF_8), raw));
+    }
+}
@@ -0,0 +1,128 @@
+package com.example.spring_redis_practice.session;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+/**
+ * SessionContext の「遅延ロード」と「書き込み集約」を、Repository をモックして検証。
+ */
+class SessionContextTest {
+
+    RedisSessionRepository repo;
+    SessionContext session;
+
+    @BeforeEach
+    void setUp() {
+        repo = mock(RedisSessionRepository.class);
+        session = new SessionContext("S1", repo);
+    }
+
+    @Test
+    void untouched_session_costs_nothing() {
+        session.flush();
+        verifyNoInteractions(repo);
+    }
+
+    @Test
+    void reads_load_once_and_see_pending_writes() {
+        when(repo.load("S1")).thenReturn(Map.of("userId", "alice", "role", "user"));
+
+        assertThat(session.getAttr("userId")).isEqualTo("alice");
+        session.setAttr("role", "admin");
+        session.removeAttr("userId");
+
+        assertThat(session.getAttr("role")).isEqualTo("admin");
+        assertThat(session.getAttr("userId")).isNull();
+        assertThat(session.getAttrs()).containsExactly(Map.entry("role", "admin"));
+        verify(repo, times(1)).load("S1");
+    }
+
+    @Test
+    void writes_are_flushed_in_one_call() {
+        session.setAttr("a", 1);
+        session.setAttr("b", 2);
+        session.removeAttr("c");
+
+        session.flush();
+        session.flush(); // 2回目は変更なし
+
+        verify(repo, times(1)).write("S1", Map.of("a", 1, "b", 2), Set.of("c"));
+        verify(repo, never()).load(anyString());
+        assertThat(session.isDirty()).isFalse();
+    }
+
+    @Test
+    void new_session_reads_nothing_until_first_write() {
+        List<String> created = new ArrayList<>();
+        SessionContext fresh = new SessionContext(null, repo, 0L, created::add);
+
+        assertThat(fresh.getAttr("userId")).isNull();
+        fresh.removeAttr("userId");
+        fresh.invalidate();
+        fresh.flush();
+        assertThat(fresh.exists()).isFalse();
+        assertThat(created).isEmpty();
+        verifyNoInteractions(repo);
+
+        fresh.setAttr("userId", "alice");
+        fresh.setAttr("role", "user");
+        assertThat(created).hasSize(1).containsExactly(fresh.getId());
+        assertThat(fresh.getAttr("userId")).isEqualTo("alice");
+
+        fresh.flush();
+        verify(repo).write(fresh.getId(), Map.of("userId", "alice", "role", "user"), Set.of());
+        verify(repo, never()).load(anyString());
+    }
+
+    @Test
+    void versioned_flush_creates_new_sessions_and_never_resurrects_logged_out_ones() {
+        when(repo.isVersioned()).thenReturn(true);
+        SessionContext fresh = new SessionContext(null, repo, 0L, sid -> {});
+        fresh.setAttr("userId", "alice");
+        when(repo.compareAndWrite(anyString(), anyLong(), anyMap(), anyCollection())).thenReturn(true);
+        fresh.flush();
+        fresh.setAttr("role", "user");
+        fresh.flush();
+        verify(repo).compareAndWrite(fresh.getId(), VersionedSession.ABSENT, Map.of("userId", "alice"), Set.of());
+        verify(repo).compareAndWrite(fresh.getId(), RedisSessionRepository.ANY_VERSION, Map.of("role", "user"), Set.of());
+
+        // 並行リクエストでログアウト済みで、新しい SID でも作れなかった：書き込みは捨て、以降は空として見せる
+        when(repo.compareAndWrite(eq("S1"), anyLong(), anyMap(), anyCollection())).thenReturn(false);
+        session.setAttr("cart", 3);
+        session.flush();
+        verify(repo).compareAndWrite("S1", RedisSessionRepository.ANY_VERSION, Map.of("cart", 3), Set.of());
+        assertThat(session.getAttr("cart")).isNull();
+        assertThat(session.hasWritten()).isFalse();
+        assertThat(session.getId()).isEqualTo("S1");
+        verify(repo, never()).write(anyString(), anyMap(), anyCollection());
+    }
+
+    @Test
+    void versioned_flush_moves_writes_for_a_vanished_session_to_a_new_sid() {
+        when(repo.isVersioned()).thenReturn(true);
+        when(repo.compareAndWrite(eq("S1"), anyLong(), anyMap(), anyCollection())).thenReturn(false);
+        when(repo.create(anyString(), anyMap())).thenReturn(true);
+        when(repo.load("S1")).thenReturn(Map.of("cart", 1));
+        List<String> issued = new ArrayList<>();
+        SessionContext expired = new SessionContext("S1", repo, 0L, issued::add);
+
+        expired.getAttrs(); // 古いセッションの属性は引き継がない
+        expired.setAttr("userId", "alice");
+        expired.removeAttr("cart");
+        expired.flush();
+
+        assertThat(issued).hasSize(1).doesNotContain("S1");
+        assertThat(expired.getId()).isEqualTo(issued.get(0));
+        verify(repo).create(issued.get(0), Map.of("userId", "alice"));
+        assertThat(expired.getAttrs()).isEqualTo(Map.of("userId", "alice"));
+        assertThat(expired.hasWritten()).isTrue();
+    }
+}
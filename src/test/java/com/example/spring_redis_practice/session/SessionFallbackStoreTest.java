@@ -0,0 +1,163 @@
+package com.example.spring_redis_practice.session;
+
+import com.example.spring_redis_practice.session.SessionFallbackStore.Change;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.TransientDataAccessResourceException;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * SessionFallbackStore の上限・ジャーナルの書き戻しを、疑似クロックで検証（Redis は使わない）。
+ */
+class SessionFallbackStoreTest {
+
+    SessionProperties.Fallback props = new SessionProperties.Fallback();
+    SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    AtomicLong now = new AtomicLong(1_000);
+    List<Change> replayed = new ArrayList<>();
+    AtomicBoolean redisDown = new AtomicBoolean();
+    SessionFallbackStore store;
+
+    @BeforeEach
+    void setUp() {
+        props.setEnabled(true);
+    }
+
+    private SessionFallbackStore store() {
+        store = new SessionFallbackStore(props, null, registry, now::get);
+        store.onReconcile(change -> {
+            if (redisDown.get()) throw new RedisConnectionFailureException("down");
+            replayed.add(change);
+        });
+        return store;
+    }
+
+    @Test
+    void writes_are_readable_locally_until_written_back() {
+        store();
+        store.write("session:a", Map.of("userId", bytes("alice")), List.of(), () -> null);
+        store.write("session:a", Map.of("role", bytes("admin")), List.of("userId"), () -> null);
+
+        assertThat(store.holds("session:a")).isTrue();
+        assertThat(store.load("session:a")).containsOnlyKeys("role");
+        assertThat(store.ttl("session:a")).isEqualTo(RedisSessionRepository.DEFAULT_TTL);
+
+        assertThat(store.reconcile()).isEqualTo(2);
+        assertThat(replayed).extracting(Change::key).containsExactly("session:a", "session:a");
+        assertThat(replayed.get(1).removes()).containsExactly("userId");
+        // 書き戻しが済んだら以降は Redis で読み書きする
+        assertThat(store.holds("session:a")).isFalse();
+        assertThat(store.load("session:a")).isNull();
+    }
+
+    @Test
+    void base_snapshot_is_kept_but_not_written_back() {
+        store();
+        store.write("session:a", Map.of("cart", bytes("1")), List.of(),
+                () -> Map.of("userId", bytes("alice")));
+        assertThat(store.load("session:a")).containsOnlyKeys("userId", "cart");
+
+        store.reconcile();
+        assertThat(replayed).singleElement().satisfies(c -> assertThat(c.puts()).containsOnlyKeys("cart"));
+    }
+
+    @Test
+    void invalidate_leaves_a_tombstone_and_is_written_back() {
+        store();
+        store.write("session:a", Map.of("userId", bytes("alice")), List.of(), () -> null);
+        store.invalidate("session:a");
+        assertThat(store.load("session:a")).isEmpty();
+        assertThat(store.ttl("session:a")).isZero();
+
+        store.reconcile();
+        assertThat(replayed).extracting(Change::invalidate).containsExactly(false, true);
+    }
+
+    @Test
+    void write_back_stops_at_the_first_failure_and_resumes_in_order() {
+        store();
+        store.write("session:a", Map.of("n", bytes("1")), List.of(), () -> null);
+        store.write("session:b", Map.of("n", bytes("2")), List.of(), () -> null);
+
+        redisDown.set(true);
+        assertThat(store.reconcile()).isZero();
+        assertThat(store.holds("session:a")).isTrue();
+
+        redisDown.set(false);
+        assertThat(store.reconcile()).isEqualTo(2);
+        assertThat(replayed).extracting(Change::key).containsExactly("session:a", "session:b");
+    }
+
+    @Test
+    void unsynced_sessions_are_never_evicted_and_new_ones_are_rejected_when_full() {
+        props.setMaxEntries(2);
+        props.setMaxBytes(DataSize.ofKilobytes(4));
+        store();
+        store.write("session:a", Map.of("n", bytes("1")), List.of(), () -> null);
+        store.write("session:b", Map.of("n", bytes("2")), List.of(), () -> null);
+
+        // 数の上限：新しいセッションは拒否し、書き戻し待ちのセッションは読めるまま
+        assertThatThrownBy(() -> store.write("session:c", Map.of("n", bytes("3")), List.of(), () -> null))
+                .isInstanceOf(TransientDataAccessResourceException.class);
+        assertThatThrownBy(() -> store.invalidate("session:c"))
+                .isInstanceOf(TransientDataAccessResourceException.class);
+        assertThat(store.holds("session:c")).isFalse();
+        assertThat(store.load("session:a")).containsOnlyKeys("n");
+        assertThat(store.load("session:b")).containsOnlyKeys("n");
+
+        // 既にあるセッションへの書き込みは受ける。サイズの上限を超えたら、属性を増やす書き込みだけ拒否する
+        store.write("session:b", Map.of("blob", new byte[5_000]), List.of(), () -> null);
+        assertThatThrownBy(() -> store.write("session:a", Map.of("m", bytes("1")), List.of(), () -> null))
+                .isInstanceOf(TransientDataAccessResourceException.class);
+        store.write("session:b", Map.of(), List.of("blob"), () -> null);
+        store.write("session:a", Map.of("m", bytes("1")), List.of(), () -> null);
+        assertThat(store.load("session:a")).containsOnlyKeys("n", "m");
+        assertThat(registry.counter("redis.session.fallback.rejected").count()).isEqualTo(3);
+
+        // 書き戻しが済めば空きができる
+        assertThat(store.reconcile()).isEqualTo(5);
+        store.write("session:c", Map.of("n", bytes("3")), List.of(), () -> null);
+        assertThat(store.load("session:c")).containsOnlyKeys("n");
+    }
+
+    @Test
+    void journal_overflow_drops_the_oldest_changes() {
+        props.setMaxJournal(2);
+        store();
+        store.write("session:a", Map.of("n", bytes("1")), List.of(), () -> null);
+        store.write("session:b", Map.of("n", bytes("2")), List.of(), () -> null);
+        store.write("session:c", Map.of("n", bytes("3")), List.of(), () -> null);
+
+        assertThat(store.holds("session:a")).isFalse();
+        assertThat(registry.counter("redis.session.fallback.dropped").count()).isEqualTo(1);
+        store.reconcile();
+        assertThat(replayed).extracting(Change::key).containsExactly("session:b", "session:c");
+    }
+
+    @Test
+    void local_sessions_expire_after_the_session_ttl() {
+        store();
+        store.write("session:a", Map.of("n", bytes("1")), List.of(), () -> null);
+        now.addAndGet(RedisSessionRepository.DEFAULT_TTL.toMillis() - 1);
+        assertThat(store.load("session:a")).isNotNull(); // 読み取りで延長される
+        now.addAndGet(RedisSessionRepository.DEFAULT_TTL.toMillis() - 1_000);
+        assertThat(store.ttl("session:a")).isEqualTo(Duration.ofSeconds(1));
+        now.addAndGet(1_000);
+        assertThat(store.load("session:a")).isNull();
+    }
+
+    private static byte[] bytes(String s) { return s.getBytes(StandardCharsets.UTF_8); }
+}
@@ -0,0 +1,81 @@
+package com.example.spring_redis_practice.session;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * SessionHashLayout の名前の置き換え（別名と元の名前が混在する Hash の読み戻しを含む）と値の大きさの確認を検証。
+ */
+class SessionHashLayoutTest {
+
+    @Test
+    void aliases_map_both_ways_and_prefer_the_alias_when_both_fields_exist() {
+        SessionHashLayout layout = layout(false);
+        assertThat(layout.field("userId")).isEqualTo("u");
+        assertThat(layout.field("cart")).isEqualTo("cart");
+        assertThat(layout.name("u")).isEqualTo("userId");
+        assertThat(layout.legacyField("userId")).isEqualTo("userId");
+        assertThat(layout.legacyField("cart")).isNull();
+
+        // 有効にする前に書かれた "userId" と、その後に書かれた "u" が同じ Hash にある（どちらの順で読んでも "u" が正）
+        Map<Object, Object> a = new LinkedHashMap<>();
+        layout.put(a, "userId", "old");
+        layout.put(a, "u", "new");
+        Map<Object, Object> b = new LinkedHashMap<>();
+        layout.put(b, "u", "new");
+        layout.put(b, "userId", "old");
+        assertThat(a).containsExactly(Map.entry("userId", "new"));
+        assertThat(b).containsExactly(Map.entry("userId", "new"));
+
+        assertThat(layout.removedFields(List.of("userId", "cart"))).containsExactly("u", "userId", "cart");
+    }
+
+    @Test
+    void disabled_layout_keeps_names_and_ignores_sizes() {
+        SessionHashLayout plain = SessionHashLayout.plain();
+        assertThat(plain.field("userId")).isEqualTo("userId");
+        assertThat(plain.removedFields(List.of("userId"))).containsExactly("userId");
+        assertThat(plain.checkValue("blob", new byte[10_000])).isFalse();
+    }
+
+    @Test
+    void oversized_values_are_counted_or_rejected() {
+        assertThat(layout(false).checkValue("cart", new byte[64])).isFalse();
+        assertThat(layout(false).checkValue("cart", new byte[65])).isTrue();
+        assertThatThrownBy(() -> layout(true).checkValue("cart", new byte[65]))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("cart");
+    }
+
+    @Test
+    void ambiguous_or_reserved_aliases_are_rejected() {
+        SessionProperties.Compact duplicate = compact(false);
+        duplicate.getAliases().put("userName", "u");
+        assertThatThrownBy(() -> new SessionHashLayout(duplicate)).isInstanceOf(IllegalStateException.class);
+
+        SessionProperties.Compact reserved = compact(false);
+        reserved.getAliases().put("flags", RedisSessionRepository.VERSION_FIELD);
+        assertThatThrownBy(() -> new SessionHashLayout(reserved)).isInstanceOf(IllegalStateException.class);
+    }
+
+    private static SessionHashLayout layout(boolean rejectOversized) {
+        return new SessionHashLayout(compact(rejectOversized));
+    }
+
+    private static SessionProperties.Compact compact(boolean rejectOversized) {
+        SessionProperties.Compact props = new SessionProperties.Compact();
+        props.setEnabled(true);
+        props.getAliases().put("userId", "u");
+        props.getAliases().put("csrfToken", "c");
+        props.setMaxValueSize(DataSize.ofBytes(64));
+        props.setRejectOversized(rejectOversized);
+        return props;
+    }
+}
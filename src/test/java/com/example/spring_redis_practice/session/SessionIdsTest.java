@@ -0,0 +1,39 @@
+package com.example.spring_redis_practice.session;
+
+import org.junit.jupiter.api.Test;
+
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * SID に入れた発行時刻が読み戻せること、以前の形式・形式外の SID は発行時刻なし（-1）になることを検証。
+ */
+class SessionIdsTest {
+
+    @Test
+    void issue_time_round_trips_and_ids_stay_unique() {
+        long now = System.currentTimeMillis();
+        Set<String> seen = new HashSet<>();
+        for (int i = 0; i < 1_000; i++) {
+            String sid = SessionIds.newId(now);
+            assertThat(sid).hasSize(32).matches("[A-Za-z0-9_-]+");
+            assertThat(SessionIds.issuedAt(sid)).isEqualTo(now);
+            assertThat(seen.add(sid)).isTrue();
+        }
+        assertThat(SessionIds.issuedAt(SessionIds.newId(0xFFFF_FFFF_FFFFL))).isEqualTo(0xFFFF_FFFF_FFFFL);
+    }
+
+    @Test
+    void ids_without_an_issue_time_are_recognised() {
+        byte[] legacy = new byte[18];
+        new SecureRandom().nextBytes(legacy);
+        assertThat(SessionIds.issuedAt(Base64.getUrlEncoder().withoutPadding().encodeToString(legacy))).isEqualTo(-1);
+        assertThat(SessionIds.issuedAt("not base64 at all, 32 chars.....")).isEqualTo(-1);
+        assertThat(SessionIds.issuedAt("")).isEqualTo(-1);
+        assertThat(SessionIds.issuedAt(null)).isEqualTo(-1);
+    }
+}
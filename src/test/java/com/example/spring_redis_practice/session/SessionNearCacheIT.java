@@ -0,0 +1,75 @@
+package com.example.spring_redis_practice.session;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * PUBSUB 無効化の L1 を実際の Redis で確認：他ノードからの通知で捨てられること、自ノードの書き込みが他ノードの L1 を捨てること。
+ */
+@ExtendWith(SpringExtension.class)
+@SpringBootTest(properties = {
+        "app.session.near-cache.enabled=true",
+        "app.session.near-cache.invalidation=pubsub"})
+@Testcontainers
+public class SessionNearCacheIT {
+
+    @Autowired
+    RedisSessionRepository repo;
+
+    @Autowired
+    SessionProperties props;
+
+    @Autowired
+    RedisTemplate<String, Object> redis;
+
+    @Test
+    void notifications_from_other_nodes_evict_the_local_copy() throws Exception {
+        // repo で書くと自ノード宛ての通知が後から届いて L1 を捨てるので、Redis に直接置く
+        redis.opsForHash().put("session:IT-N1", "userId", "sam");
+        assertThat(repo.load("IT-N1")).containsEntry("userId", "sam"); // L1 に載る
+
+        // 他ノードの書き込み（Redis を直接更新しただけでは L1 は古いまま）
+        redis.opsForHash().put("session:IT-N1", "userId", "tom");
+        assertThat(repo.load("IT-N1")).containsEntry("userId", "sam");
+
+        final byte[] channel = props.getNearCache().getChannel().getBytes(StandardCharsets.UTF_8);
+        final byte[] message = "session:IT-N1".getBytes(StandardCharsets.UTF_8);
+        redis.execute((RedisCallback<Long>) c -> c.publish(channel, message));
+        long deadline = System.currentTimeMillis() + 2_000;
+        while (!"tom".equals(repo.load("IT-N1").get("userId")) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertThat(repo.load("IT-N1")).containsEntry("userId", "tom");
+
+        repo.invalidate("IT-N1");
+    }
+
+    @Test
+    void local_writes_evict_other_nodes() throws Exception {
+        SessionNearCache other = new SessionNearCache(props, redis);
+        other.afterPropertiesSet();
+        try {
+            other.put("session:IT-N2", Map.of("userId", "uma"), other.stamp("session:IT-N2"));
+            assertThat(other.get("session:IT-N2")).isNotNull();
+
+            repo.setAttr("IT-N2", "userId", "vic");
+            long deadline = System.currentTimeMillis() + 2_000;
+            while (other.get("session:IT-N2") != null && System.currentTimeMillis() < deadline) Thread.sleep(20);
+            assertThat(other.get("session:IT-N2")).isNull();
+        } finally {
+            other.destroy();
+            repo.invalidate("IT-N2");
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.spring_redis_practice.session;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+/**
+ * SessionNearCache の世代番号による put の破棄と、TRACKING 接続の切断中にキャッシュを使わないことを、
+ * Redis に繋がずに検証（TRACKING モードのまま afterPropertiesSet を呼ばない＝通知の受信だけを省く）。
+ * PUBSUB モードの publish の失敗が、書き込みの呼び出し元に投げられないことも確認。
+ */
+class SessionNearCacheTest {
+
+    SessionNearCache cache;
+
+    @BeforeEach
+    void setUp() {
+        SessionProperties props = new SessionProperties();
+        props.getNearCache().setEnabled(true);
+        props.getNearCache().setInvalidation(SessionProperties.NearCache.Invalidation.TRACKING);
+        cache = new SessionNearCache(props, null);
+    }
+
+    @Test
+    void invalidation_during_a_load_drops_the_stale_put() {
+        long stamp = cache.stamp("session:a");
+        cache.evict("session:a"); // 読み取り中に他ノードの書き込み通知が来た
+        cache.put("session:a", Map.of("userId", "old"), stamp);
+        assertThat(cache.get("session:a")).isNull();
+
+        cache.put("session:a", Map.of("userId", "new"), cache.stamp("session:a"));
+        assertThat(cache.get("session:a")).containsEntry("userId", "new");
+    }
+
+    @Test
+    void invalidations_of_other_keys_do_not_drop_the_put() {
+        assertThat(SessionNearCache.stripe("session:a")).isNotEqualTo(SessionNearCache.stripe("session:b"));
+        long stamp = cache.stamp("session:a");
+        cache.evict("session:b");
+        cache.put("session:a", Map.of("userId", "ann"), stamp);
+        assertThat(cache.get("session:a")).containsEntry("userId", "ann");
+    }
+
+    @Test
+    void cache_is_bypassed_while_tracking_is_disconnected() {
+        cache.put("session:a", Map.of("userId", "ann"), cache.stamp("session:a"));
+        long before = cache.stamp("session:b");
+
+        cache.trackingLost();
+        assertThat(cache.isEnabled()).isFalse();
+        assertThat(cache.get("session:a")).isNull();
+        cache.put("session:b", Map.of("userId", "bob"), cache.stamp("session:b"));
+        assertThat(cache.peek("session:b")).isNull();
+
+        cache.trackingRestored();
+        assertThat(cache.isEnabled()).isTrue();
+        assertThat(cache.get("session:a")).isNull(); // 切断前のエントリは残さない
+        cache.put("session:b", Map.of("userId", "bob"), before); // 切断をまたいだ読み取りは載せない
+        assertThat(cache.get("session:b")).isNull();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void failed_pubsub_invalidation_is_counted_not_thrown() {
+        SessionProperties props = new SessionProperties();
+        props.getNearCache().setEnabled(true);
+        props.getNearCache().setInvalidation(SessionProperties.NearCache.Invalidation.PUBSUB);
+        RedisTemplate<String, Object> redis = mock(RedisTemplate.class);
+        when(redis.execute(any(RedisCallback.class))).thenThrow(new RedisConnectionFailureException("down"));
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        SessionNearCache pubsub = new SessionNearCache(props, redis, new SessionMetrics(registry));
+        pubsub.put("session:a", Map.of("userId", "old"), pubsub.stamp("session:a"));
+
+        pubsub.evict("session:a"); // Redis への書き込みは成功した後
+        assertThat(pubsub.get("session:a")).isNull();
+        assertThat(registry.counter("redis.session.near-cache.publish-failures").count()).isEqualTo(1.0);
+    }
+}
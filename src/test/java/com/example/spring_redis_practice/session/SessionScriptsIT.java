@@ -0,0 +1,88 @@
+package com.example.spring_redis_practice.session;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * スクリプトモードの各経路（LOAD / GET / PUT / WRITE）で読み書きとTTL延長が行われること、
+ * 延長を間引いた読み取り（ARGV[1]="0"）は TTL に触れないこと、SCRIPT FLUSH 後も EVAL で動くことを確認。
+ */
+@ExtendWith(SpringExtension.class)
+@SpringBootTest(properties = {
+        "app.session.scripts.enabled=true",
+        "app.session.touch.enabled=true",
+        "app.session.touch.min-interval=1h"})
+@Testcontainers
+public class SessionScriptsIT {
+
+    @Autowired
+    RedisSessionRepository repo;
+
+    @Autowired
+    RedisTemplate<String, Object> redis;
+
+    @Test
+    void reads_and_writes_go_through_the_scripts() {
+        repo.putAll("IT-S1", Map.of("userId", "olga", "role", "admin"));
+        repo.setAttr("IT-S1", "cart", 3);
+        assertThat(repo.getAttr("IT-S1", "userId")).isEqualTo("olga");
+        assertThat(repo.load("IT-S1")).containsOnlyKeys("userId", "role", "cart");
+
+        repo.write("IT-S1", Map.of("cart", 4), List.of("role"));
+        assertThat(repo.load("IT-S1")).containsExactlyInAnyOrderEntriesOf(Map.of("userId", "olga", "cart", 4));
+        assertThat(repo.ttl("IT-S1")).isGreaterThan(Duration.ofMinutes(14));
+
+        repo.invalidate("IT-S1");
+        assertThat(repo.load("IT-S1")).isEmpty();
+        assertThat(repo.getAttr("IT-S1", "userId")).isNull();
+    }
+
+    @Test
+    void throttled_reads_leave_the_ttl_alone_and_due_reads_extend_it() {
+        // このノードで書いた直後（延長済み）→ 読み取りは ARGV[1]="0" で送られ、縮めた TTL はそのまま
+        repo.setAttr("IT-S2", "userId", "pete");
+        redis.expire("session:IT-S2", Duration.ofSeconds(100));
+        assertThat(repo.getAttr("IT-S2", "userId")).isEqualTo("pete");
+        assertThat(repo.load("IT-S2")).containsKey("userId");
+        assertThat(redis.getExpire("session:IT-S2", TimeUnit.SECONDS)).isLessThanOrEqualTo(100);
+
+        // このノードが延長したことの無いセッション → 読み取りで TTL を張り直す
+        redis.opsForHash().put("session:IT-S3", "userId", "quinn");
+        redis.expire("session:IT-S3", Duration.ofSeconds(100));
+        assertThat(repo.getAttr("IT-S3", "userId")).isEqualTo("quinn");
+        assertThat(redis.getExpire("session:IT-S3", TimeUnit.SECONDS)).isGreaterThan(100);
+
+        repo.invalidateMany(List.of("IT-S2", "IT-S3"));
+    }
+
+    @Test
+    void unregistered_scripts_fall_back_to_eval() {
+        redis.execute((RedisCallback<Void>) connection -> {
+            connection.scriptingCommands().scriptFlush();
+            return null;
+        });
+
+        repo.setAttr("IT-S4", "userId", "rita");
+        assertThat(repo.getAttr("IT-S4", "userId")).isEqualTo("rita");
+        assertThat(repo.load("IT-S4")).containsEntry("userId", "rita");
+
+        List<Boolean> registered = redis.execute((RedisCallback<List<Boolean>>) connection ->
+                connection.scriptingCommands().scriptExists(SessionScripts.GET.getSha1(), SessionScripts.PUT.getSha1()));
+        assertThat(registered).containsOnly(true); // EVAL で実行したスクリプトはキャッシュされ、次からは EVALSHA で済む
+
+        repo.invalidate("IT-S4");
+    }
+}
@@ -0,0 +1,70 @@
+package com.example.spring_redis_practice.session;
+
+import com.redis.testcontainers.RedisContainer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.DockerImageName;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * シャーディング有効時に、セッションが担当シャードに書かれ、読み取り・残りTTLもそのシャードから引けることを確認。
+ * シャードは 2 台の Redis コンテナ（spring.data.redis の Redis はどのセッションも持たない）。
+ */
+@ExtendWith(SpringExtension.class)
+@SpringBootTest
+@Testcontainers
+public class SessionShardsIT {
+
+    @Container
+    static final RedisContainer SHARD_A = new RedisContainer(DockerImageName.parse("redis:7.4"));
+
+    @Container
+    static final RedisContainer SHARD_B = new RedisContainer(DockerImageName.parse("redis:7.4"));
+
+    @DynamicPropertySource
+    static void shards(DynamicPropertyRegistry registry) {
+        registry.add("app.session.shards.enabled", () -> "true");
+        registry.add("app.session.shards.nodes",
+                () -> SHARD_A.getHost() + ":" + SHARD_A.getFirstMappedPort() + ","
+                        + SHARD_B.getHost() + ":" + SHARD_B.getFirstMappedPort());
+    }
+
+    @Autowired
+    RedisSessionRepository repo;
+
+    @Autowired
+    SessionShards shards;
+
+    @Autowired
+    RedisTemplate<String, Object> redis;
+
+    @Test
+    void sessions_live_on_their_shard_and_ttl_is_read_there() {
+        List<String> sids = List.of("IT-SH1", "IT-SH2", "IT-SH3", "IT-SH4", "IT-SH5", "IT-SH6");
+        for (String sid : sids) repo.setAttr(sid, "userId", sid);
+
+        for (String sid : sids) {
+            String k = RedisSessionRepository.KEY_PREFIX + sid;
+            assertThat(shards.templateFor(k).hasKey(k)).isTrue();
+            assertThat(redis.hasKey(k)).isFalse();
+            assertThat(repo.getAttr(sid, "userId")).isEqualTo(sid);
+            assertThat(repo.ttl(sid)).isGreaterThan(Duration.ZERO)
+                    .isLessThanOrEqualTo(RedisSessionRepository.DEFAULT_TTL);
+        }
+
+        repo.invalidateMany(sids);
+        for (String sid : sids) assertThat(repo.ttl(sid)).isZero();
+    }
+}
@@ -0,0 +1,90 @@
+package com.example.spring_redis_practice.session;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * SessionSnapshotFile の書き出し/読み込み（チャンク・マップ窓の境界、失効時刻、破損検出）を検証（Redis は使わない）。
+ */
+class SessionSnapshotFileTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void records_round_trip_across_chunks_and_windows() throws IOException {
+        Path file = dir.resolve("s.snap");
+        long now = System.currentTimeMillis();
+        try (SessionSnapshotFile.Writer out = new SessionSnapshotFile.Writer(file, 256, 1024)) {
+            for (int i = 0; i < 1_000; i++) {
+                out.add(bytes("session:S" + i), now + i * 1_000L, bytes("dump-" + i));
+            }
+            out.add(bytes("user-sessions:alice"), SessionSnapshotFile.NO_EXPIRY, bytes("set"));
+            out.add(bytes("session:big"), now - 5, new byte[4_000]); // チャンクより大きい
+        }
+
+        List<SessionSnapshotFile.Record> records = readAll(file);
+        assertThat(records).hasSize(1_002);
+        assertThat(records.get(7).key()).isEqualTo(bytes("session:S7"));
+        assertThat(records.get(7).expireAtMillis()).isEqualTo(now + 7_000);
+        assertThat(records.get(7).dump()).isEqualTo(bytes("dump-7"));
+        assertThat(records.get(1_000).key()).isEqualTo(bytes("user-sessions:alice"));
+        assertThat(records.get(1_000).ttlMillis(now)).isZero();
+        assertThat(records.get(1_001).dump()).hasSize(4_000);
+        assertThat(records.get(1_001).ttlMillis(now)).isNegative();
+    }
+
+    @Test
+    void empty_snapshot_has_no_chunks() throws IOException {
+        Path file = dir.resolve("empty.snap");
+        new SessionSnapshotFile.Writer(file, 1024).close();
+        assertThat(readAll(file)).isEmpty();
+    }
+
+    @Test
+    void corrupted_chunk_is_rejected() throws IOException {
+        Path file = dir.resolve("s.snap");
+        try (SessionSnapshotFile.Writer out = new SessionSnapshotFile.Writer(file, 1024)) {
+            out.add(bytes("session:A"), System.currentTimeMillis() + 60_000, bytes("value"));
+        }
+        byte[] content = Files.readAllBytes(file);
+        content[content.length - 14] ^= 0x01; // 最後のレコード（終端の直前）
+        Files.write(file, content);
+        assertThatThrownBy(() -> readAll(file)).isInstanceOf(IOException.class).hasMessageContaining("Checksum");
+    }
+
+    @Test
+    void truncated_file_is_rejected() throws IOException {
+        Path file = dir.resolve("s.snap");
+        try (SessionSnapshotFile.Writer out = new SessionSnapshotFile.Writer(file, 1024)) {
+            out.add(bytes("session:A"), System.currentTimeMillis() + 60_000, bytes("value"));
+        }
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            ch.truncate(ch.size() - 12); // 終端を落とす
+        }
+        assertThatThrownBy(() -> readAll(file)).isInstanceOf(IOException.class).hasMessageContaining("Truncated");
+    }
+
+    private static List<SessionSnapshotFile.Record> readAll(Path file) throws IOException {
+        List<SessionSnapshotFile.Record> records = new ArrayList<>();
+        try (SessionSnapshotFile.Reader in = new SessionSnapshotFile.Reader(file, 1024)) {
+            SessionSnapshotFile.Chunk chunk;
+            while ((chunk = in.next()) != null) records.addAll(chunk.records());
+        }
+        return records;
+    }
+
+    private static byte[] bytes(String s) { return s.getBytes(StandardCharsets.UTF_8); }
+}
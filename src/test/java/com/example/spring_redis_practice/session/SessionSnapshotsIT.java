@@ -0,0 +1,61 @@
+package com.example.spring_redis_practice.session;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * 書き出したセッションを消してから戻し、属性と TTL が戻ること、既存キーは残すことを確認。
+ */
+@ExtendWith(SpringExtension.class)
+@SpringBootTest
+@Testcontainers
+public class SessionSnapshotsIT {
+
+    @Autowired
+    RedisSessionRepository repo;
+
+    @Autowired
+    SessionSnapshots snapshots;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void export_then_restore_brings_sessions_back_with_ttl() throws Exception {
+        repo.putAll("IT-SNAP1", Map.of("userId", "frank", "role", "admin"));
+        repo.setAttr("IT-SNAP2", "userId", "grace");
+
+        Path file = dir.resolve("sessions.snap");
+        SessionSnapshots.Result exported = snapshots.export(file);
+        assertThat(exported.keys()).isGreaterThanOrEqualTo(2);
+
+        repo.invalidate("IT-SNAP1");
+        repo.setAttr("IT-SNAP2", "userId", "heidi"); // 復元先の方が新しい
+
+        SessionSnapshots.Result restored = snapshots.restore(file);
+        assertThat(restored.skipped()).isGreaterThanOrEqualTo(1);
+        assertThat(repo.load("IT-SNAP1")).containsEntry("userId", "frank").containsEntry("role", "admin");
+        assertThat(repo.ttl("IT-SNAP1")).isPositive().isLessThanOrEqualTo(Duration.ofMinutes(15));
+        assertThat(repo.getAttr("IT-SNAP2", "userId")).isEqualTo("heidi");
+
+        repo.invalidateMany(List.of("IT-SNAP1", "IT-SNAP2"));
+    }
+
+    @Test
+    void file_names_outside_the_directory_are_rejected() {
+        assertThatThrownBy(() -> snapshots.resolve("../escape.snap")).isInstanceOf(IllegalArgumentException.class);
+    }
+}
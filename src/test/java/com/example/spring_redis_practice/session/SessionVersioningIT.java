@@ -0,0 +1,152 @@
+package com.example.spring_redis_practice.session;
+
+import jakarta.servlet.http.Cookie;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * versioning 有効時に、版の不一致で書き込みが弾かれること、並行 update で更新が失われないこと、
+ * 破棄済みセッションが条件付き書き込みでも setAttr/putAll/write でも復活しないこと、create は「まだ無い」ときだけ作ること、
+ * 期限切れの SID のクッキーを持ったままでも新しい SID でログインできることを確認。
+ */
+@ExtendWith(SpringExtension.class)
+@SpringBootTest(properties = {"app.session.versioning.enabled=true", "app.session.versioning.max-attempts=50"})
+@AutoConfigureMockMvc
+@Testcontainers
+public class SessionVersioningIT {
+
+    @Autowired
+    RedisSessionRepository repo;
+
+    @Autowired
+    RedisTemplate<String, Object> redis;
+
+    @Autowired
+    MockMvc mvc;
+
+    @Test
+    void stale_versions_are_rejected() {
+        assertThat(repo.create("IT-V1", Map.of("userId", "ivan"))).isTrue();
+        VersionedSession read = repo.loadVersioned("IT-V1");
+        assertThat(read.attributes()).containsOnlyKeys("userId"); // 版の field は見せない
+        assertThat(repo.load("IT-V1")).containsOnlyKeys("userId");
+
+        assertThat(repo.compareAndWrite("IT-V1", read.version(), Map.of("role", "admin"), List.of())).isTrue();
+        assertThat(repo.compareAndWrite("IT-V1", read.version(), Map.of("role", "user"), List.of())).isFalse();
+        assertThat(repo.getAttr("IT-V1", "role")).isEqualTo("admin");
+        assertThat(repo.loadVersioned("IT-V1").version()).isEqualTo(read.version() + 1);
+
+        repo.invalidate("IT-V1");
+    }
+
+    @Test
+    void concurrent_updates_are_not_lost() throws Exception {
+        repo.create("IT-V2", Map.of("n", 0));
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new java.util.ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                futures.add(pool.submit(() -> {
+                    for (int i = 0; i < 25; i++) {
+                        repo.update("IT-V2", current -> {
+                            Map<Object, Object> next = new HashMap<>(current);
+                            next.put("n", ((Number) current.get("n")).intValue() + 1);
+                            return next;
+                        });
+                    }
+                }));
+            }
+            for (Future<?> f : futures) f.get();
+        } finally {
+            pool.shutdown();
+        }
+        assertThat(((Number) repo.getAttr("IT-V2", "n")).intValue()).isEqualTo(200);
+        repo.invalidate("IT-V2");
+    }
+
+    @Test
+    void invalidated_sessions_are_not_resurrected() {
+        repo.create("IT-V3", Map.of("userId", "judy"));
+        repo.invalidate("IT-V3");
+
+        assertThat(repo.compareAndWrite("IT-V3", RedisSessionRepository.ANY_VERSION, Map.of("cart", 1), List.of()))
+                .isFalse();
+        assertThat(repo.update("IT-V3", current -> Map.of("cart", 2))).isFalse();
+        assertThat(repo.load("IT-V3")).isEmpty();
+        assertThat(repo.ttl("IT-V3")).isZero();
+
+        // 新規作成は「まだ無い」ときだけ
+        assertThat(repo.compareAndWrite("IT-V3", VersionedSession.ABSENT, Map.of("userId", "judy"), List.of())).isTrue();
+        assertThat(repo.compareAndWrite("IT-V3", VersionedSession.ABSENT, Map.of("userId", "mallory"), List.of())).isFalse();
+        assertThat(repo.getAttr("IT-V3", "userId")).isEqualTo("judy");
+        repo.invalidate("IT-V3");
+    }
+
+    @Test
+    void plain_writes_only_update_existing_sessions() {
+        // 無いセッションへの setAttr/putAll/write は何も書かずに false（ログアウトと競合した書き込みの復活を防ぐ）
+        assertThat(repo.setAttr("IT-V4", "userId", "kim")).isFalse();
+        assertThat(repo.putAll("IT-V4", Map.of("cart", 1))).isFalse();
+        assertThat(repo.write("IT-V4", Map.of("cart", 2), List.of())).isFalse();
+        assertThat(repo.load("IT-V4")).isEmpty();
+        assertThat(repo.ttl("IT-V4")).isZero();
+
+        assertThat(repo.create("IT-V4", Map.of("userId", "kim"))).isTrue();
+        assertThat(repo.create("IT-V4", Map.of("userId", "lee"))).isFalse();
+        assertThat(repo.setAttr("IT-V4", "cart", 3)).isTrue();
+        assertThat(repo.load("IT-V4")).containsExactlyInAnyOrderEntriesOf(Map.of("userId", "kim", "cart", 3));
+        assertThat(repo.loadVersioned("IT-V4").version()).isEqualTo(2); // create で 1、setAttr で 2
+
+        repo.invalidate("IT-V4");
+        assertThat(repo.setAttr("IT-V4", "cart", 4)).isFalse();
+        assertThat(repo.write("IT-V4", Map.of("cart", 5), List.of("userId"))).isFalse();
+        assertThat(repo.load("IT-V4")).isEmpty();
+    }
+
+    @Test
+    void expired_sid_can_log_in_again() throws Exception {
+        String expired = SessionIds.newId();
+        assertThat(repo.create(expired, Map.of("userId", "olga"))).isTrue();
+        redis.expire(RedisSessionRepository.KEY_PREFIX + expired, Duration.ofMillis(1));
+        long deadline = System.currentTimeMillis() + 2_000;
+        while (Boolean.TRUE.equals(redis.hasKey(RedisSessionRepository.KEY_PREFIX + expired))
+                && System.currentTimeMillis() < deadline) Thread.sleep(5);
+
+        // 期限切れの SID には書かず、新しい SID でセッションを作ってクッキーを差し替える
+        MvcResult login = mvc.perform(post("/me/login").param("userId", "pam")
+                        .cookie(new Cookie(SessionFilter.COOKIE_NAME, expired)))
+                .andExpect(status().isOk())
+                .andReturn();
+        Cookie issued = login.getResponse().getCookie(SessionFilter.COOKIE_NAME);
+        assertThat(issued).isNotNull();
+        assertThat(issued.getValue()).isNotEqualTo(expired);
+        mvc.perform(get("/me").cookie(issued))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.userId").value("pam"));
+        assertThat(repo.load(expired)).isEmpty();
+
+        repo.invalidate(issued.getValue());
+    }
+}
@@ -0,0 +1,61 @@
+package com.example.spring_redis_practice.session;
+
+import com.example.spring_redis_practice.SpringRedisPracticeApplication;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.availability.AvailabilityChangeEvent;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.context.ApplicationEvent;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 起動時のウォームアップが readiness（ACCEPTING_TRAFFIC）より前に終わること、起動にかかる時間が予算内であることを確認。
+ * 予算は -Dwarmup.startup.budget（既定 30s）。CDS/AOT の効果を比べるときは application.ready.time と
+ * 起動ログ（"Started ... in"・"Redis warm-up finished"）を見る。
+ */
+@Testcontainers
+public class SessionWarmupIT {
+
+    private static final Duration BUDGET = DurationStyle.detectAndParse(System.getProperty("warmup.startup.budget", "30s"));
+
+    @Test
+    void warmup_finishes_before_the_application_accepts_traffic() {
+        AtomicReference<SessionWarmup.Result> atReady = new AtomicReference<>();
+        AtomicReference<Duration> readyAfter = new AtomicReference<>();
+        long started = System.nanoTime();
+
+        SpringApplication app = new SpringApplication(SpringRedisPracticeApplication.class);
+        app.addListeners((ApplicationEvent event) -> {
+            if (!(event instanceof AvailabilityChangeEvent<?> change) || change.getState() != ReadinessState.ACCEPTING_TRAFFIC) {
+                return;
+            }
+            readyAfter.set(Duration.ofNanos(System.nanoTime() - started));
+            atReady.set(((ConfigurableApplicationContext) event.getSource()).getBean(SessionWarmup.class).last());
+        });
+        try (ConfigurableApplicationContext ctx = app.run("--server.port=0",
+                "--app.session.warmup.enabled=true", "--app.session.warmup.iterations=200",
+                "--app.session.warmup.required=true")) {
+            SessionWarmup.Result result = atReady.get();
+            assertThat(result).isNotNull();
+            assertThat(result.completed()).isTrue();
+            assertThat(result.iterations()).isEqualTo(200);
+            assertThat(readyAfter.get()).isLessThan(BUDGET);
+
+            assertThat(result.took()).isLessThanOrEqualTo(readyAfter.get()); // ウォームアップは起動時間の内側
+
+            MeterRegistry registry = ctx.getBean(MeterRegistry.class);
+            Gauge ready = registry.find("application.ready.time").gauge();
+            assertThat(ready).isNotNull();
+            assertThat(ready.value()).isPositive().isLessThan(BUDGET.toMillis() / 1000.0);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.example.spring_redis_practice.session;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * TouchThrottle の間引き判定だけを、疑似クロックで検証。
+ */
+class TouchThrottleTest {
+
+    AtomicLong now;
+    SessionProperties.Touch props;
+
+    @BeforeEach
+    void setUp() {
+        now = new AtomicLong(0);
+        props = new SessionProperties.Touch();
+        props.setEnabled(true);
+        props.setMinInterval(Duration.ofMinutes(1));
+    }
+
+    @Test
+    void touch_is_skipped_until_interval_elapsed() {
+        TouchThrottle t = new TouchThrottle(props, Duration.ofMinutes(15), now::get);
+
+        // 初回は記録がないので延長する
+        assertThat(t.isDue("session:a")).isTrue();
+        t.touched("session:a");
+
+        // 59秒後はまだ不要、60秒後に再び必要
+        now.set(Duration.ofSeconds(59).toNanos());
+        assertThat(t.isDue("session:a")).isFalse();
+        now.set(Duration.ofSeconds(60).toNanos());
+        assertThat(t.isDue("session:a")).isTrue();
+    }
+
+    @Test
+    void ratio_shortens_interval() {
+        // 残TTLが 95% を下回ったら延長 → 15分 × 5% = 45秒
+        props.setRefreshBelowRatio(0.95);
+        TouchThrottle t = new TouchThrottle(props, Duration.ofMinutes(15), now::get);
+        t.touched("session:a");
+
+        now.set(Duration.ofSeconds(44).toNanos());
+        assertThat(t.isDue("session:a")).isFalse();
+        now.set(Duration.ofSeconds(45).toNanos());
+        assertThat(t.isDue("session:a")).isTrue();
+    }
+
+    @Test
+    void forget_and_disabled_always_touch() {
+        TouchThrottle t = new TouchThrottle(props, Duration.ofMinutes(15), now::get);
+        t.touched("session:a");
+        t.forget("session:a");
+        assertThat(t.isDue("session:a")).isTrue();
+
+        props.setEnabled(false);
+        TouchThrottle off = new TouchThrottle(props, Duration.ofMinutes(15), now::get);
+        off.touched("session:a");
+        assertThat(off.isDue("session:a")).isTrue();
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.spring_redis_practice.session;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * user-index 有効時に、userId の書き込み/付け替え/破棄で索引が追従し、
+ * invalidateAllForUser がそのユーザのセッションだけを消すこと、期限切れの通知が書き直されたセッションを消さないことを確認。
+ */
+@ExtendWith(SpringExtension.class)
+@SpringBootTest(properties = "app.session.user-index.enabled=true")
+@Testcontainers
+public class UserSessionIndexIT {
+
+    @Autowired
+    RedisSessionRepository repo;
+
+    @Autowired
+    RedisTemplate<String, Object> redis;
+
+    @Test
+    void index_follows_userId_and_logs_out_everywhere() {
+        repo.setAttr("IT-U1", "userId", "dave");
+        repo.putAll("IT-U2", Map.of("userId", "dave", "role", "user"));
+        repo.write("IT-U3", Map.of("userId", "erin"), List.of());
+        assertThat(repo.sessionIdsOf("dave")).containsExactlyInAnyOrder("IT-U1", "IT-U2");
+
+        // 付け替え：旧ユーザの索引から外れる
+        repo.setAttr("IT-U2", "userId", "erin");
+        assertThat(repo.sessionIdsOf("dave")).containsExactly("IT-U1");
+        assertThat(repo.countSessions("erin")).isEqualTo(2);
+
+        // 個別の破棄も索引から外れる
+        repo.invalidate("IT-U3");
+        assertThat(repo.sessionIdsOf("erin")).containsExactly("IT-U2");
+
+        BatchResult<Boolean> killed = repo.invalidateAllForUser("erin");
+        assertThat(killed.getValues()).containsExactly(Map.entry("IT-U2", true));
+        assertThat(repo.load("IT-U2")).isEmpty();
+        assertThat(repo.countSessions("erin")).isZero();
+        assertThat(repo.load("IT-U1")).containsEntry("userId", "dave");
+
+        repo.invalidateAllForUser("dave");
+    }
+
+    @Test
+    void expiry_notifications_do_not_remove_a_rewritten_session() throws Exception {
+        final String key = RedisSessionRepository.KEY_PREFIX + "IT-U4";
+        repo.setAttr("IT-U4", "userId", "finn");
+        redis.expire(key, Duration.ofMillis(1));
+        Thread.sleep(20);
+        // 期限切れ直後に書き直す（触れたときの期限切れなら、expired の通知はこの書き込みの中で出る）
+        repo.setAttr("IT-U4", "userId", "finn");
+        // 通知が書き直しより後に届いた場合と同じ状況を確実に作る
+        redis.execute((RedisCallback<Long>) c -> c.publish(
+                "__keyevent@0__:expired".getBytes(StandardCharsets.UTF_8), key.getBytes(StandardCharsets.UTF_8)));
+        Thread.sleep(500);
+        assertThat(repo.load("IT-U4")).containsEntry("userId", "finn");
+        assertThat(repo.sessionIdsOf("finn")).containsExactly("IT-U4");
+
+        // 本当に期限切れになったら通知で索引から外れる（sessionIdsOf の掃除に頼らず、逆引きを直接見る）
+        redis.expire(key, Duration.ofMillis(1));
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (indexed("IT-U4") && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+            redis.hasKey(key); // 触れて期限切れを起こす
+        }
+        assertThat(indexed("IT-U4")).isFalse();
+    }
+
+    private boolean indexed(String sid) {
+        return Boolean.TRUE.equals(redis.execute((RedisCallback<Boolean>) c -> c.hashCommands().hExists(
+                UserSessionIndex.REVERSE_KEY.getBytes(StandardCharsets.UTF_8), sid.getBytes(StandardCharsets.UTF_8))));
+    }
+}
@@ -0,0 +1,53 @@
+package com.example.spring_redis_practice.session;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * WriteWatermark の振り分け判定（書き込み直後はプライマリ）を、疑似クロックで検証。
+ */
+class WriteWatermarkTest {
+
+    AtomicLong now;
+    SessionProperties.ReplicaReads props;
+
+    @BeforeEach
+    void setUp() {
+        now = new AtomicLong(1_000_000);
+        props = new SessionProperties.ReplicaReads();
+        props.setEnabled(true);
+        props.setStickyWindow(Duration.ofSeconds(5));
+    }
+
+    @Test
+    void local_write_pins_reads_to_primary_for_the_window() {
+        WriteWatermark w = new WriteWatermark(props, now::get);
+        assertThat(w.usePrimary("session:a", 0)).isFalse();
+
+        w.written("session:a");
+        assertThat(w.usePrimary("session:a", 0)).isTrue();
+        assertThat(w.usePrimary("session:b", 0)).isFalse();
+
+        now.addAndGet(5_000);
+        assertThat(w.usePrimary("session:a", 0)).isFalse();
+    }
+
+    @Test
+    void request_watermark_covers_writes_on_other_nodes() {
+        WriteWatermark w = new WriteWatermark(props, now::get);
+        assertThat(w.usePrimary("session:a", now.get() - 4_999)).isTrue();
+        assertThat(w.usePrimary("session:a", now.get() - 5_000)).isFalse();
+    }
+
+    @Test
+    void disabled_always_reads_primary() {
+        props.setEnabled(false);
+        WriteWatermark w = new WriteWatermark(props, now::get);
+        assertThat(w.usePrimary("session:a", 0)).isTrue();
+    }
+}